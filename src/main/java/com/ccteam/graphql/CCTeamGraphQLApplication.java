@@ -20,17 +20,26 @@
 
 package com.ccteam.graphql;
 
+import com.ccteam.graphql.config.mail.MailCampaignProperties;
+import com.ccteam.graphql.config.mail.MailOutboxProperties;
 import com.ccteam.graphql.config.security.JWTTokenProperties;
+import com.ccteam.graphql.config.security.PasswordHashingProperties;
+import com.ccteam.graphql.config.security.RateLimitProperties;
+import com.ccteam.graphql.config.storage.AvatarStorageProperties;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * @author yann39
  * @since 1.0.0
  */
 @SpringBootApplication
-@EnableConfigurationProperties(JWTTokenProperties.class)
+@EnableScheduling
+@EnableConfigurationProperties({JWTTokenProperties.class, PasswordHashingProperties.class,
+        RateLimitProperties.class, AvatarStorageProperties.class, MailOutboxProperties.class,
+        MailCampaignProperties.class})
 public class CCTeamGraphQLApplication {
 
     static void main(String[] args) {
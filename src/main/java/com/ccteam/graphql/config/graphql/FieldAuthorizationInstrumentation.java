@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.config.graphql;
+
+import com.ccteam.graphql.entities.Member;
+import graphql.GraphQLContext;
+import graphql.execution.instrumentation.Instrumentation;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.parameters.InstrumentationFieldFetchParameters;
+import graphql.schema.DataFetcher;
+import graphql.schema.DataFetchingEnvironment;
+import graphql.schema.GraphQLObjectType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Field-level authorization for GraphQL field resolvers.
+ * <p>
+ * Rather than a {@code @PreAuthorize} on each {@code @SchemaMapping} method, which evaluates a SpEL expression
+ * through a method-security proxy for every resolved value (500 times for a list of 500 members), restricted fields
+ * are declared once in {@link #MIN_ROLES} along with the lowest role allowed to read them.
+ * <p>
+ * The caller's role is resolved once per request from the {@link Authentication} by
+ * {@link FieldAuthorizationInterceptor} and stored in the {@link GraphQLContext}, each restricted field then costs
+ * two map lookups and a comparison. Unrestricted fields are returned untouched.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Component
+@Slf4j
+public class FieldAuthorizationInstrumentation implements Instrumentation {
+
+    /**
+     * {@link GraphQLContext} key of the caller's role, as resolved for the current request.
+     */
+    static final String CALLER_ROLE_KEY = FieldAuthorizationInstrumentation.class.getName() + ".callerRole";
+
+    /**
+     * Lowest role allowed to read each restricted field, by type name then field name. Roles follow the hierarchy
+     * {@code ROLE_ADMIN > ROLE_MEMBER > ROLE_USER}, i.e. their declaration order.
+     */
+    private static final Map<String, Map<String, Member.Role>> MIN_ROLES = Map.of(
+            "Member", Map.of(
+                    "hasAvatar", Member.Role.ROLE_USER,
+                    "avatarPlaceholder", Member.Role.ROLE_USER,
+                    "avatarVersion", Member.Role.ROLE_USER,
+                    "personalBests", Member.Role.ROLE_MEMBER),
+            "Track", Map.of(
+                    "memberBests", Member.Role.ROLE_MEMBER)
+    );
+
+    @Override
+    public DataFetcher<?> instrumentDataFetcher(DataFetcher<?> dataFetcher,
+                                                InstrumentationFieldFetchParameters parameters,
+                                                InstrumentationState state) {
+        final DataFetchingEnvironment environment = parameters.getEnvironment();
+        if (!(environment.getParentType() instanceof GraphQLObjectType parentType)) {
+            return dataFetcher;
+        }
+        final Map<String, Member.Role> fields = MIN_ROLES.get(parentType.getName());
+        if (fields == null) {
+            return dataFetcher;
+        }
+        final Member.Role minRole = fields.get(environment.getFieldDefinition().getName());
+        if (minRole == null) {
+            return dataFetcher;
+        }
+
+        final Member.Role callerRole = callerRole(environment.getGraphQlContext());
+        if (callerRole != null && callerRole.compareTo(minRole) >= 0) {
+            return dataFetcher;
+        }
+        return env -> {
+            log.info("Access denied to field {}.{} for role {}", parentType.getName(),
+                    env.getFieldDefinition().getName(), callerRole);
+            throw new AccessDeniedException("Access denied");
+        };
+    }
+
+    /**
+     * Get the caller's role from the context, or resolve it from the security context if the request did not go
+     * through {@link FieldAuthorizationInterceptor}.
+     */
+    private static Member.Role callerRole(GraphQLContext context) {
+        if (context.hasKey(CALLER_ROLE_KEY)) {
+            return context.get(CALLER_ROLE_KEY);
+        }
+        final Member.Role role = highestRole(SecurityContextHolder.getContext().getAuthentication());
+        if (role != null) {
+            context.put(CALLER_ROLE_KEY, role);
+        }
+        return role;
+    }
+
+    /**
+     * Get the highest {@link Member.Role} among the authorities of the given authentication.
+     *
+     * @param authentication The authentication, may be {@code null}
+     * @return The highest role, {@code null} if not authenticated or without any role
+     */
+    static Member.Role highestRole(Authentication authentication) {
+        if (authentication == null || !authentication.isAuthenticated()) {
+            return null;
+        }
+        Member.Role highest = null;
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            for (Member.Role role : Member.Role.values()) {
+                if (role.getAuthority().equals(authority.getAuthority()) && (highest == null || role.compareTo(highest) > 0)) {
+                    highest = role;
+                }
+            }
+        }
+        return highest;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.config.graphql;
+
+import com.ccteam.graphql.entities.Member;
+import jakarta.annotation.Nonnull;
+import org.springframework.graphql.server.WebGraphQlInterceptor;
+import org.springframework.graphql.server.WebGraphQlRequest;
+import org.springframework.graphql.server.WebGraphQlResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Resolve the caller's role once per GraphQL request and store it in the {@link graphql.GraphQLContext}, for
+ * {@link FieldAuthorizationInstrumentation} to authorize restricted fields without looking at the authorities again.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Component
+public class FieldAuthorizationInterceptor implements WebGraphQlInterceptor {
+
+    @Override
+    @Nonnull
+    public Mono<WebGraphQlResponse> intercept(@Nonnull WebGraphQlRequest request, @Nonnull Chain chain) {
+        final Member.Role role = FieldAuthorizationInstrumentation.highestRole(
+                SecurityContextHolder.getContext().getAuthentication());
+        if (role != null) {
+            request.configureExecutionInput((executionInput, builder) ->
+                    builder.graphQLContext(context -> context.of(FieldAuthorizationInstrumentation.CALLER_ROLE_KEY, role))
+                            .build());
+        }
+        return chain.next(request);
+    }
+}
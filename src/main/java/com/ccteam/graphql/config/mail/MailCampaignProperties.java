@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.config.mail;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Custom properties for the mail campaigns.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@ConfigurationProperties(prefix = "ct.mail.campaign")
+@Getter
+@Setter
+public class MailCampaignProperties {
+
+    /**
+     * Cron expression of the creation of the reminders of the events starting the next day
+     */
+    private String eventReminderCron = "0 0 9 * * *";
+
+    /**
+     * Cron expression of the creation of the weekly news digest
+     */
+    private String newsDigestCron = "0 0 18 * * SUN";
+
+    /**
+     * Maximum number of campaign mails sent over a single SMTP connection
+     */
+    private int batchSize = 20;
+
+    /**
+     * Interval between two batches of campaign mails, which throttles the sending to keep under the SMTP server
+     * limits
+     */
+    private Duration batchInterval = Duration.ofSeconds(10);
+
+}
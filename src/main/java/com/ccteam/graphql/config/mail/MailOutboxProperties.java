@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.config.mail;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Custom properties for the mail outbox.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@ConfigurationProperties(prefix = "ct.mail.outbox")
+@Getter
+@Setter
+public class MailOutboxProperties {
+
+    /**
+     * Interval at which the outbox is checked for mails to send
+     */
+    private Duration pollInterval = Duration.ofSeconds(5);
+
+    /**
+     * Maximum number of mails sent over a single SMTP connection
+     */
+    private int batchSize = 50;
+
+    /**
+     * Number of failed attempts after which a mail is given up and marked as dead
+     */
+    private int maxAttempts = 8;
+
+    /**
+     * Delay before the first retry of a failed mail, doubled after each further failure
+     */
+    private Duration initialBackoff = Duration.ofSeconds(30);
+
+    /**
+     * Maximum delay between two attempts of a failed mail
+     */
+    private Duration maxBackoff = Duration.ofHours(1);
+
+    /**
+     * Time a node has to send the mails it claimed, past it they are due again
+     */
+    private Duration lease = Duration.ofMinutes(2);
+
+    /**
+     * Time sent mails are kept in the outbox for
+     */
+    private Duration sentRetention = Duration.ofDays(7);
+
+    /**
+     * Time mails given up on are kept in the outbox for, with their last error
+     */
+    private Duration deadRetention = Duration.ofDays(30);
+
+}
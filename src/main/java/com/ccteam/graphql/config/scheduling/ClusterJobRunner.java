@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.config.scheduling;
+
+import com.ccteam.graphql.entities.ScheduledJob;
+import com.ccteam.graphql.repository.ScheduledJobRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Run scheduled jobs on a single node of the cluster at a time.
+ * <p>
+ * Every node keeps its {@code @Scheduled} methods, the ones working on shared data run their body through
+ * {@link #run}. The job first leases its {@code scheduled_job} row with a conditional update, the nodes that don't
+ * get it skip the run. The lease lasts {@code lockAtMostFor}, so that a node dying in the middle of a run does not
+ * block the job forever, and is extended each time the job reports a processed chunk through its
+ * {@link JobExecution}. Once done the lease is given back, but held for {@code lockAtLeastFor} since the start so that
+ * the other nodes, whose clocks fire a few milliseconds later, do not run a cron job a second time.
+ * <p>
+ * Jobs process their work in bounded chunks, each reporting the rows processed and optionally a checkpoint. The
+ * checkpoint of a run that failed or was cut short is handed to the next run, on whichever node, so that it resumes
+ * where the previous one stopped. The outcome, duration and rows processed of the last run of each job are kept on
+ * the row and exposed by the {@link ScheduledJobsEndpoint}, as well as timed and counted in the
+ * {@code ct.scheduled_jobs.*} metrics.
+ * <p>
+ * Tasks working on the node's own memory (rate limit buckets, revocation filter, login attempts) keep running on every
+ * node.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Component
+@Slf4j
+public class ClusterJobRunner {
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final ScheduledJobRepository scheduledJobRepository;
+    private final MeterRegistry meterRegistry;
+    private final String node;
+
+    /**
+     * Names of the jobs whose row is known to exist.
+     */
+    private final Set<String> created = ConcurrentHashMap.newKeySet();
+
+    public ClusterJobRunner(ScheduledJobRepository scheduledJobRepository, MeterRegistry meterRegistry) {
+        this.scheduledJobRepository = scheduledJobRepository;
+        this.meterRegistry = meterRegistry;
+        this.node = hostName() + ":" + ProcessHandle.current().pid();
+    }
+
+    /**
+     * The body of a job.
+     */
+    @FunctionalInterface
+    public interface ClusterJob {
+        /**
+         * Run the job.
+         *
+         * @param execution The current run, to report the processed chunks to
+         * @throws Exception if the job failed, the last checkpoint reported is kept for the next run
+         */
+        void run(JobExecution execution) throws Exception;
+    }
+
+    /**
+     * Run the given job if no other node is running it.
+     *
+     * @param name           The job name, unique in the application
+     * @param lockAtMostFor  How long the lease lasts without being extended, longer than a chunk takes
+     * @param lockAtLeastFor How long the lease is held at least since the start of the run
+     * @param job            The job body
+     * @return {@code true} if the job ran on this node, {@code false} if another node holds the lease
+     */
+    public boolean run(String name, Duration lockAtMostFor, Duration lockAtLeastFor, ClusterJob job) {
+        final LocalDateTime start = now();
+        if (created.add(name)) {
+            scheduledJobRepository.insertIfAbsent(name, start);
+        }
+        if (scheduledJobRepository.acquire(name, node, start, start.plus(lockAtMostFor)) == 0) {
+            log.debug("Job {} skipped, leased by another node", name);
+            return false;
+        }
+
+        final JobExecution execution = new JobExecution(this, name, start, lockAtMostFor,
+                scheduledJobRepository.findCheckpoint(name));
+        final long startNanos = System.nanoTime();
+        ScheduledJob.Status status = ScheduledJob.Status.SUCCEEDED;
+        String error = null;
+        try {
+            job.run(execution);
+        } catch (LeaseLostException e) {
+            status = ScheduledJob.Status.FAILED;
+            error = e.getMessage();
+            log.warn("Job {} stopped, {}", name, e.getMessage());
+        } catch (Exception e) {
+            status = ScheduledJob.Status.FAILED;
+            error = e.toString();
+            log.error("Job {} failed after {} rows processed", name, execution.getProcessed(), e);
+        }
+        final Duration duration = Duration.ofNanos(System.nanoTime() - startNanos);
+
+        final LocalDateTime end = now();
+        final LocalDateTime minimumEnd = start.plus(lockAtLeastFor);
+        final int released = scheduledJobRepository.release(name, node, start, end,
+                minimumEnd.isAfter(end) ? minimumEnd : end, duration.toMillis(), execution.getProcessed(), status,
+                error != null && error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error,
+                status == ScheduledJob.Status.SUCCEEDED ? null : execution.getCheckpoint());
+        if (released == 0) {
+            log.warn("Job {} lease lost before the end of the run, outcome not recorded", name);
+        }
+
+        Timer.builder("ct.scheduled_jobs.duration")
+                .description("Duration of the scheduled job runs")
+                .tag("job", name)
+                .tag("status", status.name())
+                .register(meterRegistry)
+                .record(duration);
+        Counter.builder("ct.scheduled_jobs.processed")
+                .description("Number of rows processed by the scheduled jobs")
+                .tag("job", name)
+                .register(meterRegistry)
+                .increment(execution.getProcessed());
+        log.debug("Job {} {} in {} ms, {} rows processed", name, status, duration.toMillis(), execution.getProcessed());
+        return true;
+    }
+
+    /**
+     * Record a processed chunk and extend the lease.
+     *
+     * @return {@code true} if the lease has been extended, {@code false} if it has been lost
+     */
+    boolean extend(JobExecution execution) {
+        final LocalDateTime now = now();
+        return scheduledJobRepository.extend(execution.getName(), node, execution.getStart(), now,
+                now.plus(execution.getLockAtMostFor()), execution.getProcessed(), execution.getCheckpoint()) == 1;
+    }
+
+    /**
+     * Current time truncated to the milliseconds, so that the lease dates read back from the database are equal to
+     * the ones written.
+     */
+    private static LocalDateTime now() {
+        return LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "unknown";
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.config.scheduling;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * A run of a job started by the {@link ClusterJobRunner}, to which the job reports its progress.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+public class JobExecution {
+
+    private final ClusterJobRunner runner;
+    @Getter
+    private final String name;
+    @Getter
+    private final LocalDateTime start;
+    @Getter
+    private final Duration lockAtMostFor;
+
+    /**
+     * Number of rows processed so far.
+     */
+    @Getter
+    private long processed;
+
+    /**
+     * Where the job is, starting from the checkpoint left by the last run if it did not complete, {@code null}
+     * otherwise.
+     */
+    @Getter
+    private String checkpoint;
+
+    JobExecution(ClusterJobRunner runner, String name, LocalDateTime start, Duration lockAtMostFor, String checkpoint) {
+        this.runner = runner;
+        this.name = name;
+        this.start = start;
+        this.lockAtMostFor = lockAtMostFor;
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Report a processed chunk, which extends the lease of the job.
+     *
+     * @param rows       The number of rows processed in the chunk
+     * @param checkpoint Where the job is once the chunk is processed, {@code null} if the job does not resume
+     * @throws LeaseLostException if the lease has been lost (the chunk took longer than the lease), in which case the
+     *                            job must stop as another node may be running it
+     */
+    public void chunkDone(long rows, String checkpoint) {
+        this.processed += rows;
+        this.checkpoint = checkpoint;
+        if (!runner.extend(this)) {
+            throw new LeaseLostException("lease of job " + name + " lost after " + processed + " rows processed");
+        }
+    }
+
+}
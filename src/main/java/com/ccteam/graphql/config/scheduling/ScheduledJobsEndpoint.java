@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.config.scheduling;
+
+import com.ccteam.graphql.entities.ScheduledJob;
+import com.ccteam.graphql.repository.ScheduledJobRepository;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Actuator endpoint {@code /actuator/scheduledjobs} listing the jobs run through the {@link ClusterJobRunner}, with
+ * the outcome, duration and rows processed of their last run whichever node ran it.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Component
+@Endpoint(id = "scheduledjobs")
+public class ScheduledJobsEndpoint {
+
+    private final ScheduledJobRepository scheduledJobRepository;
+
+    public ScheduledJobsEndpoint(ScheduledJobRepository scheduledJobRepository) {
+        this.scheduledJobRepository = scheduledJobRepository;
+    }
+
+    /**
+     * A job as exposed by the endpoint.
+     *
+     * @param name           The job name
+     * @param running        Whether the job is currently leased by a node
+     * @param node           The node holding the current lease, or which ran the job last
+     * @param lastStartedOn  When the current or last run started
+     * @param lastFinishedOn When the last run finished
+     * @param lastDurationMs How long the last run took, in milliseconds
+     * @param lastProcessed  The number of rows processed by the last run, or so far by the current one
+     * @param lastStatus     The outcome of the last run
+     * @param lastError      The error of the last run, if it failed
+     * @param checkpoint     Where the next run resumes, if the last one did not complete
+     */
+    public record Job(String name, boolean running, String node, LocalDateTime lastStartedOn,
+                      LocalDateTime lastFinishedOn, Long lastDurationMs, Long lastProcessed,
+                      ScheduledJob.Status lastStatus, String lastError, String checkpoint) {
+    }
+
+    @ReadOperation
+    public List<Job> jobs() {
+        final LocalDateTime now = LocalDateTime.now();
+        return scheduledJobRepository.findAllByOrderByNameAsc().stream()
+                .map(j -> new Job(j.getName(), j.getLastStatus() == ScheduledJob.Status.RUNNING && j.getLockedUntil().isAfter(now),
+                        j.getLockedBy(), j.getLockedAt(), j.getLastFinishedOn(), j.getLastDurationMs(),
+                        j.getLastProcessed(), j.getLastStatus(), j.getLastError(), j.getCheckpoint()))
+                .toList();
+    }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.config.security;
+
+import com.ccteam.graphql.entities.Member;
+
+import java.security.Principal;
+
+/**
+ * Principal of an authenticated request, built by {@link JWTAuthorizationFilter} from the JWT claims.
+ * <p>
+ * It carries the member ID along with the e-mail address and role, so that the current member and ownership checks
+ * can be resolved without any database access. As a {@link Principal}, its name is the e-mail address, so
+ * {@code Authentication.getName()} keeps returning the JWT subject.
+ *
+ * @param memberId The member ID, {@code null} for tokens issued before it was added to the claims
+ * @param email    The member e-mail address (JWT subject)
+ * @param role     The member role
+ * @author yann39
+ * @since 1.1.0
+ */
+public record AuthenticatedMember(Long memberId, String email, Member.Role role) implements Principal {
+
+    @Override
+    public String getName() {
+        return email;
+    }
+
+    /**
+     * Check whether the member is an administrator.
+     *
+     * @return {@code true} if the member has the {@code ROLE_ADMIN} role
+     */
+    public boolean isAdmin() {
+        return role == Member.Role.ROLE_ADMIN;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.config.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+
+import java.time.Duration;
+
+/**
+ * Picks the BCrypt cost factor for a target hash time on the current machine.
+ * <p>
+ * Each additional cost unit doubles the hashing time, so the calibration simply measures costs in ascending order
+ * and keeps the highest one whose hash time stays under the target. The cost never goes below
+ * {@link #MIN_STRENGTH}, even on a slow machine, as lower values are not considered safe anymore.
+ * <p>
+ * It is not run by the application, as a cost measured at startup would differ between nodes and restarts. It is
+ * run standalone on the deployment machine, to log the timing of each cost and pin the result in the configuration
+ * (see {@link PasswordHashingProperties#getStrength()}) :
+ * <pre>
+ * java -cp ccteam-graphql.jar -Dloader.main=com.ccteam.graphql.config.security.BCryptCostCalibrator \
+ *      org.springframework.boot.loader.launch.PropertiesLauncher 250
+ * </pre>
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Slf4j
+public final class BCryptCostCalibrator {
+
+    /**
+     * Lowest cost factor ever returned by the calibration.
+     */
+    public static final int MIN_STRENGTH = 10;
+
+    private static final int MAX_STRENGTH = 31;
+    private static final int SAMPLES = 3;
+    private static final String SAMPLE_PASSWORD = "123456";
+
+    private BCryptCostCalibrator() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Get the highest cost factor whose hash time does not exceed {@code target}.
+     *
+     * @param target The target time for a single hash
+     * @return The calibrated cost factor, at least {@link #MIN_STRENGTH}
+     */
+    public static int calibrate(Duration target) {
+        // warm up so the first measurements are not skewed by class loading and JIT compilation
+        for (int i = 0; i < 10; i++) {
+            BCrypt.hashpw(SAMPLE_PASSWORD, BCrypt.gensalt(4));
+        }
+
+        int strength = MIN_STRENGTH;
+        for (int cost = MIN_STRENGTH; cost <= MAX_STRENGTH; cost++) {
+            final Duration elapsed = measure(cost);
+            log.debug("BCrypt cost {} takes {} ms", cost, elapsed.toMillis());
+            if (elapsed.compareTo(target) > 0) {
+                break;
+            }
+            strength = cost;
+            // the next cost takes twice as long, no need to measure it if it is obviously over the target
+            if (elapsed.multipliedBy(2).compareTo(target.multipliedBy(3).dividedBy(2)) > 0) {
+                break;
+            }
+        }
+        return strength;
+    }
+
+    /**
+     * Measure the time to hash a password with the given cost, keeping the best of a few runs to reduce noise.
+     *
+     * @param cost The BCrypt cost factor
+     * @return The fastest hash time measured
+     */
+    static Duration measure(int cost) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < SAMPLES; i++) {
+            final long start = System.nanoTime();
+            BCrypt.hashpw(SAMPLE_PASSWORD, BCrypt.gensalt(cost));
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return Duration.ofNanos(best);
+    }
+
+    /**
+     * Log the hash time of every cost from {@link #MIN_STRENGTH} up to the first one over the target, followed
+     * by the calibrated cost.
+     *
+     * @param args Optional target hash time in milliseconds (defaults to 250)
+     */
+    public static void main(String[] args) {
+        final Duration target = Duration.ofMillis(args.length > 0 ? Long.parseLong(args[0]) : 250);
+        for (int cost = MIN_STRENGTH; cost <= MAX_STRENGTH; cost++) {
+            final Duration elapsed = measure(cost);
+            log.info("BCrypt cost {} takes {} ms", cost, elapsed.toMillis());
+            if (elapsed.compareTo(target) > 0) {
+                break;
+            }
+        }
+        log.info("BCrypt cost calibrated to {} for a target hash time of {} ms", calibrate(target), target.toMillis());
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.config.security;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Minimal thread-safe Bloom filter of strings.
+ * <p>
+ * Bits are stored in an {@link AtomicLongArray} so values can be added while other threads query the filter, without
+ * any lock. The k bit positions of a value are derived from two 64-bit hashes (Kirsch-Mitzenmacher double hashing).
+ * <p>
+ * A negative answer is certain, a positive answer may be a false positive with the probability given at creation
+ * (as long as no more than the expected number of values are added).
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+final class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long numBits;
+    private final int numHashes;
+
+    /**
+     * Create an empty filter sized for the given number of values and false positive probability.
+     *
+     * @param expectedInsertions   Expected number of values
+     * @param falsePositiveRate    Wanted false positive probability, between 0 and 1 (exclusive)
+     */
+    BloomFilter(int expectedInsertions, double falsePositiveRate) {
+        final int n = Math.max(1, expectedInsertions);
+        final long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        final int words = (int) Math.max(1, (m + 63) / 64);
+        this.bits = new AtomicLongArray(words);
+        this.numBits = (long) words * 64;
+        this.numHashes = Math.max(1, (int) Math.round((double) numBits / n * Math.log(2)));
+    }
+
+    /**
+     * Add the value to the filter.
+     *
+     * @param value The value to add
+     */
+    void put(String value) {
+        final long h1 = hash(value);
+        final long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < numHashes; i++) {
+            final long index = Math.floorMod(h1 + i * h2, numBits);
+            final int word = (int) (index >>> 6);
+            final long mask = 1L << index;
+            long current;
+            do {
+                current = bits.get(word);
+                if ((current & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    /**
+     * Check whether the value might have been added to the filter.
+     *
+     * @param value The value to check
+     * @return {@code false} if the value has certainly not been added, {@code true} if it might have been
+     */
+    boolean mightContain(String value) {
+        final long h1 = hash(value);
+        final long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < numHashes; i++) {
+            final long index = Math.floorMod(h1 + i * h2, numBits);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the string characters, followed by a final mix to spread the bits.
+     */
+    private static long hash(String value) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001B3L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * SplitMix64 finalizer.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
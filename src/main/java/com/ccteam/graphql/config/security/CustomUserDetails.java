@@ -20,7 +20,7 @@
 
 package com.ccteam.graphql.config.security;
 
-import com.ccteam.graphql.entities.Member;
+import com.ccteam.graphql.model.MemberCredentials;
 import jakarta.annotation.Nonnull;
 import lombok.Getter;
 import lombok.Setter;
@@ -56,7 +56,7 @@ public class CustomUserDetails implements UserDetails {
     private String password;
     private List<GrantedAuthority> authorities;
 
-    public CustomUserDetails(Member user) {
+    public CustomUserDetails(MemberCredentials user) {
         this.id = user.getId();
         this.username = user.getEmail();
         this.password = user.getPassword();
@@ -51,7 +51,7 @@ public class CustomUserDetailsService implements UserDetailsService {
     @Nonnull
     public UserDetails loadUserByUsername(@Nonnull String userName) throws UsernameNotFoundException {
         log.info("Calling CustomUserDetailsService loadUserByUsername");
-        return memberRepository.findByEmailCustom(userName)
+        return memberRepository.findCredentialsByEmail(userName)
                 .map(CustomUserDetails::new)
                 .orElseThrow(() -> new UsernameNotFoundException("Not found: " + userName));
     }
@@ -58,6 +58,7 @@ public class JWTAuthenticationEntryPoint implements AuthenticationEntryPoint {
 
         res.setContentType("application/json;charset=UTF-8");
         final String expired = (String) req.getAttribute("token_expired");
+        final String revoked = (String) req.getAttribute("token_revoked");
         final String wrongTokenFormat = (String) req.getAttribute("wrong_token_format");
         final String noToken = (String) req.getAttribute("no_token");
         final String badCredentials = (String) req.getAttribute("bad_credentials");
@@ -69,6 +70,10 @@ public class JWTAuthenticationEntryPoint implements AuthenticationEntryPoint {
             res.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
             customGraphQLException = new CustomGraphQLException("token_expired", authException.getMessage());
             log.info("return token_expired");
+        } else if (revoked != null) {
+            res.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            customGraphQLException = new CustomGraphQLException("token_revoked", revoked);
+            log.info("return token_revoked");
         } else if (wrongTokenFormat != null) {
             res.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             customGraphQLException = new CustomGraphQLException("wrong_token_format", authException.getMessage());
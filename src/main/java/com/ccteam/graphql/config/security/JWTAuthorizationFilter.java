@@ -44,6 +44,9 @@ import java.util.Collections;
  * It extends {@link BasicAuthenticationFilter} which normally processes an HTTP request's basic authentication,
  * but here we override the internal filter to get authentication information from the <i>Authorization</i> header
  * instead, which contain the JWT token, and then put the result into the {@link SecurityContextHolder}.
+ * <p>
+ * Tokens of a revoked session are rejected, the check goes through the in-memory filter of
+ * {@link TokenRevocationService} so it does not cost a query per request.
  *
  * @author yann39
  * @since 1.0.0
@@ -53,10 +56,13 @@ import java.util.Collections;
 public class JWTAuthorizationFilter extends BasicAuthenticationFilter {
 
     private final JWTTokenUtils jwtTokenUtils;
+    private final TokenRevocationService tokenRevocationService;
 
-    public JWTAuthorizationFilter(AuthenticationManager authManager, JWTTokenUtils jwtTokenUtils) {
+    public JWTAuthorizationFilter(AuthenticationManager authManager, JWTTokenUtils jwtTokenUtils,
+                                  TokenRevocationService tokenRevocationService) {
         super(authManager);
         this.jwtTokenUtils = jwtTokenUtils;
+        this.tokenRevocationService = tokenRevocationService;
     }
 
     @Override
@@ -77,14 +83,22 @@ public class JWTAuthorizationFilter extends BasicAuthenticationFilter {
                 // decode JWT token
                 final JWTTokenPayload jwtTokenPayload = jwtTokenUtils.decodeToken(authorizationHeader);
 
+                // reject tokens of a revoked session
+                if (jwtTokenPayload.getSessionId() != null && tokenRevocationService.isRevoked(jwtTokenPayload.getSessionId())) {
+                    log.info("Token of revoked session {}", jwtTokenPayload.getSessionId());
+                    req.setAttribute("token_revoked", "Token has been revoked");
+                    res.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+                }
                 // if user e-mail and role have been retrieved correctly from the token
-                if (jwtTokenPayload.getEmail() != null && jwtTokenPayload.getRole() != null) {
+                else if (jwtTokenPayload.getEmail() != null && jwtTokenPayload.getRole() != null) {
 
                     // if user is not already authenticated
                     if (SecurityContextHolder.getContext().getAuthentication() == null) {
-                        // authenticate user
+                        // authenticate user, with a typed principal carrying the member ID
+                        final AuthenticatedMember principal = new AuthenticatedMember(jwtTokenPayload.getMemberId(),
+                                jwtTokenPayload.getEmail(), jwtTokenPayload.getRole());
                         final UsernamePasswordAuthenticationToken authentication =
-                                new UsernamePasswordAuthenticationToken(jwtTokenPayload.getEmail(),
+                                new UsernamePasswordAuthenticationToken(principal,
                                         null, Collections.singletonList(jwtTokenPayload.getRole()));
 
                         // set authentication in security context holder
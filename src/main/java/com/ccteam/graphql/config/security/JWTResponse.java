@@ -43,4 +43,9 @@ public class JWTResponse implements Serializable {
 
     private String jwtToken;
 
+    /**
+     * Refresh token to get a new JWT token from {@code /rest/refresh} once it has expired.
+     */
+    private String refreshToken;
+
 }
\ No newline at end of file
@@ -37,8 +37,18 @@ public class JWTTokenPayload {
     private final String email;
     private final Member.Role role;
 
+    /**
+     * ID of the member, {@code null} for tokens issued before it was added to the claims.
+     */
+    private final Long memberId;
+
+    /**
+     * Identifier of the session the token belongs to, {@code null} for tokens issued before sessions existed.
+     */
+    private final String sessionId;
+
     @Override
     public String toString() {
-        return "email=" + email + ",role=" + role;
+        return "email=" + email + ",role=" + role + ",memberId=" + memberId + ",sessionId=" + sessionId;
     }
 }
\ No newline at end of file
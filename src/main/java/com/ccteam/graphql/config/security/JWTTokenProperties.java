@@ -41,8 +41,13 @@ public class JWTTokenProperties {
     private String secret;
 
     /**
-     * Token expiration time in milliseconds
+     * Access token expiration time in milliseconds
      */
     private long expirationTime = 3600000;
 
+    /**
+     * Refresh token expiration time in milliseconds
+     */
+    private long refreshExpirationTime = 2592000000L;
+
 }
@@ -21,19 +21,36 @@
 package com.ccteam.graphql.config.security;
 
 import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.interfaces.DecodedJWT;
 import com.ccteam.graphql.entities.Member;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.Base64;
 import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * JWT token utilities.
+ * <p>
+ * The HMAC {@link Algorithm} and the {@link JWTVerifier} are built once, as both are immutable and thread-safe.
+ * Successfully verified tokens are kept in a bounded cache keyed by the SHA-256 digest of the token, until their
+ * {@code exp} claim, so the many requests the mobile application sends with the same token skip the signature
+ * verification and the claims parsing.
+ * <p>
+ * Access tokens carry the identifier of their session in the {@code sid} claim, so that they can be revoked along
+ * with the refresh tokens of the session (see {@link RefreshTokenService}), and the member ID in the {@code mid}
+ * claim, so that the current member is known without any database access (see {@link AuthenticatedMember}).
  *
  * @author yann39
  * @since 1.0.0
@@ -44,33 +61,66 @@ public class JWTTokenUtils {
 
     public static final String ZONE_ID_EUROPE_PARIS = "Europe/Paris";
 
+    /**
+     * Maximum number of verified tokens kept in memory, roughly one per active session.
+     */
+    static final int MAX_CACHED_TOKENS = 10_000;
+
     private final JWTTokenProperties jwtTokenProperties;
+    private final Algorithm algorithm;
+    private final JWTVerifier verifier;
+    private final Map<String, VerifiedToken> verifiedTokens = new ConcurrentHashMap<>();
 
     public JWTTokenUtils(JWTTokenProperties jwtTokenProperties) {
         this.jwtTokenProperties = jwtTokenProperties;
+        this.algorithm = Algorithm.HMAC512(jwtTokenProperties.getSecret().getBytes());
+        this.verifier = JWT.require(algorithm).build();
     }
 
     /**
      * Decode the JWT token from the specified authorization header content.
+     * <p>
+     * A token already verified and not yet expired is served from the cache, otherwise it is verified and cached
+     * until its expiration date.
      *
      * @param authorizationHeader The authorization header value as {@link String}
      * @return The {@link JWTTokenPayload} object containing the decoded JWT information
      */
     public JWTTokenPayload decodeToken(String authorizationHeader) {
         log.info("Calling JWTTokenUtils decodeToken");
-        final DecodedJWT decodedToken = JWT.require(Algorithm.HMAC512(jwtTokenProperties.getSecret().getBytes()))
-                .build().verify(authorizationHeader.replace("Bearer ", ""));
-        return new JWTTokenPayload(decodedToken.getSubject(), decodedToken.getClaim("role").as(Member.Role.class));
+        final String token = authorizationHeader.replace("Bearer ", "");
+        final String key = digest(token);
+        final long now = System.currentTimeMillis();
+
+        final VerifiedToken cached = verifiedTokens.get(key);
+        if (cached != null) {
+            if (cached.expiresAt() > now) {
+                return cached.payload();
+            }
+            // expired, drop it and let the verifier raise the usual TokenExpiredException
+            verifiedTokens.remove(key, cached);
+        }
+
+        final DecodedJWT decodedToken = verifier.verify(token);
+        final JWTTokenPayload payload =
+                new JWTTokenPayload(decodedToken.getSubject(), decodedToken.getClaim("role").as(Member.Role.class),
+                        decodedToken.getClaim("mid").asLong(), decodedToken.getClaim("sid").asString());
+        if (decodedToken.getExpiresAt() != null) {
+            cache(key, new VerifiedToken(payload, decodedToken.getExpiresAt().getTime()), now);
+        }
+        return payload;
     }
 
     /**
-     * Generate a new JWT token from the specified subject and role.
+     * Generate a new JWT token from the specified subject, role and session.
      *
-     * @param subject The subject claim of the JWT payload data
-     * @param role    The role to be set as claim value in the JWT
+     * @param subject   The subject claim of the JWT payload data
+     * @param role      The role to be set as claim value in the JWT
+     * @param memberId  The ID of the member the token is issued to
+     * @param sessionId The identifier of the session the token belongs to
      * @return The new created JWT token as {@link String}
      */
-    public String generateToken(String subject, String role) {
+    public String generateToken(String subject, String role, long memberId, String sessionId) {
         log.info("Calling JWTTokenUtils generateToken");
         final LocalDateTime now = LocalDateTime.now(ZoneId.of(ZONE_ID_EUROPE_PARIS));
         final Instant instant = now.plusSeconds(
@@ -81,8 +131,45 @@ public class JWTTokenUtils {
         return JWT.create()
                 .withSubject(subject)
                 .withClaim("role", role)
+                .withClaim("mid", memberId)
+                .withClaim("sid", sessionId)
+                .withJWTId(UUID.randomUUID().toString())
                 .withExpiresAt(Date.from(instant))
-                .sign(Algorithm.HMAC512(jwtTokenProperties.getSecret().getBytes()));
+                .sign(algorithm);
+    }
+
+    /**
+     * Put the verified token in the cache. When the cache is full, expired entries are purged first, and if that
+     * is not enough the token is simply not cached (it will be verified again on the next request).
+     */
+    private void cache(String key, VerifiedToken verifiedToken, long now) {
+        if (verifiedTokens.size() >= MAX_CACHED_TOKENS) {
+            verifiedTokens.values().removeIf(v -> v.expiresAt() <= now);
+            if (verifiedTokens.size() >= MAX_CACHED_TOKENS) {
+                log.debug("Verified token cache is full, not caching");
+                return;
+            }
+        }
+        verifiedTokens.put(key, verifiedToken);
+    }
+
+    /**
+     * SHA-256 digest of the token, so the cache does not keep usable bearer tokens in memory.
+     */
+    private static String digest(String token) {
+        try {
+            final byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is mandatory on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A verified token payload along with its expiration date (epoch milliseconds).
+     */
+    private record VerifiedToken(JWTTokenPayload payload, long expiresAt) {
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.config.security;
+
+import com.ccteam.graphql.model.MemberCredentials;
+import com.ccteam.graphql.repository.MemberRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory tracker of failed logins, keyed by e-mail address and by client IP.
+ * <p>
+ * It applies the {@link LockoutPolicy} in memory so a locked account (or a client IP hammering many accounts) is
+ * rejected before touching the database or BCrypt, and failure counters are not written synchronously on every
+ * attempt. Each key is updated atomically through {@link ConcurrentHashMap#compute}, which only locks the bin of that
+ * key, so concurrent attempts on different accounts never contend.
+ * <p>
+ * Account state is flushed asynchronously to the {@code member} columns, and the persisted row is the source of truth
+ * across nodes. A successful login stamps the row with a reset date ({@code loginResetOn}), and every local state
+ * remembers the reset date its counter was counted from. Every time the credentials are read from the database they
+ * are merged into the local state (see {@link #syncPersisted}) : a clean local entry simply takes the persisted values,
+ * an entry with unflushed failures counted since the same reset keeps the highest counter and the latest lockout of
+ * both, and an entry counted before a reset made on another node is replaced by the persisted values. The flush of
+ * failures is likewise conditional on the reset date, so a stale local counter can never overwrite a reset.
+ * <p>
+ * Lockouts are primarily per account. IP state only lives in memory and counts the distinct accounts an IP failed to
+ * log into, one step of the {@link LockoutPolicy} curve every {@link #IP_ACCOUNTS_PER_STEP} accounts, so it catches
+ * an IP spraying passcodes over many accounts, while several members behind the same network failing on their own
+ * account don't lock each other out.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Component
+@Slf4j
+public class LoginAttemptTracker {
+
+    /**
+     * Number of distinct accounts a single IP failed to log into counted as one failure of the {@link LockoutPolicy}
+     * curve.
+     */
+    public static final int IP_ACCOUNTS_PER_STEP = 5;
+
+    /**
+     * Maximum number of distinct accounts remembered per IP, enough to reach the end of the {@link LockoutPolicy} curve.
+     */
+    private static final int MAX_ACCOUNTS_PER_IP = IP_ACCOUNTS_PER_STEP * 10;
+
+    /**
+     * Time after the last failure at which an IP counter is forgotten.
+     */
+    private static final Duration IP_WINDOW = Duration.ofHours(1);
+
+    /**
+     * Maximum number of tracked IPs, new IPs are not tracked once reached and no expired entry can be purged.
+     */
+    private static final int MAX_TRACKED_IPS = 100_000;
+
+    private final MemberRepository memberRepository;
+    private final Map<String, AccountState> accounts = new ConcurrentHashMap<>();
+    private final Map<String, IpState> ips = new ConcurrentHashMap<>();
+
+    public LoginAttemptTracker(MemberRepository memberRepository) {
+        this.memberRepository = memberRepository;
+    }
+
+    /**
+     * Account state, {@code resetOn} is the reset date the counter is counted from, {@code reset} is set while a
+     * successful login has not been flushed to the database yet, and {@code dirty} while the state has not been
+     * flushed at all.
+     */
+    private record AccountState(long memberId, int failures, LocalDateTime lockedUntil, LocalDateTime resetOn,
+                                boolean reset, boolean dirty) {
+
+        static AccountState persisted(MemberCredentials credentials) {
+            return new AccountState(credentials.getId(), credentials.getFailedLoginAttempts(),
+                    credentials.getLockedUntil(), credentials.getLoginResetOn(), false, false);
+        }
+
+        AccountState clean() {
+            return new AccountState(memberId, failures, lockedUntil, resetOn, false, false);
+        }
+    }
+
+    /**
+     * IP state, {@code accounts} holds the keys of the distinct accounts the IP failed to log into.
+     */
+    private record IpState(Set<String> accounts, LocalDateTime lockedUntil, LocalDateTime lastFailure) {
+    }
+
+    /**
+     * Result of a recorded failure.
+     *
+     * @param failures The number of consecutive failures of the account
+     * @param lockout  The lockout duration applied after this failure, {@link Duration#ZERO} if none
+     */
+    public record Failure(int failures, Duration lockout) {
+    }
+
+    /**
+     * Get the time left before the given account or IP is unlocked.
+     *
+     * @param email The e-mail address of the account
+     * @param ip    The client IP
+     * @return The longest time left of both, {@link Duration#ZERO} if none is locked
+     */
+    public Duration lockedFor(String email, String ip) {
+        final LocalDateTime now = LocalDateTime.now();
+        Duration left = Duration.ZERO;
+        final AccountState account = accounts.get(key(email));
+        if (account != null && account.lockedUntil() != null && account.lockedUntil().isAfter(now)) {
+            left = Duration.between(now, account.lockedUntil());
+        }
+        final IpState ipState = ip == null ? null : ips.get(ip);
+        if (ipState != null && ipState.lockedUntil() != null && ipState.lockedUntil().isAfter(now)) {
+            final Duration ipLeft = Duration.between(now, ipState.lockedUntil());
+            if (ipLeft.compareTo(left) > 0) {
+                left = ipLeft;
+            }
+        }
+        return left;
+    }
+
+    /**
+     * Merge the state read from the database into the local state of the account.
+     *
+     * @param email       The e-mail address of the account
+     * @param credentials The persisted credentials and account state
+     * @return The time left before the account is unlocked according to the merged state, {@link Duration#ZERO}
+     * if not locked
+     */
+    public Duration syncPersisted(String email, MemberCredentials credentials) {
+        final AccountState state = accounts.compute(key(email), (k, current) -> {
+            if (current == null || !current.dirty()
+                    || !current.reset() && !Objects.equals(current.resetOn(), credentials.getLoginResetOn())) {
+                // nothing local to keep, or the local failures were counted before a reset made on another node
+                return credentials.getFailedLoginAttempts() == 0 && credentials.getLockedUntil() == null
+                        ? null : AccountState.persisted(credentials);
+            }
+            if (current.reset()) {
+                // the local reset is more recent than the persisted state
+                return current;
+            }
+            return new AccountState(current.memberId(),
+                    Math.max(current.failures(), credentials.getFailedLoginAttempts()),
+                    latest(current.lockedUntil(), credentials.getLockedUntil()), current.resetOn(), false, true);
+        });
+        final LocalDateTime now = LocalDateTime.now();
+        return state == null || state.lockedUntil() == null || !state.lockedUntil().isAfter(now)
+                ? Duration.ZERO : Duration.between(now, state.lockedUntil());
+    }
+
+    /**
+     * Record a failed login for the given account and IP, applying the {@link LockoutPolicy}.
+     * <p>
+     * The new account state is flushed to the database asynchronously. The persisted state is used as a starting
+     * point when the account is not tracked locally.
+     *
+     * @param email       The e-mail address of the account
+     * @param credentials The persisted credentials and account state
+     * @param ip          The client IP
+     * @return The resulting number of failures and lockout duration of the account
+     */
+    public Failure recordFailure(String email, MemberCredentials credentials, String ip) {
+        final LocalDateTime now = LocalDateTime.now();
+        final AccountState state = accounts.compute(key(email), (k, current) -> {
+            final AccountState base = current == null ? AccountState.persisted(credentials) : current;
+            final int failures = base.failures() + 1;
+            final Duration lockout = LockoutPolicy.durationFor(failures);
+            final LocalDateTime until = lockout.isZero() ? base.lockedUntil() : now.plus(lockout);
+            return new AccountState(base.memberId(), failures, until, base.resetOn(), base.reset(), true);
+        });
+        recordIpFailure(email, ip);
+        final Duration lockout = LockoutPolicy.durationFor(state.failures());
+        return new Failure(state.failures(), lockout);
+    }
+
+    /**
+     * Record a failed login of the given IP on the given account, which may not exist.
+     *
+     * @param email The e-mail address of the account
+     * @param ip    The client IP
+     */
+    public void recordIpFailure(String email, String ip) {
+        if (ip == null) {
+            return;
+        }
+        if (ips.size() >= MAX_TRACKED_IPS && !ips.containsKey(ip)) {
+            purgeIps();
+            if (ips.size() >= MAX_TRACKED_IPS) {
+                log.info("Too many tracked IPs, failed login from {} not tracked", ip);
+                return;
+            }
+        }
+        final String account = key(email);
+        final LocalDateTime now = LocalDateTime.now();
+        ips.compute(ip, (k, current) -> {
+            final Set<String> failedAccounts = current == null ? Set.of() : current.accounts();
+            final LocalDateTime lockedUntil = current == null ? null : current.lockedUntil();
+            if (failedAccounts.contains(account)) {
+                // repeated failures on the same account are handled by the account lockout
+                return new IpState(failedAccounts, lockedUntil, now);
+            }
+            if (failedAccounts.size() >= MAX_ACCOUNTS_PER_IP) {
+                return new IpState(failedAccounts,
+                        now.plus(LockoutPolicy.durationFor(MAX_ACCOUNTS_PER_IP / IP_ACCOUNTS_PER_STEP)), now);
+            }
+            final Set<String> newAccounts = new HashSet<>(failedAccounts);
+            newAccounts.add(account);
+            return new IpState(Set.copyOf(newAccounts), newAccounts.size() % IP_ACCOUNTS_PER_STEP == 0
+                    ? now.plus(LockoutPolicy.durationFor(newAccounts.size() / IP_ACCOUNTS_PER_STEP))
+                    : lockedUntil, now);
+        });
+    }
+
+    /**
+     * Record a successful login for the given account, resetting its counter.
+     * <p>
+     * The reset is flushed to the database asynchronously, only if there is something to reset.
+     *
+     * @param email       The e-mail address of the account
+     * @param credentials The persisted credentials and account state
+     */
+    public void recordSuccess(String email, MemberCredentials credentials) {
+        accounts.compute(key(email), (k, current) -> {
+            if (current == null && credentials.getFailedLoginAttempts() == 0 && credentials.getLockedUntil() == null) {
+                return null;
+            }
+            // truncated so that it compares equal to the persisted value whatever the column precision
+            final LocalDateTime resetOn = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+            return new AccountState(credentials.getId(), 0, null, resetOn, true, true);
+        });
+    }
+
+    /**
+     * Flush the account states changed since the last run to the database, then forget the ones with nothing left
+     * to track, along with expired IP counters.
+     */
+    @Scheduled(fixedDelayString = "${ct.login-attempts.flush-interval:1s}")
+    public void flush() {
+        for (Map.Entry<String, AccountState> entry : accounts.entrySet()) {
+            final AccountState state = entry.getValue();
+            if (!state.dirty()) {
+                continue;
+            }
+            final int updated;
+            try {
+                updated = state.reset()
+                        ? memberRepository.resetLoginFailures(state.memberId(), state.failures(), state.lockedUntil(),
+                        state.resetOn())
+                        : memberRepository.updateLoginFailures(state.memberId(), state.failures(), state.lockedUntil(),
+                        state.resetOn());
+            } catch (Exception e) {
+                log.error("Error while flushing failed login state of member {}", state.memberId(), e);
+                continue;
+            }
+            // only mark clean if no failure has been recorded in the meantime
+            if (updated == 0) {
+                // reset on another node in the meantime (or deleted), the next login reads the persisted state again
+                log.info("Failed login state of member {} not flushed, reset in the meantime", state.memberId());
+                accounts.remove(entry.getKey(), state);
+            } else if (state.failures() == 0 && state.lockedUntil() == null) {
+                accounts.remove(entry.getKey(), state);
+            } else {
+                accounts.replace(entry.getKey(), state, state.clean());
+            }
+        }
+
+        // clean entries are only a cache of the database, drop them once their lockout has expired
+        final LocalDateTime now = LocalDateTime.now();
+        accounts.entrySet().removeIf(e -> !e.getValue().dirty()
+                && (e.getValue().lockedUntil() == null || e.getValue().lockedUntil().isBefore(now)));
+        purgeIps();
+    }
+
+    private void purgeIps() {
+        final LocalDateTime now = LocalDateTime.now();
+        ips.entrySet().removeIf(e -> e.getValue().lastFailure().plus(IP_WINDOW).isBefore(now)
+                && (e.getValue().lockedUntil() == null || e.getValue().lockedUntil().isBefore(now)));
+    }
+
+    private static String key(String email) {
+        return email == null ? "" : email.toLowerCase();
+    }
+
+    private static LocalDateTime latest(LocalDateTime a, LocalDateTime b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        return a.isAfter(b) ? a : b;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.config.security;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Custom properties for password hashing.
+ * <p>
+ * BCrypt is deliberately slow, so hashing runs on a dedicated bounded pool (see {@link PasswordHashingService})
+ * rather than on the request threads.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@ConfigurationProperties(prefix = "ct.password.hashing")
+@Getter
+@Setter
+public class PasswordHashingProperties {
+
+    /**
+     * BCrypt cost factor (log2 of the number of rounds, between 4 and 31), to be chosen for the deployment machine
+     * with the {@link BCryptCostCalibrator} tool. It must be the same on every node
+     */
+    private int strength = 12;
+
+    /**
+     * Number of hashing threads, defaults to the number of available processors
+     */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Maximum number of hashing tasks waiting for a thread, further requests are rejected immediately
+     */
+    private int queueCapacity = 32;
+
+    /**
+     * Maximum time a request waits for its hashing task to complete before giving up
+     */
+    private Duration maxWait = Duration.ofSeconds(5);
+
+}
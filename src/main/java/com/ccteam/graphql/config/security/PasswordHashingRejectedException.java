@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.config.security;
+
+import lombok.Getter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Thrown when a password hashing task cannot be run or completed in time.
+ * <p>
+ * {@link Reason#SATURATED} means the hashing queue was full and the task was rejected right away (maps to HTTP 429),
+ * {@link Reason#TIMEOUT} means the task was accepted but did not complete within the configured maximum wait
+ * (maps to HTTP 503).
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Getter
+public class PasswordHashingRejectedException extends RuntimeException {
+
+    public enum Reason {
+        SATURATED,
+        TIMEOUT
+    }
+
+    private final Reason reason;
+
+    public PasswordHashingRejectedException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    /**
+     * Build the REST response for this rejection, with a {@code Retry-After} header as both cases are transient.
+     *
+     * @return The 429 or 503 response, without body
+     */
+    public <T> ResponseEntity<T> toResponse() {
+        final HttpStatus status = reason == Reason.SATURATED ? HttpStatus.TOO_MANY_REQUESTS : HttpStatus.SERVICE_UNAVAILABLE;
+        return ResponseEntity.status(status).header(HttpHeaders.RETRY_AFTER, "1").build();
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.config.security;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs password hashing on a dedicated, bounded thread pool.
+ * <p>
+ * BCrypt is CPU bound by design, running it on the request threads lets a burst of logins occupy every one of them
+ * and starve the GraphQL traffic. Here hashing is limited to {@link PasswordHashingProperties#getThreads()} threads
+ * (the number of processors by default) with a bounded queue in front of them. When the queue is full the task is
+ * rejected right away rather than piling up, and a caller never waits longer than
+ * {@link PasswordHashingProperties#getMaxWait()}, in both cases a {@link PasswordHashingRejectedException} is thrown.
+ * <p>
+ * A BCrypt hash can't be interrupted : when the wait times out, the task is removed from the queue if it has not
+ * started yet, otherwise it runs to completion and its result is dropped.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Component
+@Slf4j
+public class PasswordHashingService {
+
+    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingProperties properties;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Hash of a random password with the current cost, compared against when there is no stored hash so that the
+     * response time does not tell whether an account exists.
+     */
+    private final String dummyHash;
+
+    public PasswordHashingService(PasswordEncoder passwordEncoder, PasswordHashingProperties properties) {
+        this.passwordEncoder = passwordEncoder;
+        this.properties = properties;
+        final int threads = Math.max(1, properties.getThreads());
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, properties.getQueueCapacity())),
+                r -> {
+                    final Thread thread = new Thread(r, "password-hashing-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.dummyHash = passwordEncoder.encode(UUID.randomUUID().toString());
+        log.info("Password hashing pool started with {} threads and a queue of {} tasks",
+                threads, properties.getQueueCapacity());
+    }
+
+    /**
+     * Check whether the raw password matches the encoded one.
+     *
+     * @param rawPassword     The raw password to check
+     * @param encodedPassword The encoded password from the database
+     * @return {@code true} if the passwords match, {@code false} otherwise
+     * @throws PasswordHashingRejectedException if the hashing pool is saturated or the check took too long
+     */
+    public boolean matches(String rawPassword, String encodedPassword) {
+        return await(() -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * Run a comparison that never matches but takes as long as a real one, for a login on an unknown account or on
+     * an account without password, so that it can't be told apart from a wrong password by its response time.
+     *
+     * @param rawPassword The raw password to check
+     * @throws PasswordHashingRejectedException if the hashing pool is saturated or the check took too long
+     */
+    public void matchesNone(String rawPassword) {
+        await(() -> passwordEncoder.matches(rawPassword != null ? rawPassword : "", dummyHash));
+    }
+
+    /**
+     * Encode the raw password.
+     *
+     * @param rawPassword The raw password to encode
+     * @return The encoded password
+     * @throws PasswordHashingRejectedException if the hashing pool is saturated or the encoding took too long
+     */
+    public String encode(String rawPassword) {
+        return await(() -> passwordEncoder.encode(rawPassword));
+    }
+
+    /**
+     * Check whether the encoded password was produced with a lower cost than the current one.
+     *
+     * @param encodedPassword The encoded password from the database
+     * @return {@code true} if the password should be encoded again
+     */
+    public boolean needsRehash(String encodedPassword) {
+        return encodedPassword != null && passwordEncoder.upgradeEncoding(encodedPassword);
+    }
+
+    /**
+     * Encode the raw password again in the background, with the current cost, and hand the new hash to
+     * {@code onRehashed}.
+     * <p>
+     * This is best effort : if the pool is saturated the rehash is skipped, it will be attempted again on the next
+     * successful login.
+     *
+     * @param rawPassword The raw password, already verified
+     * @param onRehashed  Called on the hashing thread with the new encoded password
+     */
+    public void rehashAsync(String rawPassword, Consumer<String> onRehashed) {
+        try {
+            executor.execute(() -> {
+                try {
+                    onRehashed.accept(passwordEncoder.encode(rawPassword));
+                } catch (Exception e) {
+                    log.error("Error while re-hashing password", e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.info("Password hashing pool saturated, password re-hash skipped");
+        }
+    }
+
+    private <T> T await(Callable<T> task) {
+        final Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            log.info("Password hashing pool saturated ({} tasks queued), request rejected", executor.getQueue().size());
+            throw new PasswordHashingRejectedException(PasswordHashingRejectedException.Reason.SATURATED,
+                    "Too many concurrent password hashing requests");
+        }
+        try {
+            return future.get(properties.getMaxWait().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            drop(future);
+            log.info("Password hashing did not complete within {} ms, request rejected", properties.getMaxWait().toMillis());
+            throw new PasswordHashingRejectedException(PasswordHashingRejectedException.Reason.TIMEOUT,
+                    "Password hashing did not complete in time");
+        } catch (InterruptedException e) {
+            drop(future);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashingRejectedException(PasswordHashingRejectedException.Reason.TIMEOUT,
+                    "Interrupted while waiting for password hashing");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    /**
+     * Cancel the given task, and free its slot in the queue right away if it has not started yet, as a cancelled
+     * task otherwise stays queued until a thread takes it.
+     */
+    private void drop(Future<?> future) {
+        future.cancel(false);
+        if (future instanceof Runnable runnable) {
+            executor.remove(runnable);
+        }
+    }
+
+    /**
+     * Stop the hashing threads when the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
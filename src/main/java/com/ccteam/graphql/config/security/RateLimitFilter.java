@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.config.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.Nonnull;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limiting filter for the unauthenticated endpoints that hit the database or send e-mails.
+ * <p>
+ * Each endpoint configured in {@link RateLimitProperties#getEndpoints()} gets two {@link TokenBucket} per caller :
+ * one keyed by client IP (resolved from {@code X-Forwarded-For} by the container when the request comes through a
+ * trusted proxy, see {@code server.tomcat.remoteip.internal-proxies}), and one keyed by the e-mail address found in
+ * the JSON body, so a single account can't be
+ * flooded with e-mails from many IPs either. When a bucket is empty the request is answered right away with a 429 and
+ * a {@code Retry-After} header, before reaching the controller and the database.
+ * <p>
+ * Buckets are dropped once full again (a full bucket is the same as no bucket), and their number is capped by
+ * {@link RateLimitProperties#getMaxBuckets()} to keep memory bounded. Once the cap is reached, requests needing a new
+ * bucket are rejected until some buckets are full again, so that flooding the filter with new IPs or e-mail addresses
+ * can't switch rate limiting off.
+ * <p>
+ * Rejections are counted in the {@code ct.rate_limit.rejected} metric, tagged by endpoint and key type, and the
+ * number of live buckets is exposed by the {@code ct.rate_limit.buckets} gauge.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+@Slf4j
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    /**
+     * Maximum size of the body read to get the e-mail address, larger bodies are only limited by IP.
+     */
+    private static final int MAX_BODY_SIZE = 16 * 1024;
+
+    private final RateLimitProperties properties;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final Map<String, Counter> rejectedCounters = new HashMap<>();
+
+    public RateLimitFilter(RateLimitProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        Gauge.builder("ct.rate_limit.buckets", buckets, Map::size)
+                .description("Number of rate limiting buckets in memory")
+                .register(meterRegistry);
+        for (String endpoint : properties.getEndpoints().keySet()) {
+            for (String keyType : List.of("ip", "email")) {
+                rejectedCounters.put(endpoint + "|" + keyType, Counter.builder("ct.rate_limit.rejected")
+                        .description("Number of requests rejected by rate limiting")
+                        .tag("endpoint", endpoint)
+                        .tag("key", keyType)
+                        .register(meterRegistry));
+            }
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(@Nonnull HttpServletRequest request) {
+        return !properties.isEnabled()
+                || !"POST".equals(request.getMethod())
+                || !properties.getEndpoints().containsKey(request.getServletPath());
+    }
+
+    @Override
+    protected void doFilterInternal(@Nonnull HttpServletRequest request, @Nonnull HttpServletResponse response,
+                                    @Nonnull FilterChain filterChain) throws ServletException, IOException {
+
+        final String endpoint = request.getServletPath();
+        final RateLimitProperties.Quota quota = properties.getEndpoints().get(endpoint);
+        final long now = System.nanoTime();
+
+        // limit by client IP first, it does not need the body (the remote address is the forwarded client IP when
+        // the request comes through a trusted proxy)
+        final String ip = request.getRemoteAddr();
+        long waitNanos = consume(endpoint + "|ip|" + ip, quota.getIpCapacity(), quota.getIpRefill().toNanos(), now);
+        if (waitNanos > 0) {
+            reject(response, endpoint, "ip", ip, waitNanos);
+            return;
+        }
+
+        // then by target e-mail address, the body is buffered so the controller can still read it
+        final CachedBodyRequest cachedRequest = new CachedBodyRequest(request);
+        final String email = readEmail(cachedRequest.body);
+        if (email != null) {
+            waitNanos = consume(endpoint + "|email|" + email, quota.getEmailCapacity(),
+                    quota.getEmailRefill().toNanos(), now);
+            if (waitNanos > 0) {
+                reject(response, endpoint, "email", email, waitNanos);
+                return;
+            }
+        }
+
+        filterChain.doFilter(cachedRequest, response);
+    }
+
+    /**
+     * Take a token from the bucket with the given key, creating it if needed.
+     *
+     * @return 0 if a token has been taken, otherwise the time in nanoseconds before the next token is available, or
+     * before retrying when no bucket can be created
+     */
+    private long consume(String key, int capacity, long refillNanos, long now) {
+        TokenBucket bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= properties.getMaxBuckets()) {
+                purge();
+                if (buckets.size() >= properties.getMaxBuckets()) {
+                    log.warn("Rate limiting bucket limit reached, request for {} rejected", key);
+                    return refillNanos;
+                }
+            }
+            bucket = buckets.computeIfAbsent(key, k -> new TokenBucket(capacity, refillNanos, now));
+        }
+        return bucket.tryConsume(now);
+    }
+
+    private void reject(HttpServletResponse response, String endpoint, String keyType, String key, long waitNanos) {
+        final long retryAfter = Math.max(1L, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+        log.info("Rate limit exceeded on {} for {} {}, retry after {} seconds", endpoint, keyType, key, retryAfter);
+        rejectedCounters.get(endpoint + "|" + keyType).increment();
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+    }
+
+    /**
+     * Get the lower-cased {@code email} field of the JSON body, if any.
+     */
+    private String readEmail(byte[] body) {
+        if (body.length == 0 || body.length > MAX_BODY_SIZE) {
+            return null;
+        }
+        try {
+            final JsonNode email = objectMapper.readTree(body).get("email");
+            return email == null || !email.isString() || email.asString().isBlank()
+                    ? null : email.asString().trim().toLowerCase();
+        } catch (Exception e) {
+            // malformed body, let the controller answer it
+            return null;
+        }
+    }
+
+    /**
+     * Drop the buckets that are full again.
+     */
+    @Scheduled(fixedDelayString = "${ct.rate-limit.purge-interval:1m}")
+    public void purge() {
+        final long now = System.nanoTime();
+        buckets.values().removeIf(bucket -> bucket.isFull(now));
+    }
+
+    /**
+     * Request wrapper that reads the body upfront and replays it.
+     */
+    private static class CachedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        CachedBodyRequest(HttpServletRequest request) throws IOException {
+            super(request);
+            this.body = request.getInputStream().readAllBytes();
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            final ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    // the whole body is already in memory, so it is available and read at once
+                    try {
+                        readListener.onDataAvailable();
+                        readListener.onAllDataRead();
+                    } catch (IOException e) {
+                        readListener.onError(e);
+                    }
+                }
+
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(@Nonnull byte[] b, int off, int len) {
+                    return in.read(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            final String encoding = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(getInputStream(),
+                    encoding == null ? StandardCharsets.UTF_8 : Charset.forName(encoding)));
+        }
+    }
+}
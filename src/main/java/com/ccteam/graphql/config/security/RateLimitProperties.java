@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.config.security;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Custom properties for the rate limiting of unauthenticated endpoints (see {@link RateLimitFilter}).
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@ConfigurationProperties(prefix = "ct.rate-limit")
+@Getter
+@Setter
+public class RateLimitProperties {
+
+    /**
+     * Whether rate limiting is enabled
+     */
+    private boolean enabled = true;
+
+    /**
+     * Maximum number of buckets kept in memory, requests are not limited anymore once reached and no idle bucket
+     * can be purged
+     */
+    private int maxBuckets = 100_000;
+
+    /**
+     * Quotas by servlet path (without context path), only these endpoints are rate limited
+     */
+    private Map<String, Quota> endpoints = new LinkedHashMap<>();
+
+    /**
+     * Quota of an endpoint, as a burst capacity and the time to get one more request back after it, for each client
+     * IP and for each target e-mail address.
+     */
+    @Getter
+    @Setter
+    public static class Quota {
+
+        /**
+         * Number of requests a client IP can burst
+         */
+        private int ipCapacity = 10;
+
+        /**
+         * Time for a client IP to get one request back
+         */
+        private Duration ipRefill = Duration.ofMinutes(1);
+
+        /**
+         * Number of requests that can target the same e-mail address in a burst
+         */
+        private int emailCapacity = 3;
+
+        /**
+         * Time for an e-mail address to get one request back
+         */
+        private Duration emailRefill = Duration.ofMinutes(5);
+
+    }
+
+}
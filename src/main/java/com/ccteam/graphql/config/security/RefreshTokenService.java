@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.config.security;
+
+import com.ccteam.graphql.config.scheduling.ClusterJobRunner;
+import com.ccteam.graphql.entities.RefreshToken;
+import com.ccteam.graphql.model.RefreshTokenInfo;
+import com.ccteam.graphql.repository.MemberRepository;
+import com.ccteam.graphql.repository.RefreshTokenRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Optional;
+
+/**
+ * Issue, rotate and revoke refresh tokens.
+ * <p>
+ * A refresh token is a random 256-bit value, only its SHA-256 hash is stored. It can be exchanged once for a new
+ * access token and a new refresh token of the same session, without running BCrypt again. Presenting a token that has
+ * already been exchanged means it has leaked (either the legitimate client or an attacker holds a stale copy), so the
+ * whole session is revoked, including its access tokens through the {@link TokenRevocationService}.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Component
+@Slf4j
+public class RefreshTokenService {
+
+    private static final int TOKEN_BYTES = 32;
+    private static final int PURGE_BATCH_SIZE = 1000;
+
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final MemberRepository memberRepository;
+    private final TokenRevocationService tokenRevocationService;
+    private final JWTTokenProperties jwtTokenProperties;
+    private final ClusterJobRunner clusterJobRunner;
+
+    public RefreshTokenService(RefreshTokenRepository refreshTokenRepository,
+                               MemberRepository memberRepository,
+                               TokenRevocationService tokenRevocationService,
+                               JWTTokenProperties jwtTokenProperties,
+                               ClusterJobRunner clusterJobRunner) {
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.memberRepository = memberRepository;
+        this.tokenRevocationService = tokenRevocationService;
+        this.jwtTokenProperties = jwtTokenProperties;
+        this.clusterJobRunner = clusterJobRunner;
+    }
+
+    /**
+     * A refresh token exchange result.
+     *
+     * @param refreshToken The new refresh token value, to be sent to the client
+     * @param previous     The exchanged token information, holding the session and member data
+     */
+    public record Rotation(String refreshToken, RefreshTokenInfo previous) {
+    }
+
+    /**
+     * Issue a new refresh token for the given member and session.
+     *
+     * @param memberId  The member ID
+     * @param sessionId The session identifier
+     * @return The refresh token value, to be sent to the client
+     */
+    public String issue(long memberId, String sessionId) {
+        final byte[] bytes = new byte[TOKEN_BYTES];
+        secureRandom.nextBytes(bytes);
+        final String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        final RefreshToken refreshToken = new RefreshToken();
+        refreshToken.setMember(memberRepository.getReferenceById(memberId));
+        refreshToken.setTokenHash(hash(token));
+        refreshToken.setSessionId(sessionId);
+        refreshToken.setExpiresOn(LocalDateTime.now().plusSeconds(jwtTokenProperties.getRefreshExpirationTime() / 1000));
+        refreshTokenRepository.save(refreshToken);
+        return token;
+    }
+
+    /**
+     * Exchange the given refresh token for a new one of the same session.
+     *
+     * @param token The refresh token value sent by the client
+     * @return The rotation result, empty if the token is unknown, expired, revoked, already used, or belongs to a
+     * member who can't log in anymore
+     */
+    public Optional<Rotation> rotate(String token) {
+        final Optional<RefreshTokenInfo> infoOptional = refreshTokenRepository.findInfoByTokenHash(hash(token));
+        if (infoOptional.isEmpty()) {
+            log.info("Unknown refresh token");
+            return Optional.empty();
+        }
+        final RefreshTokenInfo info = infoOptional.get();
+        final LocalDateTime now = LocalDateTime.now();
+
+        if (info.isRevoked()) {
+            log.info("Refresh token of revoked session {} presented", info.getSessionId());
+            return Optional.empty();
+        }
+        if (info.getExpiresOn().isBefore(now)) {
+            log.info("Expired refresh token of session {} presented", info.getSessionId());
+            return Optional.empty();
+        }
+
+        // a token can only be exchanged once, the conditional update settles concurrent exchanges
+        if (info.getUsedOn() != null || refreshTokenRepository.markUsed(info.getId(), now) == 0) {
+            log.warn("Refresh token reuse detected for session {} of {}, revoking the session",
+                    info.getSessionId(), info.getEmail());
+            revokeSession(info.getSessionId());
+            return Optional.empty();
+        }
+
+        // the member must still be allowed to log in
+        if (info.getRole() == null) {
+            log.info("Refresh refused for {}, member has no role", info.getEmail());
+            return Optional.empty();
+        }
+
+        return Optional.of(new Rotation(issue(info.getMemberId(), info.getSessionId()), info));
+    }
+
+    /**
+     * Revoke the session of the given refresh token, if it exists.
+     *
+     * @param token The refresh token value sent by the client
+     * @return {@code true} if the session has been revoked, {@code false} if the token is unknown
+     */
+    public boolean revoke(String token) {
+        final Optional<RefreshTokenInfo> infoOptional = refreshTokenRepository.findInfoByTokenHash(hash(token));
+        infoOptional.ifPresent(info -> revokeSession(info.getSessionId()));
+        return infoOptional.isPresent();
+    }
+
+    /**
+     * Revoke all refresh tokens of the session, and its access tokens until they would have expired.
+     */
+    private void revokeSession(String sessionId) {
+        refreshTokenRepository.revokeSession(sessionId);
+        tokenRevocationService.revoke(sessionId,
+                LocalDateTime.now().plusSeconds(jwtTokenProperties.getExpirationTime() / 1000 + 1));
+    }
+
+    /**
+     * Delete the expired refresh tokens, by batches so that no long lock is held on the table, on one node of the
+     * cluster.
+     */
+    @Scheduled(fixedDelayString = "${ct.jwt.token.refresh-purge-interval:1h}")
+    public void purgeExpired() {
+        clusterJobRunner.run("refresh-token-purge", Duration.ofMinutes(5), Duration.ZERO, execution -> {
+            final LocalDateTime now = LocalDateTime.now();
+            int deleted;
+            do {
+                deleted = refreshTokenRepository.deleteExpiredBefore(now, PURGE_BATCH_SIZE);
+                execution.chunkDone(deleted, null);
+            } while (deleted == PURGE_BATCH_SIZE);
+            if (execution.getProcessed() > 0) {
+                log.info("{} expired refresh tokens deleted", execution.getProcessed());
+            }
+        });
+    }
+
+    /**
+     * Base64 encoded SHA-256 hash of the token.
+     */
+    private static String hash(String token) {
+        try {
+            final byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is mandatory on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+}
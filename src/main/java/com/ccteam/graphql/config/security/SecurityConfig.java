@@ -49,9 +49,11 @@ import org.springframework.security.web.SecurityFilterChain;
 public class SecurityConfig {
 
     private final JWTTokenUtils jwtTokenUtils;
+    private final TokenRevocationService tokenRevocationService;
 
-    public SecurityConfig(JWTTokenUtils jwtTokenUtils) {
+    public SecurityConfig(JWTTokenUtils jwtTokenUtils, TokenRevocationService tokenRevocationService) {
         this.jwtTokenUtils = jwtTokenUtils;
+        this.tokenRevocationService = tokenRevocationService;
     }
 
     /**
@@ -66,12 +68,15 @@ public class SecurityConfig {
 
     /**
      * Define a password encoder that uses the BCrypt strong hashing function.
+     * <p>
+     * The cost factor comes from the configuration, see {@link BCryptCostCalibrator} to choose it.
      *
+     * @param properties The password hashing properties
      * @return A {@link PasswordEncoder} object representing the {@link BCryptPasswordEncoder} implementation
      */
     @Bean
-    protected PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    protected PasswordEncoder passwordEncoder(PasswordHashingProperties properties) {
+        return new BCryptPasswordEncoder(properties.getStrength());
     }
 
     /**
@@ -119,11 +124,11 @@ public class SecurityConfig {
                 // disable CSRF as we do not serve browser clients
                 .csrf(AbstractHttpConfigurer::disable)
                 // match only following requests
-                .securityMatcher("/graphql", "/avatars/**")
+                .securityMatcher("/graphql", "/avatars/**", "/actuator/scheduledjobs")
                 // add JWT authorization filter
                 .addFilter(
                         new JWTAuthorizationFilter(authenticationManager(
-                                http.getSharedObject(AuthenticationConfiguration.class)), jwtTokenUtils)
+                                http.getSharedObject(AuthenticationConfiguration.class)), jwtTokenUtils, tokenRevocationService)
                 )
                 // allow restricting access to certain URL based on the HTTP servlet request
                 .authorizeHttpRequests(a -> a
@@ -135,6 +140,8 @@ public class SecurityConfig {
                         .requestMatchers("/graphql").authenticated()
                         // avatar binary endpoint
                         .requestMatchers("/avatars/**").authenticated()
+                        // scheduled jobs status, for administrators only
+                        .requestMatchers("/actuator/scheduledjobs").hasRole("ADMIN")
                         // allow any other requests (will be restricted later in next security filter)
                         .anyRequest().permitAll()
                 )
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.config.security;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket.
+ * <p>
+ * Rather than storing a token count and a refill timestamp, which would need a lock (or a CAS on an object) to be
+ * updated together, the bucket is stored as a single "theoretical arrival time" (the GCRA formulation of the token
+ * bucket) : the instant at which the bucket would be full again. Consuming a token pushes that instant one refill
+ * period further, and a request is rejected when it would push it further than the capacity allows. Both refill and
+ * consumption are then a single {@link AtomicLong} compare-and-set.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+final class TokenBucket {
+
+    private final long refillNanos;
+    private final long burstNanos;
+    private final AtomicLong fullAt;
+
+    /**
+     * Create a full bucket.
+     *
+     * @param capacity    Maximum number of tokens
+     * @param refillNanos Time to get one token back, in nanoseconds
+     * @param now         Current time from {@link System#nanoTime()}
+     */
+    TokenBucket(int capacity, long refillNanos, long now) {
+        this.refillNanos = refillNanos;
+        this.burstNanos = (long) Math.max(0, capacity - 1) * refillNanos;
+        this.fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * Try to take a token from the bucket.
+     *
+     * @param now Current time from {@link System#nanoTime()}
+     * @return 0 if a token has been taken, otherwise the time in nanoseconds before the next token is available
+     */
+    long tryConsume(long now) {
+        while (true) {
+            final long current = fullAt.get();
+            final long base = current - now > 0 ? current : now;
+            final long waitNanos = base - burstNanos - now;
+            if (waitNanos > 0) {
+                return waitNanos;
+            }
+            if (fullAt.compareAndSet(current, base + refillNanos)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Check whether the bucket is full, meaning it can be dropped and recreated later without any difference.
+     *
+     * @param now Current time from {@link System#nanoTime()}
+     * @return {@code true} if the bucket is full
+     */
+    boolean isFull(long now) {
+        return fullAt.get() - now <= 0;
+    }
+}
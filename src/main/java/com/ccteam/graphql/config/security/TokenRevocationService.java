@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.config.security;
+
+import com.ccteam.graphql.entities.RevokedToken;
+import com.ccteam.graphql.repository.RevokedTokenRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Revocation of sessions, checked on every authenticated request.
+ * <p>
+ * Revoked session identifiers are stored in the {@code revoked_token} table, and mirrored in memory in a compact
+ * {@link BloomFilter} so that checking a token never needs a query : a negative answer from the filter is certain,
+ * and only a positive answer (a revoked session, or a rare false positive) is confirmed against the database, the
+ * result being remembered until the next rebuild.
+ * <p>
+ * The filter is rebuilt periodically from the database, which picks up revocations made by other nodes and drops
+ * the expired ones (a Bloom filter can't remove values). Revocations made on this node while the filter is being
+ * rebuilt are recorded and added to the new filter once published, since the query may have been run before they
+ * were saved.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Component
+@Slf4j
+public class TokenRevocationService {
+
+    /**
+     * Wanted false positive probability of the filter.
+     */
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    /**
+     * Minimum number of values the filter is sized for, so revocations added between two rebuilds keep it accurate.
+     */
+    private static final int MIN_CAPACITY = 1024;
+
+    /**
+     * Maximum number of confirmed answers remembered between two rebuilds.
+     */
+    private static final int MAX_CONFIRMED = 10_000;
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final Map<String, Boolean> confirmed = new ConcurrentHashMap<>();
+    private volatile BloomFilter filter = new BloomFilter(MIN_CAPACITY, FALSE_POSITIVE_RATE);
+
+    /**
+     * Sessions revoked while the filter is being rebuilt, {@code null} outside of a rebuild.
+     */
+    private volatile Set<String> revokedDuringRebuild;
+
+    public TokenRevocationService(RevokedTokenRepository revokedTokenRepository) {
+        this.revokedTokenRepository = revokedTokenRepository;
+    }
+
+    /**
+     * Check whether the given session has been revoked.
+     *
+     * @param sessionId The session identifier carried by the access token
+     * @return {@code true} if the session has been revoked
+     */
+    public boolean isRevoked(String sessionId) {
+        if (!filter.mightContain(sessionId)) {
+            return false;
+        }
+        final Boolean known = confirmed.get(sessionId);
+        if (known != null) {
+            return known;
+        }
+        final boolean revoked = revokedTokenRepository.existsByIdAndExpiresOnAfter(sessionId, LocalDateTime.now());
+        if (confirmed.size() < MAX_CONFIRMED) {
+            // never overwrite a revocation recorded in the meantime
+            confirmed.putIfAbsent(sessionId, revoked);
+        }
+        return revoked;
+    }
+
+    /**
+     * Revoke the given session until the given date.
+     *
+     * @param sessionId The session identifier
+     * @param until     Date after which no access token of the session can still be valid
+     */
+    public void revoke(String sessionId, LocalDateTime until) {
+        final RevokedToken revokedToken = new RevokedToken();
+        revokedToken.setId(sessionId);
+        revokedToken.setExpiresOn(until);
+        revokedTokenRepository.save(revokedToken);
+        // recorded before being added to the filter, so a rebuild either sees it or publishes its filter first
+        final Set<String> duringRebuild = revokedDuringRebuild;
+        if (duringRebuild != null) {
+            duringRebuild.add(sessionId);
+        }
+        filter.put(sessionId);
+        confirmed.put(sessionId, true);
+        log.info("Session {} revoked until {}", sessionId, until);
+    }
+
+    /**
+     * Rebuild the filter from the revocations still in effect, and delete the expired ones.
+     */
+    @Scheduled(fixedDelayString = "${ct.jwt.token.revocation-sync-interval:30s}")
+    public void rebuild() {
+        final LocalDateTime now = LocalDateTime.now();
+        final Set<String> duringRebuild = ConcurrentHashMap.newKeySet();
+        // set before the query, a revocation not recorded here has been saved before and is returned by the query
+        revokedDuringRebuild = duringRebuild;
+        try {
+            revokedTokenRepository.deleteExpiredBefore(now);
+            final List<String> ids = revokedTokenRepository.findIdsActiveAt(now);
+            final BloomFilter newFilter = new BloomFilter(Math.max(MIN_CAPACITY, ids.size() * 2), FALSE_POSITIVE_RATE);
+            ids.forEach(newFilter::put);
+            filter = newFilter;
+            confirmed.clear();
+            // revocations made during the rebuild were added to the previous filter only
+            duringRebuild.forEach(sessionId -> {
+                newFilter.put(sessionId);
+                confirmed.put(sessionId, true);
+            });
+            log.debug("Revocation filter rebuilt with {} revoked sessions, {} revoked during the rebuild", ids.size(),
+                    duringRebuild.size());
+        } catch (Exception e) {
+            log.error("Error while rebuilding the revocation filter", e);
+        } finally {
+            revokedDuringRebuild = null;
+        }
+    }
+}
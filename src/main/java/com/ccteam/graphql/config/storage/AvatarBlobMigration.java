@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.config.storage;
+
+import com.ccteam.graphql.config.scheduling.ClusterJobRunner;
+import com.ccteam.graphql.repository.AttachmentRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Move the attachment contents still stored in the database to the {@link AvatarStorage}, at startup.
+ * <p>
+ * Attachments are processed by batches of IDs, and each content is loaded, stored then dropped from the database
+ * one at a time, so at most one blob is in memory. An attachment is only updated once its content is safely stored,
+ * and the last ID of each batch is checkpointed, so the migration can be interrupted and resumes after the last
+ * batch at the next startup. It runs on a single node of the cluster, and is a no-op once everything has been
+ * moved.
+ * <p>
+ * Since the other nodes read the moved contents from their own directory, contents are only dropped from the database
+ * once the directory is declared as shared by all the nodes ({@code ct.avatar.storage.shared}), and every node checks
+ * at startup that the latest contents moved to the storage are found in its directory, failing the startup otherwise,
+ * so a node with a local directory never starts serving missing avatars.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Component
+@ConditionalOnProperty(prefix = "ct.avatar.storage", name = "migrate-blobs", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class AvatarBlobMigration implements ApplicationRunner {
+
+    private final AttachmentRepository attachmentRepository;
+    private final AvatarStorage avatarStorage;
+    private final AvatarStorageProperties avatarStorageProperties;
+    private final ClusterJobRunner clusterJobRunner;
+
+    public AvatarBlobMigration(AttachmentRepository attachmentRepository, AvatarStorage avatarStorage,
+                               AvatarStorageProperties avatarStorageProperties, ClusterJobRunner clusterJobRunner) {
+        this.attachmentRepository = attachmentRepository;
+        this.avatarStorage = avatarStorage;
+        this.avatarStorageProperties = avatarStorageProperties;
+        this.clusterJobRunner = clusterJobRunner;
+    }
+
+    /**
+     * Number of the latest stored contents checked at startup to be found in the directory.
+     */
+    private static final int SHARED_CHECK_SAMPLE_SIZE = 20;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!avatarStorageProperties.isShared()) {
+            log.warn("Avatar storage directory not declared as shared by all the nodes, attachment contents are kept " +
+                    "in the database");
+            return;
+        }
+        checkShared();
+
+        // on failure (storage not writable...) the application can still serve the contents that are not moved yet,
+        // the migration resumes from the last checkpoint at the next startup
+        clusterJobRunner.run("avatar-blob-migration", Duration.ofMinutes(10), Duration.ZERO, execution -> {
+            long afterId = execution.getCheckpoint() != null ? Long.parseLong(execution.getCheckpoint()) : 0L;
+            List<Long> ids;
+            while (!(ids = attachmentRepository.findIdsWithBlobAfter(afterId,
+                    PageRequest.ofSize(avatarStorageProperties.getMigrationBatchSize()))).isEmpty()) {
+                int moved = 0;
+                for (Long id : ids) {
+                    final Optional<byte[]> blob = attachmentRepository.findBlobById(id);
+                    if (blob.isPresent()) {
+                        final String contentHash = avatarStorage.store(blob.get());
+                        moved += attachmentRepository.moveBlobToStorage(id, contentHash, blob.get().length);
+                    }
+                }
+                afterId = ids.getLast();
+                execution.chunkDone(moved, String.valueOf(afterId));
+                log.info("{} attachment contents moved to the avatar storage so far", execution.getProcessed());
+            }
+            if (execution.getProcessed() > 0) {
+                log.info("Attachment contents migration done, {} contents moved to the avatar storage", execution.getProcessed());
+            }
+        });
+    }
+
+    /**
+     * Check that the latest contents moved to the storage, likely written by other nodes, are found in the directory.
+     *
+     * @throws IllegalStateException if some of them are missing, the directory is then not the shared one
+     */
+    private void checkShared() {
+        final List<String> contentHashes = attachmentRepository.findLatestContentHashes(
+                PageRequest.ofSize(SHARED_CHECK_SAMPLE_SIZE));
+        final long missing = contentHashes.stream().filter(h -> avatarStorage.load(h).isEmpty()).count();
+        if (missing > 0) {
+            throw new IllegalStateException(missing + " of the " + contentHashes.size() + " latest avatar contents " +
+                    "are missing from " + avatarStorageProperties.getDirectory() + ", the directory is not shared by " +
+                    "all the nodes");
+        }
+        log.info("Avatar storage directory checked, {} latest contents found", contentHashes.size());
+    }
+
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.config.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory cache of the most requested avatar files.
+ * <p>
+ * Contents are read straight from the file into direct {@link ByteBuffer}s, outside the Java heap, and written to the
+ * response from there, so a hit allocates nothing on the heap. The cache is bounded by the total size of the contents
+ * it holds, the least recently used ones being evicted first. The memory of an evicted buffer is released once the
+ * buffer has been garbage collected, so the JVM direct memory limit must leave some room above the cache size.
+ * <p>
+ * Concurrent misses on the same file read it only once, the other requests wait for that read. Entries are keyed by
+ * the storage file name, which is made of the content hash, so an entry never gets stale.
+ * Replaced avatars are still {@link #invalidate(String) invalidated} to give their room back right away.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Component
+public class AvatarCache {
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+
+    /**
+     * Entries by access order, guarded by its own monitor.
+     */
+    private final LinkedHashMap<String, ByteBuffer> entries = new LinkedHashMap<>(256, 0.75f, true);
+
+    /**
+     * Reads in progress by key, completed with {@code null} when the file is too large to be cached.
+     */
+    private final Map<String, CompletableFuture<ByteBuffer>> loading = new ConcurrentHashMap<>();
+    private final AtomicLong residentBytes = new AtomicLong();
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public AvatarCache(AvatarStorageProperties avatarStorageProperties, MeterRegistry meterRegistry) {
+        this.maxBytes = avatarStorageProperties.getCacheSize().toBytes();
+        this.maxEntryBytes = Math.min(maxBytes, avatarStorageProperties.getCacheMaxEntrySize().toBytes());
+        this.hits = Counter.builder("ct.avatar_cache.gets")
+                .description("Number of avatar cache lookups")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("ct.avatar_cache.gets")
+                .description("Number of avatar cache lookups")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.evictions = Counter.builder("ct.avatar_cache.evictions")
+                .description("Number of avatar files evicted from the cache to make room for others")
+                .register(meterRegistry);
+        Gauge.builder("ct.avatar_cache.resident_bytes", residentBytes, AtomicLong::get)
+                .description("Total size of the avatar files held by the cache")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("ct.avatar_cache.entries", this, AvatarCache::size)
+                .description("Number of avatar files held by the cache")
+                .register(meterRegistry);
+        Gauge.builder("ct.avatar_cache.hit_ratio", this, AvatarCache::hitRatio)
+                .description("Ratio of avatar cache lookups served from memory")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Get the content of the given avatar file from the cache, reading it into the cache on a miss.
+     *
+     * @param resource The avatar file
+     * @return The optional content, a read-only buffer positioned at its start, empty if the resource is not a file
+     * or is too large to be cached
+     * @throws IOException if the file can't be read
+     */
+    public Optional<ByteBuffer> getOrLoad(Resource resource) throws IOException {
+        if (!resource.isFile() || maxEntryBytes <= 0) {
+            return Optional.empty();
+        }
+        final String key = resource.getFilename();
+        final ByteBuffer cached = get(key);
+        if (cached != null) {
+            hits.increment();
+            return Optional.of(cached.duplicate());
+        }
+
+        final CompletableFuture<ByteBuffer> load = new CompletableFuture<>();
+        final CompletableFuture<ByteBuffer> pending = loading.putIfAbsent(key, load);
+        if (pending != null) {
+            // read by another request right now, wait for it
+            hits.increment();
+            return Optional.ofNullable(await(pending)).map(ByteBuffer::duplicate);
+        }
+        try {
+            // loaded by another request between the lookup and the registration of this read
+            ByteBuffer buffer = get(key);
+            if (buffer == null) {
+                misses.increment();
+                buffer = read(resource);
+                if (buffer != null) {
+                    put(key, buffer);
+                }
+            }
+            load.complete(buffer);
+            return Optional.ofNullable(buffer).map(ByteBuffer::duplicate);
+        } catch (IOException | RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, load);
+        }
+    }
+
+    /**
+     * Drop the given content and its variants from the cache.
+     *
+     * @param contentHash The content hash
+     */
+    public void invalidate(String contentHash) {
+        synchronized (entries) {
+            entries.entrySet().removeIf(entry -> {
+                if (entry.getKey().equals(contentHash) || entry.getKey().startsWith(contentHash + ".")) {
+                    residentBytes.addAndGet(-entry.getValue().capacity());
+                    return true;
+                }
+                return false;
+            });
+        }
+    }
+
+    private ByteBuffer get(String key) {
+        synchronized (entries) {
+            return entries.get(key);
+        }
+    }
+
+    /**
+     * Read the given file into a direct buffer.
+     *
+     * @return The read-only buffer, {@code null} if the file is too large to be cached
+     */
+    private ByteBuffer read(Resource resource) throws IOException {
+        try (FileChannel channel = FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > maxEntryBytes) {
+                return null;
+            }
+            final ByteBuffer loaded = ByteBuffer.allocateDirect((int) size);
+            while (loaded.hasRemaining()) {
+                if (channel.read(loaded) < 0) {
+                    break;
+                }
+            }
+            return loaded.flip().asReadOnlyBuffer();
+        }
+    }
+
+    private static ByteBuffer await(CompletableFuture<ByteBuffer> pending) throws IOException {
+        try {
+            return pending.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw e;
+        }
+    }
+
+    private void put(String key, ByteBuffer buffer) {
+        synchronized (entries) {
+            final ByteBuffer previous = entries.put(key, buffer);
+            residentBytes.addAndGet(buffer.capacity() - (previous != null ? previous.capacity() : 0));
+            final Iterator<Map.Entry<String, ByteBuffer>> eldest = entries.entrySet().iterator();
+            while (residentBytes.get() > maxBytes && eldest.hasNext()) {
+                final Map.Entry<String, ByteBuffer> entry = eldest.next();
+                if (!entry.getKey().equals(key)) {
+                    residentBytes.addAndGet(-entry.getValue().capacity());
+                    eldest.remove();
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    private int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private double hitRatio() {
+        final double lookups = hits.count() + misses.count();
+        return lookups == 0 ? 0 : hits.count() / lookups;
+    }
+
+}
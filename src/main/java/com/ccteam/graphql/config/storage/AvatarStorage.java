@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.config.storage;
+
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Content-addressed storage of the avatar files.
+ * <p>
+ * Contents are keyed by their SHA-256 hash, so identical images are only stored once, and a stored content never
+ * changes : replacing an avatar stores a new content under a new key.
+ * <p>
+ * Variants derived from a content (such as thumbnails) are stored next to it under the content hash and a variant
+ * name, since the same content always gives the same variants.
+ * <p>
+ * Contents no longer referenced are deleted by the {@link AvatarStorageSweep}. Storing a content already stored
+ * refreshes its storage date, so that it is not deleted before the upload referencing it is used.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+public interface AvatarStorage {
+
+    /**
+     * Store the given content, unless an identical content is already stored.
+     *
+     * @param content The file content
+     * @return The content hash, to be used as key to load the content
+     * @throws IOException if the content could not be written
+     */
+    String store(byte[] content) throws IOException;
+
+    /**
+     * Store the content of the given file, unless an identical content is already stored. The file is read as a
+     * stream and left untouched.
+     *
+     * @param file The file holding the content
+     * @return The content hash, to be used as key to load the content
+     * @throws IOException if the file could not be read or the content could not be written
+     */
+    String store(Path file) throws IOException;
+
+    /**
+     * Load the content stored under the given hash.
+     *
+     * @param contentHash The content hash returned by {@link #store(byte[])}
+     * @return The optional content, empty if nothing is stored under this hash
+     */
+    Optional<Resource> load(String contentHash);
+
+    /**
+     * Store a variant derived from the content stored under the given hash, replacing any previous one.
+     *
+     * @param contentHash The hash of the content the variant is derived from
+     * @param variant     The variant name, made of letters, digits and dots, such as {@code 128.png}
+     * @param content     The variant content
+     * @throws IOException if the variant could not be written
+     */
+    void storeVariant(String contentHash, String variant, byte[] content) throws IOException;
+
+    /**
+     * Load a variant derived from the content stored under the given hash.
+     *
+     * @param contentHash The hash of the content the variant is derived from
+     * @param variant     The variant name
+     * @return The optional variant content, empty if it has not been stored
+     */
+    Optional<Resource> loadVariant(String contentHash, String variant);
+
+    /**
+     * Get the hashes of the contents stored before the given date.
+     *
+     * @param date The date
+     * @return The list of content hashes, in no particular order
+     * @throws IOException if the contents could not be listed
+     */
+    List<String> findContentsStoredBefore(Instant date) throws IOException;
+
+    /**
+     * Delete the content stored under the given hash along with its variants, unless it has been stored again since
+     * the given date.
+     *
+     * @param contentHash The content hash
+     * @param storedBefore The date the content must have been stored before to be deleted
+     * @return {@code true} if the content has been deleted
+     * @throws IOException if the content could not be deleted
+     */
+    boolean delete(String contentHash, Instant storedBefore) throws IOException;
+
+    /**
+     * Hex encoded SHA-256 hash of the given content.
+     *
+     * @param content The file content
+     * @return The content hash
+     */
+    static String hash(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is mandatory on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.config.storage;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Custom properties for the avatar storage.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@ConfigurationProperties(prefix = "ct.avatar.storage")
+@Getter
+@Setter
+public class AvatarStorageProperties {
+
+    /**
+     * Directory where the avatar files are stored, created if it does not exist
+     */
+    private Path directory = Path.of("data", "avatars");
+
+    /**
+     * Whether the directory is shared by all the nodes of the cluster (network file system), checked at startup.
+     * Until it is, avatar contents are stored in the database and have no thumbnail
+     */
+    private boolean shared = false;
+
+    /**
+     * Whether the avatar contents still stored in the database are moved to the storage at startup, only done once
+     * the directory is declared as {@link #shared}
+     */
+    private boolean migrateBlobs = true;
+
+    /**
+     * Number of attachments moved per transaction by the migration
+     */
+    private int migrationBatchSize = 50;
+
+    /**
+     * Sizes in pixels (of the longest side) of the thumbnails generated for each avatar
+     */
+    private List<Integer> thumbnailSizes = List.of(48, 128, 512);
+
+    /**
+     * Number of threads generating the thumbnails
+     */
+    private int thumbnailThreads = 2;
+
+    /**
+     * Maximum number of avatars waiting for their thumbnails to be generated, further ones are skipped
+     */
+    private int thumbnailQueueCapacity = 100;
+
+    /**
+     * Maximum number of pixels of an avatar image, larger ones are not decoded (4096x4096 by default)
+     */
+    private long maxImagePixels = 4096L * 4096L;
+
+    /**
+     * Total size of the avatar files kept in memory (outside the heap) by the {@link AvatarCache}, 0 to disable it
+     */
+    private DataSize cacheSize = DataSize.ofMegabytes(64);
+
+    /**
+     * Maximum size of a single avatar file kept by the {@link AvatarCache}, larger ones are always read from disk.
+     * Kept below {@link #uploadMaxSize} so that a few large originals can't take the room of many thumbnails
+     */
+    private DataSize cacheMaxEntrySize = DataSize.ofKilobytes(128);
+
+    /**
+     * Maximum size of an uploaded avatar file
+     */
+    private DataSize uploadMaxSize = DataSize.ofKilobytes(512);
+
+    /**
+     * Time an upload token remains valid for, past it the uploaded file can no longer be used
+     */
+    private Duration uploadTokenTtl = Duration.ofHours(1);
+
+    /**
+     * Maximum number of upload tokens not used yet per member, further uploads of the member are rejected until some
+     * are used or expire
+     */
+    private int maxPendingUploadsPerMember = 5;
+
+    /**
+     * Time a content is kept for after being stored before the {@link AvatarStorageSweep} can delete it, once no longer
+     * referenced
+     */
+    private Duration sweepGracePeriod = Duration.ofHours(2);
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.ccteam.graphql.config.storage;
+
+import com.ccteam.graphql.config.scheduling.ClusterJobRunner;
+import com.ccteam.graphql.repository.AttachmentRepository;
+import com.ccteam.graphql.repository.AvatarUploadRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Delete the contents of the {@link AvatarStorage} no longer referenced, by any attachment or pending upload.
+ * <p>
+ * These are the contents of replaced or deleted avatars, and of uploads whose token has never been used. Only the
+ * contents stored for longer than {@link AvatarStorageProperties#getSweepGracePeriod()} are considered, so that a
+ * content just stored is not deleted before its upload token or attachment is saved. The pending uploads are read
+ * before the attachments, so that a token used in the meantime is seen in one or the other.
+ * <p>
+ * It runs on a single node of the cluster, and only once the directory is declared as shared by all the nodes, new
+ * contents being stored in the database until then.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Component
+@Slf4j
+public class AvatarStorageSweep {
+
+    private static final int BATCH_SIZE = 500;
+
+    private final AvatarStorage avatarStorage;
+    private final AvatarCache avatarCache;
+    private final AttachmentRepository attachmentRepository;
+    private final AvatarUploadRepository avatarUploadRepository;
+    private final AvatarStorageProperties avatarStorageProperties;
+    private final ClusterJobRunner clusterJobRunner;
+
+    public AvatarStorageSweep(AvatarStorage avatarStorage, AvatarCache avatarCache,
+                              AttachmentRepository attachmentRepository, AvatarUploadRepository avatarUploadRepository,
+                              AvatarStorageProperties avatarStorageProperties, ClusterJobRunner clusterJobRunner) {
+        this.avatarStorage = avatarStorage;
+        this.avatarCache = avatarCache;
+        this.attachmentRepository = attachmentRepository;
+        this.avatarUploadRepository = avatarUploadRepository;
+        this.avatarStorageProperties = avatarStorageProperties;
+        this.clusterJobRunner = clusterJobRunner;
+    }
+
+    /**
+     * Delete the unreferenced contents, by batches.
+     */
+    @Scheduled(initialDelayString = "${ct.avatar.storage.sweep-interval:1h}",
+            fixedDelayString = "${ct.avatar.storage.sweep-interval:1h}")
+    public void sweep() {
+        if (!avatarStorageProperties.isShared()) {
+            return;
+        }
+        clusterJobRunner.run("avatar-storage-sweep", Duration.ofMinutes(10), Duration.ZERO, execution -> {
+            final Instant storedBefore = Instant.now().minus(avatarStorageProperties.getSweepGracePeriod());
+            final List<String> contentHashes = avatarStorage.findContentsStoredBefore(storedBefore);
+            for (int from = 0; from < contentHashes.size(); from += BATCH_SIZE) {
+                final List<String> batch = contentHashes.subList(from, Math.min(from + BATCH_SIZE, contentHashes.size()));
+                final Set<String> referenced = new HashSet<>(avatarUploadRepository.findReferencedContentHashes(batch));
+                referenced.addAll(attachmentRepository.findReferencedContentHashes(batch));
+                int deleted = 0;
+                for (String contentHash : batch) {
+                    if (!referenced.contains(contentHash) && avatarStorage.delete(contentHash, storedBefore)) {
+                        avatarCache.invalidate(contentHash);
+                        deleted++;
+                    }
+                }
+                execution.chunkDone(deleted, null);
+            }
+            if (execution.getProcessed() > 0) {
+                log.info("{} unreferenced avatar contents deleted from the storage", execution.getProcessed());
+            }
+        });
+    }
+
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.config.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * {@link AvatarStorage} keeping the files in a local directory.
+ * <p>
+ * A content is stored at {@code <directory>/<first 2 hash characters>/<hash>}, so that no directory holds too many
+ * files, and its variants at {@code <hash>.<variant>} in the same directory. It is written to a temporary file first
+ * then atomically moved in place, so a concurrent reader never sees a partial file, and two concurrent writes of the
+ * same content simply race for the same final name. The storage date of a content is the last modification time of
+ * its file.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Component
+@Slf4j
+public class FileSystemAvatarStorage implements AvatarStorage {
+
+    private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+    private static final Pattern VARIANT_PATTERN = Pattern.compile("[0-9A-Za-z]+(\\.[0-9A-Za-z]+)*");
+
+    private final Path directory;
+
+    public FileSystemAvatarStorage(AvatarStorageProperties avatarStorageProperties) {
+        this.directory = avatarStorageProperties.getDirectory().toAbsolutePath().normalize();
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Avatar storage directory " + directory + " could not be created", e);
+        }
+        log.info("Avatar files stored in {}", directory);
+    }
+
+    @Override
+    public String store(byte[] content) throws IOException {
+        final String contentHash = AvatarStorage.hash(content);
+        final Path target = path(contentHash);
+        if (!Files.exists(target)) {
+            write(target, content);
+        } else {
+            touch(target);
+        }
+        return contentHash;
+    }
+
+    @Override
+    public String store(Path file) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is mandatory on every Java platform
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        final String contentHash = HexFormat.of().formatHex(digest.digest());
+
+        final Path target = path(contentHash);
+        if (!Files.exists(target)) {
+            Files.createDirectories(target.getParent());
+            final Path temp = Files.createTempFile(target.getParent(), contentHash, ".tmp");
+            try {
+                // copied rather than moved, the file may not be on the same file system
+                Files.copy(file, temp, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } else {
+            touch(target);
+        }
+        return contentHash;
+    }
+
+    @Override
+    public Optional<Resource> load(String contentHash) {
+        if (!HASH_PATTERN.matcher(contentHash).matches()) {
+            return Optional.empty();
+        }
+        return resource(path(contentHash));
+    }
+
+    @Override
+    public void storeVariant(String contentHash, String variant, byte[] content) throws IOException {
+        if (!HASH_PATTERN.matcher(contentHash).matches() || !VARIANT_PATTERN.matcher(variant).matches()) {
+            throw new IllegalArgumentException("Invalid avatar variant " + contentHash + "." + variant);
+        }
+        write(path(contentHash + "." + variant), content);
+    }
+
+    @Override
+    public Optional<Resource> loadVariant(String contentHash, String variant) {
+        if (!HASH_PATTERN.matcher(contentHash).matches() || !VARIANT_PATTERN.matcher(variant).matches()) {
+            return Optional.empty();
+        }
+        return resource(path(contentHash + "." + variant));
+    }
+
+    @Override
+    public List<String> findContentsStoredBefore(Instant date) throws IOException {
+        try (var files = Files.find(directory, 2, (path, attributes) -> attributes.isRegularFile()
+                && HASH_PATTERN.matcher(path.getFileName().toString()).matches()
+                && attributes.lastModifiedTime().toInstant().isBefore(date))) {
+            return files.map(path -> path.getFileName().toString()).toList();
+        }
+    }
+
+    @Override
+    public boolean delete(String contentHash, Instant storedBefore) throws IOException {
+        if (!HASH_PATTERN.matcher(contentHash).matches()) {
+            return false;
+        }
+        final Path target = path(contentHash);
+        if (!Files.isRegularFile(target) || !Files.getLastModifiedTime(target).toInstant().isBefore(storedBefore)) {
+            return false;
+        }
+        try (var variants = Files.newDirectoryStream(target.getParent(), contentHash + ".*")) {
+            for (Path variant : variants) {
+                Files.deleteIfExists(variant);
+            }
+        }
+        return Files.deleteIfExists(target);
+    }
+
+    /**
+     * Refresh the storage date of an existing content.
+     */
+    private static void touch(Path target) throws IOException {
+        try {
+            Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+        } catch (NoSuchFileException e) {
+            // deleted in the meantime by the sweep, stored again by the next upload of the same content
+            log.warn("Avatar content {} deleted while being stored again", target.getFileName());
+        }
+    }
+
+    /**
+     * Write the content to a temporary file, then move it in place.
+    private void write(Path target, byte[] content) throws IOException {
+        Files.createDirectories(target.getParent());
+        final Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, content);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static Optional<Resource> resource(Path path) {
+        return Files.isRegularFile(path) ? Optional.of(new FileSystemResource(path)) : Optional.empty();
+    }
+
+    private Path path(String name) {
+        return directory.resolve(name.substring(0, 2)).resolve(name);
+    }
+
+}
@@ -20,10 +20,11 @@
 
 package com.ccteam.graphql.controller.graphql;
 
-import com.ccteam.graphql.config.graphql.CustomGraphQLException;
+import com.ccteam.graphql.config.security.AuthenticatedMember;
 import com.ccteam.graphql.entities.Event;
 import com.ccteam.graphql.entities.Member;
 import com.ccteam.graphql.entities.Track;
+import com.ccteam.graphql.model.CalendarDay;
 import com.ccteam.graphql.service.EventService;
 import com.ccteam.graphql.service.MemberService;
 import lombok.extern.slf4j.Slf4j;
@@ -31,7 +32,7 @@ import org.springframework.graphql.data.method.annotation.Argument;
 import org.springframework.graphql.data.method.annotation.MutationMapping;
 import org.springframework.graphql.data.method.annotation.QueryMapping;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.Authentication;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.stereotype.Controller;
 
 import java.math.BigDecimal;
@@ -126,6 +127,26 @@ public class EventController {
         return eventService.getEventsByDayAndMonthAndYear(day, month, year);
     }
 
+    /**
+     * Get the days having events in the specified period, based on event start date, with the number of events and
+     * participants of each day, and whether the caller is registered to one of them. Meant for the calendar view,
+     * which only draws a mark on these days.
+     *
+     * @param from      The first day of the period as ISO {@link String}
+     * @param to        The last day of the period (inclusive) as ISO {@link String}
+     * @param principal the authenticated member (auto-injected)
+     * @return A list of {@link CalendarDay} objects, ordered by date
+     */
+    @PreAuthorize("hasRole('USER')")
+    @QueryMapping
+    public List<CalendarDay> getEventCalendar(@Argument String from,
+                                              @Argument String to,
+                                              @AuthenticationPrincipal AuthenticatedMember principal) {
+        log.info("Received call to getEventCalendar with parameters from = {}, to = {}", from, to);
+        return eventService.getEventCalendar(from, to,
+                memberService.resolveMemberId(principal.memberId(), principal.email()));
+    }
+
     /**
      * Get an event given its {@code id}.
      *
@@ -263,25 +284,22 @@ public class EventController {
      * Change (or clear, by passing a {@code null} bike) the bike pinned to the caller's own participation
      * in event {@code eventId}.
      * <p>
-     * The acting member is derived from {@link Authentication} (JWT subject) rather than taken as a separate argument,
-     * a member can only edit their own participation, not anyone else's.
+     * The acting member is derived from the {@link AuthenticatedMember} principal (JWT claims) rather than taken as a
+     * separate argument, a member can only edit their own participation, not anyone else's.
      *
-     * @param eventId        the event id
-     * @param bikeId         the bike id to pin, or {@code null} to clear
-     * @param authentication the current authentication (auto-injected)
+     * @param eventId   the event id
+     * @param bikeId    the bike id to pin, or {@code null} to clear
+     * @param principal the authenticated member (auto-injected)
      * @return the updated {@link Event}
      */
     @PreAuthorize("hasRole('MEMBER')")
     @MutationMapping
     public Event setEventMemberBike(@Argument long eventId,
                                     @Argument Long bikeId,
-                                    Authentication authentication) {
+                                    @AuthenticationPrincipal AuthenticatedMember principal) {
         log.info("Received call to setEventMemberBike with parameters eventId = {}, bikeId = {}", eventId, bikeId);
-        final Member caller = memberService.getMemberByEmail(authentication.getName());
-        if (caller == null || caller.getId() == null) {
-            throw new CustomGraphQLException("member_not_found", "Authenticated member could not be resolved");
-        }
-        return eventService.setEventMemberBike(eventId, caller.getId(), bikeId);
+        return eventService.setEventMemberBike(eventId,
+                memberService.resolveMemberId(principal.memberId(), principal.email()), bikeId);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.controller.graphql;
+
+import com.ccteam.graphql.config.security.AuthenticatedMember;
+import com.ccteam.graphql.model.Home;
+import com.ccteam.graphql.service.HomeService;
+import com.ccteam.graphql.service.MemberService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.graphql.data.method.annotation.QueryMapping;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.stereotype.Controller;
+
+/**
+ * {@link Home} GraphQL controller.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Controller
+@Slf4j
+public class HomeController {
+
+    private final HomeService homeService;
+    private final MemberService memberService;
+
+    public HomeController(HomeService homeService, MemberService memberService) {
+        this.homeService = homeService;
+        this.memberService = memberService;
+    }
+
+    /**
+     * Get all the sections of the home screen of the caller in a single request: members and events counts, next
+     * events, latest news and the caller's own upcoming registrations. USER-accessible like the counts it replaces.
+     *
+     * @param principal the authenticated member (auto-injected)
+     * @return A {@link Home} object holding all the sections
+     */
+    @PreAuthorize("hasRole('USER')")
+    @QueryMapping
+    public Home home(@AuthenticationPrincipal AuthenticatedMember principal) {
+        log.info("Received call to home");
+        return homeService.getHome(memberService.resolveMemberId(principal.memberId(), principal.email()));
+    }
+
+}
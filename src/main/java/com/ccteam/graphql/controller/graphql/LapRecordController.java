@@ -21,7 +21,10 @@
 package com.ccteam.graphql.controller.graphql;
 
 import com.ccteam.graphql.entities.LapRecord;
+import com.ccteam.graphql.enums.EngineClass;
+import com.ccteam.graphql.model.LeaderboardEntry;
 import com.ccteam.graphql.service.LapRecordService;
+import com.ccteam.graphql.service.LeaderboardService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.graphql.data.method.annotation.Argument;
 import org.springframework.graphql.data.method.annotation.MutationMapping;
@@ -42,9 +45,11 @@ import java.util.List;
 public class LapRecordController {
 
     private final LapRecordService lapRecordService;
+    private final LeaderboardService leaderboardService;
 
-    public LapRecordController(LapRecordService lapRecordService) {
+    public LapRecordController(LapRecordService lapRecordService, LeaderboardService leaderboardService) {
         this.lapRecordService = lapRecordService;
+        this.leaderboardService = leaderboardService;
     }
 
     /**
@@ -85,6 +90,27 @@ public class LapRecordController {
         return lapRecordService.getLapRecordsByTrack(trackId);
     }
 
+    /**
+     * Get the best laps of the specified track given its ID, optionally filtered by conditions and engine size class.
+     * Served from memory.
+     *
+     * @param trackId     The ID of the track for which to retrieve the leaderboard
+     * @param conditions  The track conditions to filter on, if any
+     * @param engineClass The engine size class to filter on, if any
+     * @param limit       The maximum number of entries, if any
+     * @return A list of {@link LeaderboardEntry} objects, best lap first
+     */
+    @PreAuthorize("hasRole('MEMBER')")
+    @QueryMapping
+    public List<LeaderboardEntry> getTrackLeaderboard(@Argument Long trackId,
+                                                      @Argument String conditions,
+                                                      @Argument EngineClass engineClass,
+                                                      @Argument Integer limit) {
+        log.info("Received call to getTrackLeaderboard with parameters trackId = {}, conditions = {}, engineClass = {}, limit = {}",
+                trackId, conditions, engineClass, limit);
+        return leaderboardService.getLeaderboard(trackId, conditions, engineClass, limit);
+    }
+
     /**
      * Create a new lap record.
      *
@@ -21,21 +21,30 @@
 package com.ccteam.graphql.controller.graphql;
 
 import com.ccteam.graphql.config.graphql.CustomGraphQLException;
+import com.ccteam.graphql.config.security.AuthenticatedMember;
 import com.ccteam.graphql.entities.Member;
 import com.ccteam.graphql.entities.MembershipFee;
+import com.ccteam.graphql.entities.PersonalBest;
 import com.ccteam.graphql.enums.BoardRole;
+import com.ccteam.graphql.model.AvatarInfo;
+import com.ccteam.graphql.service.LapRecordService;
 import com.ccteam.graphql.service.MemberService;
+import graphql.GraphQLContext;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.graphql.data.method.annotation.Argument;
+import org.springframework.graphql.data.method.annotation.BatchMapping;
 import org.springframework.graphql.data.method.annotation.MutationMapping;
 import org.springframework.graphql.data.method.annotation.QueryMapping;
 import org.springframework.graphql.data.method.annotation.SchemaMapping;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.Authentication;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.stereotype.Controller;
 
-import java.security.Principal;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * {@link Member} GraphQL controller.
@@ -47,10 +56,17 @@ import java.util.List;
 @Slf4j
 public class MemberController {
 
+    /**
+     * Key of the avatar metadata already read in the current request, in the {@link GraphQLContext}.
+     */
+    private static final String AVATAR_INFOS_KEY = MemberController.class.getName() + ".avatarInfos";
+
     private final MemberService memberService;
+    private final LapRecordService lapRecordService;
 
-    public MemberController(MemberService memberService) {
+    public MemberController(MemberService memberService, LapRecordService lapRecordService) {
         this.memberService = memberService;
+        this.lapRecordService = lapRecordService;
     }
 
     /**
@@ -77,6 +93,22 @@ public class MemberController {
         return memberService.getMembersCount();
     }
 
+    /**
+     * Get the currently authenticated member.
+     * <p>
+     * The member is identified by the ID carried in the JWT, so the client does not need to know its own ID or
+     * e-mail address beforehand.
+     *
+     * @param principal The authenticated member
+     * @return A {@link Member} object representing the authenticated member
+     */
+    @PreAuthorize("hasRole('USER')")
+    @QueryMapping
+    public Member me(@AuthenticationPrincipal AuthenticatedMember principal) {
+        log.info("Received call to me for {}", principal.getName());
+        return memberService.getMemberById(memberService.resolveMemberId(principal.memberId(), principal.email()));
+    }
+
     /**
      * Get a member given its {@code id}.
      *
@@ -122,14 +154,13 @@ public class MemberController {
     /**
      * Create a new member.
      *
-     * @param firstName      The member first name
-     * @param lastName       The member last name
-     * @param email          The member e-mail address
-     * @param phone          The member phone number
-     * @param avatarFile     The member avatar file as base64 encoded string
-     * @param avatarFileName The member avatar file name
-     * @param riderNumber    The member rider number
-     * @param role           The member role
+     * @param firstName         The member first name
+     * @param lastName          The member last name
+     * @param email             The member e-mail address
+     * @param phone             The member phone number
+     * @param avatarUploadToken The token returned by the avatar upload endpoint {@code /avatars/uploads}, if any
+     * @param riderNumber       The member rider number
+     * @param role              The member role
      * @return A {@link Member} object representing the member just created
      */
     @PreAuthorize("hasRole('ADMIN')")
@@ -138,13 +169,14 @@ public class MemberController {
                                @Argument String lastName,
                                @Argument String email,
                                @Argument String phone,
-                               @Argument String avatarFile,
-                               @Argument String avatarFileName,
+                               @Argument String avatarUploadToken,
                                @Argument Integer riderNumber,
-                               @Argument Member.Role role) {
-        log.info("Received call to createMember with parameters firstName = {}, lastName = {}, email = {}, phone = {}, riderNumber = {}, avatarFile = {}, avatarFileName = {}, role = {}",
-                firstName, lastName, email, phone, riderNumber, avatarFile, avatarFileName, role);
-        return memberService.createMember(firstName, lastName, email, phone, riderNumber, avatarFile, avatarFileName, role);
+                               @Argument Member.Role role,
+                               @AuthenticationPrincipal AuthenticatedMember principal) {
+        log.info("Received call to createMember with parameters firstName = {}, lastName = {}, email = {}, phone = {}, riderNumber = {}, avatar uploaded = {}, role = {}",
+                firstName, lastName, email, phone, riderNumber, avatarUploadToken != null, role);
+        return memberService.createMember(firstName, lastName, email, phone, riderNumber, avatarUploadToken,
+                memberService.resolveMemberId(principal.memberId(), principal.email()), role);
     }
 
     /**
@@ -152,15 +184,14 @@ public class MemberController {
      * <p>
      * Any authenticated user can call this endpoint, but only to edit their own profile, admins can edit anyone.
      *
-     * @param memberId       The ID of the {@link Member} to update
-     * @param firstName      The member first name
-     * @param lastName       The member last name
-     * @param email          The member e-mail address
-     * @param phone          The member phone number
-     * @param avatarFile     The member avatar file as base64 encoded string
-     * @param avatarFileName The member avatar file name
-     * @param riderNumber    The member rider number
-     * @param role           The member role
+     * @param memberId          The ID of the {@link Member} to update
+     * @param firstName         The member first name
+     * @param lastName          The member last name
+     * @param email             The member e-mail address
+     * @param phone             The member phone number
+     * @param avatarUploadToken The token returned by the avatar upload endpoint {@code /avatars/uploads}, if any
+     * @param riderNumber       The member rider number
+     * @param role              The member role
      * @return An {@link Member} object representing the member just updated
      */
     @PreAuthorize("hasRole('USER')")
@@ -170,22 +201,16 @@ public class MemberController {
                                @Argument String lastName,
                                @Argument String email,
                                @Argument String phone,
-                               @Argument String avatarFile,
-                               @Argument String avatarFileName,
+                               @Argument String avatarUploadToken,
                                @Argument Integer riderNumber,
                                @Argument Member.Role role,
-                               Authentication authentication) {
-        log.info("Received call to updateMember with parameters memberId = {}, firstName = {}, lastName = {}, email = {}, phone = {}, riderNumber = {}, avatarFileName = {}, role = {}",
-                memberId, firstName, lastName, email, phone, riderNumber, avatarFileName, role);
-        final Member target = ensureCanEdit(memberId, authentication);
-        // non-admins can't bump their own role
-        if (!isAdmin(authentication) && target.getRole() != role) {
-            log.info("Caller {} tried to change role of member {} from {} to {}, refused",
-                    authentication.getName(), memberId, target.getRole(), role);
-            throw new CustomGraphQLException("forbidden", "You cannot change your role");
-        }
-        return memberService.updateMember(memberId, firstName, lastName, email, phone, riderNumber, avatarFile,
-                avatarFileName, role);
+                               @AuthenticationPrincipal AuthenticatedMember principal) {
+        log.info("Received call to updateMember with parameters memberId = {}, firstName = {}, lastName = {}, email = {}, phone = {}, riderNumber = {}, avatar uploaded = {}, role = {}",
+                memberId, firstName, lastName, email, phone, riderNumber, avatarUploadToken != null, role);
+        ensureCanEdit(memberId, principal);
+        // only admins can change a role, which the service checks against the persisted roles
+        return memberService.updateMember(memberId, firstName, lastName, email, phone, riderNumber, avatarUploadToken,
+                memberService.resolveMemberId(principal.memberId(), principal.email()), role);
     }
 
     /**
@@ -229,73 +254,118 @@ public class MemberController {
     @MutationMapping
     public Member setMemberPalette(@Argument long memberId,
                                    @Argument Integer headerPalette,
-                                   Authentication authentication) {
+                                   @AuthenticationPrincipal AuthenticatedMember principal) {
         log.info("Received call to setMemberPalette with parameters memberId = {}, headerPalette = {}",
                 memberId, headerPalette);
-        ensureCanEdit(memberId, authentication);
+        ensureCanEdit(memberId, principal);
         return memberService.setMemberPalette(memberId, headerPalette);
     }
 
     /**
      * Authorization guard for "self-edit or admin" mutations.
      * <p>
-     * Allows the call when the caller is an admin, or when the target {@code memberId} resolves to a member
-     * whose e-mail matches the caller's authenticated principal.
+     * Allows the call when the caller is an admin, or when the target {@code memberId} is the caller's own ID as
+     * carried by the JWT, without any database access.
      * Throws a {@code forbidden} {@link CustomGraphQLException} otherwise so the client gets a stable error code.
      *
-     * @param memberId       The id of the member being edited
-     * @param authentication The current Spring Security authentication
-     * @return the fetched {@link Member}
+     * @param memberId  The id of the member being edited
+     * @param principal The authenticated member
      */
-    private Member ensureCanEdit(long memberId, Authentication authentication) {
-        final Member target = memberService.getMemberById(memberId);
-        if (isAdmin(authentication)) return target;
-        if (target.getEmail() == null
-                || !target.getEmail().equalsIgnoreCase(authentication.getName())) {
-            log.info("Caller {} tried to edit member {} ({}), refused",
-                    authentication.getName(), memberId, target.getEmail());
+    private void ensureCanEdit(long memberId, AuthenticatedMember principal) {
+        if (principal.isAdmin()) return;
+        if (memberService.resolveMemberId(principal.memberId(), principal.email()) != memberId) {
+            log.info("Caller {} tried to edit member {}, refused", principal.getName(), memberId);
             throw new CustomGraphQLException("forbidden", "You can only modify your own profile");
         }
-        return target;
-    }
-
-    /**
-     * Returns whether the given authentication carries the {@code ROLE_ADMIN} authority.
-     */
-    private boolean isAdmin(Authentication authentication) {
-        return authentication.getAuthorities().stream()
-                .anyMatch(a -> "ROLE_ADMIN".equals(a.getAuthority()));
     }
 
     /**
      * Change the passcode of the currently authenticated member.
      * <p>
-     * The target member is taken from the {@link Principal} (the JWT subject) rather than passed as an argument,
-     * a member can only change their own  passcode, never anyone else's.
+     * The target member is taken from the {@link AuthenticatedMember} principal (the JWT claims) rather than passed
+     * as an argument, a member can only change their own  passcode, never anyone else's.
      *
      * @param currentPasscode the current 6-digit passcode (for verification)
      * @param newPasscode     the new 6-digit passcode
-     * @param principal       the authenticated user's principal (e-mail)
+     * @param principal       the authenticated member
      * @return {@code true} on success
      */
     @PreAuthorize("hasRole('USER')")
     @MutationMapping
     public Boolean changePasscode(@Argument String currentPasscode,
                                   @Argument String newPasscode,
-                                  Principal principal) {
+                                  @AuthenticationPrincipal AuthenticatedMember principal) {
         log.info("Received call to changePasscode for {}", principal.getName());
-        return memberService.changePasscode(principal.getName(), currentPasscode, newPasscode);
+        return memberService.changePasscode(memberService.resolveMemberId(principal.memberId(), principal.email()),
+                currentPasscode, newPasscode);
     }
 
     /**
      * Get if this member has an avatar. Used by the client to decide whether to fetch the avatar bytes via
      * the REST endpoint {@code /avatars/{id}} or render the default placeholder, without dragging the bytes
      * through every GraphQL response.
+     * <p>
+     * Access is checked by {@link com.ccteam.graphql.config.graphql.FieldAuthorizationInstrumentation} rather than
+     * {@code @PreAuthorize}, and the answer comes from the join column so the avatar is never loaded. The association
+     * reference is only compared for members whose avatar has just been set in the current mutation.
      */
-    @PreAuthorize("hasRole('USER')")
     @SchemaMapping(typeName = "Member", field = "hasAvatar")
     public Boolean hasAvatar(Member member) {
-        return member.getAvatar() != null;
+        return member.getAvatarId() != null || member.getAvatar() != null;
+    }
+
+    /**
+     * Get the BlurHash of the avatar of these members, rendered by the client while the avatar bytes are loading.
+     * <p>
+     * Batched so that a list of members costs a single query, shared with {@link #avatarVersion(List, GraphQLContext)},
+     * access is checked like {@link #hasAvatar(Member)}.
+     */
+    @BatchMapping(typeName = "Member", field = "avatarPlaceholder")
+    public Map<Member, String> avatarPlaceholder(List<Member> members, GraphQLContext context) {
+        final Map<Member, String> placeholders = new HashMap<>();
+        getAvatarInfos(members, context).forEach((member, avatar) -> placeholders.put(member, avatar.getPlaceholder()));
+        return placeholders;
+    }
+
+    /**
+     * Get the version of the avatar of these members. The {@code ETag} of the avatar served by {@code /avatars/{id}}
+     * is this version, followed by {@code -<size>} for a thumbnail, so that the client can tell whether its cached
+     * copy is still valid without any request.
+     * <p>
+     * Batched so that a list of members costs a single query, shared with
+     * {@link #avatarPlaceholder(List, GraphQLContext)}, access is checked like {@link #hasAvatar(Member)}.
+     */
+    @BatchMapping(typeName = "Member", field = "avatarVersion")
+    public Map<Member, String> avatarVersion(List<Member> members, GraphQLContext context) {
+        final Map<Member, String> versions = new HashMap<>();
+        getAvatarInfos(members, context).forEach((member, avatar) -> versions.put(member, memberService.getAvatarVersion(avatar)));
+        return versions;
+    }
+
+    /**
+     * Get the avatar metadata of these members, only reading those not read yet in the current request so that
+     * querying both avatar fields does not cost two queries.
+     */
+    private Map<Member, AvatarInfo> getAvatarInfos(List<Member> members, GraphQLContext context) {
+        final Map<Long, Optional<AvatarInfo>> cache = context.computeIfAbsent(AVATAR_INFOS_KEY, k -> new ConcurrentHashMap<>());
+        final List<Member> missing = members.stream().filter(m -> !cache.containsKey(m.getId())).toList();
+        if (!missing.isEmpty()) {
+            final Map<Member, AvatarInfo> loaded = memberService.getAvatarInfos(missing);
+            missing.forEach(m -> cache.put(m.getId(), Optional.ofNullable(loaded.get(m))));
+        }
+        final Map<Member, AvatarInfo> avatars = new HashMap<>();
+        members.forEach(m -> cache.get(m.getId()).ifPresent(avatar -> avatars.put(m, avatar)));
+        return avatars;
+    }
+
+    /**
+     * Get the best lap of these members on each track and bike, read from the personal best aggregate.
+     * <p>
+     * Batched so that a list of members costs a single query, access is checked like {@link #hasAvatar(Member)}.
+     */
+    @BatchMapping(typeName = "Member", field = "personalBests")
+    public Map<Member, List<PersonalBest>> personalBests(List<Member> members) {
+        return lapRecordService.getPersonalBestsByMembers(members);
     }
 
     /**
@@ -20,10 +20,15 @@
 
 package com.ccteam.graphql.controller.graphql;
 
+import com.ccteam.graphql.entities.PersonalBest;
 import com.ccteam.graphql.entities.Track;
+import com.ccteam.graphql.model.TrackDistance;
+import com.ccteam.graphql.service.LapRecordService;
+import com.ccteam.graphql.service.NearbyTrackService;
 import com.ccteam.graphql.service.TrackService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.graphql.data.method.annotation.Argument;
+import org.springframework.graphql.data.method.annotation.BatchMapping;
 import org.springframework.graphql.data.method.annotation.MutationMapping;
 import org.springframework.graphql.data.method.annotation.QueryMapping;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -31,6 +36,7 @@ import org.springframework.stereotype.Controller;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 
 /**
  * {@link Track} GraphQL controller.
@@ -43,9 +49,14 @@ import java.util.List;
 public class TrackController {
 
     private final TrackService trackService;
+    private final LapRecordService lapRecordService;
+    private final NearbyTrackService nearbyTrackService;
 
-    public TrackController(TrackService trackService) {
+    public TrackController(TrackService trackService, LapRecordService lapRecordService,
+                           NearbyTrackService nearbyTrackService) {
         this.trackService = trackService;
+        this.lapRecordService = lapRecordService;
+        this.nearbyTrackService = nearbyTrackService;
     }
 
     /**
@@ -76,6 +87,27 @@ public class TrackController {
         return trackService.getTracksFiltered(text);
     }
 
+    /**
+     * Get the tracks within the specified radius of a location, nearest first, along with their distance. Served from
+     * an in-memory spatial index.
+     *
+     * @param lat      The latitude of the location, in degrees
+     * @param lon      The longitude of the location, in degrees
+     * @param radiusKm The search radius, in kilometers
+     * @param first    The maximum number of tracks, if any
+     * @return A list of {@link TrackDistance} objects, ordered by distance
+     */
+    @PreAuthorize("hasRole('USER')")
+    @QueryMapping
+    public List<TrackDistance> getTracksNear(@Argument double lat,
+                                             @Argument double lon,
+                                             @Argument double radiusKm,
+                                             @Argument Integer first) {
+        log.info("Received call to getTracksNear with parameters lat = {}, lon = {}, radiusKm = {}, first = {}",
+                lat, lon, radiusKm, first);
+        return nearbyTrackService.getTracksNear(lat, lon, radiusKm, first);
+    }
+
     /**
      * Get a track given its {@code id}.
      *
@@ -158,4 +190,16 @@ public class TrackController {
         return trackService.deleteTrack(trackId);
     }
 
+    /**
+     * Get the best lap of each member and bike on these tracks, best lap first, read from the personal best
+     * aggregate.
+     * <p>
+     * Batched so that a list of tracks costs a single query, access is checked by
+     * {@link com.ccteam.graphql.config.graphql.FieldAuthorizationInstrumentation}.
+     */
+    @BatchMapping(typeName = "Track", field = "memberBests")
+    public Map<Track, List<PersonalBest>> memberBests(List<Track> tracks) {
+        return lapRecordService.getPersonalBestsByTracks(tracks);
+    }
+
 }
\ No newline at end of file
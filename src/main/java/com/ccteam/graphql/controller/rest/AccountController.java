@@ -20,14 +20,17 @@
 
 package com.ccteam.graphql.controller.rest;
 
+import com.ccteam.graphql.config.security.PasswordHashingRejectedException;
+import com.ccteam.graphql.config.security.PasswordHashingService;
 import com.ccteam.graphql.entities.Member;
+import com.ccteam.graphql.entities.Otp;
 import com.ccteam.graphql.model.*;
 import com.ccteam.graphql.repository.MemberRepository;
 import com.ccteam.graphql.service.MailService;
+import com.ccteam.graphql.service.OtpService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -39,10 +42,12 @@ import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.Collections;
 import java.util.Optional;
-import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * REST account controller.
+ * <p>
+ * Endpoints that send e-mails or look up an account are rate limited per client IP and per e-mail address by
+ * {@link com.ccteam.graphql.config.security.RateLimitFilter}, which answers a 429 before they are called.
  *
  * @author yann39
  * @since 1.0.0
@@ -54,17 +59,18 @@ import java.util.concurrent.ThreadLocalRandom;
 public class AccountController {
 
     public static final String ZONE_ID_EUROPE_PARIS = "Europe/Paris";
-    public static final int OTP_RESEND_COOLDOWN_SECONDS = 60;
-    public static final int OTP_VALIDITY_MINUTES = 10;
 
     private final MemberRepository memberRepository;
     private final MailService mailService;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
+    private final OtpService otpService;
 
-    public AccountController(MemberRepository memberRepository, MailService mailService, PasswordEncoder passwordEncoder) {
+    public AccountController(MemberRepository memberRepository, MailService mailService,
+                             PasswordHashingService passwordHashingService, OtpService otpService) {
         this.memberRepository = memberRepository;
         this.mailService = mailService;
-        this.passwordEncoder = passwordEncoder;
+        this.passwordHashingService = passwordHashingService;
+        this.otpService = otpService;
     }
 
     /**
@@ -79,7 +85,8 @@ public class AccountController {
      *   <li>400 Bad request if e-mail address is missing from the request</li>
      *   <li>404 Not Found if no account has been found for the specified e-mail address</li>
      *   <li>302 Found if account exists, OTP has been sent and is still valid</li>
-     *   <li>417 Expectation Failed if account exists, OTP has been sent but is not valid anymore</li>
+     *   <li>417 Expectation Failed if account exists but is not verified, and its OTP is not valid anymore (or has
+     *       been purged)</li>
      *   <li>403 Forbidden if account exists but is not verified</li>
      *   <li>200 Ok if account has been found and is verified</li>
      * </ul>
@@ -95,8 +102,8 @@ public class AccountController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
         }
 
-        // get any member with the specified e-mail address
-        final Optional<Member> member = memberRepository.findByEmailCustom(checkAccountRequest.getEmail());
+        // get the account state of any member with the specified e-mail address
+        final Optional<MemberCredentials> member = memberRepository.findCredentialsByEmail(checkAccountRequest.getEmail());
 
         // e-mail address does not exist
         if (member.isEmpty()) {
@@ -104,18 +111,17 @@ public class AccountController {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
 
-        // account exist, OTP has been sent and is still valid (OTP was generated less than OTP_VALIDITY_MINUTES ago)
-        final LocalDateTime now = LocalDateTime.now(ZoneId.of(ZONE_ID_EUROPE_PARIS));
-        final LocalDateTime expiryThreshold = now.minusMinutes(OTP_VALIDITY_MINUTES);
-        if (!member.get().isVerified() && member.get().getOtp() != null && member.get().getOtpDate() != null
-                && member.get().getOtpDate().isAfter(expiryThreshold)) {
-            log.info("Account with e-mail address {} exist, OTP has been sent and is still valid", checkAccountRequest.getEmail());
-            return ResponseEntity.status(HttpStatus.FOUND).build();
-        }
+        // account exist and a registration OTP has been sent
+        if (!member.get().isVerified()) {
+            final Optional<LocalDateTime> otpExpiresOn = otpService.getExpiresOn(member.get().getEmail(), Otp.Purpose.REGISTRATION);
+
+            // OTP is still valid
+            if (otpExpiresOn.isPresent() && otpExpiresOn.get().isAfter(LocalDateTime.now())) {
+                log.info("Account with e-mail address {} exist, OTP has been sent and is still valid", checkAccountRequest.getEmail());
+                return ResponseEntity.status(HttpStatus.FOUND).build();
+            }
 
-        // account exist, OTP has been sent but is not valid anymore (OTP was generated more than OTP_VALIDITY_MINUTES ago)
-        if (!member.get().isVerified() && member.get().getOtp() != null && member.get().getOtpDate() != null
-                && member.get().getOtpDate().isBefore(expiryThreshold)) {
+            // OTP is not valid anymore, or has been purged once expired
             log.info("Account with e-mail address {} exist, OTP has been sent but is not valid anymore", checkAccountRequest.getEmail());
             return ResponseEntity.status(HttpStatus.EXPECTATION_FAILED).build();
         }
@@ -142,8 +148,7 @@ public class AccountController {
      * <ul>
      *   <li>400 Bad request if e-mail address, first name, or last name is missing from the request</li>
      *   <li>409 Conflict if a user already exist with the same e-mail address</li>
-     *   <li>207 Multi-status if the user is successfully created but the confirmation e-mail failed to be sent</li>
-     *   <li>201 Created if succeeded</li>
+     *   <li>201 Created if succeeded, the confirmation e-mail is sent in the background</li>
      * </ul>
      */
 
@@ -182,20 +187,12 @@ public class AccountController {
         member.setLastName(preRegisterRequest.getLastName());
         member.setEmail(preRegisterRequest.getEmail());
         member.setCreatedOn(LocalDateTime.now(ZoneId.of(ZONE_ID_EUROPE_PARIS)));
-        // generate 4-digits OTP
-        member.setOtp(String.format("%04d", ThreadLocalRandom.current().nextInt(10000)));
-        member.setOtpDate(LocalDateTime.now(ZoneId.of(ZONE_ID_EUROPE_PARIS)));
         member.setRole(Member.Role.ROLE_USER);
         memberRepository.save(member);
 
-        // send registration e-mail
-        try {
-            mailService.sendRegistrationEmail(member);
-            log.info("Registration e-mail sent to {}", member.getEmail());
-        } catch (Exception e) {
-            log.error("Error while sending registration e-mail to {}", member.getEmail(), e);
-            return ResponseEntity.status(HttpStatus.MULTI_STATUS).build();
-        }
+        // generate 4-digits OTP and queue the registration e-mail
+        mailService.sendRegistrationEmail(member.getEmail(), member.getFirstName());
+        log.info("Registration e-mail queued for {}", member.getEmail());
 
         log.info("Pre-registration done for user {}", member.getEmail());
         return ResponseEntity.status(HttpStatus.CREATED).build();
@@ -206,9 +203,9 @@ public class AccountController {
      * Send a new one-time password to the specified e-mail address.
      * <p>
      * Used when the user didn't receive the first OTP or didn't enter it in time.
-     * Rate-limited to {@value OTP_RESEND_COOLDOWN_SECONDS} seconds between two resends per account,
-     * enforced by comparing {@code member.otpDate} (which is updated by both {@code preRegister} and this endpoint)
-     * to {@code now}. The cooldown therefore also applies between the initial registration and the first resend,
+     * Rate-limited to {@link OtpService#RESEND_COOLDOWN} between two resends per account,
+     * enforced by comparing the issue date of the registration OTP (which is set by both {@code preRegister} and
+     * this endpoint) to {@code now}. The cooldown therefore also applies between the initial registration and the first resend,
      * not just between two consecutive resends.
      *
      * @param resendOtpRequest The request data containing the user's e-mail address
@@ -217,8 +214,7 @@ public class AccountController {
      *   <li>400 Bad request if e-mail address is missing from the request</li>
      *   <li>404 Not Found if no account has been found for the specified e-mail address</li>
      *   <li>429 Too Many Requests if the cooldown hasn't elapsed yet, body carries {@code {"secondsLeft": N}}</li>
-     *   <li>207 Multi-status if the OTP has been successfully updated but the mail failed to be sent</li>
-     *   <li>200 Ok if OTP has been resent successfully</li>
+     *   <li>200 Ok if OTP has been renewed, the e-mail is sent in the background</li>
      * </ul>
      */
     @PostMapping("/rest/resendOtp")
@@ -233,7 +229,7 @@ public class AccountController {
         }
 
         // get the user
-        final Optional<Member> member = memberRepository.findByEmailCustom(resendOtpRequest.getEmail());
+        final Optional<MemberCredentials> member = memberRepository.findCredentialsByEmail(resendOtpRequest.getEmail());
 
         // e-mail address does not exist
         if (member.isEmpty()) {
@@ -242,33 +238,17 @@ public class AccountController {
         }
 
         // enforce the resend cooldown so a flood of clicks (or a script) can't trigger a flood of mails to the user's inbox
-        final LocalDateTime lastOtpDate = member.get().getOtpDate();
-        if (lastOtpDate != null) {
-            final LocalDateTime now = LocalDateTime.now(ZoneId.of(ZONE_ID_EUROPE_PARIS));
-            final long elapsedSeconds = Duration.between(lastOtpDate, now).getSeconds();
-            if (elapsedSeconds < OTP_RESEND_COOLDOWN_SECONDS) {
-                final long secondsLeft = OTP_RESEND_COOLDOWN_SECONDS - elapsedSeconds;
-                log.info("Resend refused for {}, cooldown active, {} s left", resendOtpRequest.getEmail(), secondsLeft);
-                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-                        .body(Collections.singletonMap("secondsLeft", secondsLeft));
-            }
+        final Optional<Duration> cooldownLeft = otpService.getCooldownLeft(member.get().getEmail(), Otp.Purpose.REGISTRATION);
+        if (cooldownLeft.isPresent()) {
+            final long secondsLeft = Math.max(1, cooldownLeft.get().toSeconds());
+            log.info("Resend refused for {}, cooldown active, {} s left", resendOtpRequest.getEmail(), secondsLeft);
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .body(Collections.singletonMap("secondsLeft", secondsLeft));
         }
 
-        // generate a new OTP and save the user — see comment on preRegister
-        // for why we use nextInt(10000) + %04d instead of nextInt(1000, 10000)
-        member.get().setOtp(String.format("%04d", ThreadLocalRandom.current().nextInt(10000)));
-        member.get().setOtpDate(LocalDateTime.now(ZoneId.of(ZONE_ID_EUROPE_PARIS)));
-        memberRepository.save(member.get());
-        log.info("New OTP has been generated and saved for e-mail address {}", resendOtpRequest.getEmail());
-
-        // send registration e-mail
-        try {
-            mailService.sendRegistrationEmail(member.get());
-            log.info("Registration e-mail resent to {}", member.get().getEmail());
-        } catch (Exception e) {
-            log.error("Error while resending registration e-mail to {}", member.get().getEmail(), e);
-            return ResponseEntity.status(HttpStatus.MULTI_STATUS).build();
-        }
+        // generate a new OTP, replacing the previous one, and queue the registration e-mail
+        mailService.sendRegistrationEmail(member.get().getEmail(), member.get().getFirstName());
+        log.info("New OTP has been generated and registration e-mail queued for e-mail address {}", resendOtpRequest.getEmail());
 
         return ResponseEntity.status(HttpStatus.OK).build();
 
@@ -282,7 +262,7 @@ public class AccountController {
      * <ul>
      *   <li>400 Bad request if e-mail address or OTP is missing from the request</li>
      *   <li>404 Not found if the specified user's e-mail address has not been found in the database</li>
-     *   <li>406 Not acceptable if the specified OTP has expired</li>
+     *   <li>406 Not acceptable if the specified OTP has expired, has already been used or has no attempt left</li>
      *   <li>401 Unauthorized if the specified OTP does not match the one from the database</li>
      *   <li>202 Accepted if e-mail has been verified successfully</li>
      * </ul>
@@ -304,37 +284,31 @@ public class AccountController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
         }
 
-        // get member from the database given the specified e-mail address
-        final Optional<Member> optMember = memberRepository.findByEmailCustom(confirmEmailRequest.getEmail());
+        final String email = confirmEmailRequest.getEmail();
 
         // member not found in the database
-        if (optMember.isEmpty()) {
-            log.info("No member found in the database with e-mail address {}", confirmEmailRequest.getEmail());
+        if (!memberRepository.existsMemberByEmail(email)) {
+            log.info("No member found in the database with e-mail address {}", email);
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
 
-        final Member member = optMember.get();
-
-        // specified OTP has expired (generated more than OTP_VALIDITY_MINUTES ago)
-        final LocalDateTime now = LocalDateTime.now(ZoneId.of(ZONE_ID_EUROPE_PARIS));
-        if (member.getOtpDate() == null || member.getOtpDate().isBefore(now.minusMinutes(OTP_VALIDITY_MINUTES))) {
-            log.info("Specified OTP has expired (otpDate = {}, now = {})", member.getOtpDate(), now);
-            return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
-        }
-
-        // specified OTP does not match the one from the database
-        if (!member.getOtp().equalsIgnoreCase(confirmEmailRequest.getOtp())) {
-            log.info("Specified OTP {} does not match the one from the database", confirmEmailRequest.getOtp());
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        // verify and consume the OTP
+        switch (otpService.verify(email, Otp.Purpose.REGISTRATION, confirmEmailRequest.getOtp())) {
+            case EXPIRED -> {
+                log.info("No valid OTP for e-mail address {}", email);
+                return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+            }
+            case INVALID -> {
+                log.info("Specified OTP does not match the one issued for e-mail address {}", email);
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+            }
+            case VALID -> log.info("OTP verified for e-mail address {}", email);
         }
 
-        // remove OTP data and activate member
-        member.setOtp(null);
-        member.setOtpDate(null);
-        member.setVerified(true);
-        memberRepository.save(member);
+        // activate member
+        memberRepository.confirmEmail(email);
 
-        log.info("E-mail address confirmed for user {}", member.getEmail());
+        log.info("E-mail address confirmed for user {}", email);
         return ResponseEntity.status(HttpStatus.ACCEPTED).build();
 
     }
@@ -347,6 +321,8 @@ public class AccountController {
      * <ul>
      *   <li>400 Bad request if e-mail address or password is missing</li>
      *   <li>404 Not found if the specified user's e-mail address is not found in the database</li>
+     *   <li>429 Too many requests if the password hashing pool is saturated</li>
+     *   <li>503 Service unavailable if the password hashing did not complete in time</li>
      *   <li>200 Ok if succeeded</li>
      * </ul>
      */
@@ -365,24 +341,26 @@ public class AccountController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
         }
 
-        // get member from the database given the specified e-mail address
-        final Optional<Member> optMember = memberRepository.findByEmailCustom(completeRegistrationRequest.getEmail());
+        // encode password on the hashing pool
+        final String encodedPassword;
+        try {
+            encodedPassword = passwordHashingService.encode(completeRegistrationRequest.getPassword());
+        } catch (PasswordHashingRejectedException e) {
+            log.info("Registration completion of {} rejected : {}", completeRegistrationRequest.getEmail(), e.getMessage());
+            return e.toResponse();
+        }
+
+        // store password, no row updated means no member with the specified e-mail address
+        final int updated = memberRepository.completeRegistration(completeRegistrationRequest.getEmail(),
+                encodedPassword, Member.Role.ROLE_USER, LocalDateTime.now(ZoneId.of(ZONE_ID_EUROPE_PARIS)));
 
         // member not found in the database
-        if (optMember.isEmpty()) {
+        if (updated == 0) {
             log.info("No member found in the database with e-mail address {}", completeRegistrationRequest.getEmail());
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
 
-        final Member member = optMember.get();
-
-        // encode and store password
-        member.setPassword(passwordEncoder.encode(completeRegistrationRequest.getPassword()));
-        member.setRole(Member.Role.ROLE_USER);
-        member.setRegistrationDate(LocalDateTime.now(ZoneId.of(ZONE_ID_EUROPE_PARIS)));
-        memberRepository.save(member);
-
-        log.info("Registration completed for member {}", member.getEmail());
+        log.info("Registration completed for member {}", completeRegistrationRequest.getEmail());
         return ResponseEntity.status(HttpStatus.OK).build();
 
     }
@@ -395,8 +373,7 @@ public class AccountController {
      * <ul>
      *   <li>400 Bad request if e-mail address is missing</li>
      *   <li>404 Not found if the specified user's e-mail address is not found in the database</li>
-     *   <li>207 Multi-status if the user has been found but the confirmation e-mail failed to be sent</li>
-     *   <li>200 Ok if succeeded</li>
+     *   <li>200 Ok if succeeded, the e-mail is sent in the background</li>
      * </ul>
      */
     @PostMapping("/rest/forgotPassword")
@@ -408,31 +385,17 @@ public class AccountController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
         }
 
-        // get member from the database given the specified e-mail address
-        final Optional<Member> optMember = memberRepository.findByEmailCustom(forgotPasswordRequest.getEmail());
+        final String email = forgotPasswordRequest.getEmail();
 
         // member not found in the database
-        if (optMember.isEmpty()) {
-            log.info("No member found in the database with e-mail address {}", forgotPasswordRequest.getEmail());
+        if (!memberRepository.existsMemberByEmail(email)) {
+            log.info("No member found in the database with e-mail address {}", email);
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
 
-        final Member member = optMember.get();
-
-        // set new OTP — see comment on preRegister for why we use
-        // nextInt(10000) + %04d instead of nextInt(9999)
-        member.setOtp(String.format("%04d", ThreadLocalRandom.current().nextInt(10000)));
-        member.setOtpDate(LocalDateTime.now(ZoneId.of(ZONE_ID_EUROPE_PARIS)));
-        memberRepository.save(member);
-
-        // send forgot password e-mail
-        try {
-            mailService.sendForgotPasswordEmail(member.getEmail());
-            log.info("Forgot password e-mail sent to {}", member.getEmail());
-        } catch (Exception e) {
-            log.error("Error while sending forgot password e-mail to {}", member.getEmail(), e);
-            return ResponseEntity.status(HttpStatus.MULTI_STATUS).build();
-        }
+        // set new OTP and queue the forgot password e-mail
+        mailService.sendForgotPasswordEmail(email);
+        log.info("Forgot password e-mail queued for {}", email);
 
         return ResponseEntity.status(HttpStatus.OK).build();
 
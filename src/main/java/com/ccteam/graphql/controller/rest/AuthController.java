@@ -22,26 +22,21 @@ package com.ccteam.graphql.controller.rest;
 
 import com.ccteam.graphql.config.security.*;
 import com.ccteam.graphql.entities.Member;
+import com.ccteam.graphql.model.MemberCredentials;
 import com.ccteam.graphql.repository.MemberRepository;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.authentication.AnonymousAuthenticationToken;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.BadCredentialsException;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.time.Duration;
-import java.time.LocalDateTime;
 import java.util.Optional;
+import java.util.UUID;
 
 /**
  * REST authentication controller.
@@ -49,6 +44,19 @@ import java.util.Optional;
  * Implements a per-account progressive lockout to mitigate brute-force attempts on the 6-digit passcode.
  * The thresholds and durations live in {@link LockoutPolicy} so the curve is documented and tweakable in
  * one place. The counter and {@code lockedUntil} timestamp are stored on the {@link Member} entity.
+ * <p>
+ * Failed attempts are tracked in memory by {@link LoginAttemptTracker}, per account and per client IP (counting the
+ * distinct accounts it failed on), so a locked account or IP is rejected before any database access or BCrypt
+ * comparison. The tracker flushes the counter to the {@link Member} columns asynchronously, and a login only reads
+ * the narrow {@link MemberCredentials} projection once. A login on an unknown account still spends the time of a
+ * BCrypt comparison, so that registered e-mail addresses can't be found by timing.
+ * <p>
+ * The passcode check runs on the bounded {@link PasswordHashingService} pool, when it is saturated the request is
+ * rejected right away with a 429 (or a 503 if the check did not complete in time) instead of holding a request thread.
+ * <p>
+ * A successful login opens a session and returns a short-lived access token along with a refresh token. The client
+ * exchanges the refresh token on {@code /rest/refresh} to get a new pair without sending the passcode again, and
+ * closes the session on {@code /rest/logout}.
  *
  * @author yann39
  * @since 1.0.0
@@ -60,15 +68,21 @@ import java.util.Optional;
 public class AuthController {
 
     private final JWTTokenUtils jwtTokenUtils;
-    private final AuthenticationManager authenticationManager;
+    private final PasswordHashingService passwordHashingService;
     private final MemberRepository memberRepository;
+    private final LoginAttemptTracker loginAttemptTracker;
+    private final RefreshTokenService refreshTokenService;
 
     public AuthController(JWTTokenUtils jwtTokenUtils,
-                          AuthenticationManager authenticationManager,
-                          MemberRepository memberRepository) {
+                          PasswordHashingService passwordHashingService,
+                          MemberRepository memberRepository,
+                          LoginAttemptTracker loginAttemptTracker,
+                          RefreshTokenService refreshTokenService) {
         this.jwtTokenUtils = jwtTokenUtils;
-        this.authenticationManager = authenticationManager;
+        this.passwordHashingService = passwordHashingService;
         this.memberRepository = memberRepository;
+        this.loginAttemptTracker = loginAttemptTracker;
+        this.refreshTokenService = refreshTokenService;
     }
 
     /**
@@ -76,99 +90,172 @@ public class AuthController {
      * <p>
      * Outcomes:
      * <ul>
-     *   <li><b>423 Locked</b> : account is currently in a lockout window, body carries the number of seconds
-     *       left before unlock.</li>
+     *   <li><b>423 Locked</b> : account (or client IP) is currently in a lockout window, body carries the number of
+     *       seconds left before unlock.</li>
      *   <li><b>401 Unauthorized</b> : wrong passcode (or unknown email), body carries {@code attemptsLeft} when
      *       known so the client can warn the user before the next lockout kicks in.</li>
-     *   <li><b>500 Internal Server Error</b> : unexpected auth failure (anonymous token, etc.).
-     *       Should not happen under normal usage but kept as a safety net.</li>
-     *   <li><b>200 Ok</b> : authentication succeeded, JWT in body.</li>
+     *   <li><b>429 Too many requests</b> : the password hashing pool is saturated, retry after a second.</li>
+     *   <li><b>503 Service unavailable</b> : the passcode check did not complete in time, retry after a second.</li>
+     *   <li><b>200 Ok</b> : authentication succeeded, JWT and refresh token in body.</li>
      * </ul>
      *
      * @param userRequest e-mail address + passcode
+     * @param request     The HTTP request, to get the client IP
      */
-    @Transactional
     @PostMapping("/rest/authenticate")
-    public ResponseEntity<?> authenticate(@RequestBody JWTRequest userRequest) {
+    public ResponseEntity<?> authenticate(@RequestBody JWTRequest userRequest, HttpServletRequest request) {
         log.info("Call to authenticate REST endpoint");
 
-        // check if the account is currently locked, we do this before the BCrypt comparison so a flood of
-        // attempts can't keep the CPU busy hashing during a lockout
-        final Optional<Member> memberOptional = memberRepository.findByEmailCustom(userRequest.getEmail());
-        if (memberOptional.isPresent()) {
-            final Member member = memberOptional.get();
-            final LocalDateTime lockedUntil = member.getLockedUntil();
-            if (lockedUntil != null && lockedUntil.isAfter(LocalDateTime.now())) {
-                final long secondsLeft = Duration.between(LocalDateTime.now(), lockedUntil).getSeconds();
-                log.info("Authentication refused for {}, account locked for {} more seconds",
-                        userRequest.getEmail(), secondsLeft);
-                return ResponseEntity.status(HttpStatus.LOCKED)
-                        .body(AuthenticationErrorResponse.locked(Math.max(1L, secondsLeft)));
-            }
+        // client IP, taken from X-Forwarded-For when the request comes through a trusted proxy (see
+        // server.forward-headers-strategy and server.tomcat.remoteip.internal-proxies)
+        final String ip = request.getRemoteAddr();
+
+        // check if the account or the IP is currently locked, we do this before the database access and the BCrypt
+        // comparison so a flood of attempts can't keep the database and the CPU busy during a lockout
+        final Duration lockedFor = loginAttemptTracker.lockedFor(userRequest.getEmail(), ip);
+        if (!lockedFor.isZero()) {
+            log.info("Authentication refused for {} from {}, locked for {} more seconds",
+                    userRequest.getEmail(), ip, lockedFor.getSeconds());
+            return ResponseEntity.status(HttpStatus.LOCKED)
+                    .body(AuthenticationErrorResponse.locked(Math.max(1L, lockedFor.getSeconds())));
         }
 
-        // verify the passcode via Spring Security's AuthenticationManager
-        final Authentication authentication;
-        try {
-            authentication = authenticationManager.authenticate(
-                    new UsernamePasswordAuthenticationToken(userRequest.getEmail(), userRequest.getPassword())
-            );
-        } catch (BadCredentialsException e) {
-            if (memberOptional.isEmpty()) {
-                log.info("Authentication refused for unknown email {}", userRequest.getEmail());
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        final Optional<MemberCredentials> credentialsOptional =
+                memberRepository.findCredentialsByEmail(userRequest.getEmail());
+        if (credentialsOptional.isEmpty()) {
+            loginAttemptTracker.recordIpFailure(userRequest.getEmail(), ip);
+            log.info("Authentication refused for unknown email {}", userRequest.getEmail());
+            // spend the time of a real comparison, so that registered e-mail addresses can't be found by timing
+            try {
+                passwordHashingService.matchesNone(userRequest.getPassword());
+            } catch (PasswordHashingRejectedException e) {
+                return e.toResponse();
             }
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        final MemberCredentials credentials = credentialsOptional.get();
 
-            final Member member = memberOptional.get();
-            final int newCount = member.getFailedLoginAttempts() + 1;
-            member.setFailedLoginAttempts(newCount);
+        // the persisted state is authoritative, another node may have locked the account in the meantime
+        final Duration persistedLockedFor = loginAttemptTracker.syncPersisted(userRequest.getEmail(), credentials);
+        if (!persistedLockedFor.isZero()) {
+            log.info("Authentication refused for {}, account locked for {} more seconds",
+                    userRequest.getEmail(), persistedLockedFor.getSeconds());
+            return ResponseEntity.status(HttpStatus.LOCKED)
+                    .body(AuthenticationErrorResponse.locked(Math.max(1L, persistedLockedFor.getSeconds())));
+        }
 
+        // verify the passcode against the stored hash (accounts without password yet can't log in, they still spend the
+        // time of a comparison)
+        final boolean passwordMatches;
+        try {
+            if (credentials.getPassword() != null) {
+                passwordMatches = passwordHashingService.matches(userRequest.getPassword(), credentials.getPassword());
+            } else {
+                passwordHashingService.matchesNone(userRequest.getPassword());
+                passwordMatches = false;
+            }
+        } catch (PasswordHashingRejectedException e) {
+            log.info("Authentication of {} rejected : {}", userRequest.getEmail(), e.getMessage());
+            return e.toResponse();
+        }
+        if (!passwordMatches) {
             // apply the progressive lockout policy
-            final Duration lockoutDuration = LockoutPolicy.durationFor(newCount);
-            if (!lockoutDuration.isZero()) {
-                final LocalDateTime until = LocalDateTime.now().plus(lockoutDuration);
-                member.setLockedUntil(until);
-                memberRepository.save(member);
+            final LoginAttemptTracker.Failure failure =
+                    loginAttemptTracker.recordFailure(userRequest.getEmail(), credentials, ip);
+            if (!failure.lockout().isZero()) {
                 log.info("Authentication failed for {}, {} consecutive failures, locked for {} seconds",
-                        userRequest.getEmail(), newCount, lockoutDuration.getSeconds());
+                        userRequest.getEmail(), failure.failures(), failure.lockout().getSeconds());
                 return ResponseEntity.status(HttpStatus.LOCKED)
-                        .body(AuthenticationErrorResponse.locked(Math.max(1L, lockoutDuration.getSeconds())));
+                        .body(AuthenticationErrorResponse.locked(Math.max(1L, failure.lockout().getSeconds())));
             }
 
-            memberRepository.save(member);
-            final int attemptsLeft = LockoutPolicy.attemptsLeftBeforeLockout(newCount);
+            final int attemptsLeft = LockoutPolicy.attemptsLeftBeforeLockout(failure.failures());
             log.info("Authentication failed for {}, {} consecutive failures, {} attempts left before lockout",
-                    userRequest.getEmail(), newCount, attemptsLeft);
+                    userRequest.getEmail(), failure.failures(), attemptsLeft);
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(AuthenticationErrorResponse.badCredentials(attemptsLeft));
         }
 
         // success path
-        if (!(authentication instanceof AnonymousAuthenticationToken) && authentication.isAuthenticated()) {
-            SecurityContextHolder.getContext().setAuthentication(authentication);
-            final CustomUserDetails customUserDetails = (CustomUserDetails) authentication.getPrincipal();
-            if (customUserDetails == null) {
-                log.info("Authentication refused for unknown email {}", userRequest.getEmail());
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
-            }
-            final String username = customUserDetails.getUsername();
-            final String role = authentication.getAuthorities().iterator().next().toString();
-            log.info("User {} authenticated with role {}", username, role);
-
-            // reset the lockout counter so legitimate users always start fresh after a successful login
-            if (memberOptional.isPresent()) {
-                final Member member = memberOptional.get();
-                if (member.getFailedLoginAttempts() != 0 || member.getLockedUntil() != null) {
-                    member.setFailedLoginAttempts(0);
-                    member.setLockedUntil(null);
-                    memberRepository.save(member);
-                }
-            }
+        final CustomUserDetails customUserDetails = new CustomUserDetails(credentials);
+        final String username = customUserDetails.getUsername();
+        final String role = customUserDetails.getAuthorities().getFirst().getAuthority();
+        log.info("User {} authenticated with role {}", username, role);
+
+        // reset the lockout counter so legitimate users always start fresh after a successful login
+        loginAttemptTracker.recordSuccess(userRequest.getEmail(), credentials);
 
-            final String jwtToken = jwtTokenUtils.generateToken(username, role);
-            return ResponseEntity.ok(new JWTResponse(jwtToken));
+        // transparently upgrade hashes produced with a lower cost than the current one
+        if (passwordHashingService.needsRehash(credentials.getPassword())) {
+            passwordHashingService.rehashAsync(userRequest.getPassword(), newHash -> {
+                memberRepository.rehashPassword(credentials.getId(), credentials.getPassword(), newHash);
+                log.info("Password of {} re-hashed with the current cost", username);
+            });
         }
 
-        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        // open a new session
+        final String sessionId = UUID.randomUUID().toString();
+        final String refreshToken = refreshTokenService.issue(credentials.getId(), sessionId);
+        final String jwtToken = jwtTokenUtils.generateToken(username, role, credentials.getId(), sessionId);
+        return ResponseEntity.ok(new JWTResponse(jwtToken, refreshToken));
+    }
+
+    /**
+     * Exchange a refresh token for a new JWT and a new refresh token of the same session.
+     * <p>
+     * Each refresh token can only be exchanged once, presenting an already exchanged token revokes the whole session.
+     *
+     * @param refreshTokenRequest The refresh token
+     * @return One of the following HTTP status :
+     * <ul>
+     *   <li>400 Bad request if the refresh token is missing</li>
+     *   <li>401 Unauthorized if the refresh token is unknown, expired, revoked or already used</li>
+     *   <li>200 Ok with the new JWT and refresh token in body</li>
+     * </ul>
+     */
+    @PostMapping("/rest/refresh")
+    public ResponseEntity<?> refresh(@RequestBody RefreshTokenRequest refreshTokenRequest) {
+        log.info("Call to refresh REST endpoint");
+
+        if (refreshTokenRequest.getRefreshToken() == null || refreshTokenRequest.getRefreshToken().isEmpty()) {
+            log.info("No refresh token specified");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+
+        final Optional<RefreshTokenService.Rotation> rotation = refreshTokenService.rotate(refreshTokenRequest.getRefreshToken());
+        if (rotation.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        final String jwtToken = jwtTokenUtils.generateToken(rotation.get().previous().getEmail(),
+                rotation.get().previous().getRole().getAuthority(), rotation.get().previous().getMemberId(),
+                rotation.get().previous().getSessionId());
+        log.info("Token refreshed for {}", rotation.get().previous().getEmail());
+        return ResponseEntity.ok(new JWTResponse(jwtToken, rotation.get().refreshToken()));
+    }
+
+    /**
+     * Close the session of the given refresh token, revoking its refresh and access tokens.
+     *
+     * @param refreshTokenRequest The refresh token
+     * @return One of the following HTTP status :
+     * <ul>
+     *   <li>400 Bad request if the refresh token is missing</li>
+     *   <li>204 No content once the session is revoked, or if the refresh token is unknown</li>
+     * </ul>
+     */
+    @PostMapping("/rest/logout")
+    public ResponseEntity<HttpStatus> logout(@RequestBody RefreshTokenRequest refreshTokenRequest) {
+        log.info("Call to logout REST endpoint");
+
+        if (refreshTokenRequest.getRefreshToken() == null || refreshTokenRequest.getRefreshToken().isEmpty()) {
+            log.info("No refresh token specified");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+
+        if (!refreshTokenService.revoke(refreshTokenRequest.getRefreshToken())) {
+            log.info("Logout with unknown refresh token");
+        }
+        return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
     }
 }
@@ -20,16 +20,33 @@
 
 package com.ccteam.graphql.controller.rest;
 
-import com.ccteam.graphql.entities.Attachment;
+import com.ccteam.graphql.config.storage.AvatarCache;
+import com.ccteam.graphql.model.AvatarBatchRequest;
+import com.ccteam.graphql.model.AvatarInfo;
 import com.ccteam.graphql.repository.MemberRepository;
+import com.ccteam.graphql.service.AvatarService;
+import com.ccteam.graphql.service.AvatarThumbnailService;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
 import org.springframework.http.*;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
-import java.time.ZoneOffset;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
 
 /**
  * Serves member avatar binaries over HTTP, with proper caching headers so clients can avoid re-downloading
@@ -38,8 +55,18 @@ import java.util.Optional;
  * Lives outside GraphQL on purpose: avatars are large opaque blobs that are not useful to GraphQL clients,
  * and we want to be able to serve them with long-term caching headers.
  * <p>
- * The HTTP endpoint route lets us emit a stable {@code ETag} and honour {@code If-None-Match} for
- * a {@code 304 Not Modified}, plus sit behind a CDN later if scale ever demands it.
+ * The HTTP endpoint route lets us emit a stable {@code ETag} and {@code Last-Modified} and honour
+ * {@code If-None-Match} and {@code If-Modified-Since} for a {@code 304 Not Modified}, plus sit behind a CDN later if
+ * scale ever demands it. The conditional check only needs the avatar metadata, the content is only read when it has
+ * to be sent.
+ * <p>
+ * The most requested avatar files are kept off-heap by the {@link AvatarCache} and written to the response straight
+ * from there. Other files are handed to the servlet container with their length, so that when it supports it (Tomcat
+ * NIO connector) the file is sent with {@code sendfile} straight from the page cache to the socket, without ever
+ * going through the heap. Otherwise the file is streamed as a {@link Resource}.
+ * <p>
+ * List screens fetch the avatars of all the members they show with a single batch request instead, answered with
+ * the changed avatars only.
  *
  * @author yann39
  * @since 1.0.0
@@ -56,53 +83,216 @@ public class AvatarController {
      */
     private static final Duration CACHE_MAX_AGE = Duration.ofHours(1);
 
+    /**
+     * Maximum number of avatars that can be requested at once, a member list screen shows far fewer.
+     */
+    private static final int BATCH_MAX_SIZE = 200;
+
+    /**
+     * Request attributes of the Tomcat sendfile support, see {@code org.apache.catalina.Globals}.
+     */
+    private static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
     private final MemberRepository memberRepository;
+    private final AvatarService avatarService;
+    private final AvatarCache avatarCache;
 
-    public AvatarController(MemberRepository memberRepository) {
+    public AvatarController(MemberRepository memberRepository, AvatarService avatarService, AvatarCache avatarCache) {
         this.memberRepository = memberRepository;
+        this.avatarService = avatarService;
+        this.avatarCache = avatarCache;
     }
 
     /**
      * Serve the avatar for the given member id.
+     * <p>
+     * With a {@code size}, the smallest thumbnail at least that large is served when it exists, with its own
+     * {@code ETag}, the original otherwise.
      * <ul>
-     *   <li>{@code 200 OK} with the raw bytes + {@code ETag} and {@code Cache-Control} when the avatar exists.</li>
-     *   <li>{@code 304 Not Modified} (empty body) when the client sends a matching {@code If-None-Match} header,
-     *       the only round-trip cost is a few HTTP headers.</li>
+     *   <li>{@code 200 OK} with the raw bytes + {@code ETag}, {@code Last-Modified}, {@code Cache-Control} and
+     *       {@code Content-Length} when the avatar exists.</li>
+     *   <li>{@code 304 Not Modified} (empty body) when the client sends a matching {@code If-None-Match} header, or
+     *       no {@code If-None-Match} but an {@code If-Modified-Since} not older than the upload, the only round-trip
+     *       cost is a few HTTP headers.</li>
      *   <li>{@code 404 Not Found} when the member doesn't exist or hasn't uploaded an avatar.</li>
      * </ul>
      *
-     * @param memberId    the member whose avatar to fetch
-     * @param ifNoneMatch the client's cached etag, if any
-     * @return the avatar bytes, a 304, or a 404
+     * @param memberId        the member whose avatar to fetch
+     * @param size            the size in pixels the avatar is displayed at, if any
+     * @param request         the current request, holding the conditional headers and used to hand the file to the
+     *                        container
+     * @param servletResponse the current response, written directly when the file is served from the cache
+     * @return the avatar bytes, a 304, or a 404, {@code null} when the response has already been written
+     * @throws IOException if the avatar file can't be read
      */
     @PreAuthorize("hasRole('USER')")
     @GetMapping("/{memberId}")
-    public ResponseEntity<byte[]> getAvatar(@PathVariable long memberId,
-                                            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
-        log.info("Avatar request for member {} (If-None-Match={})", memberId, ifNoneMatch);
+    public ResponseEntity<Resource> getAvatar(@PathVariable long memberId,
+                                              @RequestParam(required = false) Integer size,
+                                              HttpServletRequest request,
+                                              HttpServletResponse servletResponse) throws IOException {
+        log.info("Avatar request for member {} (size={}, If-None-Match={}, If-Modified-Since={})", memberId, size,
+                request.getHeader(HttpHeaders.IF_NONE_MATCH), request.getHeader(HttpHeaders.IF_MODIFIED_SINCE));
 
-        final Optional<Attachment> avatarOpt = memberRepository.findAvatarByMemberId(memberId);
+        final Optional<AvatarInfo> avatarOpt = memberRepository.findAvatarInfoByMemberId(memberId);
         if (avatarOpt.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
-        final Attachment a = avatarOpt.get();
+        final AvatarInfo a = avatarOpt.get();
+
+        final Optional<AvatarThumbnailService.Thumbnail> thumbnail = size != null
+                ? avatarService.findThumbnail(a, size) : Optional.empty();
 
-        // etag combines the attachment id and its upload timestamp, if they change it invalidates the client's cache automatically
-        final String etag = '"' + a.getId() + "-" + a.getUploadDate().toEpochSecond(ZoneOffset.UTC) + '"';
+        final String etag = etag(a, thumbnail);
+        final Instant lastModified = a.getUploadDate().atZone(ZoneId.systemDefault()).toInstant();
 
-        if (etag.equals(ifNoneMatch)) {
+        if (new ServletWebRequest(request).checkNotModified(etag, lastModified.toEpochMilli())) {
             // client has the current version cached, short-circuit with a 304 (no body)
             return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
                     .eTag(etag)
+                    .lastModified(lastModified)
                     .cacheControl(CacheControl.maxAge(CACHE_MAX_AGE).cachePrivate().mustRevalidate())
                     .build();
         }
 
-        return ResponseEntity.ok()
+        final Optional<Resource> content = thumbnail.isPresent()
+                ? Optional.of(thumbnail.get().resource()) : avatarService.load(a);
+        if (content.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        final Resource resource = content.get();
+        final long length = resource.contentLength();
+
+        final ResponseEntity.BodyBuilder response = ResponseEntity.ok()
                 .eTag(etag)
+                .lastModified(lastModified)
                 .cacheControl(CacheControl.maxAge(CACHE_MAX_AGE).cachePrivate().mustRevalidate())
-                .contentType(mediaTypeFromFilename(a.getFilename()))
-                .body(a.getFile());
+                .contentType(mediaTypeFromFilename(thumbnail.isPresent() ? resource.getFilename() : a.getFilename()))
+                .contentLength(length);
+
+        // serve hot files from the off-heap cache, the buffer is written to the container's output buffer as is
+        final Optional<ByteBuffer> cached = avatarCache.getOrLoad(resource);
+        if (cached.isPresent()) {
+            response.build().getHeaders().forEach((name, values) -> values.forEach(value -> servletResponse.addHeader(name, value)));
+            servletResponse.setStatus(HttpServletResponse.SC_OK);
+            servletResponse.getOutputStream().write(cached.get());
+            return null;
+        }
+
+        // let the container send the file itself, the response then carries the headers only
+        if (resource.isFile() && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR))) {
+            request.setAttribute(SENDFILE_FILENAME_ATTR, resource.getFile().getAbsolutePath());
+            request.setAttribute(SENDFILE_START_ATTR, 0L);
+            request.setAttribute(SENDFILE_END_ATTR, length);
+            return response.build();
+        }
+
+        return response.body(resource);
+    }
+
+    /**
+     * Serve the avatars of several members in a single response, for list screens.
+     * <p>
+     * The client sends the ids of the members along with the {@code ETag} of the avatar it already has for each of
+     * them, the metadata of all of them is loaded with a single query and only the avatars whose {@code ETag} differs
+     * are sent back. The response is a {@code multipart/mixed} body streamed as it is built, with one part per
+     * changed avatar carrying the {@code X-Member-Id}, {@code ETag}, {@code Content-Type} and {@code Content-Length}
+     * headers followed by the bytes. A member the client knows an avatar for but which doesn't have one anymore gets
+     * an empty part with an {@code X-Avatar-Status: deleted} header. Unchanged avatars are left out.
+     * <ul>
+     *   <li>{@code 200 OK} with the multipart body, possibly without any part when nothing changed.</li>
+     *   <li>{@code 400 Bad Request} when no member id or more than {@value #BATCH_MAX_SIZE} are given.</li>
+     * </ul>
+     *
+     * @param batch    the member ids with their known {@code ETag} and the size the avatars are displayed at
+     * @param response the current response, written as the avatars are read
+     * @throws IOException if an avatar file can't be read or the response can't be written
+     */
+    @PreAuthorize("hasRole('USER')")
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public void getAvatars(@RequestBody AvatarBatchRequest batch, HttpServletResponse response) throws IOException {
+        final Map<Long, String> knownEtags = batch.getEtags();
+        if (knownEtags == null || knownEtags.isEmpty() || knownEtags.size() > BATCH_MAX_SIZE) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        log.info("Avatar batch request for {} members (size={})", knownEtags.size(), batch.getSize());
+
+        final Map<Long, AvatarInfo> avatars = new HashMap<>();
+        memberRepository.findAvatarInfosByMemberIds(knownEtags.keySet()).forEach(a -> avatars.put(a.getMemberId(), a));
+
+        final String boundary = UUID.randomUUID().toString();
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType("multipart/mixed; boundary=" + boundary);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noStore().getHeaderValue());
+        final ServletOutputStream out = response.getOutputStream();
+
+        int sent = 0;
+        for (Map.Entry<Long, String> known : knownEtags.entrySet()) {
+            final AvatarInfo a = avatars.get(known.getKey());
+            if (a == null) {
+                if (known.getValue() != null) {
+                    writePartHeaders(out, boundary, known.getKey(), null, null, 0, "deleted");
+                    sent++;
+                }
+                continue;
+            }
+
+            final Optional<AvatarThumbnailService.Thumbnail> thumbnail = batch.getSize() != null
+                    ? avatarService.findThumbnail(a, batch.getSize()) : Optional.empty();
+            final String etag = etag(a, thumbnail);
+            if (etag.equals(known.getValue())) {
+                continue;
+            }
+
+            final Optional<Resource> content = thumbnail.isPresent()
+                    ? Optional.of(thumbnail.get().resource()) : avatarService.load(a);
+            if (content.isEmpty()) {
+                continue;
+            }
+            final Resource resource = content.get();
+            final MediaType type = mediaTypeFromFilename(thumbnail.isPresent() ? resource.getFilename() : a.getFilename());
+
+            final Optional<ByteBuffer> cached = avatarCache.getOrLoad(resource);
+            if (cached.isPresent()) {
+                writePartHeaders(out, boundary, a.getMemberId(), etag, type, cached.get().remaining(), null);
+                out.write(cached.get());
+            } else {
+                writePartHeaders(out, boundary, a.getMemberId(), etag, type, resource.contentLength(), null);
+                try (InputStream in = resource.getInputStream()) {
+                    in.transferTo(out);
+                }
+            }
+            sent++;
+        }
+        out.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        log.info("Avatar batch response sent with {} changed avatars out of {}", sent, knownEtags.size());
+    }
+
+    /**
+     * Strong {@code ETag} from the content version (the content hash, or the attachment id and its upload timestamp
+     * for contents not moved to the storage yet), plus the size of the thumbnail being served so that each size is
+     * cached on its own. If the content changes it invalidates the client's cache automatically.
+     */
+    private String etag(AvatarInfo a, Optional<AvatarThumbnailService.Thumbnail> thumbnail) {
+        return '"' + avatarService.getVersion(a) + thumbnail.map(t -> "-" + t.size()).orElse("") + '"';
+    }
+
+    /**
+     * Write the delimiter and headers of a part of a multipart avatar batch response, the content follows them.
+     */
+    private void writePartHeaders(ServletOutputStream out, String boundary, long memberId, String etag, MediaType type,
+                                  long length, String status) throws IOException {
+        final StringBuilder headers = new StringBuilder("\r\n--").append(boundary).append("\r\n")
+                .append("X-Member-Id: ").append(memberId).append("\r\n");
+        if (status != null) headers.append("X-Avatar-Status: ").append(status).append("\r\n");
+        if (etag != null) headers.append(HttpHeaders.ETAG).append(": ").append(etag).append("\r\n");
+        if (type != null) headers.append(HttpHeaders.CONTENT_TYPE).append(": ").append(type).append("\r\n");
+        headers.append(HttpHeaders.CONTENT_LENGTH).append(": ").append(length).append("\r\n\r\n");
+        out.write(headers.toString().getBytes(StandardCharsets.US_ASCII));
     }
 
     /**
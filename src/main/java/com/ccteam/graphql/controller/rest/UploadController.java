@@ -20,12 +20,20 @@
 
 package com.ccteam.graphql.controller.rest;
 
+import com.ccteam.graphql.config.graphql.CustomGraphQLException;
+import com.ccteam.graphql.config.security.AuthenticatedMember;
 import com.ccteam.graphql.entities.Attachment;
 import com.ccteam.graphql.entities.Member;
 import com.ccteam.graphql.repository.MemberRepository;
+import com.ccteam.graphql.service.AvatarService;
+import com.ccteam.graphql.service.AvatarUploadRejectedException;
+import com.ccteam.graphql.service.AvatarUploadService;
+import com.ccteam.graphql.service.MemberService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.stereotype.Component;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -34,7 +42,7 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.Optional;
 
 /**
@@ -50,9 +58,64 @@ import java.util.Optional;
 public class UploadController {
 
     private final MemberRepository memberRepository;
+    private final AvatarService avatarService;
+    private final AvatarUploadService avatarUploadService;
+    private final MemberService memberService;
 
-    public UploadController(MemberRepository memberRepository) {
+    public UploadController(MemberRepository memberRepository, AvatarService avatarService,
+                            AvatarUploadService avatarUploadService, MemberService memberService) {
         this.memberRepository = memberRepository;
+        this.avatarService = avatarService;
+        this.avatarUploadService = avatarUploadService;
+        this.memberService = memberService;
+    }
+
+    /**
+     * Upload an avatar file, to be referenced by the {@code createMember} and {@code updateMember} mutations through
+     * the returned upload token.
+     *
+     * @param file      The file representing the avatar
+     * @param principal The authenticated caller, the only one allowed to use the token
+     * @return A response with one of the following HTTP status :
+     * <ul>
+     *   <li>400 Bad request if the file is empty or is not a PNG, JPEG, GIF or WebP image</li>
+     *   <li>401 Unauthorized if the caller no longer exists</li>
+     *   <li>413 Content too large if the file is larger than the maximum upload size</li>
+     *   <li>429 Too many requests if too many uploads of the caller are pending</li>
+     *   <li>500 Internal Server Error if the file failed to be read or stored</li>
+     *   <li>200 Ok if the file has been stored, body carries {@code {"uploadToken": "..."}}</li>
+     * </ul>
+     */
+    @PreAuthorize("hasRole('USER')")
+    @PostMapping("/avatars/uploads")
+    public ResponseEntity<?> uploadAvatarFile(@RequestParam("file") MultipartFile file,
+                                              @AuthenticationPrincipal AuthenticatedMember principal) {
+
+        log.info("Call to uploadAvatarFile REST endpoint by {}", principal.email());
+
+        // tokens issued before the member ID claim existed only carry the e-mail address
+        final long memberId;
+        try {
+            memberId = memberService.resolveMemberId(principal.memberId(), principal.email());
+        } catch (CustomGraphQLException e) {
+            log.info("Avatar upload refused, {} could not be resolved to a member", principal.email());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        try {
+            avatarUploadService.checkQuota(memberId);
+            final AvatarService.StoredAvatar avatar = avatarService.store(file);
+            final String token = avatarUploadService.issueToken(avatar, memberId);
+            log.info("Avatar file of {} bytes stored for member {}", avatar.fileSize(), memberId);
+            return ResponseEntity.ok(Collections.singletonMap("uploadToken", token));
+        } catch (AvatarUploadRejectedException e) {
+            log.info("Avatar upload of member {} rejected : {}", memberId, e.getMessage());
+            return ResponseEntity.status(status(e)).build();
+        } catch (IOException e) {
+            log.error("Exception occurred while storing avatar file of member {}", memberId, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+
     }
 
     /**
@@ -63,9 +126,10 @@ public class UploadController {
      * @return An empty body response with one of the following HTTP status :
      * <ul>
      *   <li>400 Bad request if member ID is missing from the request</li>
-     *   <li>400 Bad request if file is missing from the request</li>
+     *   <li>400 Bad request if file is missing from the request, empty or not a PNG, JPEG, GIF or WebP image</li>
      *   <li>404 Not Found if no member has been found for the specified member ID</li>
-     *   <li>500 Internal Server Error if file bytes from the specified avatar file failed to be read</li>
+     *   <li>413 Content too large if the file is larger than the maximum upload size</li>
+     *   <li>500 Internal Server Error if file bytes from the specified avatar file failed to be read or stored</li>
      *   <li>200 Ok if the avatar file has been successfully associated to the member</li>
      * </ul>
      */
@@ -96,24 +160,35 @@ public class UploadController {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
 
-        final Attachment attachment = new Attachment();
+        final AvatarService.StoredAvatar avatar;
 
         try {
-            attachment.setFile(file.getBytes());
+            avatar = avatarService.store(file);
+        } catch (AvatarUploadRejectedException e) {
+            log.info("Avatar file {} rejected : {}", file.getOriginalFilename(), e.getMessage());
+            return ResponseEntity.status(status(e)).build();
         } catch (IOException e) {
-            log.info("Exception occurred while reading file bytes for file {}", file.getName());
+            log.info("Exception occurred while reading or storing file bytes for file {}", file.getOriginalFilename());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
-        attachment.setFilename(file.getName());
 
+        final Attachment attachment = avatarService.setContent(
+                member.get().getAvatar() != null ? member.get().getAvatar() : new Attachment(), avatar);
         member.get().setAvatar(attachment);
-        attachment.setUploadDate(LocalDateTime.now());
 
         memberRepository.save(member.get());
 
-        log.info("Avatar file {} has been successfully set for member ID {}", file.getName(), memberId);
+        log.info("Avatar file {} has been successfully set for member ID {}", attachment.getFilename(), memberId);
         return ResponseEntity.status(HttpStatus.OK).build();
 
     }
 
+    private static HttpStatus status(AvatarUploadRejectedException e) {
+        return switch (e.getReason()) {
+            case EMPTY, UNSUPPORTED_FORMAT -> HttpStatus.BAD_REQUEST;
+            case TOO_LARGE -> HttpStatus.CONTENT_TOO_LARGE;
+            case TOO_MANY_PENDING -> HttpStatus.TOO_MANY_REQUESTS;
+        };
+    }
+
 }
\ No newline at end of file
@@ -20,10 +20,12 @@
 
 package com.ccteam.graphql.controller.rest;
 
-import com.ccteam.graphql.entities.Member;
+import com.ccteam.graphql.entities.Otp;
 import com.ccteam.graphql.model.DeleteAccountRequest;
+import com.ccteam.graphql.model.MemberCredentials;
 import com.ccteam.graphql.repository.MemberRepository;
 import com.ccteam.graphql.service.MailService;
+import com.ccteam.graphql.service.OtpService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -32,12 +34,8 @@ import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 
-import java.time.LocalDateTime;
-import java.time.ZoneId;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * REST account controller.
@@ -53,10 +51,12 @@ public class WebController {
 
     private final MemberRepository memberRepository;
     private final MailService mailService;
+    private final OtpService otpService;
 
-    public WebController(MemberRepository memberRepository, MailService mailService) {
+    public WebController(MemberRepository memberRepository, MailService mailService, OtpService otpService) {
         this.memberRepository = memberRepository;
         this.mailService = mailService;
+        this.otpService = otpService;
     }
 
     /**
@@ -84,7 +84,6 @@ public class WebController {
         log.info("Call to requestDeleteAccountSubmit REST endpoint");
 
         log.info("Email: {}", deleteAccountRequest.getEmail());
-        log.info("OTP: {}", deleteAccountRequest.getOtp());
         log.info("Reason: {}", deleteAccountRequest.getReason());
 
         // e-mail address has not been specified
@@ -94,18 +93,16 @@ public class WebController {
             return "request-delete-account-result";
         }
 
-        // get the user
-        final Optional<Member> member = memberRepository.findByEmailCustom(deleteAccountRequest.getEmail());
-
         // e-mail address does not exist
-        if (member.isEmpty()) {
+        if (!memberRepository.existsMemberByEmail(deleteAccountRequest.getEmail())) {
             log.info("E-mail address {} has not been found", deleteAccountRequest.getEmail());
             model.addAttribute("result", "member_not_found");
             return "request-delete-account-result";
         }
 
         // check OTP
-        if (!Objects.equals(member.get().getOtp(), deleteAccountRequest.getOtp())) {
+        if (deleteAccountRequest.getOtp() == null || otpService.verify(deleteAccountRequest.getEmail(),
+                Otp.Purpose.DELETE_ACCOUNT, deleteAccountRequest.getOtp()) != OtpService.Verification.VALID) {
             log.info("Invalid OTP for e-mail address {}", deleteAccountRequest.getEmail());
             model.addAttribute("result", "invalid_otp");
             return "request-delete-account-result";
@@ -123,8 +120,7 @@ public class WebController {
      * <ul>
      *   <li>400 Bad request if e-mail address is missing from the request</li>
      *   <li>404 Not Found if no account has been found for the specified e-mail address</li>
-     *   <li>207 Multi-status if the OTP has been successfully updated but the mail failed to be sent</li>
-     *   <li>200 Ok if OTP has been sent successfully</li>
+     *   <li>200 Ok if OTP has been issued, the e-mail is sent in the background</li>
      * </ul>
      */
     @PostMapping("/requestDeleteAccountOtp")
@@ -138,7 +134,7 @@ public class WebController {
         }
 
         // get the user
-        final Optional<Member> member = memberRepository.findByEmailCustom(request.get("email"));
+        final Optional<MemberCredentials> member = memberRepository.findCredentialsByEmail(request.get("email"));
 
         // e-mail address does not exist
         if (member.isEmpty()) {
@@ -146,20 +142,9 @@ public class WebController {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
 
-        // generate a new 4-digits OTP and save the user
-        member.get().setOtp(String.format("%04d", ThreadLocalRandom.current().nextInt(10000)));
-        member.get().setOtpDate(LocalDateTime.now(ZoneId.of("Europe/Paris")));
-        memberRepository.save(member.get());
-        log.info("Delete account OTP request has been generated and saved for e-mail address {}", request.get("email"));
-
-        // send delete account OTP request e-mail
-        try {
-            mailService.sendDeleteAccountRequestOtpEmail(member.get());
-            log.info("Delete account OTP request e-mail sent to {}", member.get().getEmail());
-        } catch (Exception e) {
-            log.error("Error while sending delete account OTP request e-mail to {}", member.get().getEmail(), e);
-            return ResponseEntity.status(HttpStatus.MULTI_STATUS).build();
-        }
+        // generate a new 4-digits OTP, replacing the previous one, and queue the delete account OTP request e-mail
+        mailService.sendDeleteAccountRequestOtpEmail(member.get().getEmail(), member.get().getFirstName());
+        log.info("Delete account OTP request has been generated and e-mail queued for e-mail address {}", request.get("email"));
 
         return ResponseEntity.status(HttpStatus.OK).build();
     }
@@ -27,13 +27,19 @@ import lombok.Setter;
 import java.time.LocalDateTime;
 
 /**
+ * Attachment entity.
+ * <p>
+ * The content is kept by the {@link com.ccteam.graphql.config.storage.AvatarStorage} under its SHA-256 hash, the
+ * {@code file} column only holds the content of attachments uploaded before the storage was introduced and not
+ * migrated yet.
+ *
  * @author yann39
  * @since 1.0.0
  */
 @Getter
 @Setter
 @Entity
-@Table(name = "attachment")
+@Table(name = "attachment", indexes = @Index(name = "idx_attachment_content_hash", columnList = "content_hash"))
 public class Attachment {
 
     /**
@@ -53,11 +59,33 @@ public class Attachment {
 
     /**
      * Binary content of the file. Stored as a LOB with a maximum size of 512KB.
+     * <p>
+     * Only used while the avatar storage is not shared by all the nodes, {@code null} once the content has been moved
+     * to the storage.
      */
     @Lob
     @Column(length = 524288)
     private byte[] file;
 
+    /**
+     * Hex encoded SHA-256 hash of the content, the key of the content in the storage.
+     */
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    /**
+     * Size of the content in bytes.
+     */
+    @Column
+    private Long fileSize;
+
+    /**
+     * BlurHash of the image, rendered by clients as a placeholder while the content is loading, {@code null} for
+     * images that could not be decoded.
+     */
+    @Column(length = 64)
+    private String placeholder;
+
     /**
      * Date and time when the file was uploaded.
      */
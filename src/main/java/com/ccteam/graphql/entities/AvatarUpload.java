@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.ccteam.graphql.entities;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * AvatarUpload entity.
+ * <p>
+ * An avatar file uploaded in the storage in exchange for a token, not attached to any member yet.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "avatar_upload", indexes = {
+        @Index(name = "idx_avatar_upload_expires_on", columnList = "expires_on")
+})
+public class AvatarUpload {
+
+    /**
+     * Upload token (primary key).
+     */
+    @Id
+    @Column(length = 32)
+    private String token;
+
+    /**
+     * ID of the member who uploaded the file, the only one allowed to use the token.
+     */
+    @Column(name = "uploader_id", nullable = false)
+    private Long uploaderId;
+
+    /**
+     * Hash of the content in the avatar storage, {@code null} if the content is stored in {@link #file}.
+     */
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    /**
+     * Binary content of the file, when the avatar storage is not shared by all the nodes.
+     */
+    @Lob
+    @Column(length = 524288)
+    private byte[] file;
+
+    /**
+     * Content size in bytes.
+     */
+    @Column(nullable = false)
+    private Long fileSize;
+
+    /**
+     * File name, with an extension matching the image format.
+     */
+    @Column(nullable = false)
+    private String filename;
+
+    /**
+     * BlurHash of the image, {@code null} if it could not be decoded.
+     */
+    @Column(length = 64)
+    private String placeholder;
+
+    /**
+     * Timestamp after which the token can no longer be used.
+     */
+    @Column(name = "expires_on", nullable = false)
+    private LocalDateTime expiresOn;
+
+}
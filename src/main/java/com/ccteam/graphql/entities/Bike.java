@@ -33,7 +33,9 @@ import lombok.Setter;
 @Getter
 @Setter
 @Entity
-@Table(name = "bike")
+@Table(name = "bike", uniqueConstraints = {
+        @UniqueConstraint(columnNames = {"current_member_id"})
+})
 public class Bike {
 
     /**
@@ -75,6 +77,16 @@ public class Bike {
     @Column(nullable = false)
     private Boolean current = false;
 
+    /**
+     * Owner id when the bike is flagged as {@code current}, {@code NULL} otherwise.
+     * <p>
+     * Computed by the database (persistent generated column) and only there to back the unique constraint
+     * enforcing "at most one current bike per member", MariaDB having no partial index.
+     */
+    @Column(name = "current_member_id", insertable = false, updatable = false,
+            columnDefinition = "bigint as (if(current, member_id, null)) persistent")
+    private Long currentMemberId;
+
     /**
      * The bike's owner.
      */
@@ -35,7 +35,7 @@ import java.util.Set;
 @Getter
 @Setter
 @Entity
-@Table(name = "event")
+@Table(name = "event", indexes = @Index(name = "idx_event_start_date", columnList = "start_date"))
 public class Event {
 
     /**
@@ -33,7 +33,8 @@ import java.time.LocalDateTime;
 @Getter
 @Setter
 @Entity
-@Table(name = "lap_record")
+@Table(name = "lap_record",
+        indexes = @Index(name = "idx_lap_record_track_lap_time", columnList = "track_id, lap_time"))
 public class LapRecord {
 
     /**
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.entities;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Mail campaign entity, a mail sent to many members at once.
+ * <p>
+ * The body is rendered once when the campaign is created, with a {@code {{firstName}}} placeholder replaced for
+ * each recipient when sending. What has been sent to whom is recorded as {@link MailCampaignRecipient}, so that an
+ * interrupted campaign resumes where it stopped (see {@link com.ccteam.graphql.service.MailCampaignService}).
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "mail_campaign",
+        uniqueConstraints = @UniqueConstraint(name = "uk_mail_campaign_key", columnNames = "campaign_key"),
+        indexes = @Index(name = "idx_mail_campaign_status", columnList = "status"))
+public class MailCampaign {
+
+    /**
+     * Database identifier (primary key) for this campaign.
+     * <p>
+     * Generated by the database when the entity is persisted.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * Kind of campaign, which tells who the recipients are.
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(length = 32, nullable = false)
+    private Type type;
+
+    /**
+     * Unique key of the campaign, so that the same campaign is never created twice (e.g. {@code event-reminder:42}).
+     */
+    @Column(name = "campaign_key", length = 64, nullable = false)
+    private String campaignKey;
+
+    /**
+     * ID of the event the campaign is about, for event reminders.
+     */
+    @Column
+    private Long eventId;
+
+    /**
+     * Subject of the mail.
+     */
+    @Column(nullable = false)
+    private String subject;
+
+    /**
+     * Rendered HTML body of the mail, with the per-recipient placeholders.
+     */
+    @Lob
+    @Column(nullable = false, columnDefinition = "LONGTEXT")
+    private String body;
+
+    /**
+     * Status of the campaign.
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16, nullable = false)
+    private Status status = Status.RUNNING;
+
+    /**
+     * Creation timestamp of the campaign.
+     */
+    @Column(nullable = false)
+    private LocalDateTime createdOn = LocalDateTime.now();
+
+    /**
+     * Date and time when the mail has been sent to all the recipients.
+     */
+    @Column
+    private LocalDateTime completedOn;
+
+    /**
+     * Kinds of campaign.
+     */
+    public enum Type {
+        /**
+         * Reminder sent to the participants of an event the day before it starts.
+         */
+        EVENT_REMINDER,
+        /**
+         * Weekly digest of the news sent to all verified members.
+         */
+        NEWS_DIGEST
+    }
+
+    /**
+     * Statuses of a campaign.
+     */
+    public enum Status {
+        RUNNING,
+        COMPLETED
+    }
+
+}
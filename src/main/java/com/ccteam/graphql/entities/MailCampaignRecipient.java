@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.entities;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Delivery of a {@link MailCampaign} to one member.
+ * <p>
+ * Only written once the mail has been handed to the SMTP server or rejected by it, members without a row have not
+ * been processed yet. The member is referenced by id only, so that deleting a member keeps the campaign history.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "mail_campaign_recipient",
+        uniqueConstraints = @UniqueConstraint(name = "uk_mail_campaign_recipient",
+                columnNames = {"campaign_id", "member_id"}))
+public class MailCampaignRecipient {
+
+    /**
+     * Database identifier (primary key) for this delivery.
+     * <p>
+     * Generated by the database when the entity is persisted.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * Campaign the mail belongs to.
+     */
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "campaign_id")
+    private MailCampaign campaign;
+
+    /**
+     * ID of the member the mail has been sent to.
+     */
+    @Column(name = "member_id", nullable = false)
+    private Long memberId;
+
+    /**
+     * E-mail address the mail has been sent to.
+     */
+    @Column(length = 128, nullable = false)
+    private String email;
+
+    /**
+     * Delivery status of the mail.
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16, nullable = false)
+    private Status status;
+
+    /**
+     * Error returned by the SMTP server, for failed deliveries.
+     */
+    @Column(length = 1000)
+    private String error;
+
+    /**
+     * Date and time when the mail has been processed.
+     */
+    @Column(nullable = false)
+    private LocalDateTime processedOn = LocalDateTime.now();
+
+    /**
+     * Delivery statuses of a campaign mail.
+     */
+    public enum Status {
+        SENT,
+        FAILED
+    }
+
+}
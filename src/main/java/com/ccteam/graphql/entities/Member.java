@@ -36,9 +36,16 @@ import java.util.Set;
 @Getter
 @Setter
 @Entity
-@Table(name = "member")
+@Table(name = "member", uniqueConstraints = {
+        @UniqueConstraint(name = Member.BOARD_ROLE_CONSTRAINT, columnNames = {"board_role"})
+})
 public class Member {
 
+    /**
+     * Name of the unique constraint allowing a single holder per board role.
+     */
+    public static final String BOARD_ROLE_CONSTRAINT = "uk_member_board_role";
+
     /**
      * Database identifier (primary key) for this member.
      * <p>
@@ -85,6 +92,13 @@ public class Member {
     @JoinColumn(name = "attachment_id")
     private Attachment avatar;
 
+    /**
+     * ID of the avatar attachment, read-only mirror of the {@code attachment_id} join column so that checking for
+     * an avatar never touches the association.
+     */
+    @Column(name = "attachment_id", insertable = false, updatable = false)
+    private Long avatarId;
+
     /**
      * Racing rider number assigned to the member (nullable).
      */
@@ -116,18 +130,6 @@ public class Member {
     @Column(nullable = false)
     private boolean verified = false;
 
-    /**
-     * Last OTP sent to the member (if any).
-     */
-    @Column
-    private String otp;
-
-    /**
-     * Timestamp when the last OTP was issued.
-     */
-    @Column
-    private LocalDateTime otpDate;
-
     /**
      * Member's role in the application security model.
      */
@@ -137,6 +139,9 @@ public class Member {
 
     /**
      * Optional board role (if the member sits on the board).
+     * <p>
+     * Unique so that at most one member holds each board position, {@code NULL} values are not subject to the
+     * constraint.
      */
     @Enumerated(EnumType.STRING)
     @Column(name = "board_role")
@@ -160,6 +165,12 @@ public class Member {
     @Column(name = "locked_until")
     private LocalDateTime lockedUntil;
 
+    /**
+     * Date when the failed login counter was last reset by a successful login.
+     */
+    @Column(name = "login_reset_on")
+    private LocalDateTime loginResetOn;
+
     /**
      * News items liked by the member.
      */
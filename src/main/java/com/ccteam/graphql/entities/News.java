@@ -34,7 +34,7 @@ import java.util.Set;
 @Getter
 @Setter
 @Entity
-@Table(name = "news")
+@Table(name = "news", indexes = @Index(name = "idx_news_news_date", columnList = "news_date"))
 public class News {
 
     /**
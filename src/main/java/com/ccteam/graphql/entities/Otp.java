@@ -27,13 +27,20 @@ import lombok.Setter;
 import java.time.LocalDateTime;
 
 /**
+ * One-time password entity.
+ * <p>
+ * There is at most one pending OTP per e-mail address and purpose, issuing a new one replaces the previous one.
+ * The code itself is never stored, only its keyed hash (see {@link com.ccteam.graphql.service.OtpService}).
+ *
  * @author yann39
  * @since 1.0.0
  */
 @Getter
 @Setter
 @Entity
-@Table(name = "otp")
+@Table(name = "otp",
+        uniqueConstraints = @UniqueConstraint(name = "uk_otp_email_purpose", columnNames = {"email", "purpose"}),
+        indexes = @Index(name = "idx_otp_expires_on", columnList = "expires_on"))
 public class Otp {
 
     /**
@@ -46,33 +53,49 @@ public class Otp {
     private Long id;
 
     /**
-     * Email address associated with this OTP.
+     * Email address associated with this OTP (lower case).
      */
     @Column(length = 128, nullable = false)
     private String email;
 
     /**
-     * One-time password (OTP) value.
+     * What the OTP has been issued for.
      */
-    @Column
-    private String otp;
+    @Enumerated(EnumType.STRING)
+    @Column(length = 32, nullable = false)
+    private Purpose purpose;
 
     /**
-     * Date and time when the OTP was generated or is valid until.
+     * Base64 encoded HMAC-SHA256 of the OTP value.
      */
-    @Column
-    private LocalDateTime otpDate;
+    @Column(name = "code_hash", length = 44, nullable = false)
+    private String codeHash;
 
     /**
-     * Number of verification attempts for this OTP.
+     * Number of failed verification attempts for this OTP.
      */
-    @Column
+    @Column(nullable = false)
     private int attempts;
 
+    /**
+     * Expiration timestamp of the OTP, set to the verification date once the OTP has been used.
+     */
+    @Column(name = "expires_on", nullable = false)
+    private LocalDateTime expiresOn;
+
     /**
      * Creation timestamp of the OTP entry.
      */
     @Column(nullable = false)
     private LocalDateTime createdOn = LocalDateTime.now();
 
+    /**
+     * Purposes an OTP can be issued for, an OTP can only be verified for the purpose it has been issued for.
+     */
+    public enum Purpose {
+        REGISTRATION,
+        PASSWORD_RESET,
+        DELETE_ACCOUNT
+    }
+
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.entities;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * E-mail waiting in the outbox.
+ * <p>
+ * Mails are written to the outbox in the same transaction as the data they relate to, and sent in the background
+ * by {@link com.ccteam.graphql.service.MailOutboxSender}, so that a slow or unreachable SMTP server never delays a
+ * request.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "mail_outbox",
+        indexes = @Index(name = "idx_mail_outbox_status_next_attempt", columnList = "status, next_attempt_on"))
+public class OutboxMail {
+
+    /**
+     * Database identifier (primary key) for this mail.
+     * <p>
+     * Generated by the database when the entity is persisted.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * E-mail address of the recipient.
+     */
+    @Column(length = 128, nullable = false)
+    private String recipient;
+
+    /**
+     * E-mail address the mail is sent to in blind copy, if any.
+     */
+    @Column(length = 128)
+    private String bcc;
+
+    /**
+     * Subject of the mail.
+     */
+    @Column(nullable = false)
+    private String subject;
+
+    /**
+     * Body of the mail.
+     */
+    @Lob
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String body;
+
+    /**
+     * Whether the body is HTML rather than plain text.
+     */
+    @Column(nullable = false)
+    private boolean html;
+
+    /**
+     * Delivery status of the mail.
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16, nullable = false)
+    private Status status = Status.PENDING;
+
+    /**
+     * Number of failed delivery attempts.
+     */
+    @Column(nullable = false)
+    private int attempts;
+
+    /**
+     * Date from which the next delivery attempt can be made, pushed forward while an attempt is in progress.
+     */
+    @Column(name = "next_attempt_on", nullable = false)
+    private LocalDateTime nextAttemptOn;
+
+    /**
+     * Error of the last failed delivery attempt.
+     */
+    @Column(length = 1000)
+    private String lastError;
+
+    /**
+     * Date and time when the mail has been sent.
+     */
+    @Column
+    private LocalDateTime sentOn;
+
+    /**
+     * Creation timestamp of the mail.
+     */
+    @Column(nullable = false)
+    private LocalDateTime createdOn = LocalDateTime.now();
+
+    /**
+     * Delivery statuses of a mail.
+     */
+    public enum Status {
+        /**
+         * Not sent yet, possibly after failed attempts.
+         */
+        PENDING,
+        /**
+         * Sent successfully.
+         */
+        SENT,
+        /**
+         * Given up after too many failed attempts, kept for investigation.
+         */
+        DEAD
+    }
+
+}
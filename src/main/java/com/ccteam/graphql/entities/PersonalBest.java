@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.entities;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Best {@link LapRecord} of a member on a track with a given bike.
+ * <p>
+ * Aggregate maintained by the lap record service in the same transaction as the lap records, so that a rider profile
+ * or a track screen reads one row per track or per rider instead of the full lap history. The lap details are copied
+ * from the best lap, which is also referenced.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "personal_best",
+        uniqueConstraints = @UniqueConstraint(name = "uk_personal_best_member_track_bike",
+                columnNames = {"member_id", "track_id", "bike_id"}),
+        indexes = @Index(name = "idx_personal_best_track_lap_time", columnList = "track_id, lap_time"))
+public class PersonalBest {
+
+    /**
+     * Database identifier (primary key) for this personal best.
+     * <p>
+     * Generated by the database when the entity is persisted.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * Member holding the personal best.
+     */
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "member_id")
+    private Member member;
+
+    /**
+     * Track of the personal best.
+     */
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "track_id")
+    private Track track;
+
+    /**
+     * Bike used for the personal best.
+     */
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "bike_id")
+    private Bike bike;
+
+    /**
+     * The best lap record itself.
+     */
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "lap_record_id")
+    private LapRecord lapRecord;
+
+    /**
+     * Lap time of the best lap, in milliseconds.
+     */
+    @Column(nullable = false)
+    private int lapTime;
+
+    /**
+     * Date and time when the best lap was set.
+     */
+    @Column(nullable = false)
+    private LocalDateTime recordDate;
+
+    /**
+     * Conditions during the best lap (weather).
+     */
+    @Column(length = 32, nullable = false)
+    private String conditions;
+
+    /**
+     * Last modification timestamp for the personal best.
+     */
+    @Column(nullable = false)
+    private LocalDateTime modifiedOn;
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.entities;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.time.LocalDateTime;
+
+/**
+ * RefreshToken entity.
+ * <p>
+ * A refresh token is an opaque random value given to the client along with its access token, it can be exchanged
+ * once for a new access token and a new refresh token (rotation). Only its SHA-256 hash is stored.
+ * <p>
+ * All refresh tokens rotated from the same login share the same {@code sessionId}, which is also carried by the
+ * access tokens, so a whole session can be revoked at once.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "refresh_token", indexes = {
+        @Index(name = "idx_refresh_token_session_id", columnList = "session_id"),
+        @Index(name = "idx_refresh_token_expires_on", columnList = "expires_on")
+})
+public class RefreshToken {
+
+    /**
+     * Database identifier (primary key) for this refresh token.
+     * <p>
+     * Generated by the database when the entity is persisted.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * Member the token has been issued to.
+     */
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "member_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Member member;
+
+    /**
+     * Base64 encoded SHA-256 hash of the token value.
+     */
+    @Column(name = "token_hash", length = 44, nullable = false, unique = true)
+    private String tokenHash;
+
+    /**
+     * Identifier of the session (the login) the token belongs to.
+     */
+    @Column(name = "session_id", length = 36, nullable = false)
+    private String sessionId;
+
+    /**
+     * Expiration timestamp of the token.
+     */
+    @Column(name = "expires_on", nullable = false)
+    private LocalDateTime expiresOn;
+
+    /**
+     * Timestamp at which the token has been exchanged, a token can only be exchanged once.
+     */
+    @Column
+    private LocalDateTime usedOn;
+
+    /**
+     * Whether the session of this token has been revoked.
+     */
+    @Column(nullable = false)
+    private boolean revoked = false;
+
+    /**
+     * Creation timestamp of the token.
+     */
+    @Column(nullable = false)
+    private LocalDateTime createdOn = LocalDateTime.now();
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.entities;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * RevokedToken entity.
+ * <p>
+ * Identifier of a revoked session, access tokens carrying it are rejected until they would have expired anyway.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "revoked_token", indexes = {
+        @Index(name = "idx_revoked_token_expires_on", columnList = "expires_on")
+})
+public class RevokedToken {
+
+    /**
+     * Revoked session identifier (primary key).
+     */
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    /**
+     * Timestamp after which no access token of the session can still be valid, so the revocation can be forgotten.
+     */
+    @Column(name = "expires_on", nullable = false)
+    private LocalDateTime expiresOn;
+
+    /**
+     * Revocation timestamp.
+     */
+    @Column(nullable = false)
+    private LocalDateTime createdOn = LocalDateTime.now();
+
+}
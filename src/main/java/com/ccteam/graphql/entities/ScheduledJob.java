@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.entities;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Scheduled job entity, the lease that lets a single node run a job at a time, along with the outcome of its last
+ * run.
+ * <p>
+ * Rows are created the first time a job runs and only updated afterward, see
+ * {@link com.ccteam.graphql.config.scheduling.ClusterJobRunner}.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "scheduled_job")
+public class ScheduledJob {
+
+    /**
+     * Name of the job (primary key).
+     */
+    @Id
+    @Column(length = 64)
+    private String name;
+
+    /**
+     * Date until which the job is leased, no other node can run it before.
+     */
+    @Column(name = "locked_until", nullable = false)
+    private LocalDateTime lockedUntil;
+
+    /**
+     * Date when the current (or last) lease has been acquired.
+     */
+    @Column(name = "locked_at", nullable = false)
+    private LocalDateTime lockedAt;
+
+    /**
+     * Node holding the current (or last) lease.
+     */
+    @Column(name = "locked_by", length = 128, nullable = false)
+    private String lockedBy;
+
+    /**
+     * Where the last interrupted run stopped, handed to the next run, {@code null} when the last run completed.
+     */
+    @Column(length = 255)
+    private String checkpoint;
+
+    /**
+     * Date when the last run finished.
+     */
+    @Column(name = "last_finished_on")
+    private LocalDateTime lastFinishedOn;
+
+    /**
+     * Duration of the last run in milliseconds.
+     */
+    @Column(name = "last_duration_ms")
+    private Long lastDurationMs;
+
+    /**
+     * Number of rows processed by the last run, or so far by the current run.
+     */
+    @Column(name = "last_processed")
+    private Long lastProcessed;
+
+    /**
+     * Outcome of the last run.
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(name = "last_status", length = 16)
+    private Status lastStatus;
+
+    /**
+     * Error of the last run, if it failed.
+     */
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    /**
+     * Outcomes of a job run.
+     */
+    public enum Status {
+        /**
+         * The job is running.
+         */
+        RUNNING,
+        /**
+         * The job completed.
+         */
+        SUCCEEDED,
+        /**
+         * The job threw an exception, or lost its lease.
+         */
+        FAILED
+    }
+
+}
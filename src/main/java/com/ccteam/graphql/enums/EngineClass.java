@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.enums;
+
+import com.ccteam.graphql.entities.Bike;
+
+/**
+ * Engine size class of a {@link Bike}, used to compare lap times between bikes of similar displacement.
+ * <p>
+ * Bikes without a known engine size fall into {@link #UNKNOWN}.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+public enum EngineClass {
+    UP_TO_125(1, 125),
+    UP_TO_600(126, 600),
+    UP_TO_1000(601, 1000),
+    OVER_1000(1001, Integer.MAX_VALUE),
+    UNKNOWN(0, 0);
+
+    private final int minEngineSize;
+    private final int maxEngineSize;
+
+    EngineClass(int minEngineSize, int maxEngineSize) {
+        this.minEngineSize = minEngineSize;
+        this.maxEngineSize = maxEngineSize;
+    }
+
+    /**
+     * Get the lowest engine size of this class, in cubic centimeters.
+     *
+     * @return The lowest engine size, {@code 0} for {@link #UNKNOWN}
+     */
+    public int getMinEngineSize() {
+        return minEngineSize;
+    }
+
+    /**
+     * Get the highest engine size of this class, in cubic centimeters.
+     *
+     * @return The highest engine size, {@code 0} for {@link #UNKNOWN}
+     */
+    public int getMaxEngineSize() {
+        return maxEngineSize;
+    }
+
+    /**
+     * Get the class of the specified engine size.
+     *
+     * @param engineSize The engine size in cubic centimeters, may be {@code null}
+     * @return The matching {@link EngineClass}, {@link #UNKNOWN} if the engine size is not set
+     */
+    public static EngineClass of(Integer engineSize) {
+        if (engineSize == null || engineSize <= 0) {
+            return UNKNOWN;
+        }
+        for (EngineClass engineClass : values()) {
+            if (engineSize >= engineClass.minEngineSize && engineSize <= engineClass.maxEngineSize) {
+                return engineClass;
+            }
+        }
+        return UNKNOWN;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.model;
+
+import com.ccteam.graphql.entities.Attachment;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Metadata of an avatar {@link Attachment}, without its content, along with the id of the member owning it.
+ * <p>
+ * Loaded through a JPQL constructor expression so that the legacy {@code file} column is never read.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Getter
+@AllArgsConstructor
+public class AvatarInfo {
+
+    private final Long memberId;
+    private final Long id;
+    private final String filename;
+    private final String contentHash;
+    private final Long fileSize;
+    private final String placeholder;
+    private final LocalDateTime uploadDate;
+
+}
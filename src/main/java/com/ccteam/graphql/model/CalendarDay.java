@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.model;
+
+import com.ccteam.graphql.entities.Event;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A day of the event calendar as seen by a member: the number of {@link Event}s starting on that day, their total
+ * number of participants, and whether the member takes part in one of them.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Getter
+@AllArgsConstructor
+public class CalendarDay {
+
+    private final String date;
+    private final long eventCount;
+    private final long participantCount;
+    private final boolean registered;
+
+}
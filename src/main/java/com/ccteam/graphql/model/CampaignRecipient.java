@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A member a {@link com.ccteam.graphql.entities.MailCampaign} is to be sent to.
+ * <p>
+ * Loaded through a JPQL constructor expression so that only the columns needed for the mail are read.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Getter
+@AllArgsConstructor
+public class CampaignRecipient {
+
+    private final Long memberId;
+    private final String email;
+    private final String firstName;
+
+}
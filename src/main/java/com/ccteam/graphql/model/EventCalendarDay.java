@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.model;
+
+import com.ccteam.graphql.entities.Event;
+import lombok.Getter;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Number of {@link Event}s starting on a day and of their participants, along with the IDs of these participants.
+ * <p>
+ * Loaded through a JPQL constructor expression, one per day having events, and shared between all members, the IDs of
+ * the participants being aggregated by the database as a comma-separated list.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Getter
+public class EventCalendarDay {
+
+    private final LocalDate date;
+    private final long eventCount;
+    private final long participantCount;
+    private final Set<Long> participantIds;
+
+    public EventCalendarDay(LocalDate date, Long eventCount, Long participantCount, String participantIds) {
+        this.date = date;
+        this.eventCount = eventCount;
+        this.participantCount = participantCount;
+        this.participantIds = participantIds == null || participantIds.isEmpty() ? Set.of()
+                : Arrays.stream(participantIds.split(",")).map(Long::valueOf).collect(Collectors.toUnmodifiableSet());
+    }
+
+}
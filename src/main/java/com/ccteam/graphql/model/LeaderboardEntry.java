@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.model;
+
+import com.ccteam.graphql.entities.LapRecord;
+import com.ccteam.graphql.enums.EngineClass;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/**
+ * A {@link LapRecord} as ranked in a track leaderboard, along with the member and bike details to display.
+ * <p>
+ * Loaded through a JPQL constructor expression and kept in memory, it is immutable so it can be shared between
+ * concurrent readers.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Getter
+@AllArgsConstructor
+public class LeaderboardEntry {
+
+    private final Long lapRecordId;
+    private final Long trackId;
+    private final Long memberId;
+    private final String memberFirstName;
+    private final String memberLastName;
+    private final Long bikeId;
+    private final String bikeManufacturer;
+    private final String bikeModelName;
+    private final Integer engineSize;
+    private final int lapTime;
+    private final String conditions;
+    private final LocalDateTime recordDate;
+
+    /**
+     * Get the engine size class of the bike used for the lap.
+     *
+     * @return The {@link EngineClass} of the bike
+     */
+    public EngineClass getEngineClass() {
+        return EngineClass.of(engineSize);
+    }
+
+    /**
+     * Get a copy of this entry with the specified member names.
+     *
+     * @param firstName The member first name
+     * @param lastName  The member last name
+     * @return A new {@link LeaderboardEntry}
+     */
+    public LeaderboardEntry withMember(String firstName, String lastName) {
+        return new LeaderboardEntry(lapRecordId, trackId, memberId, firstName, lastName, bikeId, bikeManufacturer,
+                bikeModelName, engineSize, lapTime, conditions, recordDate);
+    }
+
+    /**
+     * Get a copy of this entry with the specified bike details.
+     *
+     * @param manufacturer The bike manufacturer
+     * @param modelName    The bike model name
+     * @param engineSize   The bike engine size
+     * @return A new {@link LeaderboardEntry}
+     */
+    public LeaderboardEntry withBike(String manufacturer, String modelName, Integer engineSize) {
+        return new LeaderboardEntry(lapRecordId, trackId, memberId, memberFirstName, memberLastName, bikeId,
+                manufacturer, modelName, engineSize, lapTime, conditions, recordDate);
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.model;
+
+import com.ccteam.graphql.entities.Member;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Narrow read-only view of a {@link Member}, holding only what the authentication and account flows need
+ * (credentials, verification state and lockout columns).
+ * <p>
+ * Loaded through a JPQL constructor expression so that none of the member associations are joined.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Getter
+@AllArgsConstructor
+public class MemberCredentials {
+
+    private final Long id;
+    private final String email;
+    private final String firstName;
+    private final String password;
+    private final Member.Role role;
+    private final boolean verified;
+    private final int failedLoginAttempts;
+    private final LocalDateTime lockedUntil;
+    private final LocalDateTime loginResetOn;
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.model;
+
+import com.ccteam.graphql.entities.Track;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+
+/**
+ * Immutable view of a located {@link Track} and its country, as held by the track spatial index.
+ * <p>
+ * Loaded through a JPQL constructor expression.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Getter
+@AllArgsConstructor
+public class TrackLocation {
+
+    private final Long id;
+    private final String name;
+    private final int distance;
+    private final int lapRecord;
+    private final String lapRecordInfo;
+    private final String website;
+    private final BigDecimal latitude;
+    private final BigDecimal longitude;
+    private final String countryCode;
+    private final String countryNameFr;
+    private final String countryNameEn;
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.repository;
+
+import com.ccteam.graphql.entities.Attachment;
+import jakarta.transaction.Transactional;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * {@link Attachment} repository.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Repository
+public interface AttachmentRepository extends JpaRepository<Attachment, Long> {
+
+    /**
+     * Get the IDs, greater than the given one, of the attachments whose content is still stored in the database.
+     *
+     * @return The list of attachment IDs, by ascending ID
+     */
+    @Query("select a.id from Attachment a where a.file is not null and a.id > :afterId order by a.id")
+    List<Long> findIdsWithBlobAfter(long afterId, Pageable pageable);
+
+    /**
+     * Get the hashes of the latest contents moved to the storage.
+     *
+     * @return The list of content hashes, by descending attachment ID
+     */
+    @Query("select a.contentHash from Attachment a where a.contentHash is not null order by a.id desc")
+    List<String> findLatestContentHashes(Pageable pageable);
+
+    /**
+     * Get, among the given content hashes, the ones referenced by an attachment.
+     *
+     * @return The list of referenced content hashes
+     */
+    @Query("select distinct a.contentHash from Attachment a where a.contentHash in :contentHashes")
+    List<String> findReferencedContentHashes(Collection<String> contentHashes);
+
+    /**
+     * Get the content stored in the database for the given attachment.
+     *
+     * @return The optional content, empty if the attachment doesn't exist or has been moved to the storage
+     */
+    @Query("select a.file from Attachment a where a.id = :id and a.file is not null")
+    Optional<byte[]> findBlobById(long id);
+
+    /**
+     * Record that the content of the given attachment has been moved to the storage, and drop it from the database.
+     *
+     * @return The number of rows updated
+     */
+    @Modifying
+    @Transactional
+    @Query("update Attachment a set a.contentHash = :contentHash, a.fileSize = :fileSize, a.file = null where a.id = :id")
+    int moveBlobToStorage(long id, String contentHash, long fileSize);
+
+}
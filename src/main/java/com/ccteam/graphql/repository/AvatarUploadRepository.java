@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.ccteam.graphql.repository;
+
+import com.ccteam.graphql.entities.AvatarUpload;
+import jakarta.transaction.Transactional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * {@link AvatarUpload} repository.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Repository
+public interface AvatarUploadRepository extends JpaRepository<AvatarUpload, String> {
+
+    /**
+     * Count the uploads of the given member still valid at the given date.
+     *
+     * @return The number of pending uploads
+     */
+    long countByUploaderIdAndExpiresOnAfter(Long uploaderId, LocalDateTime date);
+
+    /**
+     * Get, among the given content hashes, the ones referenced by an upload.
+     *
+     * @return The list of referenced content hashes
+     */
+    @Query("select distinct u.contentHash from AvatarUpload u where u.contentHash in :contentHashes")
+    List<String> findReferencedContentHashes(Collection<String> contentHashes);
+
+    /**
+     * Delete the given upload, in the current transaction if any.
+     *
+     * @return The number of rows deleted, 0 if the upload has already been deleted by a concurrent transaction
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from AvatarUpload u where u.token = :token")
+    int deleteByToken(String token);
+
+    /**
+     * Delete the uploads expired before the given date.
+     *
+     * @return The number of rows deleted
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from AvatarUpload u where u.expiresOn < :date")
+    int deleteExpiredBefore(LocalDateTime date);
+
+}
@@ -22,10 +22,10 @@ package com.ccteam.graphql.repository;
 
 import com.ccteam.graphql.entities.Bike;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
-import java.util.List;
-
 /**
  * {@link Bike} repository.
  *
@@ -36,13 +36,19 @@ import java.util.List;
 public interface BikeRepository extends JpaRepository<Bike, Long> {
 
     /**
-     * Find all bikes of the given member that are flagged as {@code current}, excluding the bike with the given id.
+     * Unflag, in a single statement, every bike of the given member that is flagged as {@code current},
+     * excluding the bike with the given id.
+     * <p>
+     * Must run before the excluded bike is itself flagged as current, otherwise the unique index on
+     * {@code bike.current_member_id} rejects the second current bike.
      *
      * @param memberId   The owner member id
-     * @param excludedId The id of the bike to exclude (e.g. the one
-     *                   being marked as current)
-     * @return The list of other bikes of the member that still hold the current flag
+     * @param excludedId The id of the bike to exclude (e.g. the one being marked as current)
+     * @return The number of rows updated
      */
-    List<Bike> findByMemberIdAndCurrentTrueAndIdNot(Long memberId, Long excludedId);
+    @Modifying
+    @Query("update Bike b set b.current = false " +
+            "where b.member.id = :memberId and b.current = true and b.id <> :excludedId")
+    int clearCurrentExcept(long memberId, long excludedId);
 
 }
@@ -21,10 +21,14 @@
 package com.ccteam.graphql.repository;
 
 import com.ccteam.graphql.entities.Event;
+import com.ccteam.graphql.model.EventCalendarDay;
+import com.ccteam.graphql.model.EventSummary;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -53,6 +57,67 @@ public interface EventRepository extends JpaRepository<Event, Long> {
             "order by e.startDate desc")
     List<Event> findAllCustom();
 
+    /**
+     * Find the events starting in the given period, with their track.
+     *
+     * @param from Start of the period (inclusive)
+     * @param to   End of the period (exclusive)
+     * @return The list of events, ordered by start date
+     */
+    @Query("select e from Event e " +
+            "left join fetch e.track " +
+            "where e.startDate >= :from and e.startDate < :to " +
+            "order by e.startDate")
+    List<Event> findStartingBetween(LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Count the events starting on each day of the given period and their participants, in a single grouped
+     * statement served by the index on the start date. Days without events are not returned.
+     *
+     * @param from Start of the period (inclusive)
+     * @param to   End of the period (exclusive)
+     * @return The list of days having events, ordered by date
+     */
+    @Query("select new com.ccteam.graphql.model.EventCalendarDay(cast(e.startDate as LocalDate), count(distinct e.id), " +
+            "count(p.id), listagg(cast(p.member.id as String), ',')) " +
+            "from Event e " +
+            "left join e.participants p " +
+            "where e.startDate >= :from and e.startDate < :to " +
+            "group by cast(e.startDate as LocalDate) " +
+            "order by cast(e.startDate as LocalDate)")
+    List<EventCalendarDay> findCalendarDays(LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Find the summaries of the events starting from the given date, ordered by start date.
+     *
+     * @param from     The date from which events are retrieved (inclusive)
+     * @param pageable The maximum number of events to return
+     * @return The list of event summaries
+     */
+    @Query("select new com.ccteam.graphql.model.EventSummary(e.id, e.title, e.startDate, e.endDate, t.name, size(e.participants)) " +
+            "from Event e " +
+            "left join e.track t " +
+            "where e.startDate >= :from " +
+            "order by e.startDate")
+    List<EventSummary> findSummariesStartingFrom(LocalDateTime from, Pageable pageable);
+
+    /**
+     * Find the summaries of the events the given member is registered to, starting from the given date, ordered by
+     * start date.
+     *
+     * @param memberId The member id
+     * @param from     The date from which events are retrieved (inclusive)
+     * @param pageable The maximum number of events to return
+     * @return The list of event summaries
+     */
+    @Query("select new com.ccteam.graphql.model.EventSummary(e.id, e.title, e.startDate, e.endDate, t.name, size(e.participants)) " +
+            "from EventMember em " +
+            "join em.event e " +
+            "left join e.track t " +
+            "where em.member.id = :memberId and e.startDate >= :from " +
+            "order by e.startDate")
+    List<EventSummary> findSummariesByParticipantStartingFrom(long memberId, LocalDateTime from, Pageable pageable);
+
     /**
      * Find events for the specified year.
      *
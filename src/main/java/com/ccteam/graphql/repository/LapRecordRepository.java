@@ -21,12 +21,18 @@
 package com.ccteam.graphql.repository;
 
 import com.ccteam.graphql.entities.LapRecord;
+import com.ccteam.graphql.model.LeaderboardEntry;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * {@link LapRecord} repository.
@@ -87,4 +93,55 @@ public interface LapRecordRepository extends JpaRepository<LapRecord, Long> {
             "order by lr.lapTime")
     List<LapRecord> findByTrackIdCustom(long id);
 
+    /**
+     * Stream all lap records as leaderboard entries, ordered by track then by rank (lap time, then record date).
+     * <p>
+     * Rows are fetched from the database by chunks as the stream is consumed, so the whole table is never held in
+     * memory. The stream must be consumed within a transaction and closed afterward.
+     *
+     * @return The stream of leaderboard entries
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select new com.ccteam.graphql.model.LeaderboardEntry(lr.id, t.id, m.id, m.firstName, m.lastName, " +
+            "b.id, b.manufacturer, b.modelName, b.engineSize, lr.lapTime, lr.conditions, lr.recordDate) " +
+            "from LapRecord lr " +
+            "join lr.track t " +
+            "join lr.member m " +
+            "left join lr.bike b " +
+            "order by t.id, lr.lapTime, lr.recordDate, lr.id")
+    Stream<LeaderboardEntry> streamLeaderboardEntries();
+
+    /**
+     * Find the best lap records of a track as leaderboard entries, for the given conditions and range of engine
+     * sizes, ordered by rank (lap time, then record date). Bikes without an engine size are matched as {@code 0}.
+     *
+     * @param trackId       The track id
+     * @param conditions    The track conditions
+     * @param minEngineSize The lowest engine size, inclusive
+     * @param maxEngineSize The highest engine size, inclusive
+     * @param pageable      The maximum number of entries to return
+     * @return The list of leaderboard entries
+     */
+    @Query("select new com.ccteam.graphql.model.LeaderboardEntry(lr.id, t.id, m.id, m.firstName, m.lastName, " +
+            "b.id, b.manufacturer, b.modelName, b.engineSize, lr.lapTime, lr.conditions, lr.recordDate) " +
+            "from LapRecord lr " +
+            "join lr.track t " +
+            "join lr.member m " +
+            "left join lr.bike b " +
+            "where t.id = :trackId " +
+            "and lr.conditions = :conditions " +
+            "and coalesce(b.engineSize, 0) between :minEngineSize and :maxEngineSize " +
+            "order by lr.lapTime, lr.recordDate, lr.id")
+    List<LeaderboardEntry> findLeaderboardEntries(long trackId, String conditions, int minEngineSize,
+                                                  int maxEngineSize, Pageable pageable);
+
+    /**
+     * Find the IDs of the tracks on which the given bike has lap records.
+     *
+     * @param bikeId The bike id
+     * @return The list of track IDs
+     */
+    @Query("select distinct lr.track.id from LapRecord lr where lr.bike.id = :bikeId")
+    List<Long> findTrackIdsByBikeId(long bikeId);
+
 }
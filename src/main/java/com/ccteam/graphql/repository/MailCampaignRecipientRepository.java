@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.repository;
+
+import com.ccteam.graphql.entities.MailCampaignRecipient;
+import com.ccteam.graphql.model.CampaignRecipient;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * {@link MailCampaignRecipient} repository, also reading the recipients still to be processed from the
+ * {@link com.ccteam.graphql.entities.EventMember} and {@link com.ccteam.graphql.entities.Member} tables.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Repository
+public interface MailCampaignRecipientRepository extends JpaRepository<MailCampaignRecipient, Long> {
+
+    /**
+     * Get the next participants of the given event the given campaign has not been processed for yet.
+     *
+     * @return The recipients, at most the page size, by member id
+     */
+    @Query("select new com.ccteam.graphql.model.CampaignRecipient(m.id, m.email, m.firstName) " +
+            "from EventMember em join em.member m " +
+            "where em.event.id = :eventId " +
+            "and not exists (select 1 from MailCampaignRecipient r where r.campaign.id = :campaignId and r.memberId = m.id) " +
+            "order by m.id")
+    List<CampaignRecipient> findPendingEventParticipants(long campaignId, long eventId, Pageable pageable);
+
+    /**
+     * Get the next verified members the given campaign has not been processed for yet.
+     *
+     * @return The recipients, at most the page size, by member id
+     */
+    @Query("select new com.ccteam.graphql.model.CampaignRecipient(m.id, m.email, m.firstName) " +
+            "from Member m " +
+            "where m.verified = true " +
+            "and not exists (select 1 from MailCampaignRecipient r where r.campaign.id = :campaignId and r.memberId = m.id) " +
+            "order by m.id")
+    List<CampaignRecipient> findPendingMembers(long campaignId, Pageable pageable);
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.repository;
+
+import com.ccteam.graphql.entities.MailCampaign;
+import jakarta.transaction.Transactional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * {@link MailCampaign} repository.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Repository
+public interface MailCampaignRepository extends JpaRepository<MailCampaign, Long> {
+
+    /**
+     * Check if a campaign with the given key has already been created.
+     *
+     * @return {@code true} if the campaign exists
+     */
+    boolean existsByCampaignKey(String campaignKey);
+
+    /**
+     * Get the oldest campaign with the given status.
+     *
+     * @return The optional campaign
+     */
+    Optional<MailCampaign> findFirstByStatusOrderByIdAsc(MailCampaign.Status status);
+
+    /**
+     * Mark the given campaign as completed.
+     *
+     * @return The number of rows affected
+     */
+    @Modifying
+    @Transactional
+    @Query("update MailCampaign c set c.status = com.ccteam.graphql.entities.MailCampaign.Status.COMPLETED, " +
+            "c.completedOn = :date where c.id = :id")
+    int markCompleted(long id, LocalDateTime date);
+
+}
@@ -20,13 +20,18 @@
 
 package com.ccteam.graphql.repository;
 
-import com.ccteam.graphql.entities.Attachment;
 import com.ccteam.graphql.entities.Member;
 import com.ccteam.graphql.enums.BoardRole;
+import com.ccteam.graphql.model.AvatarInfo;
+import com.ccteam.graphql.model.MemberCredentials;
+import jakarta.transaction.Transactional;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -92,6 +97,38 @@ public interface MemberRepository extends JpaRepository<Member, Long> {
             "where m.email = :email")
     Optional<Member> findByEmailCustom(String email);
 
+    /**
+     * Get the credentials and account state of the member with the given email address, without any association.
+     * <p>
+     * Used by the authentication and account flows instead of {@link #findByEmailCustom(String)}.
+     *
+     * @return The optional credentials of the member with the specified email address
+     */
+    @Query("select new com.ccteam.graphql.model.MemberCredentials(m.id, m.email, m.firstName, m.password, m.role, " +
+            "m.verified, m.failedLoginAttempts, m.lockedUntil, m.loginResetOn) " +
+            "from Member m " +
+            "where m.email = :email")
+    Optional<MemberCredentials> findCredentialsByEmail(String email);
+
+    /**
+     * Get the credentials and account state of the member with the given ID, without any association.
+     *
+     * @return The optional credentials of the member with the specified ID
+     */
+    @Query("select new com.ccteam.graphql.model.MemberCredentials(m.id, m.email, m.firstName, m.password, m.role, " +
+            "m.verified, m.failedLoginAttempts, m.lockedUntil, m.loginResetOn) " +
+            "from Member m " +
+            "where m.id = :id")
+    Optional<MemberCredentials> findCredentialsById(long id);
+
+    /**
+     * Get the ID of the member with the given email address.
+     *
+     * @return The optional ID of the member with the specified email address
+     */
+    @Query("select m.id from Member m where m.email = :email")
+    Optional<Long> findIdByEmail(String email);
+
     /**
      * Get all members from the database corresponding to the specified text filter, with required fetched relations.
      *
@@ -114,14 +151,27 @@ public interface MemberRepository extends JpaRepository<Member, Long> {
     List<Member> findFilteredCustom(String text);
 
     /**
-     * Fetch only the avatar attachment for the given member, with no Member graph load at all.
+     * Fetch only the avatar metadata for the given member, with no Member graph load and without the avatar content.
      *
      * @param memberId id of the member
-     * @return the attachment, or empty when the member doesn't exist
+     * @return the avatar metadata, or empty when the member doesn't exist
      * or has no avatar
      */
-    @Query("select m.avatar from Member m where m.id = :memberId")
-    Optional<Attachment> findAvatarByMemberId(long memberId);
+    @Query("select new com.ccteam.graphql.model.AvatarInfo(m.id, a.id, a.filename, a.contentHash, a.fileSize, a.placeholder, a.uploadDate) " +
+            "from Member m join m.avatar a " +
+            "where m.id = :memberId")
+    Optional<AvatarInfo> findAvatarInfoByMemberId(long memberId);
+
+    /**
+     * Fetch the avatar metadata of several members in a single query, for list screens.
+     *
+     * @param memberIds ids of the members
+     * @return the avatar metadata of the members that exist and have an avatar, in no particular order
+     */
+    @Query("select new com.ccteam.graphql.model.AvatarInfo(m.id, a.id, a.filename, a.contentHash, a.fileSize, a.placeholder, a.uploadDate) " +
+            "from Member m join m.avatar a " +
+            "where m.id in :memberIds")
+    List<AvatarInfo> findAvatarInfosByMemberIds(Collection<Long> memberIds);
 
     /**
      * Check whether a member exists with the given email address.
@@ -132,10 +182,98 @@ public interface MemberRepository extends JpaRepository<Member, Long> {
     boolean existsMemberByEmail(String email);
 
     /**
-     * Find all members currently holding the given board role, excluding the member with id {@code excludedId}
-     * (typically the one being assigned the role).
+     * Mark the member with the given email address as verified.
+     *
+     * @return The number of rows updated (0 when no member has this email address)
+     */
+    @Modifying
+    @Transactional
+    @Query("update Member m set m.verified = true where m.email = :email")
+    int confirmEmail(String email);
+
+    /**
+     * Set the password hash, role and registration date of the member with the given email address.
+     *
+     * @return The number of rows updated (0 when no member has this email address)
+     */
+    @Modifying
+    @Transactional
+    @Query("update Member m set m.password = :password, m.role = :role, m.registrationDate = :registrationDate " +
+            "where m.email = :email")
+    int completeRegistration(String email, String password, Member.Role role, LocalDateTime registrationDate);
+
+    /**
+     * Replace the password hash of the given member.
+     *
+     * @return The number of rows updated (0 when the member doesn't exist)
+     */
+    @Modifying
+    @Transactional
+    @Query("update Member m set m.password = :password, m.modifiedOn = :modifiedOn where m.id = :memberId")
+    int updatePassword(long memberId, String password, LocalDateTime modifiedOn);
+
+    /**
+     * Replace the password hash of the given member with the same password hashed at a higher cost, only if it has
+     * not been changed in the meantime.
+     *
+     * @return The number of rows updated (0 when the password has changed since it was read)
+     */
+    @Modifying
+    @Transactional
+    @Query("update Member m set m.password = :newPassword where m.id = :memberId and m.password = :oldPassword")
+    int rehashPassword(long memberId, String oldPassword, String newPassword);
+
+    /**
+     * Set the failed login counter and lockout timestamp of the given member, only if its counter has not been reset
+     * since the given reset date, so a stale counter never overwrites a more recent reset.
+     *
+     * @return The number of rows updated (0 when the member doesn't exist or has been reset in the meantime)
+     */
+    @Modifying
+    @Transactional
+    @Query("update Member m set m.failedLoginAttempts = :failedLoginAttempts, m.lockedUntil = :lockedUntil " +
+            "where m.id = :memberId " +
+            "and (m.loginResetOn = :loginResetOn or (m.loginResetOn is null and :loginResetOn is null))")
+    int updateLoginFailures(long memberId, int failedLoginAttempts, LocalDateTime lockedUntil,
+                            LocalDateTime loginResetOn);
+
+    /**
+     * Reset the failed login counter of the given member at the given date, along with the failures recorded since.
+     *
+     * @return The number of rows updated (0 when the member doesn't exist)
+     */
+    @Modifying
+    @Transactional
+    @Query("update Member m set m.failedLoginAttempts = :failedLoginAttempts, m.lockedUntil = :lockedUntil, " +
+            "m.loginResetOn = :loginResetOn where m.id = :memberId")
+    int resetLoginFailures(long memberId, int failedLoginAttempts, LocalDateTime lockedUntil,
+                           LocalDateTime loginResetOn);
+
+    /**
+     * Clear, in a single statement, the given board role from every member holding it, excluding the member with
+     * id {@code excludedId} (typically the one being assigned the role).
+     *
+     * @return The number of members demoted
+     */
+    @Modifying
+    @Query("update Member m set m.boardRole = null where m.boardRole = :boardRole and m.id <> :excludedId")
+    int clearBoardRole(BoardRole boardRole, long excludedId);
+
+    /**
+     * Set the board role of the given member without loading it.
+     *
+     * @return The number of rows updated (0 when the member doesn't exist)
+     */
+    @Modifying
+    @Query("update Member m set m.boardRole = :boardRole where m.id = :memberId")
+    int updateBoardRole(long memberId, BoardRole boardRole);
+
+    /**
+     * Get the persisted role of the given member, without loading it.
      *
-     * @return The list of members holding the given board role
+     * @param id The member id
+     * @return The optional role, empty if the member doesn't exist
      */
-    List<Member> findByBoardRoleAndIdNot(BoardRole boardRole, Long excludedId);
+    @Query("select m.role from Member m where m.id = :id")
+    Optional<Member.Role> findRoleById(long id);
 }
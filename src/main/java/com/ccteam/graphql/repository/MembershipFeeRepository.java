@@ -21,9 +21,12 @@
 package com.ccteam.graphql.repository;
 
 import com.ccteam.graphql.entities.MembershipFee;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 /**
@@ -43,4 +46,25 @@ public interface MembershipFeeRepository extends CrudRepository<MembershipFee, L
      * @return The optional membership fee record
      */
     Optional<MembershipFee> findByMemberIdAndYear(Long memberId, Integer year);
+
+    /**
+     * Insert the membership fee for the given member and year, or update the amount and paid flag of the existing
+     * one, in a single native statement relying on the {@code (member_id, year)} unique constraint.
+     * <p>
+     * Replaying the same call leaves the row unchanged (apart from {@code modified_on}), so concurrent or retried
+     * requests can't end up with duplicate fees nor fail on a read-then-insert race.
+     *
+     * @param memberId The member id
+     * @param year     The year of the fee
+     * @param amount   The fee amount
+     * @param paid     Whether the fee is paid
+     * @param now      The creation (or modification) timestamp
+     * @return The number of affected rows (1 when inserted, 2 when updated, 0 when unchanged)
+     */
+    @Modifying
+    @Query(value = "insert into membership_fee(member_id, year, amount, paid, created_on) " +
+            "values (:memberId, :year, :amount, :paid, :now) " +
+            "on duplicate key update amount = values(amount), paid = values(paid), modified_on = :now",
+            nativeQuery = true)
+    int upsert(long memberId, int year, float amount, boolean paid, LocalDateTime now);
 }
@@ -21,6 +21,7 @@
 package com.ccteam.graphql.repository;
 
 import com.ccteam.graphql.entities.News;
+import com.ccteam.graphql.model.NewsListProjection;
 import jakarta.transaction.Transactional;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.Page;
@@ -58,6 +59,27 @@ public interface NewsRepository extends JpaRepository<News, Long> {
            "order by n.newsDate desc")
     List<News> findAllCustom();
 
+    /**
+     * Retrieve the news items dated after the given date, without their associations.
+     * Results are ordered by newsDate descending (newest first).
+     *
+     * @param from The date after which news items are retrieved (inclusive)
+     * @return The list of news items
+     */
+    @Query("select n from News n where n.newsDate >= :from order by n.newsDate desc")
+    List<News> findPublishedSince(LocalDateTime from);
+
+    /**
+     * Retrieve the latest news items as list projections, without their content nor associations.
+     * Results are ordered by newsDate descending (newest first).
+     *
+     * @param pageable The maximum number of news items to return
+     * @return The list of news projections
+     */
+    @Query("select new com.ccteam.graphql.model.NewsListProjection(n.id, n.title, n.catchLine, n.newsDate) " +
+           "from News n order by n.newsDate desc")
+    List<NewsListProjection> findLatestListProjections(Pageable pageable);
+
     /**
      * Find news items matching the example, returning a paginated result.
      * The entity graph ensures likes and author/modifier are fetched.
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.repository;
+
+import com.ccteam.graphql.entities.Otp;
+import jakarta.transaction.Transactional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * {@link Otp} repository.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Repository
+public interface OtpRepository extends JpaRepository<Otp, Long> {
+
+    /**
+     * Get the expiration date of the OTP issued for the given e-mail address and purpose.
+     *
+     * @return The optional expiration date, empty if no OTP has been issued (or it has been purged)
+     */
+    @Query("select o.expiresOn from Otp o where o.email = :email and o.purpose = :purpose")
+    Optional<LocalDateTime> findExpiresOn(String email, Otp.Purpose purpose);
+
+    /**
+     * Get the issue date of the OTP issued for the given e-mail address and purpose.
+     *
+     * @return The optional issue date, empty if no OTP has been issued (or it has been purged)
+     */
+    @Query("select o.createdOn from Otp o where o.email = :email and o.purpose = :purpose")
+    Optional<LocalDateTime> findCreatedOn(String email, Otp.Purpose purpose);
+
+    /**
+     * Insert the OTP for the given e-mail address and purpose, or replace the existing one, resetting its attempts.
+     *
+     * @return The number of rows affected
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "insert into otp (email, purpose, code_hash, attempts, expires_on, created_on) " +
+            "values (:email, :purpose, :codeHash, 0, :expiresOn, :createdOn) " +
+            "on duplicate key update code_hash = values(code_hash), attempts = 0, " +
+            "expires_on = values(expires_on), created_on = values(created_on)", nativeQuery = true)
+    int upsert(String email, String purpose, String codeHash, LocalDateTime expiresOn, LocalDateTime createdOn);
+
+    /**
+     * Consume the OTP if the hash matches, it has not expired and has attempts left.
+     * <p>
+     * The OTP is expired right away, so it can't be used twice.
+     *
+     * @return 1 if the OTP has been consumed, 0 otherwise
+     */
+    @Modifying
+    @Transactional
+    @Query("update Otp o set o.expiresOn = :date " +
+            "where o.email = :email and o.purpose = :purpose and o.codeHash = :codeHash " +
+            "and o.expiresOn > :date and o.attempts < :maxAttempts")
+    int consume(String email, Otp.Purpose purpose, String codeHash, LocalDateTime date, int maxAttempts);
+
+    /**
+     * Count a failed verification attempt against the OTP, if it has not expired and has attempts left.
+     *
+     * @return 1 if the attempt has been counted, 0 if there is no usable OTP
+     */
+    @Modifying
+    @Transactional
+    @Query("update Otp o set o.attempts = o.attempts + 1 " +
+            "where o.email = :email and o.purpose = :purpose and o.expiresOn > :date and o.attempts < :maxAttempts")
+    int incrementAttempts(String email, Otp.Purpose purpose, LocalDateTime date, int maxAttempts);
+
+    /**
+     * Delete at most {@code limit} OTP expired before the given date, walking the expiration index.
+     *
+     * @return The number of rows deleted
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "delete from otp where expires_on < :date limit :limit", nativeQuery = true)
+    int deleteExpiredBefore(LocalDateTime date, int limit);
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.repository;
+
+import com.ccteam.graphql.entities.OutboxMail;
+import jakarta.transaction.Transactional;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * {@link OutboxMail} repository.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Repository
+public interface OutboxMailRepository extends JpaRepository<OutboxMail, Long> {
+
+    /**
+     * Get the pending mails whose next delivery attempt is due at the given date, oldest first.
+     *
+     * @return The due mails, at most the page size
+     */
+    @Query("select m from OutboxMail m " +
+            "where m.status = com.ccteam.graphql.entities.OutboxMail.Status.PENDING and m.nextAttemptOn <= :date " +
+            "order by m.nextAttemptOn")
+    List<OutboxMail> findDue(LocalDateTime date, Pageable pageable);
+
+    /**
+     * Claim the given pending mail by pushing its next attempt date forward, if it has not been claimed since it was
+     * read. Prevents two nodes from sending the same mail, and makes it due again if the node dies while sending it.
+     *
+     * @return 1 if the mail has been claimed, 0 if another node got it first
+     */
+    @Modifying
+    @Transactional
+    @Query("update OutboxMail m set m.nextAttemptOn = :leaseUntil " +
+            "where m.id = :id and m.status = com.ccteam.graphql.entities.OutboxMail.Status.PENDING " +
+            "and m.nextAttemptOn = :nextAttemptOn")
+    int claim(long id, LocalDateTime nextAttemptOn, LocalDateTime leaseUntil);
+
+    /**
+     * Mark the given mail as sent, and clear its body which may carry an OTP in clear.
+     *
+     * @return The number of rows affected
+     */
+    @Modifying
+    @Transactional
+    @Query("update OutboxMail m set m.status = com.ccteam.graphql.entities.OutboxMail.Status.SENT, m.sentOn = :date, " +
+            "m.lastError = null, m.body = '' where m.id = :id")
+    int markSent(long id, LocalDateTime date);
+
+    /**
+     * Record a failed delivery attempt of the given mail, with the status and the date of the next attempt. The body
+     * of a mail given up on is cleared, as it may carry an OTP in clear.
+     *
+     * @return The number of rows affected
+     */
+    @Modifying
+    @Transactional
+    @Query("update OutboxMail m set m.status = :status, m.attempts = :attempts, m.nextAttemptOn = :nextAttemptOn, " +
+            "m.lastError = :error, " +
+            "m.body = case when :status = com.ccteam.graphql.entities.OutboxMail.Status.DEAD then '' else m.body end " +
+            "where m.id = :id")
+    int markFailed(long id, OutboxMail.Status status, int attempts, LocalDateTime nextAttemptOn, String error);
+
+    /**
+     * Count the mails of the given status.
+     *
+     * @return The number of mails
+     */
+    long countByStatus(OutboxMail.Status status);
+
+    /**
+     * Delete at most {@code limit} mails sent before the given date.
+     *
+     * @return The number of rows deleted
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "delete from mail_outbox where status = 'SENT' and sent_on < :date limit :limit", nativeQuery = true)
+    int deleteSentBefore(LocalDateTime date, int limit);
+
+    /**
+     * Delete at most {@code limit} mails given up on before the given date (their last attempt date).
+     *
+     * @return The number of rows deleted
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "delete from mail_outbox where status = 'DEAD' and next_attempt_on < :date limit :limit", nativeQuery = true)
+    int deleteDeadBefore(LocalDateTime date, int limit);
+
+}
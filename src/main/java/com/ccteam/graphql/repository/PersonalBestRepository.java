@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.repository;
+
+import com.ccteam.graphql.entities.PersonalBest;
+import jakarta.transaction.Transactional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * {@link PersonalBest} repository.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Repository
+public interface PersonalBestRepository extends JpaRepository<PersonalBest, Long> {
+
+    /**
+     * Find the personal bests of the given members, with member, track (and its country) and bike fetched, ordered by
+     * track name.
+     *
+     * @param memberIds The member IDs
+     * @return The list of personal bests
+     */
+    @Query("select pb from PersonalBest pb " +
+            "join fetch pb.member m " +
+            "join fetch pb.track t " +
+            "join fetch t.country " +
+            "join fetch pb.bike " +
+            "where m.id in :memberIds " +
+            "order by t.name, pb.lapTime")
+    List<PersonalBest> findByMemberIds(Collection<Long> memberIds);
+
+    /**
+     * Find the personal bests set on the given tracks, with member, track (and its country) and bike fetched, ordered
+     * by lap time.
+     *
+     * @param trackIds The track IDs
+     * @return The list of personal bests
+     */
+    @Query("select pb from PersonalBest pb " +
+            "join fetch pb.member " +
+            "join fetch pb.track t " +
+            "join fetch t.country " +
+            "join fetch pb.bike " +
+            "where t.id in :trackIds " +
+            "order by pb.lapTime, pb.recordDate, pb.lapRecord.id")
+    List<PersonalBest> findByTrackIds(Collection<Long> trackIds);
+
+    /**
+     * Check if the given lap record is a personal best.
+     *
+     * @param lapRecordId The lap record ID
+     * @return {@code true} if a personal best references the lap record, {@code false} otherwise
+     */
+    boolean existsByLapRecordId(long lapRecordId);
+
+    /**
+     * Record the given lap as the personal best of its member, track and bike, unless the current personal best comes
+     * first in the order used everywhere else: lap time, then record date, then lap record ID. Done in one statement,
+     * so concurrent laps of the same member cannot both insert a row.
+     * <p>
+     * Assignments being evaluated in order, the columns compared are updated last, the ones following the lap record
+     * ID only checking whether it has just been replaced.
+     *
+     * @return The number of affected rows (1 if inserted, 2 if updated, 0 if unchanged)
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "insert into personal_best (member_id, track_id, bike_id, lap_record_id, lap_time, record_date, conditions, modified_on) " +
+            "values (:memberId, :trackId, :bikeId, :lapRecordId, :lapTime, :recordDate, :conditions, :now) " +
+            "on duplicate key update " +
+            "conditions = if((values(lap_time), values(record_date), values(lap_record_id)) < (lap_time, record_date, lap_record_id), " +
+            "values(conditions), conditions), " +
+            "modified_on = if((values(lap_time), values(record_date), values(lap_record_id)) < (lap_time, record_date, lap_record_id), " +
+            "values(modified_on), modified_on), " +
+            "lap_record_id = if((values(lap_time), values(record_date), values(lap_record_id)) < (lap_time, record_date, lap_record_id), " +
+            "values(lap_record_id), lap_record_id), " +
+            "record_date = if(lap_record_id = values(lap_record_id), values(record_date), record_date), " +
+            "lap_time = if(lap_record_id = values(lap_record_id), values(lap_time), lap_time)", nativeQuery = true)
+    int offer(long memberId, long trackId, long bikeId, long lapRecordId, int lapTime, LocalDateTime recordDate,
+              String conditions, LocalDateTime now);
+
+    /**
+     * Delete the personal best of the given member, track and bike.
+     *
+     * @return The number of deleted rows
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "delete from personal_best where member_id = :memberId and track_id = :trackId and bike_id = :bikeId",
+            nativeQuery = true)
+    int deleteByKey(long memberId, long trackId, long bikeId);
+
+    /**
+     * Record the best lap of the given member, track and bike as its personal best, from all of its laps except the
+     * excluded one. Nothing is inserted if there is no such lap. The personal best must have been deleted first.
+     *
+     * @param excludedLapRecordId The ID of a lap record to ignore (being deleted), {@code null} for none
+     * @return The number of inserted rows
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "insert into personal_best (member_id, track_id, bike_id, lap_record_id, lap_time, record_date, conditions, modified_on) " +
+            "select lr.member_id, lr.track_id, lr.bike_id, lr.id, lr.lap_time, lr.record_date, lr.conditions, :now " +
+            "from lap_record lr " +
+            "where lr.member_id = :memberId and lr.track_id = :trackId and lr.bike_id = :bikeId " +
+            "and (:excludedLapRecordId is null or lr.id <> :excludedLapRecordId) " +
+            "order by lr.lap_time, lr.record_date, lr.id " +
+            "limit 1", nativeQuery = true)
+    int insertBest(long memberId, long trackId, long bikeId, Long excludedLapRecordId, LocalDateTime now);
+
+    /**
+     * Record the personal bests missing for any member, track and bike having laps, i.e. those of the laps recorded
+     * before personal bests were maintained. Laps without bike are ignored.
+     *
+     * @return The number of inserted rows
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "insert ignore into personal_best (member_id, track_id, bike_id, lap_record_id, lap_time, record_date, conditions, modified_on) " +
+            "select best.member_id, best.track_id, best.bike_id, best.id, best.lap_time, best.record_date, best.conditions, :now " +
+            "from (select lr.*, row_number() over (partition by lr.member_id, lr.track_id, lr.bike_id " +
+            "order by lr.lap_time, lr.record_date, lr.id) as position " +
+            "from lap_record lr " +
+            "where lr.bike_id is not null " +
+            "and not exists (select 1 from personal_best pb " +
+            "where pb.member_id = lr.member_id and pb.track_id = lr.track_id and pb.bike_id = lr.bike_id)) best " +
+            "where best.position = 1", nativeQuery = true)
+    int insertMissing(LocalDateTime now);
+
+}
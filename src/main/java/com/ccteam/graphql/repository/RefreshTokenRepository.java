@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.repository;
+
+import com.ccteam.graphql.entities.RefreshToken;
+import com.ccteam.graphql.model.RefreshTokenInfo;
+import jakarta.transaction.Transactional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * {@link RefreshToken} repository.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Repository
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
+
+    /**
+     * Get a refresh token given its hash, along with the member data needed to issue a new access token.
+     *
+     * @param tokenHash The Base64 encoded SHA-256 hash of the token
+     * @return The optional refresh token information
+     */
+    @Query("select new com.ccteam.graphql.model.RefreshTokenInfo(" +
+            "rt.id, rt.sessionId, rt.expiresOn, rt.usedOn, rt.revoked, m.id, m.email, m.role) " +
+            "from RefreshToken rt join rt.member m " +
+            "where rt.tokenHash = :tokenHash")
+    Optional<RefreshTokenInfo> findInfoByTokenHash(String tokenHash);
+
+    /**
+     * Mark the given refresh token as used, only if it has not been used or revoked yet, so concurrent exchanges of
+     * the same token can't both succeed.
+     *
+     * @return The number of rows updated (0 when the token has already been used or revoked)
+     */
+    @Modifying
+    @Transactional
+    @Query("update RefreshToken rt set rt.usedOn = :usedOn " +
+            "where rt.id = :id and rt.usedOn is null and rt.revoked = false")
+    int markUsed(long id, LocalDateTime usedOn);
+
+    /**
+     * Revoke all refresh tokens of the given session.
+     *
+     * @return The number of rows updated
+     */
+    @Modifying
+    @Transactional
+    @Query("update RefreshToken rt set rt.revoked = true where rt.sessionId = :sessionId")
+    int revokeSession(String sessionId);
+
+    /**
+     * Delete the refresh tokens expired before the given date.
+     *
+     * @return The number of rows deleted
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "delete from refresh_token where expires_on < :date limit :limit", nativeQuery = true)
+    int deleteExpiredBefore(LocalDateTime date, int limit);
+
+}
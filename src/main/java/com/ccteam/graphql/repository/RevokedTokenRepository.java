@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.repository;
+
+import com.ccteam.graphql.entities.RevokedToken;
+import jakarta.transaction.Transactional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * {@link RevokedToken} repository.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Repository
+public interface RevokedTokenRepository extends JpaRepository<RevokedToken, String> {
+
+    /**
+     * Get the identifiers of the revocations still in effect at the given date.
+     *
+     * @return The list of revoked session identifiers
+     */
+    @Query("select r.id from RevokedToken r where r.expiresOn > :date")
+    List<String> findIdsActiveAt(LocalDateTime date);
+
+    /**
+     * Check whether the given session identifier is revoked at the given date.
+     *
+     * @return {@code true} if revoked
+     */
+    boolean existsByIdAndExpiresOnAfter(String id, LocalDateTime date);
+
+    /**
+     * Delete the revocations expired before the given date.
+     *
+     * @return The number of rows deleted
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from RevokedToken r where r.expiresOn < :date")
+    int deleteExpiredBefore(LocalDateTime date);
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.repository;
+
+import com.ccteam.graphql.entities.ScheduledJob;
+import jakarta.transaction.Transactional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * {@link ScheduledJob} repository.
+ * <p>
+ * The lease is only ever taken and given back through conditional updates, so that two nodes can't hold it at once.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Repository
+public interface ScheduledJobRepository extends JpaRepository<ScheduledJob, String> {
+
+    /**
+     * Get all the jobs, by name.
+     *
+     * @return The list of jobs
+     */
+    List<ScheduledJob> findAllByOrderByNameAsc();
+
+    /**
+     * Create the row of the given job, unless it already exists. The job is left free.
+     *
+     * @return 1 if the row has been created, 0 if it already existed
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "insert ignore into scheduled_job (name, locked_until, locked_at, locked_by) " +
+            "values (:name, :date, :date, '')", nativeQuery = true)
+    int insertIfAbsent(String name, LocalDateTime date);
+
+    /**
+     * Lease the given job until the given date, if it is free.
+     *
+     * @return 1 if the lease has been acquired, 0 if another node holds it
+     */
+    @Modifying
+    @Transactional
+    @Query("update ScheduledJob j set j.lockedUntil = :lockedUntil, j.lockedAt = :date, j.lockedBy = :node, " +
+            "j.lastStatus = com.ccteam.graphql.entities.ScheduledJob.Status.RUNNING, j.lastProcessed = 0 " +
+            "where j.name = :name and j.lockedUntil <= :date")
+    int acquire(String name, String node, LocalDateTime date, LocalDateTime lockedUntil);
+
+    /**
+     * Record the progress of the given job and extend its lease, if the given node still holds it.
+     *
+     * @return 1 if the lease has been extended, 0 if it has been lost
+     */
+    @Modifying
+    @Transactional
+    @Query("update ScheduledJob j set j.lockedUntil = :lockedUntil, j.lastProcessed = :processed, " +
+            "j.checkpoint = :checkpoint " +
+            "where j.name = :name and j.lockedBy = :node and j.lockedAt = :lockedAt and j.lockedUntil > :date")
+    int extend(String name, String node, LocalDateTime lockedAt, LocalDateTime date, LocalDateTime lockedUntil,
+               long processed, String checkpoint);
+
+    /**
+     * Record the outcome of the run of the given job and give the lease back, keeping it until the given date at
+     * least, if the given node still holds it.
+     *
+     * @return 1 if the lease has been given back, 0 if it had been lost
+     */
+    @Modifying
+    @Transactional
+    @Query("update ScheduledJob j set j.lockedUntil = :lockedUntil, j.lastFinishedOn = :date, " +
+            "j.lastDurationMs = :durationMs, j.lastProcessed = :processed, j.lastStatus = :status, " +
+            "j.lastError = :error, j.checkpoint = :checkpoint " +
+            "where j.name = :name and j.lockedBy = :node and j.lockedAt = :lockedAt")
+    int release(String name, String node, LocalDateTime lockedAt, LocalDateTime date, LocalDateTime lockedUntil,
+                long durationMs, long processed, ScheduledJob.Status status, String error, String checkpoint);
+
+    /**
+     * Get the checkpoint left by the last run of the given job.
+     *
+     * @return The checkpoint, {@code null} if the last run completed
+     */
+    @Query("select j.checkpoint from ScheduledJob j where j.name = :name")
+    String findCheckpoint(String name);
+
+}
@@ -21,6 +21,7 @@
 package com.ccteam.graphql.repository;
 
 import com.ccteam.graphql.entities.Track;
+import com.ccteam.graphql.model.TrackLocation;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
@@ -48,6 +49,18 @@ public interface TrackRepository extends JpaRepository<Track, Long> {
             "order by t.name")
     List<Track> findAllCustom();
 
+    /**
+     * Find all the tracks having coordinates, as immutable views with their country.
+     *
+     * @return The list of track locations
+     */
+    @Query("select new com.ccteam.graphql.model.TrackLocation(t.id, t.name, t.distance, t.lapRecord, t.lapRecordInfo, " +
+            "t.website, t.latitude, t.longitude, c.code, c.nameFr, c.nameEn) " +
+            "from Track t " +
+            "join t.country c " +
+            "where t.latitude is not null and t.longitude is not null")
+    List<TrackLocation> findAllLocations();
+
     /**
      * Find a track by id and fetch its country eagerly.
      *
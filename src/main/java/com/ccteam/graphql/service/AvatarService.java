@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.service;
+
+import com.ccteam.graphql.config.storage.AvatarCache;
+import com.ccteam.graphql.config.storage.AvatarStorage;
+import com.ccteam.graphql.config.storage.AvatarStorageProperties;
+import com.ccteam.graphql.entities.Attachment;
+import com.ccteam.graphql.model.AvatarInfo;
+import com.ccteam.graphql.repository.AttachmentRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Avatar {@link Attachment} service.
+ * <p>
+ * Avatar contents are kept by the {@link AvatarStorage}, only their metadata are stored in the database. Storing a
+ * content also generates its thumbnails, see {@link AvatarThumbnailService}. As long as the storage directory is not
+ * declared as shared by all the nodes, contents are still stored in the database instead, so that every node can
+ * serve them, and have no thumbnail.
+ * <p>
+ * Uploaded files are streamed to a temporary file, never loaded in memory as a whole, and only accepted when their
+ * first bytes are those of a PNG, JPEG, GIF or WebP image, and when the dimensions declared in their header are within
+ * the configured pixel count. A reduced version of the image is decoded to compute a BlurHash stored with the
+ * metadata, so that clients can render a placeholder without requesting the content. The thumbnails are generated in
+ * the background from the stored content.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Service
+@Slf4j
+public class AvatarService {
+
+    /**
+     * Number of BlurHash components on each axis, 4x4 gives a 36 characters placeholder.
+     */
+    private static final int PLACEHOLDER_COMPONENTS = 4;
+
+    /**
+     * Size the image is reduced to while being decoded for the placeholder, which only needs a few pixels per side.
+     */
+    private static final int PLACEHOLDER_DECODE_SIZE = 64;
+
+    private final AvatarStorage avatarStorage;
+    private final AttachmentRepository attachmentRepository;
+    private final AvatarThumbnailService avatarThumbnailService;
+    private final AvatarCache avatarCache;
+    private final AvatarStorageProperties avatarStorageProperties;
+
+    public AvatarService(AvatarStorage avatarStorage, AttachmentRepository attachmentRepository,
+                         AvatarThumbnailService avatarThumbnailService, AvatarCache avatarCache,
+                         AvatarStorageProperties avatarStorageProperties) {
+        this.avatarStorage = avatarStorage;
+        this.attachmentRepository = attachmentRepository;
+        this.avatarThumbnailService = avatarThumbnailService;
+        this.avatarCache = avatarCache;
+        this.avatarStorageProperties = avatarStorageProperties;
+    }
+
+    /**
+     * An avatar file not attached to any member yet.
+     *
+     * @param contentHash The content hash, {@code null} if the content is not in the storage
+     * @param content     The content, to be stored in the database, {@code null} if it is in the storage
+     * @param fileSize    The content size in bytes
+     * @param filename    The file name, with an extension matching the image format
+     * @param placeholder The BlurHash of the image, {@code null} if it could not be decoded
+     */
+    public record StoredAvatar(String contentHash, byte[] content, long fileSize, String filename,
+                               String placeholder) {
+    }
+
+    /**
+     * Validate the uploaded file and store it, starting the generation of its thumbnails.
+     *
+     * @param file The uploaded file
+     * @return The stored avatar
+     * @throws AvatarUploadRejectedException if the file is empty, too large or not a supported image
+     * @throws IOException                   if the file could not be read or stored
+     */
+    public StoredAvatar store(MultipartFile file) throws IOException {
+        if (file.isEmpty()) {
+            throw new AvatarUploadRejectedException(AvatarUploadRejectedException.Reason.EMPTY, "The avatar file is empty");
+        }
+        if (file.getSize() > avatarStorageProperties.getUploadMaxSize().toBytes()) {
+            throw new AvatarUploadRejectedException(AvatarUploadRejectedException.Reason.TOO_LARGE,
+                    "The avatar file is larger than " + avatarStorageProperties.getUploadMaxSize());
+        }
+
+        final Path temp = Files.createTempFile("avatar-upload-", ".tmp");
+        try {
+            file.transferTo(temp);
+            final String extension = imageExtension(temp);
+            if (extension == null) {
+                throw new AvatarUploadRejectedException(AvatarUploadRejectedException.Reason.UNSUPPORTED_FORMAT,
+                        "The avatar file is not a PNG, JPEG, GIF or WebP image");
+            }
+            final BufferedImage image = decode(temp);
+            final String filename = filename(file.getOriginalFilename(), extension);
+            if (!avatarStorageProperties.isShared()) {
+                // the storage directory is local to this node, the other ones could not serve the content
+                final byte[] content = Files.readAllBytes(temp);
+                return new StoredAvatar(null, content, content.length, filename, placeholder(image));
+            }
+            final String contentHash = avatarStorage.store(temp);
+            avatarThumbnailService.generateAsync(contentHash);
+            return new StoredAvatar(contentHash, null, Files.size(temp), filename, placeholder(image));
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Make the given attachment point to the given stored avatar.
+     * <p>
+     * The previous content of the attachment, if any, is dropped from the {@link AvatarCache}.
+     *
+     * @param attachment The attachment to be updated, either new or the current avatar of a member
+     * @param avatar     The stored avatar
+     * @return The updated attachment, to be saved by the caller
+     */
+    public Attachment setContent(Attachment attachment, StoredAvatar avatar) {
+        if (attachment.getContentHash() != null && !attachment.getContentHash().equals(avatar.contentHash())) {
+            avatarCache.invalidate(attachment.getContentHash());
+        }
+        attachment.setContentHash(avatar.contentHash());
+        attachment.setFileSize(avatar.fileSize());
+        attachment.setFile(avatar.content());
+        attachment.setFilename(avatar.filename());
+        attachment.setPlaceholder(avatar.placeholder());
+        attachment.setUploadDate(LocalDateTime.now());
+        return attachment;
+    }
+
+    /**
+     * Load the content of the given attachment.
+     *
+     * @param attachment The attachment metadata
+     * @return The optional content, empty if it is missing from the storage
+     */
+    public Optional<Resource> load(AvatarInfo attachment) {
+        if (attachment.getContentHash() == null) {
+            // not moved to the storage yet
+            return attachmentRepository.findBlobById(attachment.getId()).map(ByteArrayResource::new);
+        }
+        final Optional<Resource> resource = avatarStorage.load(attachment.getContentHash());
+        if (resource.isEmpty()) {
+            log.warn("Content {} of attachment {} is missing from the avatar storage",
+                    attachment.getContentHash(), attachment.getId());
+        }
+        return resource;
+    }
+
+    /**
+     * Get the version of the content of the given attachment, which changes whenever the content does.
+     * <p>
+     * It is the content hash, or for contents not moved to the storage yet the attachment id and its upload
+     * timestamp. The {@code ETag} of the avatar is this version, followed by {@code -<size>} for a thumbnail.
+     *
+     * @param attachment The attachment metadata
+     * @return The content version
+     */
+    public String getVersion(AvatarInfo attachment) {
+        return attachment.getContentHash() != null
+                ? attachment.getContentHash()
+                : attachment.getId() + "-" + attachment.getUploadDate().toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /**
+     * Find the thumbnail of the given attachment closest to the requested size.
+     *
+     * @param attachment    The attachment metadata
+     * @param requestedSize The size requested by the client
+     * @return The optional thumbnail, empty if the original content should be served instead
+     */
+    public Optional<AvatarThumbnailService.Thumbnail> findThumbnail(AvatarInfo attachment, int requestedSize) {
+        if (attachment.getContentHash() == null) {
+            // not moved to the storage yet, so no thumbnail either
+            return Optional.empty();
+        }
+        return avatarThumbnailService.find(attachment.getContentHash(), requestedSize);
+    }
+
+    /**
+     * Decode a reduced version of the given image file, best effort as not all formats can be decoded (WebP).
+     *
+     * @return The image, {@code null} if it could not be decoded
+     * @throws AvatarUploadRejectedException if the image has more pixels than the configured maximum
+     */
+    private BufferedImage decode(Path file) {
+        try {
+            final BufferedImage image = avatarThumbnailService.decode(file.toFile(), PLACEHOLDER_DECODE_SIZE);
+            if (image == null) {
+                log.info("Avatar image format not supported, no placeholder computed");
+            }
+            return image;
+        } catch (AvatarThumbnailService.ImageTooLargeException e) {
+            throw new AvatarUploadRejectedException(AvatarUploadRejectedException.Reason.TOO_LARGE, e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Error while decoding the avatar image", e);
+            return null;
+        }
+    }
+
+    /**
+     * Compute the BlurHash of the given image.
+     *
+     * @return The BlurHash, {@code null} if the image could not be decoded
+     */
+    private static String placeholder(BufferedImage image) {
+        if (image == null) {
+            return null;
+        }
+        try {
+            return BlurHashEncoder.encode(image, PLACEHOLDER_COMPONENTS, PLACEHOLDER_COMPONENTS);
+        } catch (RuntimeException e) {
+            log.warn("Error while computing the avatar placeholder", e);
+            return null;
+        }
+    }
+
+    /**
+     * Detect the image format from the magic bytes at the start of the file.
+     *
+     * @return The file extension of the format, {@code null} if not a supported image
+     */
+    private static String imageExtension(Path file) throws IOException {
+        final byte[] header;
+        try (InputStream in = Files.newInputStream(file)) {
+            header = in.readNBytes(12);
+        }
+        if (startsWith(header, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) return "png";
+        if (startsWith(header, 0, 0xFF, 0xD8, 0xFF)) return "jpg";
+        if (startsWith(header, 0, 'G', 'I', 'F', '8')) return "gif";
+        if (startsWith(header, 0, 'R', 'I', 'F', 'F') && startsWith(header, 8, 'W', 'E', 'B', 'P')) return "webp";
+        return null;
+    }
+
+    private static boolean startsWith(byte[] header, int offset, int... magic) {
+        if (header.length < offset + magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if ((header[offset + i] & 0xFF) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Keep the original file name when its extension matches the detected format, as the content type is served
+     * from it.
+     */
+    private static String filename(String originalFilename, String extension) {
+        if (originalFilename != null && !originalFilename.isBlank() && originalFilename.length() <= 255) {
+            final String lower = originalFilename.toLowerCase(Locale.ROOT);
+            if (lower.endsWith("." + extension) || ("jpg".equals(extension) && lower.endsWith(".jpeg"))) {
+                return originalFilename;
+            }
+        }
+        return "avatar." + extension;
+    }
+
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.service;
+
+import com.ccteam.graphql.config.storage.AvatarStorage;
+import com.ccteam.graphql.config.storage.AvatarStorageProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generate and serve the avatar thumbnails.
+ * <p>
+ * Thumbnails of the configured sizes are generated in the background when an avatar is stored, and kept by the
+ * {@link AvatarStorage} as variants of the original content. They are PNG when the original has transparency, JPEG
+ * otherwise. No thumbnail is generated for a size larger than the original, which is then served instead.
+ * <p>
+ * Contents stored before thumbnails existed get theirs the first time one is requested.
+ * <p>
+ * Images are only decoded once their dimensions, read from their header, are within the configured pixel count, as a
+ * small file can declare a huge image that would exhaust the memory once decoded.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Service
+@Slf4j
+public class AvatarThumbnailService {
+
+    private static final List<String> FORMATS = List.of("jpg", "png");
+
+    /**
+     * Maximum number of hashes remembered in {@link #scheduled}, it is cleared past it, which at worst generates some
+     * thumbnails again.
+     */
+    private static final int MAX_SCHEDULED = 10000;
+
+    private final AvatarStorage avatarStorage;
+    private final List<Integer> sizes;
+    private final long maxImagePixels;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Hashes of the contents whose thumbnails have been generated or scheduled recently.
+     */
+    private final Set<String> scheduled = ConcurrentHashMap.newKeySet();
+
+    public AvatarThumbnailService(AvatarStorage avatarStorage, AvatarStorageProperties avatarStorageProperties) {
+        this.avatarStorage = avatarStorage;
+        this.sizes = avatarStorageProperties.getThumbnailSizes().stream().sorted().toList();
+        this.maxImagePixels = avatarStorageProperties.getMaxImagePixels();
+        final int threads = Math.max(1, avatarStorageProperties.getThumbnailThreads());
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, avatarStorageProperties.getThumbnailQueueCapacity())),
+                r -> {
+                    final Thread thread = new Thread(r, "avatar-thumbnail-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * A thumbnail found in the storage.
+     *
+     * @param size     The thumbnail size
+     * @param resource The thumbnail content
+     */
+    public record Thumbnail(int size, Resource resource) {
+    }
+
+    /**
+     * Thrown when an image declares more pixels than the configured maximum.
+     */
+    public static class ImageTooLargeException extends IIOException {
+
+        public ImageTooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Decode the given image, after checking the dimensions declared in its header.
+     *
+     * @param input The image, a {@link java.io.File} or an {@link InputStream}
+     * @return The decoded image, {@code null} if its format is not supported
+     * @throws ImageTooLargeException if the image has more pixels than the configured maximum
+     * @throws IOException            if the image could not be read
+     */
+    public BufferedImage decode(Object input) throws IOException {
+        return decode(input, 0);
+    }
+
+    /**
+     * Decode the given image reduced to about the given size, only reading every n-th pixel, so that the decoded
+     * image stays small whatever the size of the original.
+     *
+     * @param input       The image, a {@link java.io.File} or an {@link InputStream}
+     * @param longestSide The size of the longest side to reduce the image to, at least, {@code 0} to decode it whole
+     * @return The decoded image, {@code null} if its format is not supported
+     * @throws ImageTooLargeException if the image has more pixels than the configured maximum
+     * @throws IOException            if the image could not be read
+     */
+    public BufferedImage decode(Object input, int longestSide) throws IOException {
+        try (ImageInputStream stream = ImageIO.createImageInputStream(input)) {
+            if (stream == null) {
+                return null;
+            }
+            final Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            final ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                final long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxImagePixels) {
+                    throw new ImageTooLargeException("Image of " + reader.getWidth(0) + "x" + reader.getHeight(0)
+                            + " pixels is larger than the maximum of " + maxImagePixels + " pixels");
+                }
+                final ImageReadParam param = reader.getDefaultReadParam();
+                final int step = longestSide > 0 ? Math.max(reader.getWidth(0), reader.getHeight(0)) / longestSide : 1;
+                if (step > 1) {
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Find the thumbnail of the given content closest to the requested size, that is the smallest one at least as
+     * large, so that the client never has to upscale it.
+     *
+     * @param contentHash   The hash of the original content
+     * @param requestedSize The size requested by the client
+     * @return The optional thumbnail, empty if the requested size is larger than all thumbnails, or if the thumbnail
+     * does not exist (not generated yet, or the original is smaller)
+     */
+    public Optional<Thumbnail> find(String contentHash, int requestedSize) {
+        final Optional<Integer> size = sizes.stream().filter(s -> s >= requestedSize).findFirst();
+        if (size.isEmpty()) {
+            return Optional.empty();
+        }
+        for (String format : FORMATS) {
+            final Optional<Resource> resource = avatarStorage.loadVariant(contentHash, size.get() + "." + format);
+            if (resource.isPresent()) {
+                return Optional.of(new Thumbnail(size.get(), resource.get()));
+            }
+        }
+        // contents stored before thumbnails existed, generate them for the next requests
+        generateAsync(contentHash);
+        return Optional.empty();
+    }
+
+    /**
+     * Generate the thumbnails of the given content in the background, best effort : if too many are waiting, this one
+     * is skipped and will be generated on the first request of a thumbnail.
+     * <p>
+     * Only the hash is queued, the content is read from the storage and decoded by the thread generating the
+     * thumbnails, so that the waiting tasks don't hold decoded images in memory.
+     *
+     * @param contentHash The hash of the original content
+     */
+    public void generateAsync(String contentHash) {
+        if (scheduled.size() >= MAX_SCHEDULED) {
+            scheduled.clear();
+        }
+        if (!scheduled.add(contentHash)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    generate(contentHash, read(contentHash));
+                } catch (Exception e) {
+                    log.error("Error while generating the thumbnails of avatar {}", contentHash, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            scheduled.remove(contentHash);
+            log.info("Avatar thumbnail queue full, thumbnails of {} skipped", contentHash);
+        }
+    }
+
+    private BufferedImage read(String contentHash) throws IOException {
+        final Optional<Resource> resource = avatarStorage.load(contentHash);
+        if (resource.isEmpty()) {
+            return null;
+        }
+        try (InputStream in = resource.get().getInputStream()) {
+            final BufferedImage image = decode(in);
+            if (image == null) {
+                log.info("Avatar {} is not in a supported image format, no thumbnail generated", contentHash);
+            }
+            return image;
+        } catch (ImageTooLargeException e) {
+            log.info("Avatar {} is too large to be decoded, no thumbnail generated : {}", contentHash, e.getMessage());
+            return null;
+        }
+    }
+
+    private void generate(String contentHash, BufferedImage image) throws IOException {
+        if (image == null) {
+            return;
+        }
+        final boolean alpha = image.getColorModel().hasAlpha();
+        final int longestSide = Math.max(image.getWidth(), image.getHeight());
+
+        for (int size : sizes) {
+            if (size >= longestSide) {
+                break;
+            }
+            final int width = Math.max(1, image.getWidth() * size / longestSide);
+            final int height = Math.max(1, image.getHeight() * size / longestSide);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(scale(image, width, height, alpha), alpha ? "png" : "jpeg", out);
+            avatarStorage.storeVariant(contentHash, size + (alpha ? ".png" : ".jpg"), out.toByteArray());
+        }
+        log.debug("Thumbnails generated for avatar {}", contentHash);
+    }
+
+    /**
+     * Scale the image down by successive halvings, bilinear interpolation alone gives aliased results when shrinking
+     * by more than half.
+     */
+    private static BufferedImage scale(BufferedImage source, int width, int height, boolean alpha) {
+        BufferedImage current = source;
+        int w = source.getWidth();
+        int h = source.getHeight();
+        do {
+            w = Math.max(width, w / 2);
+            h = Math.max(height, h / 2);
+            final BufferedImage next = new BufferedImage(w, h, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            final Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.drawImage(current, 0, 0, w, h, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (w != width || h != height);
+        return current;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.service;
+
+import lombok.Getter;
+
+/**
+ * Thrown when an uploaded avatar file is refused.
+ * <p>
+ * {@link Reason#EMPTY} and {@link Reason#UNSUPPORTED_FORMAT} map to HTTP 400, {@link Reason#TOO_LARGE} to HTTP 413
+ * and {@link Reason#TOO_MANY_PENDING} to HTTP 429.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Getter
+public class AvatarUploadRejectedException extends RuntimeException {
+
+    public enum Reason {
+        EMPTY,
+        TOO_LARGE,
+        UNSUPPORTED_FORMAT,
+        TOO_MANY_PENDING
+    }
+
+    private final Reason reason;
+
+    public AvatarUploadRejectedException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.service;
+
+import com.ccteam.graphql.config.scheduling.ClusterJobRunner;
+import com.ccteam.graphql.config.storage.AvatarStorageProperties;
+import com.ccteam.graphql.entities.AvatarUpload;
+import com.ccteam.graphql.repository.AvatarUploadRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Optional;
+
+/**
+ * Upload tokens for avatar files.
+ * <p>
+ * An avatar is uploaded on its own (see {@link com.ccteam.graphql.controller.rest.UploadController}) in exchange for
+ * an opaque token, which the member mutations then reference instead of carrying the image itself. A token can only
+ * be used once, by the member who uploaded the file, within {@link AvatarStorageProperties#getUploadTokenTtl()}.
+ * <p>
+ * Tokens are stored in the database, so that the mutation can be handled by another node than the upload, and are
+ * only consumed when the transaction using them commits. Each member can only have a few tokens pending, the files of
+ * the tokens never used are deleted along with the other unreferenced contents by the
+ * {@link com.ccteam.graphql.config.storage.AvatarStorageSweep}.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Service
+@Slf4j
+public class AvatarUploadService {
+
+    private static final int TOKEN_BYTES = 16;
+
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final AvatarStorageProperties avatarStorageProperties;
+    private final AvatarUploadRepository avatarUploadRepository;
+    private final ClusterJobRunner clusterJobRunner;
+
+    public AvatarUploadService(AvatarStorageProperties avatarStorageProperties,
+                               AvatarUploadRepository avatarUploadRepository, ClusterJobRunner clusterJobRunner) {
+        this.avatarStorageProperties = avatarStorageProperties;
+        this.avatarUploadRepository = avatarUploadRepository;
+        this.clusterJobRunner = clusterJobRunner;
+    }
+
+    /**
+     * Check that the given member can upload another avatar file, to be called before storing it.
+     *
+     * @param uploaderId The ID of the member uploading the file
+     * @throws AvatarUploadRejectedException if the member has too many tokens pending
+     */
+    public void checkQuota(long uploaderId) {
+        if (avatarUploadRepository.countByUploaderIdAndExpiresOnAfter(uploaderId, LocalDateTime.now())
+                >= avatarStorageProperties.getMaxPendingUploadsPerMember()) {
+            throw new AvatarUploadRejectedException(AvatarUploadRejectedException.Reason.TOO_MANY_PENDING,
+                    "Too many avatar uploads pending");
+        }
+    }
+
+    /**
+     * Issue a token for the given stored avatar.
+     *
+     * @param avatar     The stored avatar
+     * @param uploaderId The ID of the member who uploaded the file
+     * @return The upload token, to be sent to the client
+     * @throws AvatarUploadRejectedException if the member has too many tokens pending
+     */
+    public String issueToken(AvatarService.StoredAvatar avatar, long uploaderId) {
+        // checked again, concurrent uploads of the same member may have passed the check before storing
+        checkQuota(uploaderId);
+        final byte[] bytes = new byte[TOKEN_BYTES];
+        secureRandom.nextBytes(bytes);
+        final String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        final AvatarUpload upload = new AvatarUpload();
+        upload.setToken(token);
+        upload.setUploaderId(uploaderId);
+        upload.setContentHash(avatar.contentHash());
+        upload.setFile(avatar.content());
+        upload.setFileSize(avatar.fileSize());
+        upload.setFilename(avatar.filename());
+        upload.setPlaceholder(avatar.placeholder());
+        upload.setExpiresOn(LocalDateTime.now().plus(avatarStorageProperties.getUploadTokenTtl()));
+        avatarUploadRepository.save(upload);
+        return token;
+    }
+
+    /**
+     * Use the given token, in the transaction of the caller : it can't be used again once that transaction commits,
+     * but still can if it rolls back.
+     *
+     * @param token    The upload token
+     * @param callerId The ID of the member using the token
+     * @return The optional stored avatar, empty if the token is unknown, has expired, or has been issued to another
+     * member
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Optional<AvatarService.StoredAvatar> claim(String token, long callerId) {
+        final Optional<AvatarUpload> upload = avatarUploadRepository.findById(token)
+                .filter(u -> u.getUploaderId() == callerId && u.getExpiresOn().isAfter(LocalDateTime.now()));
+        // a concurrent claim of the same token waits for the row lock and is refused if this one commits
+        if (upload.isEmpty() || avatarUploadRepository.deleteByToken(token) == 0) {
+            log.info("Avatar upload token refused for member {}", callerId);
+            return Optional.empty();
+        }
+        final AvatarUpload u = upload.get();
+        return Optional.of(new AvatarService.StoredAvatar(u.getContentHash(), u.getFile(), u.getFileSize(),
+                u.getFilename(), u.getPlaceholder()));
+    }
+
+    /**
+     * Forget the expired tokens, on one node of the cluster. Their files are deleted later by the sweep of the
+     * storage.
+     */
+    @Scheduled(fixedDelayString = "${ct.avatar.storage.upload-purge-interval:5m}")
+    public void purgeExpired() {
+        clusterJobRunner.run("avatar-upload-purge", Duration.ofMinutes(5), Duration.ZERO, execution -> {
+            execution.chunkDone(avatarUploadRepository.deleteExpiredBefore(LocalDateTime.now()), null);
+            if (execution.getProcessed() > 0) {
+                log.info("{} expired avatar upload tokens deleted", execution.getProcessed());
+            }
+        });
+    }
+
+}
@@ -30,7 +30,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.List;
 import java.util.Optional;
 
 /**
@@ -46,13 +45,16 @@ public class BikeService {
     private final BikeRepository bikeRepository;
     private final MemberRepository memberRepository;
     private final EventMemberRepository eventMemberRepository;
+    private final LeaderboardService leaderboardService;
 
     public BikeService(BikeRepository bikeRepository,
                        MemberRepository memberRepository,
-                       EventMemberRepository eventMemberRepository) {
+                       EventMemberRepository eventMemberRepository,
+                       LeaderboardService leaderboardService) {
         this.bikeRepository = bikeRepository;
         this.memberRepository = memberRepository;
         this.eventMemberRepository = eventMemberRepository;
+        this.leaderboardService = leaderboardService;
     }
 
     /**
@@ -89,7 +91,9 @@ public class BikeService {
      *
      * <p>If {@code current} is set to {@code true}, any other bike of the
      * same member that was previously flagged as current will be unflagged
-     * so that the "one current bike per member" invariant is preserved.</p>
+     * so that the "one current bike per member" invariant is preserved.
+     * The invariant is also backed by a unique index, so two concurrent
+     * calls can't leave a member with two current bikes.</p>
      *
      * @param bikeId       The ID of the bike to update
      * @param manufacturer The manufacturer
@@ -111,6 +115,7 @@ public class BikeService {
         }
 
         final Bike bike = bikeOptional.get();
+        final Integer previousEngineSize = bike.getEngineSize();
         bike.setManufacturer(manufacturer);
         bike.setModelName(modelName);
         bike.setEngineSize(engineSize);
@@ -118,19 +123,19 @@ public class BikeService {
 
         if (current != null) {
             // when marking this bike as current, unflag any other bike of the same member that was previously
-            // flagged as current
+            // flagged as current, in one statement, before this bike gets flagged so the unique index holds
             if (current && bike.getMember() != null) {
-                final List<Bike> previousCurrents = bikeRepository
-                        .findByMemberIdAndCurrentTrueAndIdNot(bike.getMember().getId(), bike.getId());
-                for (Bike previous : previousCurrents) {
-                    previous.setCurrent(false);
-                    bikeRepository.save(previous);
+                final int cleared = bikeRepository.clearCurrentExcept(bike.getMember().getId(), bike.getId());
+                if (cleared > 0) {
+                    log.info("Unflagged {} previous current bike(s) of member id {}", cleared, bike.getMember().getId());
                 }
             }
             bike.setCurrent(current);
         }
 
-        return bikeRepository.save(bike);
+        final Bike saved = bikeRepository.save(bike);
+        leaderboardService.bikeUpdated(saved, previousEngineSize);
+        return saved;
     }
 
     /**
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.service;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ * Encode images to <a href="https://blurha.sh">BlurHash</a> strings, a compact representation of a blurred version
+ * of the image that clients decode into a placeholder while the image itself is loading.
+ * <p>
+ * The image is first reduced to a few pixels per side, which is more than enough for the few components kept and
+ * makes the encoding cost independent of the image size. Transparent areas are rendered over white.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+final class BlurHashEncoder {
+
+    private static final String BASE83 =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz#$%*+,-.:;=?@[]^_{|}~";
+
+    /**
+     * Longest side the image is reduced to before being encoded.
+     */
+    private static final int SAMPLE_SIZE = 32;
+
+    private BlurHashEncoder() {
+    }
+
+    /**
+     * Encode the given image.
+     *
+     * @param image       The image
+     * @param componentsX The number of horizontal components, from 1 to 9
+     * @param componentsY The number of vertical components, from 1 to 9
+     * @return The BlurHash string, {@code 4 + 2 * componentsX * componentsY} characters long
+     */
+    static String encode(BufferedImage image, int componentsX, int componentsY) {
+        if (componentsX < 1 || componentsX > 9 || componentsY < 1 || componentsY > 9) {
+            throw new IllegalArgumentException("BlurHash components must be between 1 and 9");
+        }
+        final BufferedImage sample = sample(image);
+        final int width = sample.getWidth();
+        final int height = sample.getHeight();
+        final int[] pixels = sample.getRGB(0, 0, width, height, null, 0, width);
+
+        final double[] linear = new double[pixels.length * 3];
+        for (int i = 0; i < pixels.length; i++) {
+            linear[i * 3] = srgbToLinear((pixels[i] >> 16) & 0xFF);
+            linear[i * 3 + 1] = srgbToLinear((pixels[i] >> 8) & 0xFF);
+            linear[i * 3 + 2] = srgbToLinear(pixels[i] & 0xFF);
+        }
+
+        final double[][] factors = new double[componentsX * componentsY][3];
+        for (int j = 0; j < componentsY; j++) {
+            for (int i = 0; i < componentsX; i++) {
+                final double[] factor = factors[j * componentsX + i];
+                for (int y = 0; y < height; y++) {
+                    final double basisY = Math.cos(Math.PI * j * y / height);
+                    for (int x = 0; x < width; x++) {
+                        final double basis = Math.cos(Math.PI * i * x / width) * basisY;
+                        final int p = (y * width + x) * 3;
+                        factor[0] += basis * linear[p];
+                        factor[1] += basis * linear[p + 1];
+                        factor[2] += basis * linear[p + 2];
+                    }
+                }
+                final double scale = (i == 0 && j == 0 ? 1d : 2d) / (width * height);
+                factor[0] *= scale;
+                factor[1] *= scale;
+                factor[2] *= scale;
+            }
+        }
+
+        final StringBuilder hash = new StringBuilder();
+        encode83(hash, (componentsX - 1) + (componentsY - 1) * 9, 1);
+
+        double maximumValue = 1;
+        if (factors.length > 1) {
+            double actualMaximumValue = 0;
+            for (int f = 1; f < factors.length; f++) {
+                for (double component : factors[f]) {
+                    actualMaximumValue = Math.max(actualMaximumValue, Math.abs(component));
+                }
+            }
+            final int quantisedMaximumValue = (int) Math.max(0, Math.min(82, Math.floor(actualMaximumValue * 166 - 0.5)));
+            maximumValue = (quantisedMaximumValue + 1) / 166d;
+            encode83(hash, quantisedMaximumValue, 1);
+        } else {
+            encode83(hash, 0, 1);
+        }
+
+        final double[] dc = factors[0];
+        encode83(hash, (linearToSrgb(dc[0]) << 16) + (linearToSrgb(dc[1]) << 8) + linearToSrgb(dc[2]), 4);
+        for (int f = 1; f < factors.length; f++) {
+            final double[] ac = factors[f];
+            encode83(hash, quantiseAc(ac[0], maximumValue) * 19 * 19
+                    + quantiseAc(ac[1], maximumValue) * 19
+                    + quantiseAc(ac[2], maximumValue), 2);
+        }
+        return hash.toString();
+    }
+
+    /**
+     * Reduce the image so that its longest side is at most {@link #SAMPLE_SIZE} pixels, over a white background.
+     */
+    private static BufferedImage sample(BufferedImage image) {
+        final int longestSide = Math.max(image.getWidth(), image.getHeight());
+        final int width = Math.max(1, image.getWidth() * Math.min(SAMPLE_SIZE, longestSide) / longestSide);
+        final int height = Math.max(1, image.getHeight() * Math.min(SAMPLE_SIZE, longestSide) / longestSide);
+        final BufferedImage sample = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D graphics = sample.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+        return sample;
+    }
+
+    private static int quantiseAc(double value, double maximumValue) {
+        return (int) Math.max(0, Math.min(18, Math.floor(signPow(value / maximumValue, 0.5) * 9 + 9.5)));
+    }
+
+    private static double signPow(double value, double exponent) {
+        return Math.copySign(Math.pow(Math.abs(value), exponent), value);
+    }
+
+    private static double srgbToLinear(int value) {
+        final double v = value / 255d;
+        return v <= 0.04045 ? v / 12.92 : Math.pow((v + 0.055) / 1.055, 2.4);
+    }
+
+    private static int linearToSrgb(double value) {
+        final double v = Math.max(0, Math.min(1, value));
+        return v <= 0.0031308
+                ? (int) (v * 12.92 * 255 + 0.5)
+                : (int) ((1.055 * Math.pow(v, 1 / 2.4) - 0.055) * 255 + 0.5);
+    }
+
+    private static void encode83(StringBuilder hash, int value, int length) {
+        for (int i = 1; i <= length; i++) {
+            final int digit = (value / (int) Math.pow(83, length - i)) % 83;
+            hash.append(BASE83.charAt(digit));
+        }
+    }
+
+}
@@ -22,15 +22,23 @@ package com.ccteam.graphql.service;
 
 import com.ccteam.graphql.config.graphql.CustomGraphQLException;
 import com.ccteam.graphql.entities.*;
+import com.ccteam.graphql.model.CalendarDay;
+import com.ccteam.graphql.model.EventCalendarDay;
 import com.ccteam.graphql.repository.*;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.List;
-import java.util.Optional;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * {@link Event} service.
@@ -42,6 +50,32 @@ import java.util.Optional;
 @Slf4j
 public class EventService {
 
+    /**
+     * Maximum number of months covered by a single calendar request.
+     */
+    private static final int CALENDAR_MAX_MONTHS = 12;
+
+    /**
+     * Maximum number of months kept in the calendar cache, the cache being cleared beyond.
+     */
+    private static final int CALENDAR_CACHE_MAX_MONTHS = 60;
+
+    /**
+     * Time a calendar month is cached for, which bounds how long a modification made on another node takes to show up.
+     */
+    private static final Duration CALENDAR_TTL = Duration.ofMinutes(1);
+
+    /**
+     * Days having events of each cached month, shared between all members.
+     */
+    private final Map<YearMonth, CachedMonth> calendarMonths = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented on each invalidation, so that months read before a modification is committed are not cached after
+     * their invalidation.
+     */
+    private final AtomicLong calendarGeneration = new AtomicLong();
+
     private final EventRepository eventRepository;
     private final TrackRepository trackRepository;
     private final MemberRepository memberRepository;
@@ -108,6 +142,142 @@ public class EventService {
         return eventRepository.findByDayAndMonthAndYearCustom(day, month, year);
     }
 
+    /**
+     * Get the days having events in the specified period, with the number of events and participants of each day, and
+     * whether the specified member is registered to one of these events.
+     * <p>
+     * Days are cached by month and shared between all members, the months not cached yet (or expired) being read with
+     * a single grouped query. The months of an event are invalidated whenever the event or its participants change on
+     * this node, and the whole calendar when a member is deleted, while modifications made on other nodes show up
+     * once the months expire, after {@link #CALENDAR_TTL}.
+     *
+     * @param from     The first day of the period, as ISO {@link String}
+     * @param to       The last day of the period (inclusive), as ISO {@link String}
+     * @param memberId The ID of the {@link Member} asking
+     * @return A list of {@link CalendarDay} objects, ordered by date, days without events being omitted
+     */
+    public List<CalendarDay> getEventCalendar(String from, String to, long memberId) {
+        final LocalDate fromDate = LocalDate.parse(from);
+        final LocalDate toDate = LocalDate.parse(to);
+        final YearMonth firstMonth = YearMonth.from(fromDate);
+        final YearMonth lastMonth = YearMonth.from(toDate);
+        if (toDate.isBefore(fromDate) || lastMonth.isAfter(firstMonth.plusMonths(CALENDAR_MAX_MONTHS - 1))) {
+            log.error("Invalid calendar period from {} to {}", from, to);
+            throw new CustomGraphQLException("invalid_period",
+                    "The period must end after it starts and cover at most " + CALENDAR_MAX_MONTHS + " months");
+        }
+
+        final Map<YearMonth, List<EventCalendarDay>> months = new HashMap<>();
+        final long now = System.nanoTime();
+        YearMonth firstMissing = null;
+        YearMonth lastMissing = null;
+        for (YearMonth month = firstMonth; !month.isAfter(lastMonth); month = month.plusMonths(1)) {
+            final CachedMonth cached = calendarMonths.get(month);
+            if (cached != null && cached.expiresAt() - now > 0) {
+                months.put(month, cached.days());
+            } else {
+                firstMissing = firstMissing == null ? month : firstMissing;
+                lastMissing = month;
+            }
+        }
+        if (firstMissing != null) {
+            months.putAll(loadCalendarMonths(firstMissing, lastMissing));
+        }
+
+        final List<CalendarDay> calendar = new ArrayList<>();
+        for (YearMonth month = firstMonth; !month.isAfter(lastMonth); month = month.plusMonths(1)) {
+            for (EventCalendarDay day : months.get(month)) {
+                if (!day.getDate().isBefore(fromDate) && !day.getDate().isAfter(toDate)) {
+                    calendar.add(new CalendarDay(day.getDate().toString(), day.getEventCount(),
+                            day.getParticipantCount(), day.getParticipantIds().contains(memberId)));
+                }
+            }
+        }
+        return calendar;
+    }
+
+    /**
+     * Read the days having events of the specified months in a single query, and cache them unless one of these
+     * months has been invalidated meanwhile.
+     *
+     * @param firstMonth The first month to read
+     * @param lastMonth  The last month to read (inclusive)
+     * @return The days having events of each month
+     */
+    private Map<YearMonth, List<EventCalendarDay>> loadCalendarMonths(YearMonth firstMonth, YearMonth lastMonth) {
+        final long generation = calendarGeneration.get();
+        final Map<YearMonth, List<EventCalendarDay>> months = new HashMap<>();
+        for (YearMonth month = firstMonth; !month.isAfter(lastMonth); month = month.plusMonths(1)) {
+            months.put(month, new ArrayList<>());
+        }
+        eventRepository.findCalendarDays(firstMonth.atDay(1).atStartOfDay(), lastMonth.plusMonths(1).atDay(1).atStartOfDay())
+                .forEach(day -> months.get(YearMonth.from(day.getDate())).add(day));
+
+        if (calendarMonths.size() + months.size() > CALENDAR_CACHE_MAX_MONTHS) {
+            calendarMonths.clear();
+        }
+        months.replaceAll((month, days) -> List.copyOf(days));
+        if (calendarGeneration.get() == generation) {
+            final long expiresAt = System.nanoTime() + CALENDAR_TTL.toNanos();
+            months.forEach((month, days) -> calendarMonths.put(month, new CachedMonth(days, expiresAt)));
+        }
+        return months;
+    }
+
+    /**
+     * Invalidate the whole cached calendar once the current transaction (if any) is committed, as the registrations
+     * of the deleted member, deleted along with it, may be spread over any months.
+     */
+    public void memberDeleted() {
+        afterCommit(() -> {
+            calendarGeneration.incrementAndGet();
+            calendarMonths.clear();
+        });
+    }
+
+    /**
+     * Invalidate the cached calendar months of the specified dates, once the current transaction is committed.
+     * <p>
+     * A month read before the commit is then either removed here, or not cached at all as the generation changed.
+     *
+     * @param dates The start dates of the modified events
+     */
+    private void invalidateCalendar(LocalDateTime... dates) {
+        final List<YearMonth> months = Arrays.stream(dates).map(YearMonth::from).toList();
+        afterCommit(() -> {
+            calendarGeneration.incrementAndGet();
+            months.forEach(calendarMonths::remove);
+        });
+    }
+
+    /**
+     * Run the specified invalidation after the current transaction is committed, or right away if there is no
+     * transaction.
+     *
+     * @param invalidation The invalidation to run
+     */
+    private void afterCommit(Runnable invalidation) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidation.run();
+                }
+            });
+        } else {
+            invalidation.run();
+        }
+    }
+
+    /**
+     * Days having events of a cached month.
+     *
+     * @param days      The days having events
+     * @param expiresAt The {@link System#nanoTime()} after which the month must be read again
+     */
+    private record CachedMonth(List<EventCalendarDay> days, long expiresAt) {
+    }
+
     /**
      * Get an event given its {@code id}.
      *
@@ -180,6 +350,7 @@ public class EventService {
         event.setPrice(price);
         event.setCreatedBy(memberOptional.get());
         event.setCreatedOn(LocalDateTime.now());
+        invalidateCalendar(event.getStartDate());
         return eventRepository.save(event);
     }
 
@@ -229,6 +400,7 @@ public class EventService {
         }
 
         final Event event = eventOptional.get();
+        invalidateCalendar(event.getStartDate(), LocalDateTime.parse(startDate));
         event.setTitle(title);
         event.setDescription(description);
         event.setStartDate(LocalDateTime.parse(startDate));
@@ -257,6 +429,7 @@ public class EventService {
         }
 
         final Event event = eventOptional.get();
+        invalidateCalendar(event.getStartDate());
         eventRepository.delete(event);
         return event;
     }
@@ -307,6 +480,7 @@ public class EventService {
         participation.setBike(bike);
         participation.setCreatedOn(LocalDateTime.now());
         event.getParticipants().add(participation);
+        invalidateCalendar(event.getStartDate());
 
         // save the event to persist the new participation
         return eventRepository.save(event);
@@ -404,6 +578,7 @@ public class EventService {
 
         // remove the participation from the event (JPA will handle the rest via orphanRemoval)
         event.getParticipants().remove(participationOptional.get());
+        invalidateCalendar(event.getStartDate());
 
         // save the event to persist the removal
         return eventRepository.save(event);
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.service;
+
+import com.ccteam.graphql.model.EventSummary;
+import com.ccteam.graphql.model.Home;
+import com.ccteam.graphql.model.NewsListProjection;
+import com.ccteam.graphql.repository.EventRepository;
+import com.ccteam.graphql.repository.MemberRepository;
+import com.ccteam.graphql.repository.NewsRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Assemble the home screen in a single call.
+ * <p>
+ * Each section is read by a narrow projection query, and the queries run in parallel on virtual threads, each with its
+ * own connection, so that the response costs the slowest query rather than their sum. The sections shared by all
+ * members (counts, next events, latest news) are cached for {@link #SHARED_TTL}, the first caller after expiry
+ * reloading them while concurrent callers wait for that same load, so that only the member's own registrations are
+ * read on most calls.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Service
+@Slf4j
+public class HomeService {
+
+    /**
+     * How long the sections shared by all members are cached.
+     */
+    private static final Duration SHARED_TTL = Duration.ofSeconds(30);
+
+    /**
+     * Number of upcoming events, latest news and registrations returned.
+     */
+    private static final int SECTION_SIZE = 5;
+
+    private final MemberRepository memberRepository;
+    private final EventRepository eventRepository;
+    private final NewsRepository newsRepository;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("home-", 0).factory());
+
+    /**
+     * Shared sections currently cached or being loaded.
+     */
+    private final AtomicReference<CachedSections> shared = new AtomicReference<>();
+
+    /**
+     * Source of {@link System#nanoTime()}, replaced in tests.
+     */
+    private final LongSupplier ticker;
+
+    @Autowired
+    public HomeService(MemberRepository memberRepository, EventRepository eventRepository, NewsRepository newsRepository) {
+        this(memberRepository, eventRepository, newsRepository, System::nanoTime);
+    }
+
+    HomeService(MemberRepository memberRepository, EventRepository eventRepository, NewsRepository newsRepository,
+                LongSupplier ticker) {
+        this.memberRepository = memberRepository;
+        this.eventRepository = eventRepository;
+        this.newsRepository = newsRepository;
+        this.ticker = ticker;
+    }
+
+    /**
+     * Sections of the home screen shared by all members.
+     *
+     * @param membersCount The number of members
+     * @param eventsCount  The number of events
+     * @param nextEvents   The upcoming events
+     * @param latestNews   The latest news
+     */
+    private record SharedSections(long membersCount, long eventsCount, List<EventSummary> nextEvents,
+                                  List<NewsListProjection> latestNews) {
+    }
+
+    /**
+     * Shared sections loaded or being loaded, along with their expiry.
+     *
+     * @param sections  The sections
+     * @param expiresAt The {@link System#nanoTime()} at which the sections expire
+     */
+    private record CachedSections(CompletableFuture<SharedSections> sections, long expiresAt) {
+    }
+
+    /**
+     * Get the home screen of the specified member.
+     *
+     * @param memberId The ID of the member asking
+     * @return A {@link Home} object holding all the sections
+     */
+    public Home getHome(long memberId) {
+        final CompletableFuture<List<EventSummary>> registrations = async(() ->
+                eventRepository.findSummariesByParticipantStartingFrom(memberId, LocalDateTime.now(),
+                        PageRequest.ofSize(SECTION_SIZE)));
+        final SharedSections sections = join(sharedSections());
+        return new Home(sections.membersCount(), sections.eventsCount(), sections.nextEvents(), sections.latestNews(),
+                join(registrations));
+    }
+
+    /**
+     * Get the shared sections from the cache, or start loading them if they expired, unless another caller just did.
+     * A failed load is not kept, the next caller retries it.
+     *
+     * @return The future shared sections
+     */
+    private CompletableFuture<SharedSections> sharedSections() {
+        final CachedSections cached = shared.get();
+        final long now = ticker.getAsLong();
+        if (cached != null && now - cached.expiresAt() < 0 && !cached.sections().isCompletedExceptionally()) {
+            return cached.sections();
+        }
+
+        final CompletableFuture<SharedSections> loading = new CompletableFuture<>();
+        if (!shared.compareAndSet(cached, new CachedSections(loading, now + SHARED_TTL.toNanos()))) {
+            return shared.get().sections();
+        }
+
+        final LocalDateTime from = LocalDateTime.now();
+        final CompletableFuture<Long> membersCount = async(memberRepository::count);
+        final CompletableFuture<Long> eventsCount = async(eventRepository::count);
+        final CompletableFuture<List<EventSummary>> nextEvents = async(() ->
+                eventRepository.findSummariesStartingFrom(from, PageRequest.ofSize(SECTION_SIZE)));
+        final CompletableFuture<List<NewsListProjection>> latestNews = async(() ->
+                newsRepository.findLatestListProjections(PageRequest.ofSize(SECTION_SIZE)));
+        CompletableFuture.allOf(membersCount, eventsCount, nextEvents, latestNews).whenComplete((ignored, error) -> {
+            if (error != null) {
+                log.error("Unable to load the shared sections of the home screen", error);
+                loading.completeExceptionally(error);
+            } else {
+                loading.complete(new SharedSections(membersCount.join(), eventsCount.join(), nextEvents.join(),
+                        latestNews.join()));
+            }
+        });
+        return loading;
+    }
+
+    /**
+     * Run the given query on a virtual thread.
+     *
+     * @param query The query to run
+     * @param <T>   The query result type
+     * @return The future query result
+     */
+    private <T> CompletableFuture<T> async(Supplier<T> query) {
+        return CompletableFuture.supplyAsync(query, executor);
+    }
+
+    /**
+     * Wait for the given future, and rethrow its failure as is.
+     *
+     * @param future The future to wait for
+     * @param <T>    The result type
+     * @return The result
+     */
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+}
@@ -24,16 +24,22 @@ import com.ccteam.graphql.config.graphql.CustomGraphQLException;
 import com.ccteam.graphql.entities.Bike;
 import com.ccteam.graphql.entities.LapRecord;
 import com.ccteam.graphql.entities.Member;
+import com.ccteam.graphql.entities.PersonalBest;
 import com.ccteam.graphql.entities.Track;
 import com.ccteam.graphql.repository.BikeRepository;
 import com.ccteam.graphql.repository.LapRecordRepository;
 import com.ccteam.graphql.repository.MemberRepository;
+import com.ccteam.graphql.repository.PersonalBestRepository;
 import com.ccteam.graphql.repository.TrackRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -50,12 +56,17 @@ public class LapRecordService {
     private final MemberRepository memberRepository;
     private final TrackRepository trackRepository;
     private final BikeRepository bikeRepository;
+    private final PersonalBestRepository personalBestRepository;
+    private final LeaderboardService leaderboardService;
 
-    public LapRecordService(LapRecordRepository lapRecordRepository, MemberRepository memberRepository, TrackRepository trackRepository, BikeRepository bikeRepository) {
+    public LapRecordService(LapRecordRepository lapRecordRepository, MemberRepository memberRepository, TrackRepository trackRepository, BikeRepository bikeRepository,
+                            PersonalBestRepository personalBestRepository, LeaderboardService leaderboardService) {
         this.lapRecordRepository = lapRecordRepository;
         this.memberRepository = memberRepository;
         this.trackRepository = trackRepository;
         this.bikeRepository = bikeRepository;
+        this.personalBestRepository = personalBestRepository;
+        this.leaderboardService = leaderboardService;
     }
 
     /**
@@ -87,6 +98,38 @@ public class LapRecordService {
         return lapRecordRepository.findByTrackIdCustom(trackId);
     }
 
+    /**
+     * Get the personal bests of the specified members, in a single query.
+     *
+     * @param members The members
+     * @return The list of {@link PersonalBest} objects of each member, ordered by track name
+     */
+    public Map<Member, List<PersonalBest>> getPersonalBestsByMembers(List<Member> members) {
+        final Map<Long, Member> byId = new HashMap<>();
+        members.forEach(member -> byId.put(member.getId(), member));
+        final Map<Member, List<PersonalBest>> personalBests = new HashMap<>();
+        members.forEach(member -> personalBests.put(member, new ArrayList<>()));
+        personalBestRepository.findByMemberIds(byId.keySet())
+                .forEach(pb -> personalBests.get(byId.get(pb.getMember().getId())).add(pb));
+        return personalBests;
+    }
+
+    /**
+     * Get the personal bests set on the specified tracks, in a single query.
+     *
+     * @param tracks The tracks
+     * @return The list of {@link PersonalBest} objects of each track, best lap first
+     */
+    public Map<Track, List<PersonalBest>> getPersonalBestsByTracks(List<Track> tracks) {
+        final Map<Long, Track> byId = new HashMap<>();
+        tracks.forEach(track -> byId.put(track.getId(), track));
+        final Map<Track, List<PersonalBest>> personalBests = new HashMap<>();
+        tracks.forEach(track -> personalBests.put(track, new ArrayList<>()));
+        personalBestRepository.findByTrackIds(byId.keySet())
+                .forEach(pb -> personalBests.get(byId.get(pb.getTrack().getId())).add(pb));
+        return personalBests;
+    }
+
     /**
      * Create a new lap record.
      *
@@ -99,6 +142,7 @@ public class LapRecordService {
      * @param comments   Some comment about the lap record
      * @return A {@link LapRecord} object representing the lap record just created
      */
+    @Transactional
     public LapRecord createLapRecord(long memberId, long trackId, long bikeId, String recordDate, int lapTime, String conditions, String comments) {
 
         final Optional<Member> memberOptional = memberRepository.findByIdCustom(memberId);
@@ -129,7 +173,10 @@ public class LapRecordService {
         lapRecord.setComments(comments);
         lapRecord.setCreatedOn(LocalDateTime.now());
 
-        return lapRecordRepository.save(lapRecord);
+        final LapRecord saved = lapRecordRepository.save(lapRecord);
+        offerPersonalBest(saved);
+        leaderboardService.lapRecordSaved(saved);
+        return saved;
     }
 
     /**
@@ -144,6 +191,7 @@ public class LapRecordService {
      * @param comments    Some comment about the lap record
      * @return A {@link LapRecord} object representing the lap record just created
      */
+    @Transactional
     public LapRecord updateLapRecord(long lapRecordId, long trackId, long bikeId, String recordDate, int lapTime, String conditions, String comments) {
 
         final Optional<LapRecord> lapRecordOptional = lapRecordRepository.findByIdCustom(lapRecordId);
@@ -165,6 +213,8 @@ public class LapRecordService {
         }
 
         final LapRecord lapRecord = lapRecordOptional.get();
+        final long previousTrackId = lapRecord.getTrack().getId();
+        final Long previousBikeId = lapRecord.getBike() != null ? lapRecord.getBike().getId() : null;
 
         lapRecord.setTrack(trackOptional.get());
         lapRecord.setBike(bikeOptional.get());
@@ -174,7 +224,14 @@ public class LapRecordService {
         lapRecord.setComments(comments);
         lapRecord.setModifiedOn(LocalDateTime.now());
 
-        return lapRecordRepository.save(lapRecord);
+        final LapRecord saved = lapRecordRepository.saveAndFlush(lapRecord);
+        // a personal best that got slower or moved to another track or bike is recomputed from the updated laps
+        if (previousBikeId != null && personalBestRepository.existsByLapRecordId(lapRecordId)) {
+            recomputePersonalBest(saved.getMember().getId(), previousTrackId, previousBikeId, null);
+        }
+        offerPersonalBest(saved);
+        leaderboardService.lapRecordSaved(saved);
+        return saved;
     }
 
     /**
@@ -183,6 +240,7 @@ public class LapRecordService {
      * @param lapRecordId The ID of the {@link LapRecord} to delete
      * @return A {@link LapRecord} object representing the lap record just deleted
      */
+    @Transactional
     public LapRecord deleteLapRecord(long lapRecordId) {
         final Optional<LapRecord> lapRecordOptional = lapRecordRepository.findByIdCustom(lapRecordId);
         if (lapRecordOptional.isEmpty()) {
@@ -191,8 +249,44 @@ public class LapRecordService {
         }
 
         final LapRecord lapRecord = lapRecordOptional.get();
+        // the personal best referencing the lap must be replaced by the next best lap before the lap can be deleted
+        if (lapRecord.getBike() != null && personalBestRepository.existsByLapRecordId(lapRecordId)) {
+            recomputePersonalBest(lapRecord.getMember().getId(), lapRecord.getTrack().getId(), lapRecord.getBike().getId(),
+                    lapRecordId);
+        }
         lapRecordRepository.delete(lapRecord);
+        leaderboardService.lapRecordDeleted(lapRecordId);
         return lapRecord;
     }
 
+    /**
+     * Record the given lap as the personal best of its member, track and bike if it beats the current one.
+     *
+     * @param lapRecord The lap record created or updated
+     */
+    private void offerPersonalBest(LapRecord lapRecord) {
+        if (lapRecord.getBike() == null) {
+            return;
+        }
+        personalBestRepository.offer(lapRecord.getMember().getId(), lapRecord.getTrack().getId(),
+                lapRecord.getBike().getId(), lapRecord.getId(), lapRecord.getLapTime(), lapRecord.getRecordDate(),
+                lapRecord.getConditions(), LocalDateTime.now());
+    }
+
+    /**
+     * Recompute the personal best of the given member, track and bike from all of its laps, when its best lap is
+     * removed or got slower.
+     *
+     * @param memberId            The member ID
+     * @param trackId             The track ID
+     * @param bikeId              The bike ID
+     * @param excludedLapRecordId The ID of a lap record being deleted, {@code null} for none
+     */
+    private void recomputePersonalBest(long memberId, long trackId, long bikeId, Long excludedLapRecordId) {
+        personalBestRepository.deleteByKey(memberId, trackId, bikeId);
+        if (personalBestRepository.insertBest(memberId, trackId, bikeId, excludedLapRecordId, LocalDateTime.now()) == 0) {
+            log.info("No lap left for member {} on track {} with bike {}, personal best removed", memberId, trackId, bikeId);
+        }
+    }
+
 }
\ No newline at end of file
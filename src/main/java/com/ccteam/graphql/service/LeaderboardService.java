@@ -0,0 +1,440 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.service;
+
+import com.ccteam.graphql.config.graphql.CustomGraphQLException;
+import com.ccteam.graphql.entities.Bike;
+import com.ccteam.graphql.entities.LapRecord;
+import com.ccteam.graphql.entities.Member;
+import com.ccteam.graphql.enums.EngineClass;
+import com.ccteam.graphql.model.LeaderboardEntry;
+import com.ccteam.graphql.repository.LapRecordRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * In-memory leaderboards of the {@link LapRecord}s of each track.
+ * <p>
+ * The laps of a track are split into buckets by conditions and {@link EngineClass}, each bucket keeping only its
+ * {@link #MAX_LIMIT} best laps, ordered. Any leaderboard of up to {@link #MAX_LIMIT} entries, filtered or not, is then
+ * exactly the merge of the heads of the matching buckets, so reads never touch the database.
+ * <p>
+ * The buckets are built at startup from a streamed query, then kept up to date by the services modifying lap records,
+ * members and bikes, once their transaction is committed. Since those only run on the node handling the modification,
+ * every node also rebuilds all the leaderboards every {@code ct.leaderboard.refresh-interval}, which bounds how long a
+ * modification made on another node takes to show up. Each track board is an immutable snapshot replaced on
+ * write, writes being serialized. A bucket which had to drop laps is reloaded from the database (at most
+ * {@link #MAX_LIMIT} rows) when a removal leaves it short.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Service
+@Slf4j
+public class LeaderboardService implements ApplicationRunner {
+
+    /**
+     * Number of leaderboard entries returned when no limit is specified.
+     */
+    public static final int DEFAULT_LIMIT = 10;
+
+    /**
+     * Maximum number of leaderboard entries that can be requested, also the number of laps kept by bucket.
+     */
+    public static final int MAX_LIMIT = 100;
+
+    /**
+     * Leaderboard order: best lap time first, the earliest lap first on a tie. Must match the repository queries.
+     */
+    private static final Comparator<LeaderboardEntry> RANKING = Comparator.comparingInt(LeaderboardEntry::getLapTime)
+            .thenComparing(LeaderboardEntry::getRecordDate)
+            .thenComparing(LeaderboardEntry::getLapRecordId);
+
+    private final LapRecordRepository lapRecordRepository;
+
+    /**
+     * Buckets of each track by track ID, as immutable snapshots.
+     */
+    private final Map<Long, Map<BucketKey, Bucket>> boards = new ConcurrentHashMap<>();
+
+    /**
+     * Entries held in a bucket by lap record ID, guarded by {@code this}.
+     */
+    private final Map<Long, LeaderboardEntry> retained = new HashMap<>();
+
+    public LeaderboardService(LapRecordRepository lapRecordRepository) {
+        this.lapRecordRepository = lapRecordRepository;
+    }
+
+    /**
+     * Build all the leaderboards at startup.
+     *
+     * @param args The application arguments
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void run(ApplicationArguments args) {
+        rebuild();
+    }
+
+    /**
+     * Rebuild all the leaderboards from the database, picking up the modifications made on other nodes.
+     * <p>
+     * Modifications committed meanwhile wait for the build to finish, and are applied idempotently.
+     */
+    @Scheduled(initialDelayString = "${ct.leaderboard.refresh-interval:5m}",
+            fixedDelayString = "${ct.leaderboard.refresh-interval:5m}")
+    @Transactional(readOnly = true)
+    public synchronized void rebuild() {
+        final Map<Long, Map<BucketKey, Bucket>> built = new HashMap<>();
+        final Map<Long, LeaderboardEntry> held = new HashMap<>();
+        long count = 0;
+        try (Stream<LeaderboardEntry> entries = lapRecordRepository.streamLeaderboardEntries()) {
+            for (Iterator<LeaderboardEntry> iterator = entries.iterator(); iterator.hasNext(); count++) {
+                final LeaderboardEntry entry = iterator.next();
+                final Map<BucketKey, Bucket> board = built.computeIfAbsent(entry.getTrackId(), k -> new HashMap<>());
+                final BucketKey key = BucketKey.of(entry);
+                final Bucket bucket = board.computeIfAbsent(key, k -> new Bucket(new ArrayList<>(), true));
+                // laps come ordered, so a bucket is filled with its best laps first
+                if (bucket.entries().size() < MAX_LIMIT) {
+                    bucket.entries().add(entry);
+                    held.put(entry.getLapRecordId(), entry);
+                } else if (bucket.complete()) {
+                    board.put(key, new Bucket(bucket.entries(), false));
+                }
+            }
+        }
+        built.forEach((trackId, board) -> {
+            final Map<BucketKey, Bucket> snapshot = new HashMap<>();
+            board.forEach((key, bucket) -> snapshot.put(key, new Bucket(List.copyOf(bucket.entries()), bucket.complete())));
+            boards.put(trackId, Map.copyOf(snapshot));
+        });
+        boards.keySet().retainAll(built.keySet());
+        retained.clear();
+        retained.putAll(held);
+        log.info("Leaderboards of {} tracks built from {} lap records", built.size(), count);
+    }
+
+    /**
+     * Get the leaderboard of the specified track, without accessing the database.
+     *
+     * @param trackId     The track ID
+     * @param conditions  The track conditions to filter on, {@code null} for all conditions
+     * @param engineClass The engine size class to filter on, {@code null} for all classes
+     * @param limit       The maximum number of entries, {@link #DEFAULT_LIMIT} if {@code null}
+     * @return The list of {@link LeaderboardEntry} objects, best lap first
+     */
+    public List<LeaderboardEntry> getLeaderboard(long trackId, String conditions, EngineClass engineClass, Integer limit) {
+        final int size = limit != null ? limit : DEFAULT_LIMIT;
+        if (size < 1 || size > MAX_LIMIT) {
+            throw new CustomGraphQLException("invalid_limit", "The limit must be between 1 and " + MAX_LIMIT);
+        }
+
+        final List<List<LeaderboardEntry>> sources = new ArrayList<>();
+        boards.getOrDefault(trackId, Map.of()).forEach((key, bucket) -> {
+            if ((conditions == null || conditions.equals(key.conditions()))
+                    && (engineClass == null || engineClass == key.engineClass())) {
+                sources.add(bucket.entries());
+            }
+        });
+
+        // k-way merge of the bucket heads, each bucket being already ordered
+        final int[] positions = new int[sources.size()];
+        final List<LeaderboardEntry> leaderboard = new ArrayList<>(size);
+        while (leaderboard.size() < size) {
+            int best = -1;
+            for (int i = 0; i < sources.size(); i++) {
+                if (positions[i] < sources.get(i).size() && (best < 0
+                        || RANKING.compare(sources.get(i).get(positions[i]), sources.get(best).get(positions[best])) < 0)) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            leaderboard.add(sources.get(best).get(positions[best]++));
+        }
+        return leaderboard;
+    }
+
+    /**
+     * Add or move the specified lap record in the leaderboards, once the current transaction (if any) is committed.
+     *
+     * @param lapRecord The {@link LapRecord} created or updated
+     */
+    public void lapRecordSaved(LapRecord lapRecord) {
+        final Bike bike = lapRecord.getBike();
+        final LeaderboardEntry entry = new LeaderboardEntry(lapRecord.getId(), lapRecord.getTrack().getId(),
+                lapRecord.getMember().getId(), lapRecord.getMember().getFirstName(), lapRecord.getMember().getLastName(),
+                bike != null ? bike.getId() : null, bike != null ? bike.getManufacturer() : null,
+                bike != null ? bike.getModelName() : null, bike != null ? bike.getEngineSize() : null,
+                lapRecord.getLapTime(), lapRecord.getConditions(), lapRecord.getRecordDate());
+        afterCommit(() -> replace(entry.getLapRecordId(), entry));
+    }
+
+    /**
+     * Remove the specified lap record from the leaderboards, once the current transaction (if any) is committed.
+     *
+     * @param lapRecordId The ID of the {@link LapRecord} deleted
+     */
+    public void lapRecordDeleted(long lapRecordId) {
+        afterCommit(() -> replace(lapRecordId, null));
+    }
+
+    /**
+     * Update the names of the specified member in the leaderboards, once the current transaction (if any) is
+     * committed.
+     *
+     * @param member The {@link Member} updated
+     */
+    public void memberUpdated(Member member) {
+        final long memberId = member.getId();
+        final String firstName = member.getFirstName();
+        final String lastName = member.getLastName();
+        afterCommit(() -> rewrite(entry -> entry.getMemberId() == memberId,
+                entry -> entry.withMember(firstName, lastName)));
+    }
+
+    /**
+     * Update the details of the specified bike in the leaderboards, once the current transaction (if any) is
+     * committed.
+     * <p>
+     * If the bike changed of engine size class, its laps change of bucket, so the buckets of both classes are reloaded
+     * on each track where the bike has laps.
+     *
+     * @param bike               The {@link Bike} updated
+     * @param previousEngineSize The bike engine size before the update
+     */
+    public void bikeUpdated(Bike bike, Integer previousEngineSize) {
+        final long bikeId = bike.getId();
+        final String manufacturer = bike.getManufacturer();
+        final String modelName = bike.getModelName();
+        final Integer engineSize = bike.getEngineSize();
+        final EngineClass previousClass = EngineClass.of(previousEngineSize);
+        final EngineClass newClass = EngineClass.of(engineSize);
+        afterCommit(() -> {
+            if (previousClass == newClass) {
+                rewrite(entry -> entry.getBikeId() != null && entry.getBikeId() == bikeId,
+                        entry -> entry.withBike(manufacturer, modelName, engineSize));
+            } else {
+                reloadClasses(lapRecordRepository.findTrackIdsByBikeId(bikeId), previousClass, newClass);
+            }
+        });
+    }
+
+    /**
+     * Run the specified leaderboard modification after the current transaction is committed, or right away if there
+     * is no transaction, so that the leaderboards never show uncommitted (or rolled back) data.
+     *
+     * @param modification The modification to run
+     */
+    private void afterCommit(Runnable modification) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    modification.run();
+                }
+            });
+        } else {
+            modification.run();
+        }
+    }
+
+    /**
+     * Remove the entry of the specified lap record, if held, then insert the given entry, if any.
+     *
+     * @param lapRecordId The lap record ID
+     * @param entry       The new entry of the lap record, {@code null} if it has been deleted
+     */
+    private synchronized void replace(long lapRecordId, LeaderboardEntry entry) {
+        final LeaderboardEntry previous = retained.remove(lapRecordId);
+        if (previous != null) {
+            edit(previous.getTrackId(), board -> {
+                final BucketKey key = BucketKey.of(previous);
+                final Bucket bucket = board.get(key);
+                final List<LeaderboardEntry> entries = new ArrayList<>(bucket.entries());
+                entries.removeIf(e -> e.getLapRecordId() == lapRecordId);
+                if (!bucket.complete() && entries.size() < MAX_LIMIT) {
+                    // some laps of the bucket have been dropped, the next best one must be read back
+                    board.put(key, load(previous.getTrackId(), key));
+                } else {
+                    board.put(key, new Bucket(List.copyOf(entries), bucket.complete()));
+                }
+            });
+        }
+        if (entry != null) {
+            edit(entry.getTrackId(), board -> {
+                final BucketKey key = BucketKey.of(entry);
+                final Bucket bucket = board.getOrDefault(key, new Bucket(List.of(), true));
+                final List<LeaderboardEntry> entries = new ArrayList<>(bucket.entries());
+                final int index = Collections.binarySearch(entries, entry, RANKING);
+                if (index >= 0) {
+                    // already there, the bucket has just been reloaded from the database with the saved lap
+                    entries.set(index, entry);
+                    retained.put(entry.getLapRecordId(), entry);
+                    board.put(key, new Bucket(List.copyOf(entries), bucket.complete()));
+                    return;
+                }
+                final int position = -index - 1;
+                if (position >= MAX_LIMIT) {
+                    board.put(key, new Bucket(bucket.entries(), false));
+                    return;
+                }
+                entries.add(position, entry);
+                retained.put(entry.getLapRecordId(), entry);
+                boolean complete = bucket.complete();
+                if (entries.size() > MAX_LIMIT) {
+                    retained.remove(entries.removeLast().getLapRecordId());
+                    complete = false;
+                }
+                board.put(key, new Bucket(List.copyOf(entries), complete));
+            });
+        }
+    }
+
+    /**
+     * Replace the held entries matching the given predicate, their rank being unchanged.
+     *
+     * @param predicate   The entries to replace
+     * @param replacement The function giving the new entry
+     */
+    private synchronized void rewrite(Predicate<LeaderboardEntry> predicate, UnaryOperator<LeaderboardEntry> replacement) {
+        final Set<Long> trackIds = new HashSet<>();
+        retained.replaceAll((id, entry) -> {
+            if (predicate.test(entry)) {
+                trackIds.add(entry.getTrackId());
+                return replacement.apply(entry);
+            }
+            return entry;
+        });
+        for (Long trackId : trackIds) {
+            edit(trackId, board -> board.replaceAll((key, bucket) -> new Bucket(bucket.entries().stream()
+                    .map(entry -> predicate.test(entry) ? replacement.apply(entry) : entry)
+                    .toList(), bucket.complete())));
+        }
+    }
+
+    /**
+     * Reload from the database the buckets of the specified engine size classes, for all conditions, on the given
+     * tracks.
+     *
+     * @param trackIds      The track IDs
+     * @param engineClasses The engine size classes
+     */
+    private synchronized void reloadClasses(List<Long> trackIds, EngineClass... engineClasses) {
+        for (Long trackId : trackIds) {
+            edit(trackId, board -> {
+                // every lap of the track is in a bucket (held or dropped), so the board knows all of its conditions
+                final Set<String> conditions = new HashSet<>();
+                board.keySet().forEach(key -> conditions.add(key.conditions()));
+                for (String condition : conditions) {
+                    for (EngineClass engineClass : engineClasses) {
+                        final BucketKey key = new BucketKey(condition, engineClass);
+                        final Bucket previous = board.get(key);
+                        if (previous != null) {
+                            previous.entries().forEach(entry -> retained.remove(entry.getLapRecordId()));
+                        }
+                        board.put(key, load(trackId, key));
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Load the best laps of a bucket from the database, and hold them.
+     *
+     * @param trackId The track ID
+     * @param key     The bucket key
+     * @return The loaded {@link Bucket}
+     */
+    private Bucket load(long trackId, BucketKey key) {
+        final List<LeaderboardEntry> entries = lapRecordRepository.findLeaderboardEntries(trackId, key.conditions(),
+                key.engineClass().getMinEngineSize(), key.engineClass().getMaxEngineSize(),
+                PageRequest.ofSize(MAX_LIMIT + 1));
+        final List<LeaderboardEntry> held = entries.size() > MAX_LIMIT ? entries.subList(0, MAX_LIMIT) : entries;
+        held.forEach(entry -> retained.put(entry.getLapRecordId(), entry));
+        return new Bucket(List.copyOf(held), entries.size() <= MAX_LIMIT);
+    }
+
+    /**
+     * Apply the given modification to a copy of the specified track board, then publish it.
+     *
+     * @param trackId      The track ID
+     * @param modification The modification of the board buckets
+     */
+    private void edit(long trackId, Consumer<Map<BucketKey, Bucket>> modification) {
+        final Map<BucketKey, Bucket> board = new HashMap<>(boards.getOrDefault(trackId, Map.of()));
+        modification.accept(board);
+        board.values().removeIf(bucket -> bucket.entries().isEmpty() && bucket.complete());
+        if (board.isEmpty()) {
+            boards.remove(trackId);
+        } else {
+            boards.put(trackId, Map.copyOf(board));
+        }
+    }
+
+    /**
+     * Identify the bucket of a lap within its track board.
+     *
+     * @param conditions  The track conditions
+     * @param engineClass The engine size class of the bike
+     */
+    private record BucketKey(String conditions, EngineClass engineClass) {
+
+        static BucketKey of(LeaderboardEntry entry) {
+            return new BucketKey(entry.getConditions(), entry.getEngineClass());
+        }
+    }
+
+    /**
+     * The best laps of a bucket, ordered.
+     *
+     * @param entries  The held entries, at most {@link #MAX_LIMIT}
+     * @param complete Whether all the laps of the bucket are held, i.e. none has been dropped
+     */
+    private record Bucket(List<LeaderboardEntry> entries, boolean complete) {
+    }
+
+}
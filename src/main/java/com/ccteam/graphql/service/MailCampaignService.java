@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.service;
+
+import com.ccteam.graphql.config.mail.MailCampaignProperties;
+import com.ccteam.graphql.config.scheduling.ClusterJobRunner;
+import com.ccteam.graphql.config.scheduling.JobExecution;
+import com.ccteam.graphql.entities.Event;
+import com.ccteam.graphql.entities.MailCampaign;
+import com.ccteam.graphql.entities.MailCampaignRecipient;
+import com.ccteam.graphql.entities.News;
+import com.ccteam.graphql.model.CampaignRecipient;
+import com.ccteam.graphql.repository.EventRepository;
+import com.ccteam.graphql.repository.MailCampaignRecipientRepository;
+import com.ccteam.graphql.repository.MailCampaignRepository;
+import com.ccteam.graphql.repository.NewsRepository;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.util.HtmlUtils;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.Context;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.IsoFields;
+import java.util.*;
+
+/**
+ * Send mails to many members at once : the reminder to the participants of an event the day before it starts, and
+ * the weekly news digest to all verified members.
+ * <p>
+ * A campaign is created by a scheduled task, its body is rendered once through Thymeleaf with the shared variables
+ * (the event, the news) and stored with the campaign, the {@value #FIRST_NAME_PLACEHOLDER} placeholder being
+ * replaced for each recipient. Recipients are then read from the {@code event_member} and {@code member} tables by
+ * batches of {@code ct.mail.campaign.batch-size}, each batch being sent over a single SMTP connection, and one batch
+ * being sent every {@code ct.mail.campaign.batch-interval} to keep under the SMTP server limits.
+ * <p>
+ * Each recipient gets a {@link MailCampaignRecipient} row once processed, and the next batch is made of the
+ * recipients without one, so a campaign interrupted by a restart resumes where it stopped. When the connection to the
+ * SMTP server is lost, the messages sent before are still recorded, and only the failed ones are tried again later.
+ * <p>
+ * All the tasks run on one node of the cluster at a time, through the {@link ClusterJobRunner}.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Service
+@Slf4j
+public class MailCampaignService {
+
+    static final String FIRST_NAME_PLACEHOLDER = "{{firstName}}";
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    /**
+     * Lease of the campaign jobs, much longer than a batch takes.
+     */
+    private static final Duration JOB_LOCK_AT_MOST = Duration.ofMinutes(5);
+
+    /**
+     * Minimum lease of the campaign creation jobs, so that a node whose clock is late does not run them again.
+     */
+    private static final Duration CRON_LOCK_AT_LEAST = Duration.ofMinutes(1);
+
+    private final MailCampaignRepository mailCampaignRepository;
+    private final MailCampaignRecipientRepository mailCampaignRecipientRepository;
+    private final EventRepository eventRepository;
+    private final NewsRepository newsRepository;
+    private final ITemplateEngine templateEngine;
+    private final JavaMailSender sender;
+    private final MailCampaignProperties mailCampaignProperties;
+    private final ClusterJobRunner clusterJobRunner;
+
+    public MailCampaignService(MailCampaignRepository mailCampaignRepository,
+                               MailCampaignRecipientRepository mailCampaignRecipientRepository,
+                               EventRepository eventRepository, NewsRepository newsRepository,
+                               ITemplateEngine templateEngine, JavaMailSender sender,
+                               MailCampaignProperties mailCampaignProperties, ClusterJobRunner clusterJobRunner) {
+        this.mailCampaignRepository = mailCampaignRepository;
+        this.mailCampaignRecipientRepository = mailCampaignRecipientRepository;
+        this.eventRepository = eventRepository;
+        this.newsRepository = newsRepository;
+        this.templateEngine = templateEngine;
+        this.sender = sender;
+        this.mailCampaignProperties = mailCampaignProperties;
+        this.clusterJobRunner = clusterJobRunner;
+    }
+
+    /**
+     * Create a reminder campaign for each event starting the next day.
+     */
+    @Scheduled(cron = "${ct.mail.campaign.event-reminder-cron:0 0 9 * * *}")
+    public void createEventReminders() {
+        clusterJobRunner.run("mail-campaign-event-reminders", JOB_LOCK_AT_MOST, CRON_LOCK_AT_LEAST, execution -> {
+            final LocalDate tomorrow = LocalDate.now().plusDays(1);
+            for (Event event : eventRepository.findStartingBetween(tomorrow.atStartOfDay(), tomorrow.plusDays(1).atStartOfDay())) {
+                final Context context = new Context(Locale.FRENCH);
+                context.setVariable("event", event);
+                create(MailCampaign.Type.EVENT_REMINDER, "event-reminder:" + event.getId(), event.getId(),
+                        "CCTeam - Rappel : " + event.getTitle() + " demain",
+                        templateEngine.process("mail/event-reminder", context));
+                execution.chunkDone(1, null);
+            }
+        });
+    }
+
+    /**
+     * Create the digest campaign of the news of the past week, if there are any.
+     */
+    @Scheduled(cron = "${ct.mail.campaign.news-digest-cron:0 0 18 * * SUN}")
+    public void createNewsDigest() {
+        clusterJobRunner.run("mail-campaign-news-digest", JOB_LOCK_AT_MOST, CRON_LOCK_AT_LEAST, execution -> {
+            final LocalDate today = LocalDate.now();
+            final List<News> news = newsRepository.findPublishedSince(today.minusDays(7).atStartOfDay());
+            if (news.isEmpty()) {
+                log.info("No news this week, no digest sent");
+                return;
+            }
+            final Context context = new Context(Locale.FRENCH);
+            context.setVariable("news", news);
+            create(MailCampaign.Type.NEWS_DIGEST,
+                    "news-digest:" + today.get(IsoFields.WEEK_BASED_YEAR) + "-W" + today.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR),
+                    null, "CCTeam - Les actualités de la semaine", templateEngine.process("mail/news-digest", context));
+            execution.chunkDone(news.size(), null);
+        });
+    }
+
+    private void create(MailCampaign.Type type, String key, Long eventId, String subject, String body) {
+        if (mailCampaignRepository.existsByCampaignKey(key)) {
+            return;
+        }
+        final MailCampaign campaign = new MailCampaign();
+        campaign.setType(type);
+        campaign.setCampaignKey(key);
+        campaign.setEventId(eventId);
+        campaign.setSubject(subject);
+        campaign.setBody(body);
+        try {
+            mailCampaignRepository.save(campaign);
+            log.info("Mail campaign {} created", key);
+        } catch (DataIntegrityViolationException e) {
+            // created in the meantime
+            log.info("Mail campaign {} already exists", key);
+        }
+    }
+
+    /**
+     * Send the next batch of the oldest running campaign, completing it when there is no recipient left. Only one
+     * node sends at a time, so that a recipient never gets the mail twice.
+     */
+    @Scheduled(fixedDelayString = "${ct.mail.campaign.batch-interval:10s}")
+    public void sendNextBatch() {
+        clusterJobRunner.run("mail-campaign-send", JOB_LOCK_AT_MOST, Duration.ZERO, this::sendBatch);
+    }
+
+    private void sendBatch(JobExecution execution) {
+        final Optional<MailCampaign> campaignOpt = mailCampaignRepository.findFirstByStatusOrderByIdAsc(MailCampaign.Status.RUNNING);
+        if (campaignOpt.isEmpty()) {
+            return;
+        }
+        final MailCampaign campaign = campaignOpt.get();
+        final PageRequest batch = PageRequest.of(0, Math.max(1, mailCampaignProperties.getBatchSize()));
+        final List<CampaignRecipient> recipients = switch (campaign.getType()) {
+            case EVENT_REMINDER -> mailCampaignRecipientRepository.findPendingEventParticipants(campaign.getId(),
+                    campaign.getEventId(), batch);
+            case NEWS_DIGEST -> mailCampaignRecipientRepository.findPendingMembers(campaign.getId(), batch);
+        };
+        if (recipients.isEmpty()) {
+            mailCampaignRepository.markCompleted(campaign.getId(), LocalDateTime.now());
+            log.info("Mail campaign {} completed", campaign.getCampaignKey());
+            return;
+        }
+
+        final Map<MimeMessage, CampaignRecipient> messages = new LinkedHashMap<>();
+        final List<MailCampaignRecipient> processed = new ArrayList<>();
+        for (CampaignRecipient recipient : recipients) {
+            try {
+                messages.put(toMimeMessage(campaign, recipient), recipient);
+            } catch (MessagingException e) {
+                processed.add(processed(campaign, recipient, e));
+            }
+        }
+
+        Map<Object, Exception> failures = Map.of();
+        Set<Object> retried = Set.of();
+        try {
+            if (!messages.isEmpty()) {
+                sender.send(messages.keySet().toArray(new MimeMessage[0]));
+            }
+        } catch (MailSendException e) {
+            if (e.getCause() != null && !e.getFailedMessages().isEmpty()) {
+                // connection failure, possibly after some messages have been sent : only the failed ones are left
+                // unrecorded and tried again on the next batch, the sent ones must not be sent twice
+                log.warn("Mail campaign {} paused, the SMTP server can't be reached: {}", campaign.getCampaignKey(), e.getMessage());
+                retried = e.getFailedMessages().keySet();
+            } else {
+                failures = e.getFailedMessages();
+            }
+        } catch (MailException e) {
+            log.warn("Mail campaign {} paused, the SMTP server refused the connection: {}", campaign.getCampaignKey(), e.getMessage());
+            return;
+        }
+
+        for (Map.Entry<MimeMessage, CampaignRecipient> entry : messages.entrySet()) {
+            if (!retried.contains(entry.getKey())) {
+                processed.add(processed(campaign, entry.getValue(), failures.get(entry.getKey())));
+            }
+        }
+        if (processed.isEmpty()) {
+            return;
+        }
+        mailCampaignRecipientRepository.saveAll(processed);
+        execution.chunkDone(processed.size(), null);
+        final int sent = messages.size() - failures.size() - retried.size();
+        log.info("Mail campaign {} : {} mails sent, {} failed, {} to retry", campaign.getCampaignKey(),
+                sent, processed.size() - sent, retried.size());
+    }
+
+    private MimeMessage toMimeMessage(MailCampaign campaign, CampaignRecipient recipient) throws MessagingException {
+        final MimeMessage message = sender.createMimeMessage();
+        final MimeMessageHelper helper = new MimeMessageHelper(message, StandardCharsets.UTF_8.name());
+        helper.setTo(recipient.getEmail());
+        helper.setSubject(campaign.getSubject());
+        helper.setText(campaign.getBody().replace(FIRST_NAME_PLACEHOLDER,
+                HtmlUtils.htmlEscape(Objects.requireNonNullElse(recipient.getFirstName(), ""))), true);
+        return message;
+    }
+
+    private static MailCampaignRecipient processed(MailCampaign campaign, CampaignRecipient recipient, Exception failure) {
+        final MailCampaignRecipient processed = new MailCampaignRecipient();
+        processed.setCampaign(campaign);
+        processed.setMemberId(recipient.getMemberId());
+        processed.setEmail(recipient.getEmail());
+        processed.setStatus(failure == null ? MailCampaignRecipient.Status.SENT : MailCampaignRecipient.Status.FAILED);
+        if (failure != null) {
+            final String error = failure.toString();
+            processed.setError(error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error);
+        }
+        return processed;
+    }
+
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.service;
+
+import com.ccteam.graphql.config.mail.MailOutboxProperties;
+import com.ccteam.graphql.config.scheduling.ClusterJobRunner;
+import com.ccteam.graphql.entities.OutboxMail;
+import com.ccteam.graphql.repository.OutboxMailRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Send the mails written to the outbox.
+ * <p>
+ * The due mails are read by batches of {@code ct.mail.outbox.batch-size}, and each batch is sent over a single SMTP
+ * connection. Each mail is first claimed with a conditional update pushing its next attempt date forward by
+ * {@code ct.mail.outbox.lease}, so that when several nodes run the sender a mail is only sent by one of them, and so
+ * that the mails of a node dying while sending them are due again once the lease is over.
+ * <p>
+ * A mail that fails is retried after {@code ct.mail.outbox.initial-backoff}, doubled after each failure up to
+ * {@code ct.mail.outbox.max-backoff}. After {@code ct.mail.outbox.max-attempts} failures it is marked as dead and
+ * left in the outbox with its last error.
+ * <p>
+ * The body of a mail is cleared as soon as it is sent or given up on, since it may carry an OTP in clear, and sent and
+ * dead mails are purged after {@code ct.mail.outbox.sent-retention} and {@code ct.mail.outbox.dead-retention}.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Service
+@Slf4j
+public class MailOutboxSender {
+
+    static final int PURGE_BATCH_SIZE = 1000;
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final OutboxMailRepository outboxMailRepository;
+    private final JavaMailSender sender;
+    private final MailOutboxProperties mailOutboxProperties;
+    private final ClusterJobRunner clusterJobRunner;
+    private final Counter sent;
+    private final Counter failed;
+    private final Counter dead;
+
+    public MailOutboxSender(OutboxMailRepository outboxMailRepository, JavaMailSender sender,
+                            MailOutboxProperties mailOutboxProperties, ClusterJobRunner clusterJobRunner,
+                            MeterRegistry meterRegistry) {
+        this.outboxMailRepository = outboxMailRepository;
+        this.sender = sender;
+        this.mailOutboxProperties = mailOutboxProperties;
+        this.clusterJobRunner = clusterJobRunner;
+        this.sent = Counter.builder("ct.mail_outbox.deliveries")
+                .description("Number of mail delivery attempts")
+                .tag("result", "sent")
+                .register(meterRegistry);
+        this.failed = Counter.builder("ct.mail_outbox.deliveries")
+                .description("Number of mail delivery attempts")
+                .tag("result", "failed")
+                .register(meterRegistry);
+        this.dead = Counter.builder("ct.mail_outbox.deliveries")
+                .description("Number of mail delivery attempts")
+                .tag("result", "dead")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Send the due mails, batch after batch until there are no more.
+     */
+    @Scheduled(fixedDelayString = "${ct.mail.outbox.poll-interval:5s}")
+    public void sendDue() {
+        final int batchSize = Math.max(1, mailOutboxProperties.getBatchSize());
+        int read;
+        do {
+            read = sendBatch(batchSize);
+        } while (read == batchSize);
+    }
+
+    /**
+     * Send one batch of due mails over a single connection.
+     *
+     * @return The number of due mails read
+     */
+    private int sendBatch(int batchSize) {
+        final LocalDateTime now = LocalDateTime.now();
+        final List<OutboxMail> due = outboxMailRepository.findDue(now, PageRequest.of(0, batchSize));
+        if (due.isEmpty()) {
+            return 0;
+        }
+
+        final LocalDateTime leaseUntil = now.plus(mailOutboxProperties.getLease());
+        final Map<MimeMessage, OutboxMail> messages = new LinkedHashMap<>();
+        for (OutboxMail mail : due) {
+            if (outboxMailRepository.claim(mail.getId(), mail.getNextAttemptOn(), leaseUntil) == 0) {
+                // sent by another node
+                continue;
+            }
+            try {
+                messages.put(toMimeMessage(mail), mail);
+            } catch (MessagingException e) {
+                fail(mail, e);
+            }
+        }
+        if (messages.isEmpty()) {
+            return due.size();
+        }
+
+        Map<Object, Exception> failures = Map.of();
+        try {
+            sender.send(messages.keySet().toArray(new MimeMessage[0]));
+        } catch (MailSendException e) {
+            failures = e.getFailedMessages();
+        } catch (MailException e) {
+            // could not even connect (authentication failure...), the whole batch failed
+            final Map<Object, Exception> all = new LinkedHashMap<>();
+            messages.keySet().forEach(message -> all.put(message, e));
+            failures = all;
+        }
+
+        for (Map.Entry<MimeMessage, OutboxMail> entry : messages.entrySet()) {
+            final Exception failure = failures.get(entry.getKey());
+            if (failure != null) {
+                fail(entry.getValue(), failure);
+            } else {
+                outboxMailRepository.markSent(entry.getValue().getId(), LocalDateTime.now());
+                sent.increment();
+            }
+        }
+        log.info("{} mails sent out of {}", messages.size() - failures.size(), messages.size());
+        return due.size();
+    }
+
+    /**
+     * Record a failed attempt, scheduling the next one or giving up.
+     */
+    private void fail(OutboxMail mail, Exception e) {
+        final int attempts = mail.getAttempts() + 1;
+        final String error = truncate(e.toString());
+        if (attempts >= mailOutboxProperties.getMaxAttempts()) {
+            log.error("Mail {} to {} could not be sent after {} attempts, giving up", mail.getId(), mail.getRecipient(), attempts, e);
+            outboxMailRepository.markFailed(mail.getId(), OutboxMail.Status.DEAD, attempts, LocalDateTime.now(), error);
+            dead.increment();
+        } else {
+            final Duration backoff = backoff(attempts);
+            log.warn("Mail {} to {} could not be sent (attempt {}), retrying in {}: {}", mail.getId(), mail.getRecipient(),
+                    attempts, backoff, error);
+            outboxMailRepository.markFailed(mail.getId(), OutboxMail.Status.PENDING, attempts,
+                    LocalDateTime.now().plus(backoff), error);
+            failed.increment();
+        }
+    }
+
+    /**
+     * Delay before the next attempt, after the given number of failed attempts.
+     */
+    Duration backoff(int attempts) {
+        final Duration max = mailOutboxProperties.getMaxBackoff();
+        final Duration backoff = mailOutboxProperties.getInitialBackoff().multipliedBy(1L << Math.min(attempts - 1, 30));
+        return backoff.compareTo(max) > 0 ? max : backoff;
+    }
+
+    /**
+     * Delete the mails sent for more than {@code ct.mail.outbox.sent-retention} and those given up on for more than
+     * {@code ct.mail.outbox.dead-retention}, by batches so that no long lock is held on the table, on one node of the
+     * cluster.
+     */
+    @Scheduled(fixedDelayString = "${ct.mail.outbox.purge-interval:1h}")
+    public void purgeSent() {
+        clusterJobRunner.run("mail-outbox-purge", Duration.ofMinutes(5), Duration.ZERO, execution -> {
+            final LocalDateTime sentThreshold = LocalDateTime.now().minus(mailOutboxProperties.getSentRetention());
+            int deleted;
+            do {
+                deleted = outboxMailRepository.deleteSentBefore(sentThreshold, PURGE_BATCH_SIZE);
+                execution.chunkDone(deleted, null);
+            } while (deleted == PURGE_BATCH_SIZE);
+            final LocalDateTime deadThreshold = LocalDateTime.now().minus(mailOutboxProperties.getDeadRetention());
+            do {
+                deleted = outboxMailRepository.deleteDeadBefore(deadThreshold, PURGE_BATCH_SIZE);
+                execution.chunkDone(deleted, null);
+            } while (deleted == PURGE_BATCH_SIZE);
+            if (execution.getProcessed() > 0) {
+                log.info("{} sent or dead mails deleted from the outbox", execution.getProcessed());
+            }
+        });
+    }
+
+    private MimeMessage toMimeMessage(OutboxMail mail) throws MessagingException {
+        final MimeMessage message = sender.createMimeMessage();
+        final MimeMessageHelper helper = new MimeMessageHelper(message, StandardCharsets.UTF_8.name());
+        helper.setTo(mail.getRecipient());
+        if (mail.getBcc() != null) {
+            helper.setBcc(mail.getBcc());
+        }
+        helper.setSubject(mail.getSubject());
+        helper.setText(mail.getBody(), mail.isHtml());
+        return message;
+    }
+
+    private static String truncate(String error) {
+        return error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+    }
+
+}
@@ -20,15 +20,20 @@
 
 package com.ccteam.graphql.service;
 
-import com.ccteam.graphql.entities.Member;
-import jakarta.mail.MessagingException;
-import jakarta.mail.internet.MimeMessage;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMessageHelper;
+import com.ccteam.graphql.entities.Otp;
+import com.ccteam.graphql.entities.OutboxMail;
+import com.ccteam.graphql.repository.OutboxMailRepository;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
 
 /**
  * Mail utilities.
+ * <p>
+ * Mails are not sent right away but written to the outbox, then sent in the background by the
+ * {@link MailOutboxSender}. The OTP a mail carries is issued in the same transaction as the mail is queued, so that
+ * either both are saved or none is.
  *
  * @author yann39
  * @since 1.0.0
@@ -36,76 +41,77 @@ import org.springframework.stereotype.Service;
 @Service
 public class MailService {
 
-    private final JavaMailSender sender;
+    private static final String BCC = "bailly.yann@wanadoo.fr";
+
+    private final OutboxMailRepository outboxMailRepository;
+    private final OtpService otpService;
 
-    public MailService(JavaMailSender sender) {
-        this.sender = sender;
+    public MailService(OutboxMailRepository outboxMailRepository, OtpService otpService) {
+        this.outboxMailRepository = outboxMailRepository;
+        this.otpService = otpService;
     }
 
     /**
-     * Send registration email to the specified member.
+     * Issue a registration OTP for the specified member and queue the registration email carrying it.
      *
-     * @param member the {@link Member} to send the email to
-     * @throws MessagingException An error occurred while sending the email
+     * @param email     the e-mail address to send the email to
+     * @param firstName the first name of the member
      */
-    public void sendRegistrationEmail(Member member) throws MessagingException {
-        final MimeMessage message = sender.createMimeMessage();
-        final MimeMessageHelper helper = new MimeMessageHelper(message);
-
-        helper.setTo(member.getEmail());
-        helper.setBcc("bailly.yann@wanadoo.fr");
-        helper.setSubject("CCTeam - Confirmez votre adresse e-mail");
+    @Transactional
+    public void sendRegistrationEmail(String email, String firstName) {
+        final String otp = otpService.issue(email, Otp.Purpose.REGISTRATION);
 
-        String body = "<p>Bonjour " + member.getFirstName() + ",</p><br/>";
+        String body = "<p>Bonjour " + firstName + ",</p><br/>";
         body = body + "<p>Bienvenue sur l'application CCTeam !</p>";
-        body = body + "<p>Veuillez saisir le code suivant dans l'application afin de finaliser votre inscription : <b>" + member.getOtp() + "</b></p>";
+        body = body + "<p>Veuillez saisir le code suivant dans l'application afin de finaliser votre inscription : <b>" + otp + "</b></p>";
         body = body + "<p>Le code est valide <b>10</b> minutes.</p><br/>";
         body = body + "<p>L'équipe CCTeam</p>";
 
-        helper.setText(body, true);
-
-        sender.send(message);
+        enqueue(email, BCC, "CCTeam - Confirmez votre adresse e-mail", body, true);
     }
 
     /**
-     * Send delete account request OTP email to the specified member.
+     * Issue a delete account OTP for the specified member and queue the delete account request email carrying it.
      *
-     * @param member the {@link Member} to send the email to
-     * @throws MessagingException An error occurred while sending the email
+     * @param email     the e-mail address to send the email to
+     * @param firstName the first name of the member
      */
-    public void sendDeleteAccountRequestOtpEmail(Member member) throws MessagingException {
-        final MimeMessage message = sender.createMimeMessage();
-        final MimeMessageHelper helper = new MimeMessageHelper(message);
-
-        helper.setTo(member.getEmail());
-        helper.setBcc("bailly.yann@wanadoo.fr");
-        helper.setSubject("CCTeam - Confirmez votre adresse e-mail pour la supression de votre compte");
+    @Transactional
+    public void sendDeleteAccountRequestOtpEmail(String email, String firstName) {
+        final String otp = otpService.issue(email, Otp.Purpose.DELETE_ACCOUNT);
 
-        String body = "<p>Bonjour " + member.getFirstName() + ",</p><br/>";
+        String body = "<p>Bonjour " + firstName + ",</p><br/>";
         body = body + "<p>Nous sommes désolé que vous souhaitiez supprimer votre compte</p>";
-        body = body + "<p>Veuillez saisir le code suivant dans l'application afin de finaliser la suppression de votre compte : <b>" + member.getOtp() + "</b></p>";
+        body = body + "<p>Veuillez saisir le code suivant dans l'application afin de finaliser la suppression de votre compte : <b>" + otp + "</b></p>";
         body = body + "<p>Le code est valide <b>10</b> minutes.</p><br/>";
         body = body + "<p>L'équipe CCTeam</p>";
 
-        helper.setText(body, true);
-
-        sender.send(message);
+        enqueue(email, BCC, "CCTeam - Confirmez votre adresse e-mail pour la supression de votre compte", body, true);
     }
 
     /**
-     * Send forgot password email to the specified email address.
+     * Issue a password reset OTP for the specified email address and queue the forgot password email.
      *
      * @param email the email address to send the email to
-     * @throws MessagingException An error occurred while sending the email
      */
-    public void sendForgotPasswordEmail(String email) throws MessagingException {
-        final MimeMessage message = sender.createMimeMessage();
-        final MimeMessageHelper helper = new MimeMessageHelper(message);
+    @Transactional
+    public void sendForgotPasswordEmail(String email) {
+        otpService.issue(email, Otp.Purpose.PASSWORD_RESET);
 
-        helper.setTo(email);
-        helper.setSubject("CCTeam - Votre mot de passe");
-        helper.setText("Bonjour");
+        enqueue(email, null, "CCTeam - Votre mot de passe", "Bonjour", false);
+    }
 
-        sender.send(message);
+    /**
+     * Write a mail to the outbox, to be sent as soon as possible.
+     */
+    private void enqueue(String recipient, String bcc, String subject, String body, boolean html) {
+        final OutboxMail mail = new OutboxMail();
+        mail.setRecipient(recipient);
+        mail.setBcc(bcc);
+        mail.setSubject(subject);
+        mail.setBody(body);
+        mail.setHtml(html);
+        mail.setNextAttemptOn(LocalDateTime.now());
+        outboxMailRepository.save(mail);
     }
-}
\ No newline at end of file
+}
@@ -21,18 +21,25 @@
 package com.ccteam.graphql.service;
 
 import com.ccteam.graphql.config.graphql.CustomGraphQLException;
+import com.ccteam.graphql.config.security.PasswordHashingRejectedException;
+import com.ccteam.graphql.config.security.PasswordHashingService;
 import com.ccteam.graphql.entities.*;
 import com.ccteam.graphql.enums.BoardRole;
+import com.ccteam.graphql.model.AvatarInfo;
+import com.ccteam.graphql.model.MemberCredentials;
 import com.ccteam.graphql.repository.MemberRepository;
 import com.ccteam.graphql.repository.MembershipFeeRepository;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
-import java.util.Base64;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -47,13 +54,23 @@ public class MemberService {
 
     private final MemberRepository memberRepository;
     private final MembershipFeeRepository membershipFeeRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
+    private final AvatarService avatarService;
+    private final AvatarUploadService avatarUploadService;
+    private final LeaderboardService leaderboardService;
+    private final EventService eventService;
 
     public MemberService(MemberRepository memberRepository, MembershipFeeRepository membershipFeeRepository,
-                         PasswordEncoder passwordEncoder) {
+                         PasswordHashingService passwordHashingService, AvatarService avatarService,
+                         AvatarUploadService avatarUploadService, LeaderboardService leaderboardService,
+                         EventService eventService) {
         this.memberRepository = memberRepository;
         this.membershipFeeRepository = membershipFeeRepository;
-        this.passwordEncoder = passwordEncoder;
+        this.passwordHashingService = passwordHashingService;
+        this.avatarService = avatarService;
+        this.avatarUploadService = avatarUploadService;
+        this.leaderboardService = leaderboardService;
+        this.eventService = eventService;
     }
 
     /**
@@ -73,6 +90,37 @@ public class MemberService {
         return memberRepository.count();
     }
 
+    /**
+     * Get the avatar metadata of the given members, with a single query whatever their number.
+     *
+     * @param members The members
+     * @return The avatar metadata by member, members without avatar are left out
+     */
+    public Map<Member, AvatarInfo> getAvatarInfos(List<Member> members) {
+        final Map<Long, Member> withAvatar = new HashMap<>();
+        for (Member member : members) {
+            if (member.getAvatarId() != null || member.getAvatar() != null) {
+                withAvatar.put(member.getId(), member);
+            }
+        }
+        final Map<Member, AvatarInfo> avatars = new HashMap<>();
+        if (!withAvatar.isEmpty()) {
+            memberRepository.findAvatarInfosByMemberIds(withAvatar.keySet())
+                    .forEach(a -> avatars.put(withAvatar.get(a.getMemberId()), a));
+        }
+        return avatars;
+    }
+
+    /**
+     * Get the version of the given avatar, see {@link AvatarService#getVersion(AvatarInfo)}.
+     *
+     * @param avatar The avatar metadata
+     * @return The avatar version
+     */
+    public String getAvatarVersion(AvatarInfo avatar) {
+        return avatarService.getVersion(avatar);
+    }
+
     /**
      * Get a member given its {@code id}.
      *
@@ -119,19 +167,19 @@ public class MemberService {
     /**
      * Create a new member.
      *
-     * @param firstName      The member first name
-     * @param lastName       The member last name
-     * @param email          The member e-mail address
-     * @param phone          The member phone number
-     * @param avatarFile     The member avatar file as base64 encoded string
-     * @param avatarFileName The member avatar file name
+     * @param firstName         The member first name
+     * @param lastName          The member last name
+     * @param email             The member e-mail address
+     * @param phone             The member phone number
+     * @param avatarUploadToken The token of the uploaded avatar file, if any
+     * @param callerId          The ID of the member calling, who must have uploaded the avatar file
      * @return A {@link Member} object representing the member just created
      */
+    @Transactional
     public Member createMember(String firstName, String lastName, String email, String phone, Integer riderNumber,
-                               String avatarFile, String avatarFileName, Member.Role role) {
+                               String avatarUploadToken, long callerId, Member.Role role) {
 
-        final Optional<Member> memberOptional = memberRepository.findByEmailCustom(email);
-        if (memberOptional.isPresent()) {
+        if (memberRepository.existsMemberByEmail(email)) {
             log.error("Member with e-mail address {} already exist in the database", email);
             throw new CustomGraphQLException("member_email_already_exist",
                     "A member with the same e-mail address already exist in the database");
@@ -147,13 +195,8 @@ public class MemberService {
         member.setCreatedOn(LocalDateTime.now());
         member.setRole(role);
 
-        if (avatarFile != null) {
-            final byte[] decoded = Base64.getDecoder().decode(avatarFile.getBytes());
-            final Attachment attachment = new Attachment();
-            attachment.setFilename(avatarFileName);
-            attachment.setFile(decoded);
-            attachment.setUploadDate(LocalDateTime.now());
-            member.setAvatar(attachment);
+        if (avatarUploadToken != null) {
+            member.setAvatar(avatarService.setContent(new Attachment(), claimAvatar(avatarUploadToken, callerId)));
         }
 
         return memberRepository.save(member);
@@ -167,18 +210,19 @@ public class MemberService {
      * Without it, the detached entity returned by {@code save} carries uninitialised lazy proxies during GraphQL
      * response serialization.
      *
-     * @param memberId       The ID of the {@link Member} to update
-     * @param firstName      The member first name
-     * @param lastName       The member last name
-     * @param email          The member e-mail address
-     * @param phone          The member phone number
-     * @param avatarFile     The member avatar file as base64 encoded string
-     * @param avatarFileName The member avatar file name
+     * @param memberId          The ID of the {@link Member} to update
+     * @param firstName         The member first name
+     * @param lastName          The member last name
+     * @param email             The member e-mail address
+     * @param phone             The member phone number
+     * @param avatarUploadToken The token of the uploaded avatar file, if any
+     * @param callerId          The ID of the member calling, who must have uploaded the avatar file, and be an admin
+     *                          to change the role
      * @return An {@link Event} object representing the event just updated
      */
     @Transactional
     public Member updateMember(long memberId, String firstName, String lastName, String email, String phone,
-                               Integer riderNumber, String avatarFile, String avatarFileName, Member.Role role) {
+                               Integer riderNumber, String avatarUploadToken, long callerId, Member.Role role) {
         final Optional<Member> memberOptional = memberRepository.findByIdCustom(memberId);
         if (memberOptional.isEmpty()) {
             log.error("Member with id {} not found in the database", memberId);
@@ -187,6 +231,15 @@ public class MemberService {
         }
 
         final Member member = memberOptional.get();
+
+        // the role is compared with the persisted ones rather than the JWT claims, which may predate a demotion
+        if (member.getRole() != role
+                && memberRepository.findRoleById(callerId).orElse(null) != Member.Role.ROLE_ADMIN) {
+            log.error("Member {} tried to change role of member {} from {} to {}, refused", callerId, memberId,
+                    member.getRole(), role);
+            throw new CustomGraphQLException("forbidden", "You cannot change the role");
+        }
+
         member.setFirstName(firstName);
         member.setLastName(lastName);
         member.setEmail(email);
@@ -195,32 +248,16 @@ public class MemberService {
         member.setRole(role);
         member.setModifiedOn(LocalDateTime.now());
 
-        if (avatarFile != null) {
-            final byte[] decoded;
-            try {
-                decoded = Base64.getDecoder().decode(avatarFile);
-            } catch (IllegalArgumentException e) {
-                log.error("Member {} tried to update avatar with invalid base64 (length = {} chars) : {}",
-                        memberId, avatarFile.length(), e.getMessage());
-                throw new CustomGraphQLException("invalid_avatar", "The avatar file is not valid base64");
-            }
-
-            if (member.getAvatar() != null) {
-                member.getAvatar().setFilename(avatarFileName);
-                member.getAvatar().setFile(decoded);
-                member.getAvatar().setUploadDate(LocalDateTime.now());
-            } else {
-                final Attachment attachment = new Attachment();
-                attachment.setFilename(avatarFileName);
-                attachment.setFile(decoded);
-                attachment.setUploadDate(LocalDateTime.now());
-                member.setAvatar(attachment);
-            }
+        if (avatarUploadToken != null) {
+            member.setAvatar(avatarService.setContent(member.getAvatar() != null ? member.getAvatar() : new Attachment(),
+                    claimAvatar(avatarUploadToken, callerId)));
         } else {
-            log.info("Member {} tried to update avatar with null file, skipping avatar change", memberId);
+            log.info("Member {} updated without avatar upload token, skipping avatar change", memberId);
         }
 
-        return memberRepository.save(member);
+        final Member saved = memberRepository.save(member);
+        leaderboardService.memberUpdated(saved);
+        return saved;
     }
 
     /**
@@ -239,6 +276,8 @@ public class MemberService {
 
         final Member member = memberOptional.get();
         memberRepository.delete(member);
+        // its event registrations are deleted along with it
+        eventService.memberDeleted();
         return member;
     }
 
@@ -248,6 +287,11 @@ public class MemberService {
      * If a non-null {@code boardRole} is provided, any other member previously holding that role is automatically
      * demoted (their {@code boardRole} is set to {@code null}) so that only one member at a time holds each board
      * position.
+     * <p>
+     * Both the demotion and the assignment are single {@code UPDATE} statements, the unique index on
+     * {@code member.board_role} guarantees the invariant even under concurrent calls (the second demotion blocks on
+     * the row locked by the first assignment, then clears it once committed). When both demotions run before either
+     * assignment, the second assignment violates the unique index and is refused with {@code board_role_conflict}.
      *
      * @param memberId  The id of the member whose role is being set
      * @param boardRole The role to assign, or {@code null} to clear
@@ -255,27 +299,32 @@ public class MemberService {
      */
     @Transactional
     public Member setBoardRole(long memberId, BoardRole boardRole) {
-        final Optional<Member> memberOptional = memberRepository.findByIdCustom(memberId);
-        if (memberOptional.isEmpty()) {
-            log.error("Member with id {} not found in the database", memberId);
-            throw new CustomGraphQLException("member_not_found",
-                    "Specified member ID has not been found in the database");
-        }
-
-        final Member member = memberOptional.get();
-
         if (boardRole != null) {
             // demote any other member that already holds the same role
-            final List<Member> previousHolders =
-                    memberRepository.findByBoardRoleAndIdNot(boardRole, memberId);
-            for (Member previous : previousHolders) {
-                previous.setBoardRole(null);
-                memberRepository.save(previous);
+            final int demoted = memberRepository.clearBoardRole(boardRole, memberId);
+            if (demoted > 0) {
+                log.info("Demoted {} member(s) previously holding board role {}", demoted, boardRole);
             }
         }
 
-        member.setBoardRole(boardRole);
-        return memberRepository.save(member);
+        final int updated;
+        try {
+            updated = memberRepository.updateBoardRole(memberId, boardRole);
+        } catch (DataIntegrityViolationException e) {
+            if (!isViolationOf(e, Member.BOARD_ROLE_CONSTRAINT)) {
+                throw e;
+            }
+            log.info("Board role {} assigned concurrently to another member, assignment to {} refused", boardRole, memberId);
+            throw new CustomGraphQLException("board_role_conflict",
+                    "The board role has just been assigned to another member, please retry");
+        }
+        if (updated == 0) {
+            log.error("Member with id {} not found in the database", memberId);
+            throw new CustomGraphQLException("member_not_found",
+                    "Specified member ID has not been found in the database");
+        }
+
+        return memberRepository.findByIdCustom(memberId).orElseThrow();
     }
 
     /**
@@ -299,87 +348,112 @@ public class MemberService {
     }
 
     /**
-     * Change the passcode (BCrypt-hashed "password") of the member identified by the given e-mail address.
+     * Get the ID of the authenticated member.
+     * <p>
+     * The ID normally comes from the JWT, tokens issued before it was added to the claims fall back on a narrow
+     * lookup by e-mail address.
+     *
+     * @param memberId The member ID from the JWT, may be {@code null}
+     * @param email    The member e-mail address from the JWT
+     * @return The member ID
+     */
+    public long resolveMemberId(Long memberId, String email) {
+        if (memberId != null) {
+            return memberId;
+        }
+        return memberRepository.findIdByEmail(email).orElseThrow(() -> {
+            log.error("Member with e-mail {} not found in the database", email);
+            return new CustomGraphQLException("member_not_found", "Authenticated member could not be resolved");
+        });
+    }
+
+    /**
+     * Change the passcode (BCrypt-hashed "password") of the member identified by the given ID.
      * <p>
      * The {@code currentPasscode} is verified against the stored hash, on mismatch  a {@code bad_credentials} error
      * is thrown so the client can display an inline error and keep the user on the form. The new passcode must be
      * exactly 6 digits and different from the current one.
      * <p>
      * The JWT is intentionally NOT invalidated, only the credential changes, the session continues seamlessly.
+     * <p>
+     * Hashing runs on the bounded {@link PasswordHashingService} pool, if it is saturated a {@code too_many_requests}
+     * error is thrown so the client can retry a moment later. No transaction is held while hashing, the new hash is
+     * written with a single targeted update.
      *
-     * @param email           The e-mail of the member changing their passcode (from the JWT principal)
+     * @param memberId        The ID of the member changing their passcode (from the JWT principal)
      * @param currentPasscode The current passcode, to verify ownership
      * @param newPasscode     The new passcode (6 digits)
      * @return {@code true} on success
      */
-    @Transactional
-    public boolean changePasscode(String email, String currentPasscode, String newPasscode) {
-        final Optional<Member> memberOptional = memberRepository.findByEmailCustom(email);
+    public boolean changePasscode(long memberId, String currentPasscode, String newPasscode) {
+        final Optional<MemberCredentials> memberOptional = memberRepository.findCredentialsById(memberId);
         if (memberOptional.isEmpty()) {
-            log.error("Member with e-mail {} not found in the database", email);
+            log.error("Member with id {} not found in the database", memberId);
             throw new CustomGraphQLException("member_not_found",
                     "Specified member has not been found in the database");
         }
-        final Member member = memberOptional.get();
+        final MemberCredentials member = memberOptional.get();
+        final String email = member.getEmail();
+
+        try {
+            // verify ownership: current passcode must match the stored hash
+            if (member.getPassword() == null || !passwordHashingService.matches(currentPasscode, member.getPassword())) {
+                log.info("Passcode change refused for {} : current passcode does not match", email);
+                throw new CustomGraphQLException("bad_credentials",
+                        "Current passcode does not match");
+            }
 
-        // verify ownership: current passcode must match the stored hash
-        if (member.getPassword() == null || !passwordEncoder.matches(currentPasscode, member.getPassword())) {
-            log.info("Passcode change refused for {} : current passcode does not match", email);
-            throw new CustomGraphQLException("bad_credentials",
-                    "Current passcode does not match");
-        }
+            // validate new passcode shape (server-side, even though the client enforces it too)
+            if (newPasscode == null || !newPasscode.matches("\\d{6}")) {
+                log.info("Passcode change refused for {} : new passcode is not 6 digits", email);
+                throw new CustomGraphQLException("invalid_passcode",
+                        "New passcode must be exactly 6 digits");
+            }
 
-        // validate new passcode shape (server-side, even though the client enforces it too)
-        if (newPasscode == null || !newPasscode.matches("\\d{6}")) {
-            log.info("Passcode change refused for {} : new passcode is not 6 digits", email);
-            throw new CustomGraphQLException("invalid_passcode",
-                    "New passcode must be exactly 6 digits");
-        }
+            // refuse a no-op change so the user gets a clear feedback instead of a silent success, the current
+            // passcode has just been verified so a plain comparison is enough, no need for another hash
+            if (newPasscode.equals(currentPasscode)) {
+                log.info("Passcode change refused for {} : new passcode is identical to the current one", email);
+                throw new CustomGraphQLException("same_passcode",
+                        "New passcode must be different from the current one");
+            }
 
-        // refuse a no-op change so the user gets a clear feedback instead of a silent success
-        if (passwordEncoder.matches(newPasscode, member.getPassword())) {
-            log.info("Passcode change refused for {} : new passcode is identical to the current one", email);
-            throw new CustomGraphQLException("same_passcode",
-                    "New passcode must be different from the current one");
+            memberRepository.updatePassword(member.getId(), passwordHashingService.encode(newPasscode), LocalDateTime.now());
+        } catch (PasswordHashingRejectedException e) {
+            log.info("Passcode change for {} rejected : {}", email, e.getMessage());
+            throw new CustomGraphQLException("too_many_requests",
+                    "Server is busy, please retry in a moment");
         }
-
-        member.setPassword(passwordEncoder.encode(newPasscode));
-        member.setModifiedOn(LocalDateTime.now());
-        memberRepository.save(member);
         log.info("Passcode successfully updated for {}", email);
         return true;
     }
 
     /**
      * Add membership fee for the given member.
+     * <p>
+     * Idempotent: if a fee already exists for this member and year, its amount and paid flag are updated instead,
+     * through a single {@code INSERT ... ON DUPLICATE KEY UPDATE} backed by the {@code (member_id, year)} unique
+     * constraint.
      *
      * @param memberId The ID of the {@link Member} to add membership fee for
      * @param year     The membership fee year
      * @param amount   The membership fee amount
      * @param paid     A boolean indicating if the membership fee is paid
-     * @return A {@link MembershipFee} object representing the membership fee just added
+     * @return A {@link MembershipFee} object representing the membership fee just added (or updated)
      */
+    @Transactional
     public MembershipFee addMembershipFee(Long memberId, Integer year, Float amount, boolean paid) {
-        final Optional<Member> memberOptional = memberRepository.findByIdCustom(memberId);
-        if (memberOptional.isEmpty()) {
+        try {
+            membershipFeeRepository.upsert(memberId, year, amount, paid, LocalDateTime.now());
+        } catch (DataIntegrityViolationException e) {
+            // the (member_id, year) key is handled by the upsert, so only the member foreign key is expected here
+            if (memberRepository.existsById(memberId)) {
+                throw e;
+            }
             log.error("Member with id {} not found in the database", memberId);
             throw new CustomGraphQLException("member_not_found", "Specified member ID has not been found in the database");
         }
-
-        final Optional<MembershipFee> feeOptional = membershipFeeRepository.findByMemberIdAndYear(memberId, year);
-        if (feeOptional.isPresent()) {
-            log.error("Membership fee for member {} and year {} already exists", memberId, year);
-            throw new CustomGraphQLException("membership_fee_already_exists", "Membership fee for this member and year already exists");
-        }
-
-        final MembershipFee fee = new MembershipFee();
-        fee.setMember(memberOptional.get());
-        fee.setYear(year);
-        fee.setAmount(amount);
-        fee.setPaid(paid);
-        fee.setCreatedOn(LocalDateTime.now());
-
-        return membershipFeeRepository.save(fee);
+        return membershipFeeRepository.findByMemberIdAndYear(memberId, year).orElseThrow();
     }
 
     /**
@@ -425,4 +499,25 @@ public class MemberService {
         return fee;
     }
 
+    /**
+     * Check whether the given exception is the violation of the given constraint, as reported by the database.
+     */
+    private static boolean isViolationOf(DataIntegrityViolationException e, String constraintName) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException violation && violation.getConstraintName() != null) {
+                return violation.getConstraintName().toLowerCase(Locale.ROOT).contains(constraintName);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the avatar file uploaded with the given token.
+     */
+    private AvatarService.StoredAvatar claimAvatar(String avatarUploadToken, long callerId) {
+        return avatarUploadService.claim(avatarUploadToken, callerId)
+                .orElseThrow(() -> new CustomGraphQLException("invalid_avatar_upload_token",
+                        "The avatar upload token is unknown, has expired or has already been used"));
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.service;
+
+import com.ccteam.graphql.config.graphql.CustomGraphQLException;
+import com.ccteam.graphql.entities.Country;
+import com.ccteam.graphql.entities.Track;
+import com.ccteam.graphql.model.TrackDistance;
+import com.ccteam.graphql.model.TrackLocation;
+import com.ccteam.graphql.repository.TrackRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Find the {@link Track}s near a location, from an in-memory spatial index.
+ * <p>
+ * Tracks are bucketed in a grid of {@link #CELL_DEGREES} by {@link #CELL_DEGREES} degree cells. A search only looks
+ * at the cells overlapping the bounding box of the searched circle (wrapping around the antimeridian, and taking all
+ * longitudes near the poles), then keeps the tracks within the radius by great-circle (haversine) distance. Tracks
+ * are held as immutable {@link TrackLocation} views with their country, so a search never touches the database, and
+ * each search returns its own {@link Track} instances built from them.
+ * <p>
+ * The index is built at startup and rebuilt from the database whenever a track is modified on this node, once the
+ * modification is committed, and every {@code ct.track.index-refresh-interval} to pick up the tracks modified on other
+ * nodes. Rebuilds are serialized, so the last one published always reflects the last commit. Searches read an
+ * immutable snapshot.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Service
+@Slf4j
+public class NearbyTrackService implements ApplicationRunner {
+
+    /**
+     * Number of tracks returned when no count is specified.
+     */
+    public static final int DEFAULT_FIRST = 10;
+
+    /**
+     * Maximum number of tracks that can be requested.
+     */
+    public static final int MAX_FIRST = 100;
+
+    /**
+     * Maximum search radius, in kilometers.
+     */
+    public static final double MAX_RADIUS_KM = 2000;
+
+    /**
+     * Mean Earth radius, in kilometers.
+     */
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+
+    /**
+     * Size of the grid cells, in degrees.
+     */
+    private static final int CELL_DEGREES = 1;
+
+    private static final int LONGITUDE_CELLS = 360 / CELL_DEGREES;
+
+    private final TrackRepository trackRepository;
+
+    /**
+     * Tracks of each non-empty cell, by cell key.
+     */
+    private volatile Map<Integer, List<IndexedTrack>> cells = Map.of();
+
+    public NearbyTrackService(TrackRepository trackRepository) {
+        this.trackRepository = trackRepository;
+    }
+
+    /**
+     * A track and its coordinates in degrees.
+     *
+     * @param track     The track, with its country
+     * @param latitude  The track latitude
+     * @param longitude The track longitude
+     */
+    private record IndexedTrack(TrackLocation track, double latitude, double longitude) {
+    }
+
+    /**
+     * Build the index at startup.
+     *
+     * @param args The application arguments
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        rebuild();
+    }
+
+    /**
+     * Rebuild the index once the current transaction (if any) is committed. To be called by each modification of a
+     * track.
+     */
+    public void tracksChanged() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    rebuild();
+                }
+            });
+        } else {
+            rebuild();
+        }
+    }
+
+    /**
+     * Get the tracks within the specified radius of a location, nearest first, without accessing the database.
+     *
+     * @param latitude  The latitude of the location, in degrees
+     * @param longitude The longitude of the location, in degrees
+     * @param radiusKm  The search radius, in kilometers
+     * @param first     The maximum number of tracks, {@link #DEFAULT_FIRST} if {@code null}
+     * @return A list of {@link TrackDistance} objects, ordered by distance
+     */
+    public List<TrackDistance> getTracksNear(double latitude, double longitude, double radiusKm, Integer first) {
+        final int count = first != null ? first : DEFAULT_FIRST;
+        if (latitude < -90 || latitude > 90 || longitude < -180 || longitude > 180) {
+            throw new CustomGraphQLException("invalid_location", "Latitude must be between -90 and 90, longitude between -180 and 180");
+        }
+        if (!(radiusKm > 0 && radiusKm <= MAX_RADIUS_KM)) {
+            throw new CustomGraphQLException("invalid_radius", "The radius must be greater than 0 and at most " + MAX_RADIUS_KM + " km");
+        }
+        if (count < 1 || count > MAX_FIRST) {
+            throw new CustomGraphQLException("invalid_first", "The number of tracks must be between 1 and " + MAX_FIRST);
+        }
+
+        final Map<Integer, List<IndexedTrack>> index = cells;
+        final double latitudeSpan = Math.toDegrees(radiusKm / EARTH_RADIUS_KM);
+        final double minLatitude = latitude - latitudeSpan;
+        final double maxLatitude = latitude + latitudeSpan;
+        final int firstRow = latitudeRow(Math.max(-90, minLatitude));
+        final int lastRow = latitudeRow(Math.min(90, maxLatitude));
+
+        // longitude span at the latitude of the box farthest from the equator, all longitudes if the box reaches a pole
+        final double widestLatitude = Math.max(Math.abs(minLatitude), Math.abs(maxLatitude));
+        final int firstColumn;
+        final int columns;
+        if (widestLatitude >= 90) {
+            firstColumn = 0;
+            columns = LONGITUDE_CELLS;
+        } else {
+            final double longitudeSpan = latitudeSpan / Math.cos(Math.toRadians(widestLatitude));
+            firstColumn = longitudeColumn(longitude - longitudeSpan);
+            columns = Math.min(LONGITUDE_CELLS,
+                    (int) Math.floor((longitude + longitudeSpan) / CELL_DEGREES) - (int) Math.floor((longitude - longitudeSpan) / CELL_DEGREES) + 1);
+        }
+
+        final List<TrackDistance> found = new ArrayList<>();
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int i = 0; i < columns; i++) {
+                final List<IndexedTrack> tracks = index.get(cellKey(row, (firstColumn + i) % LONGITUDE_CELLS));
+                if (tracks == null) {
+                    continue;
+                }
+                for (IndexedTrack track : tracks) {
+                    final double distance = distanceKm(latitude, longitude, track.latitude(), track.longitude());
+                    if (distance <= radiusKm) {
+                        found.add(new TrackDistance(toTrack(track.track()), distance));
+                    }
+                }
+            }
+        }
+        found.sort(Comparator.comparingDouble(TrackDistance::getDistanceKm));
+        return found.size() > count ? List.copyOf(found.subList(0, count)) : found;
+    }
+
+    /**
+     * Read all the tracks and publish a new index.
+     */
+    @Scheduled(initialDelayString = "${ct.track.index-refresh-interval:5m}",
+            fixedDelayString = "${ct.track.index-refresh-interval:5m}")
+    public synchronized void rebuild() {
+        final Map<Integer, List<IndexedTrack>> index = new HashMap<>();
+        int indexed = 0;
+        for (TrackLocation track : trackRepository.findAllLocations()) {
+            final double latitude = track.getLatitude().doubleValue();
+            final double longitude = track.getLongitude().doubleValue();
+            index.computeIfAbsent(cellKey(latitudeRow(latitude), longitudeColumn(longitude)), k -> new ArrayList<>())
+                    .add(new IndexedTrack(track, latitude, longitude));
+            indexed++;
+        }
+        index.replaceAll((key, tracks) -> List.copyOf(tracks));
+        cells = Map.copyOf(index);
+        log.debug("Track spatial index built with {} tracks in {} cells", indexed, index.size());
+    }
+
+    /**
+     * Build a new {@link Track}, with its {@link Country}, from the given view.
+     */
+    private static Track toTrack(TrackLocation location) {
+        final Country country = new Country();
+        country.setCode(location.getCountryCode());
+        country.setNameFr(location.getCountryNameFr());
+        country.setNameEn(location.getCountryNameEn());
+        final Track track = new Track();
+        track.setId(location.getId());
+        track.setName(location.getName());
+        track.setDistance(location.getDistance());
+        track.setLapRecord(location.getLapRecord());
+        track.setLapRecordInfo(location.getLapRecordInfo());
+        track.setWebsite(location.getWebsite());
+        track.setLatitude(location.getLatitude());
+        track.setLongitude(location.getLongitude());
+        track.setCountry(country);
+        return track;
+    }
+
+    /**
+     * Get the great-circle distance between two locations, using the haversine formula.
+     *
+     * @return The distance in kilometers
+     */
+    static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        final double deltaLatitude = Math.toRadians(latitude2 - latitude1);
+        final double deltaLongitude = Math.toRadians(longitude2 - longitude1);
+        final double a = Math.pow(Math.sin(deltaLatitude / 2), 2)
+                + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2)) * Math.pow(Math.sin(deltaLongitude / 2), 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private static int latitudeRow(double latitude) {
+        // latitude 90 falls in the last row
+        return Math.min((int) Math.floor((latitude + 90) / CELL_DEGREES), 180 / CELL_DEGREES - 1);
+    }
+
+    private static int longitudeColumn(double longitude) {
+        return Math.floorMod((int) Math.floor((longitude + 180) / CELL_DEGREES), LONGITUDE_CELLS);
+    }
+
+    private static int cellKey(int row, int column) {
+        return row * LONGITUDE_CELLS + column;
+    }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.service;
+
+import com.ccteam.graphql.config.scheduling.ClusterJobRunner;
+import com.ccteam.graphql.config.security.JWTTokenProperties;
+import com.ccteam.graphql.entities.Otp;
+import com.ccteam.graphql.repository.OtpRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Issue and verify one-time passwords.
+ * <p>
+ * An OTP is a 4-digit code, so a plain hash of it could be reversed by trying the 10000 values : only its
+ * HMAC-SHA256, keyed with a key derived from the JWT secret, is stored. Verification is a single conditional
+ * update, which also expires the OTP so it can't be used twice, and an OTP can only be tried
+ * {@value MAX_ATTEMPTS} times.
+ * <p>
+ * Expired OTP are kept for {@link #PURGE_RETENTION} so that the account status can still tell an expired OTP from
+ * no OTP, then deleted by batches of {@value PURGE_BATCH_SIZE} rows, by one node of the cluster.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Service
+@Slf4j
+public class OtpService {
+
+    public static final Duration VALIDITY = Duration.ofMinutes(10);
+    public static final Duration RESEND_COOLDOWN = Duration.ofSeconds(60);
+    public static final int MAX_ATTEMPTS = 5;
+    static final Duration PURGE_RETENTION = Duration.ofDays(1);
+    static final int PURGE_BATCH_SIZE = 1000;
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final OtpRepository otpRepository;
+    private final ClusterJobRunner clusterJobRunner;
+    private final SecretKeySpec key;
+
+    public OtpService(OtpRepository otpRepository, ClusterJobRunner clusterJobRunner, JWTTokenProperties jwtTokenProperties) {
+        this.otpRepository = otpRepository;
+        this.clusterJobRunner = clusterJobRunner;
+        this.key = new SecretKeySpec(hmac(new SecretKeySpec(
+                jwtTokenProperties.getSecret().getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM), "otp"), HMAC_ALGORITHM);
+    }
+
+    /**
+     * Result of an OTP verification.
+     */
+    public enum Verification {
+        /**
+         * The code is correct, the OTP has been consumed.
+         */
+        VALID,
+        /**
+         * The code is wrong, the attempt has been counted.
+         */
+        INVALID,
+        /**
+         * There is no usable OTP : never issued, expired, already used or out of attempts.
+         */
+        EXPIRED
+    }
+
+    /**
+     * Issue a new OTP for the given e-mail address and purpose, replacing any previous one.
+     *
+     * @param email   The e-mail address the OTP is sent to
+     * @param purpose What the OTP is issued for
+     * @return The 4-digit OTP value, to be sent to the user
+     */
+    public String issue(String email, Otp.Purpose purpose) {
+        final String normalizedEmail = normalize(email);
+        final String code = String.format("%04d", secureRandom.nextInt(10000));
+        final LocalDateTime now = LocalDateTime.now();
+        otpRepository.upsert(normalizedEmail, purpose.name(), hash(normalizedEmail, purpose, code), now.plus(VALIDITY), now);
+        return code;
+    }
+
+    /**
+     * Verify the given code against the OTP issued for the given e-mail address and purpose.
+     *
+     * @param email   The e-mail address the OTP has been sent to
+     * @param purpose What the OTP has been issued for
+     * @param code    The code entered by the user
+     * @return The verification result
+     */
+    public Verification verify(String email, Otp.Purpose purpose, String code) {
+        final String normalizedEmail = normalize(email);
+        final LocalDateTime now = LocalDateTime.now();
+        if (otpRepository.consume(normalizedEmail, purpose, hash(normalizedEmail, purpose, code.trim()), now, MAX_ATTEMPTS) == 1) {
+            return Verification.VALID;
+        }
+        // wrong code, count the attempt if there is still a usable OTP
+        return otpRepository.incrementAttempts(normalizedEmail, purpose, now, MAX_ATTEMPTS) == 1
+                ? Verification.INVALID : Verification.EXPIRED;
+    }
+
+    /**
+     * Get the expiration date of the last OTP issued for the given e-mail address and purpose.
+     *
+     * @return The optional expiration date, empty if no OTP has been issued recently
+     */
+    public Optional<LocalDateTime> getExpiresOn(String email, Otp.Purpose purpose) {
+        return otpRepository.findExpiresOn(normalize(email), purpose);
+    }
+
+    /**
+     * Get the time left before a new OTP can be issued for the given e-mail address and purpose.
+     *
+     * @return The optional time left, empty if a new OTP can be issued right away
+     */
+    public Optional<Duration> getCooldownLeft(String email, Otp.Purpose purpose) {
+        return otpRepository.findCreatedOn(normalize(email), purpose)
+                .map(createdOn -> Duration.between(LocalDateTime.now(), createdOn.plus(RESEND_COOLDOWN)))
+                .filter(Duration::isPositive);
+    }
+
+    /**
+     * Delete the OTP expired for more than {@link #PURGE_RETENTION}, by batches so that no long lock is held on the
+     * table.
+     */
+    @Scheduled(fixedDelayString = "${ct.otp.purge-interval:10m}")
+    public void purgeExpired() {
+        clusterJobRunner.run("otp-purge", Duration.ofMinutes(5), Duration.ZERO, execution -> {
+            final LocalDateTime threshold = LocalDateTime.now().minus(PURGE_RETENTION);
+            int deleted;
+            do {
+                deleted = otpRepository.deleteExpiredBefore(threshold, PURGE_BATCH_SIZE);
+                execution.chunkDone(deleted, null);
+            } while (deleted == PURGE_BATCH_SIZE);
+            if (execution.getProcessed() > 0) {
+                log.info("{} expired OTP deleted", execution.getProcessed());
+            }
+        });
+    }
+
+    /**
+     * Base64 encoded keyed hash of the code, bound to the e-mail address and purpose.
+     */
+    private String hash(String email, Otp.Purpose purpose, String code) {
+        return Base64.getEncoder().encodeToString(hmac(key, purpose.name() + ':' + email + ':' + code));
+    }
+
+    private static byte[] hmac(SecretKeySpec key, String value) {
+        try {
+            final Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(value.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            // HmacSHA256 is mandatory on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String normalize(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+}
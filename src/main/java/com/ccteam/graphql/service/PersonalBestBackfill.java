@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.service;
+
+import com.ccteam.graphql.config.scheduling.ClusterJobRunner;
+import com.ccteam.graphql.entities.PersonalBest;
+import com.ccteam.graphql.repository.PersonalBestRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Record the {@link PersonalBest}s missing at startup, i.e. those of the laps recorded before personal bests were
+ * maintained by {@link LapRecordService}.
+ * <p>
+ * Done in a single set-based statement which only inserts the member, track and bike combinations without a personal
+ * best, so it is a cheap no-op once the table is filled. It runs on a single node of the cluster.
+ *
+ * @author yann39
+ * @since 1.1.0
+ */
+@Component
+@Slf4j
+public class PersonalBestBackfill implements ApplicationRunner {
+
+    private final PersonalBestRepository personalBestRepository;
+    private final ClusterJobRunner clusterJobRunner;
+
+    public PersonalBestBackfill(PersonalBestRepository personalBestRepository, ClusterJobRunner clusterJobRunner) {
+        this.personalBestRepository = personalBestRepository;
+        this.clusterJobRunner = clusterJobRunner;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        clusterJobRunner.run("personal-best-backfill", Duration.ofMinutes(5), Duration.ZERO, execution -> {
+            final int inserted = personalBestRepository.insertMissing(LocalDateTime.now());
+            execution.chunkDone(inserted, null);
+            if (inserted > 0) {
+                log.info("{} missing personal bests recorded", inserted);
+            }
+        });
+    }
+
+}
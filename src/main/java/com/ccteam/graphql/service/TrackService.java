@@ -46,10 +46,13 @@ public class TrackService {
 
     private final TrackRepository trackRepository;
     private final CountryRepository countryRepository;
+    private final NearbyTrackService nearbyTrackService;
 
-    public TrackService(TrackRepository trackRepository, CountryRepository countryRepository) {
+    public TrackService(TrackRepository trackRepository, CountryRepository countryRepository,
+                        NearbyTrackService nearbyTrackService) {
         this.trackRepository = trackRepository;
         this.countryRepository = countryRepository;
+        this.nearbyTrackService = nearbyTrackService;
     }
 
     /**
@@ -132,6 +135,7 @@ public class TrackService {
         track.setLatitude(latitude);
         track.setLongitude(longitude);
         track.setCountry(resolveCountry(countryCode));
+        nearbyTrackService.tracksChanged();
         return trackRepository.save(track);
     }
 
@@ -159,6 +163,7 @@ public class TrackService {
         }
 
         final Track track = trackOptional.get();
+        nearbyTrackService.tracksChanged();
         track.setName(name);
         track.setDistance(distance);
         track.setLapRecord(lapRecord);
@@ -185,6 +190,7 @@ public class TrackService {
         }
 
         final Track track = trackOptional.get();
+        nearbyTrackService.tracksChanged();
         trackRepository.delete(track);
         return track;
     }
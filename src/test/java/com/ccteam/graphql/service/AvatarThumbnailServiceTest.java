@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.ccteam.graphql.service;
+
+import com.ccteam.graphql.config.storage.AvatarStorage;
+import com.ccteam.graphql.config.storage.AvatarStorageProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Decode avatar images and check those declaring more pixels than allowed are refused before being decoded.
+ */
+class AvatarThumbnailServiceTest {
+
+    private final AvatarThumbnailService avatarThumbnailService = new AvatarThumbnailService(mock(AvatarStorage.class),
+            properties(100 * 100));
+
+    @AfterEach
+    void shutdown() {
+        avatarThumbnailService.shutdown();
+    }
+
+    @Test
+    void should_decode_an_image_within_the_pixel_count() throws IOException {
+        final BufferedImage image = avatarThumbnailService.decode(new ByteArrayInputStream(png(100, 100)));
+
+        assertThat(image.getWidth()).isEqualTo(100);
+        assertThat(image.getHeight()).isEqualTo(100);
+    }
+
+    @Test
+    void should_decode_a_reduced_image() throws IOException {
+        final BufferedImage image = avatarThumbnailService.decode(new ByteArrayInputStream(png(100, 80)), 25);
+
+        assertThat(image.getWidth()).isEqualTo(25);
+        assertThat(image.getHeight()).isEqualTo(20);
+    }
+
+    @Test
+    void should_refuse_an_image_over_the_pixel_count() {
+        assertThatThrownBy(() -> avatarThumbnailService.decode(new ByteArrayInputStream(png(101, 100))))
+                .isInstanceOf(AvatarThumbnailService.ImageTooLargeException.class);
+    }
+
+    @Test
+    void should_return_null_for_an_unsupported_format() throws IOException {
+        assertThat(avatarThumbnailService.decode(new ByteArrayInputStream(new byte[]{'R', 'I', 'F', 'F'}))).isNull();
+    }
+
+    private static AvatarStorageProperties properties(long maxImagePixels) {
+        final AvatarStorageProperties properties = new AvatarStorageProperties();
+        properties.setMaxImagePixels(maxImagePixels);
+        return properties;
+    }
+
+    private static byte[] png(int width, int height) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", out);
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.service;
+
+import com.ccteam.graphql.entities.Event;
+import com.ccteam.graphql.model.CalendarDay;
+import com.ccteam.graphql.model.EventCalendarDay;
+import com.ccteam.graphql.repository.*;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Read the event calendar from a mocked event table and check months are cached, and invalidated when events or
+ * members are modified, even while being read.
+ */
+class EventServiceTest {
+
+    private final EventRepository eventRepository = mock(EventRepository.class);
+
+    private final EventService eventService = new EventService(eventRepository, mock(TrackRepository.class),
+            mock(MemberRepository.class), mock(BikeRepository.class), mock(OrganizerRepository.class));
+
+    @Test
+    void should_read_cached_months_from_memory() {
+        when(eventRepository.findCalendarDays(any(), any()))
+                .thenReturn(List.of(new EventCalendarDay(LocalDate.of(2025, 5, 10), 1L, 2L, "10,11")));
+
+        final List<CalendarDay> calendar = eventService.getEventCalendar("2025-05-01", "2025-05-31", 10L);
+        eventService.getEventCalendar("2025-05-01", "2025-05-31", 11L);
+
+        assertThat(calendar).usingRecursiveFieldByFieldElementComparator()
+                .containsExactly(new CalendarDay("2025-05-10", 1, 2, true));
+        verify(eventRepository, times(1)).findCalendarDays(any(), any());
+    }
+
+    @Test
+    void should_read_again_the_month_of_a_deleted_event() {
+        when(eventRepository.findCalendarDays(any(), any()))
+                .thenReturn(List.of(new EventCalendarDay(LocalDate.of(2025, 5, 10), 1L, 0L, null)))
+                .thenReturn(List.of());
+        eventService.getEventCalendar("2025-05-01", "2025-06-30", 10L);
+
+        stubEvent(LocalDateTime.of(2025, 5, 10, 9, 0));
+        eventService.deleteEvent(1L);
+
+        assertThat(eventService.getEventCalendar("2025-05-01", "2025-06-30", 10L)).isEmpty();
+        // only the month of the event is read again
+        verify(eventRepository).findCalendarDays(LocalDateTime.of(2025, 5, 1, 0, 0), LocalDateTime.of(2025, 6, 1, 0, 0));
+    }
+
+    @Test
+    void should_read_again_every_month_once_a_member_is_deleted() {
+        when(eventRepository.findCalendarDays(any(), any()))
+                .thenReturn(List.of(new EventCalendarDay(LocalDate.of(2025, 5, 10), 1L, 1L, "10")))
+                .thenReturn(List.of(new EventCalendarDay(LocalDate.of(2025, 5, 10), 1L, 0L, null)));
+        eventService.getEventCalendar("2025-05-01", "2025-05-31", 10L);
+
+        eventService.memberDeleted();
+
+        assertThat(eventService.getEventCalendar("2025-05-01", "2025-05-31", 11L))
+                .usingRecursiveFieldByFieldElementComparator()
+                .containsExactly(new CalendarDay("2025-05-10", 1, 0, false));
+        verify(eventRepository, times(2)).findCalendarDays(any(), any());
+    }
+
+    @Test
+    void should_not_cache_a_month_invalidated_while_being_read() {
+        stubEvent(LocalDateTime.of(2025, 5, 10, 9, 0));
+        when(eventRepository.findCalendarDays(any(), any()))
+                .thenAnswer(invocation -> {
+                    // the event is deleted after the month is read, but before it is cached
+                    eventService.deleteEvent(1L);
+                    return List.of(new EventCalendarDay(LocalDate.of(2025, 5, 10), 1L, 0L, null));
+                })
+                .thenReturn(List.of());
+        eventService.getEventCalendar("2025-05-01", "2025-05-31", 10L);
+
+        assertThat(eventService.getEventCalendar("2025-05-01", "2025-05-31", 10L)).isEmpty();
+        verify(eventRepository, times(2)).findCalendarDays(any(), any());
+    }
+
+    private void stubEvent(LocalDateTime startDate) {
+        final Event event = new Event();
+        event.setId(1L);
+        event.setStartDate(startDate);
+        when(eventRepository.findByIdCustom(1L)).thenReturn(Optional.of(event));
+    }
+
+}
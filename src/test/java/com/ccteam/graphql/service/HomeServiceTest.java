@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.service;
+
+import com.ccteam.graphql.repository.EventRepository;
+import com.ccteam.graphql.repository.MemberRepository;
+import com.ccteam.graphql.repository.NewsRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+/**
+ * Assemble the home screen from mocked repositories and check the shared sections are cached until they expire, and
+ * never when their load failed.
+ */
+class HomeServiceTest {
+
+    private final MemberRepository memberRepository = mock(MemberRepository.class);
+
+    private final EventRepository eventRepository = mock(EventRepository.class);
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final HomeService homeService = new HomeService(memberRepository, eventRepository,
+            mock(NewsRepository.class), now::get);
+
+    @AfterEach
+    void shutdown() {
+        homeService.shutdown();
+    }
+
+    @Test
+    void should_cache_the_shared_sections_until_they_expire() {
+        when(memberRepository.count()).thenReturn(10L, 11L);
+
+        assertThat(homeService.getHome(1L).getMembersCount()).isEqualTo(10L);
+        now.addAndGet(Duration.ofSeconds(29).toNanos());
+        assertThat(homeService.getHome(2L).getMembersCount()).isEqualTo(10L);
+        verify(memberRepository, times(1)).count();
+
+        now.addAndGet(Duration.ofSeconds(2).toNanos());
+        assertThat(homeService.getHome(1L).getMembersCount()).isEqualTo(11L);
+        verify(memberRepository, times(2)).count();
+        // the registrations of the member are read on every call
+        verify(eventRepository, times(3)).findSummariesByParticipantStartingFrom(anyLong(), any(), any());
+    }
+
+    @Test
+    void should_not_cache_a_failed_load() {
+        when(memberRepository.count()).thenThrow(new IllegalStateException("Database unavailable")).thenReturn(10L);
+
+        assertThatThrownBy(() -> homeService.getHome(1L))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Database unavailable");
+
+        // retried right away, without waiting for the expiry
+        assertThat(homeService.getHome(1L).getMembersCount()).isEqualTo(10L);
+        verify(memberRepository, times(2)).count();
+    }
+
+}
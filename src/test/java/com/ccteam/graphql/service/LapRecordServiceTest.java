@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.service;
+
+import com.ccteam.graphql.entities.*;
+import com.ccteam.graphql.repository.*;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Create, update and delete laps through {@link LapRecordService} and check the personal best of each member, track
+ * and bike always references its best lap, ties being broken by record date then lap record ID.
+ * <p>
+ * Runs against the configured database, as personal bests are maintained by native statements.
+ */
+@SpringBootTest
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class LapRecordServiceTest {
+
+    @Autowired
+    private LapRecordService lapRecordService;
+
+    @Autowired
+    private LapRecordRepository lapRecordRepository;
+
+    @Autowired
+    private PersonalBestRepository personalBestRepository;
+
+    @Autowired
+    private MemberRepository memberRepository;
+
+    @Autowired
+    private BikeRepository bikeRepository;
+
+    @Autowired
+    private TrackRepository trackRepository;
+
+    @Autowired
+    private CountryRepository countryRepository;
+
+    private Country country;
+
+    private Member member;
+
+    private Track track1;
+
+    private Track track2;
+
+    private Bike bike1;
+
+    private Bike bike2;
+
+    @BeforeAll
+    void setup() {
+        country = new Country();
+        country.setCode("ZZ");
+        country.setNameFr("Pays de test");
+        country.setNameEn("Test country");
+        country = countryRepository.save(country);
+
+        track1 = trackRepository.save(track("Personal best track 1"));
+        track2 = trackRepository.save(track("Personal best track 2"));
+
+        member = new Member();
+        member.setFirstName("Personal");
+        member.setLastName("Best");
+        member.setEmail("personal.best@example.com");
+        member.setRole(Member.Role.ROLE_MEMBER);
+        member.setCreatedOn(LocalDateTime.now());
+        member = memberRepository.save(member);
+
+        bike1 = bikeRepository.save(bike("R1"));
+        bike2 = bikeRepository.save(bike("R6"));
+    }
+
+    @AfterEach
+    void deleteLaps() {
+        personalBestRepository.deleteByKey(member.getId(), track1.getId(), bike1.getId());
+        personalBestRepository.deleteByKey(member.getId(), track1.getId(), bike2.getId());
+        personalBestRepository.deleteByKey(member.getId(), track2.getId(), bike1.getId());
+        personalBestRepository.deleteByKey(member.getId(), track2.getId(), bike2.getId());
+        lapRecordRepository.deleteAll(lapRecordRepository.findAll().stream()
+                .filter(l -> l.getMember().getId().equals(member.getId()))
+                .toList());
+    }
+
+    @AfterAll
+    void cleanup() {
+        memberRepository.delete(member);
+        trackRepository.deleteAll(List.of(track1, track2));
+        countryRepository.delete(country);
+    }
+
+    @Test
+    void should_keep_the_fastest_lap() {
+        lap(track1, bike1, 62_000, "2025-05-01T10:00:00");
+        final LapRecord fastest = lap(track1, bike1, 60_000, "2025-05-02T10:00:00");
+        lap(track1, bike1, 61_000, "2025-05-03T10:00:00");
+
+        assertThat(bestLapId(track1, bike1)).contains(fastest.getId());
+        assertThat(bestLapId(track1, bike2)).isEmpty();
+    }
+
+    @Test
+    void should_break_ties_the_same_way_when_offered_and_recomputed() {
+        final LapRecord later = lap(track1, bike1, 60_000, "2025-05-02T10:00:00");
+        final LapRecord earlier = lap(track1, bike1, 60_000, "2025-05-01T10:00:00");
+        final LapRecord sameDate = lap(track1, bike1, 60_000, "2025-05-01T10:00:00");
+        assertThat(bestLapId(track1, bike1)).contains(earlier.getId());
+
+        // recomputed from all the laps once a faster one is deleted, the same lap wins
+        final LapRecord faster = lap(track1, bike1, 59_000, "2025-05-04T10:00:00");
+        assertThat(bestLapId(track1, bike1)).contains(faster.getId());
+        lapRecordService.deleteLapRecord(faster.getId());
+        assertThat(bestLapId(track1, bike1)).contains(earlier.getId());
+
+        // then the next one on the record date, then on the ID
+        lapRecordService.deleteLapRecord(earlier.getId());
+        assertThat(bestLapId(track1, bike1)).contains(sameDate.getId());
+        lapRecordService.deleteLapRecord(sameDate.getId());
+        assertThat(bestLapId(track1, bike1)).contains(later.getId());
+    }
+
+    @Test
+    void should_recompute_the_personal_best_when_its_lap_is_deleted() {
+        final LapRecord best = lap(track1, bike1, 60_000, "2025-05-01T10:00:00");
+        final LapRecord next = lap(track1, bike1, 61_000, "2025-05-02T10:00:00");
+
+        lapRecordService.deleteLapRecord(best.getId());
+        assertThat(bestLapId(track1, bike1)).contains(next.getId());
+
+        lapRecordService.deleteLapRecord(next.getId());
+        assertThat(bestLapId(track1, bike1)).isEmpty();
+    }
+
+    @Test
+    void should_recompute_the_personal_best_when_its_lap_gets_slower() {
+        final LapRecord best = lap(track1, bike1, 60_000, "2025-05-01T10:00:00");
+        final LapRecord next = lap(track1, bike1, 61_000, "2025-05-02T10:00:00");
+
+        update(best, track1, bike1, 62_000);
+
+        assertThat(bestLapId(track1, bike1)).contains(next.getId());
+        assertThat(personalBest(track1, bike1).map(PersonalBest::getLapTime)).contains(61_000);
+    }
+
+    @Test
+    void should_move_the_personal_best_with_its_lap_to_another_track() {
+        final LapRecord best = lap(track1, bike1, 60_000, "2025-05-01T10:00:00");
+        final LapRecord next = lap(track1, bike1, 61_000, "2025-05-02T10:00:00");
+
+        update(best, track2, bike1, 60_000);
+
+        assertThat(bestLapId(track1, bike1)).contains(next.getId());
+        assertThat(bestLapId(track2, bike1)).contains(best.getId());
+    }
+
+    @Test
+    void should_move_the_personal_best_with_its_lap_to_another_bike() {
+        final LapRecord best = lap(track1, bike1, 60_000, "2025-05-01T10:00:00");
+
+        update(best, track1, bike2, 60_000);
+
+        assertThat(bestLapId(track1, bike1)).isEmpty();
+        assertThat(bestLapId(track1, bike2)).contains(best.getId());
+    }
+
+    private LapRecord lap(Track track, Bike bike, int lapTime, String recordDate) {
+        return lapRecordService.createLapRecord(member.getId(), track.getId(), bike.getId(), recordDate, lapTime, "dry",
+                null);
+    }
+
+    private void update(LapRecord lapRecord, Track track, Bike bike, int lapTime) {
+        lapRecordService.updateLapRecord(lapRecord.getId(), track.getId(), bike.getId(),
+                lapRecord.getRecordDate().toString(), lapTime, lapRecord.getConditions(), null);
+    }
+
+    private Optional<PersonalBest> personalBest(Track track, Bike bike) {
+        return personalBestRepository.findByMemberIds(List.of(member.getId())).stream()
+                .filter(pb -> pb.getTrack().getId().equals(track.getId()) && pb.getBike().getId().equals(bike.getId()))
+                .findFirst();
+    }
+
+    private Optional<Long> bestLapId(Track track, Bike bike) {
+        return personalBest(track, bike).map(pb -> pb.getLapRecord().getId());
+    }
+
+    private Track track(String name) {
+        final Track track = new Track();
+        track.setName(name);
+        track.setCountry(country);
+        return track;
+    }
+
+    private Bike bike(String modelName) {
+        final Bike bike = new Bike();
+        bike.setManufacturer("Yamaha");
+        bike.setModelName(modelName);
+        bike.setMember(member);
+        return bike;
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.service;
+
+import com.ccteam.graphql.entities.Bike;
+import com.ccteam.graphql.entities.LapRecord;
+import com.ccteam.graphql.entities.Member;
+import com.ccteam.graphql.entities.Track;
+import com.ccteam.graphql.enums.EngineClass;
+import com.ccteam.graphql.model.LeaderboardEntry;
+import com.ccteam.graphql.repository.LapRecordRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Build leaderboards from a mocked lap record table and check they are served from memory, ordered and filtered, and
+ * kept exact when laps are modified.
+ */
+class LeaderboardServiceTest {
+
+    private final LapRecordRepository lapRecordRepository = mock(LapRecordRepository.class);
+
+    private final LeaderboardService leaderboardService = new LeaderboardService(lapRecordRepository);
+
+    @Test
+    void should_merge_the_buckets_matching_the_filters() {
+        build(List.of(
+                entry(1L, 60_000, "dry", 600),
+                entry(2L, 61_000, "dry", 1000),
+                entry(3L, 62_000, "wet", 600),
+                entry(4L, 63_000, "dry", 600)));
+
+        assertThat(ids(leaderboardService.getLeaderboard(1L, null, null, null))).containsExactly(1L, 2L, 3L, 4L);
+        assertThat(ids(leaderboardService.getLeaderboard(1L, "dry", null, null))).containsExactly(1L, 2L, 4L);
+        assertThat(ids(leaderboardService.getLeaderboard(1L, null, EngineClass.UP_TO_600, 2))).containsExactly(1L, 3L);
+        assertThat(leaderboardService.getLeaderboard(2L, null, null, null)).isEmpty();
+        verify(lapRecordRepository, never()).findLeaderboardEntries(anyLong(), any(), anyInt(), anyInt(), any());
+    }
+
+    @Test
+    void should_insert_a_new_lap_at_its_rank() {
+        build(List.of(entry(1L, 60_000, "dry", 600), entry(2L, 62_000, "dry", 600)));
+
+        leaderboardService.lapRecordSaved(lapRecordOf(entry(3L, 61_000, "dry", 600)));
+
+        assertThat(ids(leaderboardService.getLeaderboard(1L, "dry", EngineClass.UP_TO_600, null)))
+                .containsExactly(1L, 3L, 2L);
+    }
+
+    @Test
+    void should_reload_a_full_bucket_when_one_of_its_laps_is_deleted() {
+        final List<LeaderboardEntry> laps = new ArrayList<>();
+        IntStream.rangeClosed(1, LeaderboardService.MAX_LIMIT + 1)
+                .forEach(i -> laps.add(entry((long) i, 60_000 + i, "dry", 600)));
+        build(laps);
+        when(lapRecordRepository.findLeaderboardEntries(eq(1L), eq("dry"), eq(126), eq(600), any(Pageable.class)))
+                .thenReturn(laps.subList(1, laps.size()));
+
+        leaderboardService.lapRecordDeleted(1L);
+
+        final List<LeaderboardEntry> leaderboard = leaderboardService.getLeaderboard(1L, null, null, LeaderboardService.MAX_LIMIT);
+        assertThat(leaderboard).hasSize(LeaderboardService.MAX_LIMIT);
+        assertThat(leaderboard.getFirst().getLapRecordId()).isEqualTo(2L);
+        assertThat(leaderboard.getLast().getLapRecordId()).isEqualTo(LeaderboardService.MAX_LIMIT + 1L);
+    }
+
+    @Test
+    void should_not_duplicate_a_lap_updated_in_a_full_bucket() {
+        final List<LeaderboardEntry> laps = new ArrayList<>();
+        IntStream.rangeClosed(1, LeaderboardService.MAX_LIMIT + 1)
+                .forEach(i -> laps.add(entry((long) i, 60_000 + i, "dry", 600)));
+        build(laps);
+        // the bucket is reloaded once the lap is removed from it, and the database already holds the updated lap
+        final LeaderboardEntry updated = entry(5L, 59_000, "dry", 600);
+        final List<LeaderboardEntry> reloaded = new ArrayList<>(laps);
+        reloaded.set(4, updated);
+        reloaded.sort(Comparator.comparingInt(LeaderboardEntry::getLapTime));
+        when(lapRecordRepository.findLeaderboardEntries(eq(1L), eq("dry"), eq(126), eq(600), any(Pageable.class)))
+                .thenReturn(reloaded);
+
+        leaderboardService.lapRecordSaved(lapRecordOf(updated));
+
+        final List<LeaderboardEntry> leaderboard = leaderboardService.getLeaderboard(1L, null, null, LeaderboardService.MAX_LIMIT);
+        assertThat(leaderboard).hasSize(LeaderboardService.MAX_LIMIT);
+        assertThat(ids(leaderboard)).doesNotHaveDuplicates().startsWith(5L, 1L, 2L);
+        assertThat(leaderboard.getFirst().getLapTime()).isEqualTo(59_000);
+    }
+
+    @Test
+    void should_pick_up_laps_modified_on_another_node_when_rebuilt() {
+        build(List.of(entry(1L, 60_000, "dry", 600), entry(2L, 62_000, "dry", 600)));
+
+        // lap 1 deleted and lap 3 created on another node
+        build(List.of(entry(3L, 61_000, "dry", 600), entry(2L, 62_000, "dry", 600)));
+
+        assertThat(ids(leaderboardService.getLeaderboard(1L, null, null, null))).containsExactly(3L, 2L);
+    }
+
+    private void build(List<LeaderboardEntry> laps) {
+        when(lapRecordRepository.streamLeaderboardEntries()).thenReturn(laps.stream());
+        leaderboardService.run(null);
+    }
+
+    private static LeaderboardEntry entry(Long id, int lapTime, String conditions, Integer engineSize) {
+        return new LeaderboardEntry(id, 1L, 10L, "John", "Doe", 20L, "Yamaha", "R6", engineSize, lapTime, conditions,
+                LocalDateTime.of(2024, 5, 1, 10, 0));
+    }
+
+    private static LapRecord lapRecordOf(LeaderboardEntry entry) {
+        final Track track = new Track();
+        track.setId(entry.getTrackId());
+        final Member member = new Member();
+        member.setId(entry.getMemberId());
+        final Bike bike = new Bike();
+        bike.setId(entry.getBikeId());
+        bike.setEngineSize(entry.getEngineSize());
+        final LapRecord lapRecord = new LapRecord();
+        lapRecord.setId(entry.getLapRecordId());
+        lapRecord.setTrack(track);
+        lapRecord.setMember(member);
+        lapRecord.setBike(bike);
+        lapRecord.setLapTime(entry.getLapTime());
+        lapRecord.setConditions(entry.getConditions());
+        lapRecord.setRecordDate(entry.getRecordDate());
+        return lapRecord;
+    }
+
+    private static List<Long> ids(List<LeaderboardEntry> leaderboard) {
+        return leaderboard.stream().map(LeaderboardEntry::getLapRecordId).toList();
+    }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.service;
+
+import com.ccteam.graphql.config.mail.MailOutboxProperties;
+import com.ccteam.graphql.config.scheduling.ClusterJobRunner;
+import com.ccteam.graphql.entities.OutboxMail;
+import com.ccteam.graphql.repository.OutboxMailRepository;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Send outbox mails to an in-memory SMTP server and check the outcome recorded for each of them.
+ * <p>
+ * The outbox table is mocked, the database side being plain conditional updates.
+ */
+class MailOutboxSenderTest {
+
+    @RegisterExtension
+    static final GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    private final OutboxMailRepository outboxMailRepository = mock(OutboxMailRepository.class);
+
+    private final MailOutboxProperties properties = new MailOutboxProperties();
+
+    private final JavaMailSenderImpl sender = new JavaMailSenderImpl();
+
+    private MailOutboxSender mailOutboxSender;
+
+    @BeforeEach
+    void setup() {
+        sender.setHost("localhost");
+        sender.setPort(ServerSetupTest.SMTP.getPort());
+        properties.setMaxAttempts(3);
+        mailOutboxSender = new MailOutboxSender(outboxMailRepository, sender, properties, mock(ClusterJobRunner.class),
+                new SimpleMeterRegistry());
+        when(outboxMailRepository.claim(anyLong(), any(), any())).thenReturn(1);
+    }
+
+    @Test
+    void should_send_the_due_mails_and_mark_them_as_sent() throws Exception {
+        when(outboxMailRepository.findDue(any(), any(Pageable.class)))
+                .thenReturn(List.of(mail(1L, "first@example.com", 0), mail(2L, "second@example.com", 0)));
+
+        mailOutboxSender.sendDue();
+
+        final MimeMessage[] received = greenMail.getReceivedMessages();
+        assertThat(received).hasSize(2);
+        assertThat(received[0].getSubject()).isEqualTo("Subject 1");
+        verify(outboxMailRepository).markSent(eq(1L), any());
+        verify(outboxMailRepository).markSent(eq(2L), any());
+        verify(outboxMailRepository, never()).markFailed(anyLong(), any(), anyInt(), any(), any());
+    }
+
+    @Test
+    void should_not_send_mails_claimed_by_another_node() {
+        when(outboxMailRepository.findDue(any(), any(Pageable.class)))
+                .thenReturn(List.of(mail(1L, "first@example.com", 0)));
+        when(outboxMailRepository.claim(eq(1L), any(), any())).thenReturn(0);
+
+        mailOutboxSender.sendDue();
+
+        assertThat(greenMail.getReceivedMessages()).isEmpty();
+        verify(outboxMailRepository, never()).markSent(anyLong(), any());
+    }
+
+    @Test
+    void should_retry_later_when_the_server_is_unreachable() {
+        greenMail.stop();
+        when(outboxMailRepository.findDue(any(), any(Pageable.class)))
+                .thenReturn(List.of(mail(1L, "first@example.com", 1)));
+
+        final LocalDateTime before = LocalDateTime.now();
+        mailOutboxSender.sendDue();
+
+        // second failure, retried after twice the initial backoff
+        verify(outboxMailRepository).markFailed(eq(1L), eq(OutboxMail.Status.PENDING), eq(2),
+                argThat(next -> !next.isBefore(before.plus(properties.getInitialBackoff().multipliedBy(2)))), any());
+        verify(outboxMailRepository, never()).markSent(anyLong(), any());
+    }
+
+    @Test
+    void should_give_up_after_the_last_attempt() {
+        greenMail.stop();
+        when(outboxMailRepository.findDue(any(), any(Pageable.class)))
+                .thenReturn(List.of(mail(1L, "first@example.com", 2)));
+
+        mailOutboxSender.sendDue();
+
+        verify(outboxMailRepository).markFailed(eq(1L), eq(OutboxMail.Status.DEAD), eq(3), any(), any());
+    }
+
+    @Test
+    void should_cap_the_backoff() {
+        properties.setInitialBackoff(Duration.ofMinutes(1));
+        properties.setMaxBackoff(Duration.ofMinutes(10));
+
+        assertThat(mailOutboxSender.backoff(1)).isEqualTo(Duration.ofMinutes(1));
+        assertThat(mailOutboxSender.backoff(4)).isEqualTo(Duration.ofMinutes(8));
+        assertThat(mailOutboxSender.backoff(5)).isEqualTo(Duration.ofMinutes(10));
+        assertThat(mailOutboxSender.backoff(100)).isEqualTo(Duration.ofMinutes(10));
+    }
+
+    private static OutboxMail mail(long id, String recipient, int attempts) {
+        final OutboxMail mail = new OutboxMail();
+        mail.setId(id);
+        mail.setRecipient(recipient);
+        mail.setSubject("Subject " + id);
+        mail.setBody("<p>Body " + id + "</p>");
+        mail.setHtml(true);
+        mail.setAttempts(attempts);
+        mail.setNextAttemptOn(LocalDateTime.now());
+        return mail;
+    }
+}
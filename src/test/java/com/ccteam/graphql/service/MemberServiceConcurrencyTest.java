@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.service;
+
+import com.ccteam.graphql.config.graphql.CustomGraphQLException;
+import com.ccteam.graphql.entities.Bike;
+import com.ccteam.graphql.entities.Member;
+import com.ccteam.graphql.enums.BoardRole;
+import com.ccteam.graphql.repository.BikeRepository;
+import com.ccteam.graphql.repository.MemberRepository;
+import com.ccteam.graphql.repository.MembershipFeeRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.PessimisticLockingFailureException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.StreamSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Hammer the set-based writes of {@link MemberService} and {@link BikeService} from several threads at once
+ * and check the invariants still hold afterwards (one holder per board role, one current bike per member,
+ * one membership fee per member and year).
+ * <p>
+ * Runs against the configured database, as the invariants rely on its unique indexes. The assertions only look at the
+ * members and bikes created by the test, and the president in place before the test gets the role back afterwards.
+ */
+@SpringBootTest
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class MemberServiceConcurrencyTest {
+
+    private static final int THREADS = 8;
+
+    @Autowired
+    private MemberService memberService;
+
+    @Autowired
+    private BikeService bikeService;
+
+    @Autowired
+    private MemberRepository memberRepository;
+
+    @Autowired
+    private BikeRepository bikeRepository;
+
+    @Autowired
+    private MembershipFeeRepository membershipFeeRepository;
+
+    private final List<Member> members = new ArrayList<>();
+
+    private final List<Bike> bikes = new ArrayList<>();
+
+    private Optional<Long> previousPresidentId;
+
+    @BeforeAll
+    void setup() {
+        previousPresidentId = memberRepository.findAll().stream()
+                .filter(m -> m.getBoardRole() == BoardRole.PRESIDENT)
+                .map(Member::getId)
+                .findFirst();
+
+        for (int i = 0; i < THREADS; i++) {
+            final Member member = new Member();
+            member.setFirstName("Concurrent");
+            member.setLastName("Rider " + i);
+            member.setEmail("concurrent.rider." + i + "@example.com");
+            member.setRole(Member.Role.ROLE_MEMBER);
+            member.setCreatedOn(LocalDateTime.now());
+            members.add(memberRepository.save(member));
+        }
+
+        for (int i = 0; i < THREADS; i++) {
+            final Bike bike = new Bike();
+            bike.setManufacturer("Yamaha");
+            bike.setModelName("R1 #" + i);
+            bike.setMember(members.getFirst());
+            bikes.add(bikeRepository.save(bike));
+        }
+    }
+
+    @AfterAll
+    void cleanup() {
+        previousPresidentId.ifPresent(id -> memberService.setBoardRole(id, BoardRole.PRESIDENT));
+        memberRepository.deleteAll(members);
+    }
+
+    @Test
+    void should_keep_a_single_president_under_concurrent_assignments() throws Exception {
+        final AtomicInteger succeeded = runConcurrently(i ->
+                memberService.setBoardRole(members.get(i).getId(), BoardRole.PRESIDENT));
+
+        final long presidents = memberRepository.findAllById(members.stream().map(Member::getId).toList()).stream()
+                .filter(m -> m.getBoardRole() == BoardRole.PRESIDENT)
+                .count();
+        assertThat(succeeded.get()).isPositive();
+        assertThat(presidents).isEqualTo(1);
+    }
+
+    @Test
+    void should_keep_a_single_current_bike_under_concurrent_updates() throws Exception {
+        final AtomicInteger succeeded = runConcurrently(i -> {
+            final Bike bike = bikes.get(i);
+            bikeService.updateBike(bike.getId(), bike.getManufacturer(), bike.getModelName(), null, null, true);
+        });
+
+        final long currentBikes = bikeRepository.findAllById(bikes.stream().map(Bike::getId).toList()).stream()
+                .filter(Bike::getCurrent)
+                .count();
+        assertThat(succeeded.get()).isPositive();
+        assertThat(currentBikes).isEqualTo(1);
+    }
+
+    @Test
+    void should_keep_a_single_fee_per_year_under_concurrent_adds() throws Exception {
+        final long memberId = members.getLast().getId();
+        final AtomicInteger succeeded = runConcurrently(i ->
+                memberService.addMembershipFee(memberId, 2026, 100f + i, true));
+
+        final long fees = StreamSupport.stream(membershipFeeRepository.findAll().spliterator(), false)
+                .filter(f -> f.getMember().getId() == memberId && f.getYear() == 2026)
+                .count();
+        assertThat(succeeded.get()).isPositive();
+        assertThat(fees).isEqualTo(1);
+    }
+
+    /**
+     * Run the given action once per thread, all threads being released at the same time.
+     * Lock failures (deadlock victim, lock wait timeout) and board role conflicts (unique index violation) are
+     * tolerated, they are the database refusing a write rather than breaking an invariant. Any other failure fails
+     * the test.
+     *
+     * @return The number of actions that completed successfully
+     */
+    private AtomicInteger runConcurrently(IndexedAction action) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger succeeded = new AtomicInteger();
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            final int index = i;
+            futures.add(executor.submit(() -> {
+                start.await();
+                try {
+                    action.run(index);
+                    succeeded.incrementAndGet();
+                } catch (PessimisticLockingFailureException e) {
+                    // lost a lock race, acceptable
+                } catch (CustomGraphQLException e) {
+                    if (!"board_role_conflict".equals(e.getExtensions().get("errorCode"))) {
+                        throw e;
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        return succeeded;
+    }
+
+    @FunctionalInterface
+    private interface IndexedAction {
+        void run(int index) throws Exception;
+    }
+}
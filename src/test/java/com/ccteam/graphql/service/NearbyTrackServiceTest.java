@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2024 by Yann39
+ *
+ * This file is part of CCTeam GraphQL application.
+ *
+ * CCTeam GraphQL is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * CCTeam GraphQL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with CCTeam GraphQL. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.ccteam.graphql.service;
+
+import com.ccteam.graphql.model.TrackDistance;
+import com.ccteam.graphql.model.TrackLocation;
+import com.ccteam.graphql.repository.TrackRepository;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Index tracks from a mocked track table and check searches find them across the antimeridian and the poles, ordered
+ * by great-circle distance.
+ */
+class NearbyTrackServiceTest {
+
+    private final TrackRepository trackRepository = mock(TrackRepository.class);
+
+    private final NearbyTrackService nearbyTrackService = new NearbyTrackService(trackRepository);
+
+    @Test
+    void should_order_tracks_by_great_circle_distance() {
+        build(List.of(
+                location(1L, 45.7640, 4.8357),
+                location(2L, 51.5074, -0.1278),
+                location(3L, 48.8566, 2.3522),
+                location(4L, 40.4168, -3.7038)));
+
+        final List<TrackDistance> tracks = nearbyTrackService.getTracksNear(48.8566, 2.3522, 500, null);
+
+        // Madrid is more than 1000 km away
+        assertThat(ids(tracks)).containsExactly(3L, 2L, 1L);
+        assertThat(tracks.get(0).getDistanceKm()).isEqualTo(0, within(1e-9));
+        assertThat(tracks.get(1).getDistanceKm()).isEqualTo(343.5, within(1.0));
+        assertThat(tracks.get(2).getDistanceKm()).isEqualTo(391.5, within(1.0));
+        assertThat(tracks.get(1).getTrack().getCountry().getCode()).isEqualTo("FR");
+    }
+
+    @Test
+    void should_find_tracks_across_the_antimeridian() {
+        build(List.of(
+                location(1L, -17.0, 179.5),
+                location(2L, -17.0, -179.9),
+                location(3L, -17.0, -178.0)));
+
+        final List<TrackDistance> tracks = nearbyTrackService.getTracksNear(-17.0, 179.9, 50, null);
+
+        assertThat(ids(tracks)).containsExactly(2L, 1L);
+        assertThat(nearbyTrackService.getTracksNear(-17.0, -179.9, 100, null)).extracting(t -> t.getTrack().getId())
+                .containsExactly(2L, 1L);
+    }
+
+    @Test
+    void should_find_tracks_on_the_other_side_of_a_pole() {
+        build(List.of(
+                location(1L, 89.5, 180.0),
+                location(2L, -89.0, 0.0)));
+
+        final List<TrackDistance> tracks = nearbyTrackService.getTracksNear(89.5, 0.0, 200, null);
+
+        // about 1 degree of latitude over the pole
+        assertThat(ids(tracks)).containsExactly(1L);
+        assertThat(tracks.getFirst().getDistanceKm()).isEqualTo(111.2, within(0.5));
+        assertThat(ids(nearbyTrackService.getTracksNear(-90.0, 120.0, 200, null))).containsExactly(2L);
+    }
+
+    @Test
+    void should_return_new_track_instances_on_each_search() {
+        build(List.of(location(1L, 48.8566, 2.3522)));
+
+        final TrackDistance first = nearbyTrackService.getTracksNear(48.8566, 2.3522, 10, null).getFirst();
+        final TrackDistance second = nearbyTrackService.getTracksNear(48.8566, 2.3522, 10, null).getFirst();
+
+        assertThat(first.getTrack()).isNotSameAs(second.getTrack());
+        assertThat(first.getTrack().getLatitude()).isEqualTo(new BigDecimal("48.8566"));
+    }
+
+    private void build(List<TrackLocation> locations) {
+        when(trackRepository.findAllLocations()).thenReturn(locations);
+        nearbyTrackService.rebuild();
+    }
+
+    private static TrackLocation location(Long id, double latitude, double longitude) {
+        return new TrackLocation(id, "Track " + id, 3000, 90_000, null, null, BigDecimal.valueOf(latitude),
+                BigDecimal.valueOf(longitude), "FR", "France", "France");
+    }
+
+    private static List<Long> ids(List<TrackDistance> tracks) {
+        return tracks.stream().map(t -> t.getTrack().getId()).toList();
+    }
+
+}